@@ -37,6 +37,7 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.parser.BuildFileSpec;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.parser.ParserMessages;
@@ -47,6 +48,7 @@ import com.facebook.buck.parser.exceptions.BuildTargetException;
 import com.facebook.buck.query.AllPathsFunction;
 import com.facebook.buck.query.AttrFilterFunction;
 import com.facebook.buck.query.BuildFileFunction;
+import com.facebook.buck.query.CompactDependencyGraph;
 import com.facebook.buck.query.DepsFunction;
 import com.facebook.buck.query.FilterFunction;
 import com.facebook.buck.query.InputsFunction;
@@ -81,6 +83,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -93,6 +96,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import javax.annotation.Nullable;
 
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
@@ -118,6 +122,10 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
           new RdepsFunction<>(),
           new TestsOfFunction<>());
 
+  /** Functions whose results depend on source files rather than only on build files. */
+  private static final ImmutableSet<String> SOURCE_DEPENDENT_FUNCTIONS =
+      ImmutableSet.of(new OwnerFunction<QueryBuildTarget>().getName());
+
   private final Parser parser;
   private final PerBuildState parserState;
   private final Cell rootCell;
@@ -134,6 +142,12 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
   // traverses the graph in parallel.
   private MutableDirectedGraph<TargetNode<?>> graph = MutableDirectedGraph.createConcurrent();
   private Map<BuildTarget, TargetNode<?>> targetsToNodes = new ConcurrentHashMap<>();
+  // Targets whose nodes were loaded without being added to `graph`.
+  private final Set<BuildTarget> targetsLoadedOutsideGraph = ConcurrentHashMap.newKeySet();
+
+  // Snapshot of `graph` used by traversal functions. Nodes and their edges are only ever added to
+  // `graph` together, so the snapshot is up to date as long as it has as many nodes as the graph.
+  @Nullable private CompactDependencyGraph<QueryBuildTarget> compactGraph = null;
 
   @VisibleForTesting
   protected BuckQueryEnvironment(
@@ -240,6 +254,58 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return evaluateQuery(QueryExpression.parse(query, this));
   }
 
+  /**
+   * @return whether the result of {@code expr} only depends on the build files reported by {@link
+   *     #getBuildFileDependencies()} and {@link #getBuildDirectoryDependencies()} once it has been
+   *     evaluated. This is not the case for expressions that refer to source files or aliases.
+   */
+  public boolean isResultCacheable(QueryExpression<QueryBuildTarget> expr) {
+    Set<String> functionNames = new HashSet<>();
+    expr.collectFunctionNames(functionNames);
+    if (!Collections.disjoint(functionNames, SOURCE_DEPENDENT_FUNCTIONS)) {
+      return false;
+    }
+    Set<String> targetPatterns = new HashSet<>();
+    expr.collectTargetPatterns(targetPatterns);
+    return targetPatterns.stream()
+        .allMatch(pattern -> pattern.contains("//") || pattern.startsWith(":"));
+  }
+
+  /**
+   * @return absolute paths of the build files that define the targets loaded by this environment,
+   *     or that were read to resolve non-recursive target patterns
+   */
+  public ImmutableSet<Path> getBuildFileDependencies() {
+    ImmutableSet.Builder<Path> buildFiles = ImmutableSet.builder();
+    for (BuildTarget target :
+        Iterables.concat(targetsToNodes.keySet(), targetsLoadedOutsideGraph)) {
+      Cell cell = rootCell.getCell(target);
+      buildFiles.add(getBuildFile(cell, cell.getFilesystem().resolve(target.getBasePath())));
+    }
+    for (BuildFileSpec spec : targetPatternEvaluator.getResolvedBuildFileSpecs()) {
+      if (!spec.isRecursive()) {
+        Cell cell = rootCell.getCell(spec.getCellPath());
+        buildFiles.add(getBuildFile(cell, spec.getCellPath().resolve(spec.getBasePath())));
+      }
+    }
+    return buildFiles.build();
+  }
+
+  /**
+   * @return absolute paths of the directories that were searched for build files to resolve
+   *     recursive target patterns
+   */
+  public ImmutableSet<Path> getBuildDirectoryDependencies() {
+    return targetPatternEvaluator.getResolvedBuildFileSpecs().stream()
+        .filter(BuildFileSpec::isRecursive)
+        .map(spec -> spec.getCellPath().resolve(spec.getBasePath()))
+        .collect(ImmutableSet.toImmutableSet());
+  }
+
+  private static Path getBuildFile(Cell cell, Path packageDirectory) {
+    return packageDirectory.resolve(cell.getBuckConfigView(ParserConfig.class).getBuildFileName());
+  }
+
   TargetNode<?> getNode(QueryBuildTarget target) throws QueryException {
     BuildTarget buildTarget = target.getBuildTarget();
     TargetNode<?> node = targetsToNodes.get(buildTarget);
@@ -248,7 +314,9 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     }
 
     try {
-      return parser.getTargetNode(parserState, buildTarget);
+      node = parser.getTargetNode(parserState, buildTarget);
+      targetsLoadedOutsideGraph.add(buildTarget);
+      return node;
     } catch (BuildFileParseException e) {
       throw new QueryException(e, "Error getting target node for %s\n%s", target, e.getMessage());
     }
@@ -312,6 +380,25 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryBuildTarget>
     return result;
   }
 
+  @Override
+  public Optional<CompactDependencyGraph<QueryBuildTarget>> getCompactDependencyGraph() {
+    int nodeCount = graph.getNodeCount();
+    if (compactGraph == null || nodeCount >= 2 * compactGraph.size()) {
+      // Only rebuilding the snapshot once the graph has doubled keeps the cost of all the snapshots
+      // linear in the size of the graph, even when every traversal of a query grows the graph.
+      compactGraph =
+          CompactDependencyGraph.of(
+              graph.getNodes(),
+              graph::getOutgoingNodesFor,
+              node -> getOrCreateQueryBuildTarget(node.getBuildTarget()));
+    }
+    if (compactGraph.size() != nodeCount) {
+      // Traversals use the object graph until the snapshot is rebuilt.
+      return Optional.empty();
+    }
+    return Optional.of(compactGraph);
+  }
+
   @Override
   public Set<QueryFileTarget> getInputs(QueryBuildTarget target) throws QueryException {
     TargetNode<?> node = getNode(target);
@@ -21,6 +21,7 @@ import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.query.QueryFileTarget;
 import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Multimap;
@@ -68,6 +69,23 @@ public final class CommandHelper {
     ObjectMappers.WRITER.writeValue(printStream, targetsNames);
   }
 
+  /**
+   * Creates a {@link JsonGenerator} that pretty prints into printStream as values are written to
+   * it, so that large outputs can be written one element at a time instead of being built in memory
+   * first. Closing the generator flushes it, but does not close printStream, nor close the arrays
+   * and objects left open when writing fails, so that truncated output is not valid JSON.
+   *
+   * @param printStream print stream for output
+   * @throws IOException in case of IO exception while creating the generator
+   */
+  public static JsonGenerator createPrettyJsonGenerator(PrintStream printStream)
+      throws IOException {
+    return ObjectMappers.createGenerator(printStream)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+        .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+        .useDefaultPrettyPrinter();
+  }
+
   /**
    * Prints target and dependencies map into printStream.
    *
@@ -56,9 +56,11 @@ import com.facebook.buck.slb.LoadBalancedService;
 import com.facebook.buck.slb.RetryingHttpService;
 import com.facebook.buck.slb.SingleUriService;
 import com.facebook.buck.slb.ThriftOverHttpServiceConfig;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
@@ -146,7 +148,10 @@ public abstract class DistBuildFactory {
             executorService,
             fileMaterializationStatsTracker,
             distBuildConfig.getSourceFileMultiFetchBufferPeriodMs(),
-            distBuildConfig.getSourceFileMultiFetchMaxBufferSize()),
+            distBuildConfig.getSourceFileMultiFetchMaxBufferSize(),
+            MoreExecutors.listeningDecorator(
+                MostExecutors.newMultiThreadExecutor(
+                    "source-file-writer", distBuildConfig.getSourceFileWriterThreadCount()))),
         fileMaterializationStatsTracker,
         executorService,
         projectFilesystemFactory,
@@ -17,11 +17,13 @@
 package com.facebook.buck.cli;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.QueryTarget;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.util.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.core.util.graph.DirectedAcyclicGraph;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.CacheStatsEvent;
 import com.facebook.buck.parser.ParserPythonInterpreterProvider;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.PerBuildStateFactory;
@@ -31,11 +33,16 @@ import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryExpression;
 import com.facebook.buck.rules.coercer.DefaultConstructorArgMarshaller;
+import com.facebook.buck.support.state.QueryResultCache;
 import com.facebook.buck.util.CloseableWrapper;
 import com.facebook.buck.util.CommandLineException;
 import com.facebook.buck.util.ExitCode;
 import com.facebook.buck.util.PatternsMatcher;
+import com.facebook.buck.util.cache.CacheStats;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
 import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Suppliers;
@@ -208,6 +215,8 @@ public class QueryCommand extends AbstractCommand {
   @Argument(handler = QueryMultiSetOptionHandler.class)
   private List<String> arguments = new ArrayList<>();
 
+  private final CacheStatsTracker queryResultCacheStats = new InstrumentingCacheStatsTracker();
+
   @VisibleForTesting
   void setArguments(List<String> arguments) {
     this.arguments = arguments;
@@ -245,10 +254,23 @@ public class QueryCommand extends AbstractCommand {
       formatAndRunQuery(params, env);
     } catch (QueryException e) {
       throw new HumanReadableException(e);
+    } finally {
+      params
+          .getBuckEventBus()
+          .post(new CacheStatsEvent("query_result_cache", getQueryResultCacheStats()));
     }
     return ExitCode.SUCCESS;
   }
 
+  private CacheStats getQueryResultCacheStats() {
+    return CacheStats.builder()
+        .setHitCount(queryResultCacheStats.getTotalHitCount())
+        .setMissCount(queryResultCacheStats.getTotalMissCount())
+        .setMissMatchCount(queryResultCacheStats.getTotalMissMatchCount())
+        .setInvalidationCount(queryResultCacheStats.getTotalInvalidationCount())
+        .build();
+  }
+
   @VisibleForTesting
   void formatAndRunQuery(CommandRunnerParams params, BuckQueryEnvironment env)
       throws IOException, InterruptedException, QueryException {
@@ -384,7 +406,7 @@ public class QueryCommand extends AbstractCommand {
 
   private void runSingleQuery(CommandRunnerParams params, BuckQueryEnvironment env, String query)
       throws IOException, InterruptedException, QueryException {
-    Set<QueryTarget> queryResult = env.evaluateQuery(query);
+    Set<QueryTarget> queryResult = evaluateQuery(params, env, query);
     LOG.debug("Printing out the following targets: %s", queryResult);
 
     try (CloseableWrapper<PrintStream> printStreamWrapper = getPrintStreamWrapper(params)) {
@@ -421,6 +443,44 @@ public class QueryCommand extends AbstractCommand {
     }
   }
 
+  /**
+   * Evaluates {@code query}, reusing the result computed by an earlier command run by this daemon
+   * if none of the build files it was computed from have changed since, unless {@code
+   * query.cache_results} is disabled.
+   */
+  private Set<QueryTarget> evaluateQuery(
+      CommandRunnerParams params, BuckQueryEnvironment env, String query)
+      throws InterruptedException, QueryException {
+    if (!params.getBuckConfig().getView(QueryCommandBuckConfig.class).isResultCacheEnabled()) {
+      return env.evaluateQuery(query);
+    }
+    // Graph based output formats print the target graph loaded by the evaluation, so they need the
+    // query to actually be evaluated.
+    if (sortOutputFormat.needToSortByRank()
+        || (outputFormat != OutputFormat.LIST && outputFormat != OutputFormat.JSON)
+        || !env.isResultCacheable(QueryExpression.parse(query, env))) {
+      return env.evaluateQuery(query);
+    }
+
+    String key =
+        params.getTargetConfigurationSerializer().serialize(params.getTargetConfiguration())
+            + " "
+            + query;
+    return params
+        .getGlobalState()
+        .getQueryResultCache()
+        .get(
+            key,
+            params.getCell(),
+            params.getBuckEventBus(),
+            () ->
+                QueryResultCache.Entry.of(
+                    ImmutableSet.copyOf(env.evaluateQuery(query)),
+                    env.getBuildFileDependencies(),
+                    env.getBuildDirectoryDependencies()),
+            queryResultCacheStats);
+  }
+
   /** @return set as {@link QueryBuildTarget}s or throw {@link IllegalArgumentException} */
   @SuppressWarnings("unchecked")
   public static Set<QueryBuildTarget> asQueryBuildTargets(Set<? extends QueryTarget> set) {
@@ -631,6 +691,13 @@ public class QueryCommand extends AbstractCommand {
     return ranks;
   }
 
+  /**
+   * Prints the attributes of the targets in {@code queryResult} as a JSON object keyed by target
+   * name.
+   *
+   * <p>The output is written one target at a time in target name order, so that only the
+   * attributes of a single target are held in memory.
+   */
   private static void collectAndPrintAttributesAsJson(
       CommandRunnerParams params,
       BuckQueryEnvironment env,
@@ -638,7 +705,43 @@ public class QueryCommand extends AbstractCommand {
       ImmutableSet<String> attributes,
       PrintStream printStream)
       throws QueryException {
-    printAttributesAsJson(collectAttributes(params, env, queryResult, attributes), printStream);
+    PatternsMatcher patternsMatcher = new PatternsMatcher(attributes);
+    // TODO(buckteam): figure out if duplicates should actually be allowed. It seems like the only
+    // reason why duplicates may occur is because TargetNode's unflavored name is used as a key,
+    // which may or may not be a good idea
+    SortedMap<String, QueryBuildTarget> targetsByName = new TreeMap<>();
+    for (QueryTarget target : queryResult) {
+      if (target instanceof QueryBuildTarget) {
+        QueryBuildTarget buildTarget = (QueryBuildTarget) target;
+        targetsByName.put(toPresentationForm(buildTarget.getBuildTarget()), buildTarget);
+      }
+    }
+
+    try (JsonGenerator generator = CommandHelper.createPrettyJsonGenerator(printStream)) {
+      generator.writeStartObject();
+      for (Map.Entry<String, QueryBuildTarget> entry : targetsByName.entrySet()) {
+        TargetNode<?> node = env.getNode(entry.getValue());
+        try {
+          Optional<SortedMap<String, Object>> attrMap =
+              getAttributes(params, env, patternsMatcher, node);
+          if (attrMap.isPresent()) {
+            generator.writeFieldName(entry.getKey());
+            ObjectMappers.WRITER.writeValue(generator, attrMap.get());
+          }
+        } catch (BuildFileParseException e) {
+          params
+              .getConsole()
+              .printErrorText(
+                  "unable to find rule for target "
+                      + node.getBuildTarget().getFullyQualifiedName());
+        }
+      }
+      generator.writeEndObject();
+    } catch (IOException e) {
+      // Shouldn't be possible while writing to a PrintStream...
+      throw new RuntimeException(e);
+    }
+    printStream.println();
   }
 
   private static <T extends SortedMap<String, Object>> void printAttributesAsJson(
@@ -654,37 +757,6 @@ public class QueryCommand extends AbstractCommand {
     printStream.println(output);
   }
 
-  private static ImmutableSortedMap<String, SortedMap<String, Object>> collectAttributes(
-      CommandRunnerParams params,
-      BuckQueryEnvironment env,
-      Set<QueryTarget> queryResult,
-      ImmutableSet<String> attrs)
-      throws QueryException {
-    PatternsMatcher patternsMatcher = new PatternsMatcher(attrs);
-    // use HashMap instead of ImmutableSortedMap.Builder to allow duplicates
-    // TODO(buckteam): figure out if duplicates should actually be allowed. It seems like the only
-    // reason why duplicates may occur is because TargetNode's unflavored name is used as a key,
-    // which may or may not be a good idea
-    Map<String, SortedMap<String, Object>> attributesMap = new HashMap<>();
-    for (QueryTarget target : queryResult) {
-      if (!(target instanceof QueryBuildTarget)) {
-        continue;
-      }
-      TargetNode<?> node = env.getNode((QueryBuildTarget) target);
-      try {
-        getAttributes(params, env, patternsMatcher, node)
-            .ifPresent(attrMap -> attributesMap.put(toPresentationForm(node), attrMap));
-
-      } catch (BuildFileParseException e) {
-        params
-            .getConsole()
-            .printErrorText(
-                "unable to find rule for target " + node.getBuildTarget().getFullyQualifiedName());
-      }
-    }
-    return ImmutableSortedMap.copyOf(attributesMap);
-  }
-
   private static Optional<SortedMap<String, Object>> getAttributes(
       CommandRunnerParams params,
       BuckQueryEnvironment env,
@@ -712,7 +784,11 @@ public class QueryCommand extends AbstractCommand {
   }
 
   private static String toPresentationForm(TargetNode<?> node) {
-    return node.getBuildTarget().getUnflavoredBuildTarget().getFullyQualifiedName();
+    return toPresentationForm(node.getBuildTarget());
+  }
+
+  private static String toPresentationForm(BuildTarget target) {
+    return target.getUnflavoredBuildTarget().getFullyQualifiedName();
   }
 
   @Override
@@ -24,6 +24,7 @@ import com.facebook.buck.core.model.TargetConfiguration;
 import com.facebook.buck.core.model.UnconfiguredBuildTargetView;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.parser.BuildFileSpec;
 import com.facebook.buck.parser.BuildTargetMatcherTargetNodeParser;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParsingContext;
@@ -42,8 +43,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 class TargetPatternEvaluator {
   private static final Logger LOG = Logger.get(TargetPatternEvaluator.class);
@@ -57,6 +60,7 @@ class TargetPatternEvaluator {
   private final TargetConfiguration targetConfiguration;
 
   private Map<String, ImmutableSet<QueryTarget>> resolvedTargets = new HashMap<>();
+  private Set<BuildFileSpec> resolvedBuildFileSpecs = new HashSet<>();
 
   public TargetPatternEvaluator(
       Cell rootCell,
@@ -124,6 +128,11 @@ class TargetPatternEvaluator {
     return resolved.build();
   }
 
+  /** @return the specs of the build files read to resolve the target patterns so far */
+  ImmutableSet<BuildFileSpec> getResolvedBuildFileSpecs() {
+    return ImmutableSet.copyOf(resolvedBuildFileSpecs);
+  }
+
   private ImmutableSet<QueryTarget> resolveFilePattern(String pattern) throws IOException {
     ImmutableSet<Path> filePaths =
         PathArguments.getCanonicalFilesUnderProjectRoot(projectRoot, ImmutableList.of(pattern))
@@ -147,6 +156,9 @@ class TargetPatternEvaluator {
     ImmutableList<ImmutableSet<BuildTarget>> buildTargets =
         parser.resolveTargetSpecs(parsingContext, specs, targetConfiguration);
     LOG.verbose("Resolved target patterns %s -> targets %s", patterns, buildTargets);
+    for (TargetNodeSpec spec : specs) {
+      resolvedBuildFileSpecs.add(spec.getBuildFileSpec());
+    }
 
     // Convert the ordered result into a result map of pattern to set of resolved targets.
     ImmutableMap.Builder<String, ImmutableSet<QueryTarget>> queryTargets = ImmutableMap.builder();
@@ -110,7 +110,6 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -123,6 +122,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.SortedMap;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -392,10 +392,11 @@ public class TargetsCommand extends AbstractCommand {
     Map<String, List<BuildTargetPattern>> patternsPerCell =
         buildTargetPatterns.stream().collect(Collectors.groupingBy(pattern -> pattern.getCell()));
 
-    // Build graph engines for each cell in provided specs and evaluate
-    List<RawTargetNodeWithDepsPackage> nodes = new ArrayList<>();
+    // Build graph engines for each cell in provided specs and evaluate. Packages are printed as
+    // soon as they are parsed, in the order of the patterns that matched them.
     Closer closer = Closer.create();
-    try {
+    try (JsonGenerator generator =
+        CommandHelper.createPrettyJsonGenerator(params.getConsole().getStdOut())) {
       // For each cell, build a Graph Engine which will parse that cell's targets
       // In the returned result, the key is a cell name and the value is Graph Engine instance
       // configured for this cell
@@ -403,6 +404,7 @@ public class TargetsCommand extends AbstractCommand {
           buildGraphEngineForEachCell(
               ImmutableSet.copyOf(patternsPerCell.keySet()), closer, params);
 
+      generator.writeStartArray();
       // Execute graph engine for each cell sequentially
       // TODO(buck_team): parallelize it with Graph Engine
       for (Map.Entry<String, List<BuildTargetPattern>> cellAndPatterns :
@@ -423,24 +425,28 @@ public class TargetsCommand extends AbstractCommand {
 
         ImmutableMap<
                 ComposedKey<BuildTargetPatternToBuildPackagePathKey, RawTargetNodeWithDepsPackage>,
+                Future<
+                    ComposedResult<
+                        ComputeKey<RawTargetNodeWithDepsPackage>, RawTargetNodeWithDepsPackage>>>
+            results = engine.computeAll(keys);
+
+        for (Future<
                 ComposedResult<
                     ComputeKey<RawTargetNodeWithDepsPackage>, RawTargetNodeWithDepsPackage>>
-            results = engine.computeAllUnchecked(keys);
-
-        results.values().forEach(result -> nodes.addAll(result.resultMap().values()));
+            result : results.values()) {
+          for (RawTargetNodeWithDepsPackage node :
+              Futures.getUnchecked(result).resultMap().values()) {
+            ObjectMappers.WRITER.writeValue(generator, node);
+          }
+        }
       }
+      generator.writeEndArray();
     } catch (Throwable th) {
       // required by Closer to properly throw main exception along with suppressed ones
       closer.rethrow(th);
     } finally {
       closer.close();
     }
-
-    // output
-    try (JsonGenerator generator =
-        ObjectMappers.createGenerator(params.getConsole().getStdOut()).useDefaultPrettyPrinter()) {
-      ObjectMappers.WRITER.writeValue(generator, nodes);
-    }
   }
 
   private ImmutableMap<String, GraphTransformationEngine> buildGraphEngineForEachCell(
@@ -935,8 +941,10 @@ public class TargetsCommand extends AbstractCommand {
       throws BuildFileParseException {
     PatternsMatcher attributesPatternsMatcher = new PatternsMatcher(outputAttributes);
 
-    // Print the JSON representation of the build node for the specified target(s).
-    params.getConsole().getStdOut().println("[");
+    // Print the JSON representation of the build node for the specified target(s), one target at a
+    // time so that only the attributes of a single target are held in memory.
+    PrintStream stdOut = params.getConsole().getStdOut();
+    stdOut.println("[");
 
     Iterator<TargetNode<?>> targetNodeIterator = targetNodes.iterator();
 
@@ -999,26 +1007,21 @@ public class TargetsCommand extends AbstractCommand {
         }
 
         // Print the build rule information as JSON.
-        StringWriter stringWriter = new StringWriter();
-        try {
-          ObjectMappers.WRITER
-              .withDefaultPrettyPrinter()
-              .writeValue(
-                  stringWriter,
-                  attributesPatternsMatcher.filterMatchingMapKeys(targetNodeAttributes));
+        try (JsonGenerator generator = CommandHelper.createPrettyJsonGenerator(stdOut)) {
+          ObjectMappers.WRITER.writeValue(
+              generator, attributesPatternsMatcher.filterMatchingMapKeys(targetNodeAttributes));
         } catch (IOException e) {
-          // Shouldn't be possible while writing to a StringWriter...
+          // Shouldn't be possible while writing to a PrintStream...
           throw new RuntimeException(e);
         }
-        params.getConsole().getStdOut().print(stringWriter.getBuffer().toString());
         if (targetNodeIterator.hasNext()) {
-          params.getConsole().getStdOut().print(',');
+          stdOut.print(',');
         }
-        params.getConsole().getStdOut().println();
+        stdOut.println();
       }
     }
 
-    params.getConsole().getStdOut().println("]");
+    stdOut.println("]");
   }
 
   @VisibleForTesting
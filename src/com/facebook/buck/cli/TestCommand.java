@@ -276,7 +276,9 @@ public class TestCommand extends BuildCommand {
             .setCoverageReportFormats(coverageFormats)
             .setCoverageReportTitle(coverageReportTitle)
             .setEnvironmentOverrides(environmentOverrides)
-            .setJavaTempDir(params.getBuckConfig().getView(JavaBuckConfig.class).getJavaTempDir());
+            .setJavaTempDir(params.getBuckConfig().getView(JavaBuckConfig.class).getJavaTempDir())
+            .setJavaTestShardCount(
+                params.getBuckConfig().getView(JavaBuckConfig.class).getTestShardCount());
 
     TestBuckConfig testBuckConfig = params.getBuckConfig().getView(TestBuckConfig.class);
     Optional<ImmutableList<String>> coverageIncludes = testBuckConfig.getCoverageIncludes();
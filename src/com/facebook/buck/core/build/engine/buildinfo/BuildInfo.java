@@ -79,6 +79,12 @@ public class BuildInfo {
 
     /** Key for {@link OnDiskBuildInfo} to store the hash of the output. */
     public static final String OUTPUT_HASH = "OUTPUT_HASH";
+
+    /**
+     * Key for {@link OnDiskBuildInfo} which lists the outputs that were not written to disk when
+     * the rule was built, because the strategy that built it only fetches them when needed.
+     */
+    public static final String DEFERRED_OUTPUTS = "DEFERRED_OUTPUTS";
   }
 
   public static final ImmutableSet<String> METADATA_KEYS =
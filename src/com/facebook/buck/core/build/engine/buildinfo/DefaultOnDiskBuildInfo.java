@@ -31,6 +31,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
@@ -173,8 +174,16 @@ public class DefaultOnDiskBuildInfo implements OnDiskBuildInfo {
 
   @Override
   public ImmutableSortedSet<Path> getPathsForArtifact() throws IOException {
+    return getPathsForArtifact(ImmutableSet.of());
+  }
+
+  private ImmutableSortedSet<Path> getPathsForArtifact(Set<Path> deferredOutputs)
+      throws IOException {
     ImmutableSortedSet.Builder<Path> paths = ImmutableSortedSet.naturalOrder();
     for (Path path : getOutputPaths()) {
+      if (deferredOutputs.contains(path)) {
+        continue;
+      }
       paths.add(path);
       projectFilesystem.walkRelativeFileTree(
           path,
@@ -230,8 +239,26 @@ public class DefaultOnDiskBuildInfo implements OnDiskBuildInfo {
   @Override
   public void calculateOutputSizeAndWriteOutputHashes(
       FileHashLoader fileHashLoader, Predicate<Long> shouldWriteOutputHashes) throws IOException {
-    ImmutableSortedSet<Path> pathsForArtifact = getPathsForArtifact();
-    long outputSize = getOutputSize(pathsForArtifact);
+    calculateOutputSizeAndWriteOutputHashes(
+        fileHashLoader, ImmutableMap.of(), shouldWriteOutputHashes);
+  }
+
+  @Override
+  public void calculateOutputSizeAndWriteOutputHashes(
+      FileHashLoader fileHashLoader,
+      ImmutableMap<Path, Long> deferredOutputSizes,
+      Predicate<Long> shouldWriteOutputHashes)
+      throws IOException {
+    ImmutableSortedSet<Path> pathsOnDisk = getPathsForArtifact(deferredOutputSizes.keySet());
+    long outputSize = getOutputSize(pathsOnDisk);
+    for (long size : deferredOutputSizes.values()) {
+      outputSize += size;
+    }
+    ImmutableSortedSet<Path> pathsForArtifact =
+        ImmutableSortedSet.<Path>naturalOrder()
+            .addAll(pathsOnDisk)
+            .addAll(deferredOutputSizes.keySet())
+            .build();
     projectFilesystem.writeContentsToPath(
         String.valueOf(outputSize), metadataDirectory.resolve(BuildInfo.MetadataKey.OUTPUT_SIZE));
 
@@ -262,6 +289,17 @@ public class DefaultOnDiskBuildInfo implements OnDiskBuildInfo {
         hasher.hash().toString(), metadataDirectory.resolve(BuildInfo.MetadataKey.OUTPUT_HASH));
   }
 
+  @Override
+  public boolean areDeferredOutputsOnDisk() {
+    return getValues(BuildInfo.MetadataKey.DEFERRED_OUTPUTS)
+        .map(
+            paths ->
+                paths.stream()
+                    .map(path -> Paths.get(path.replace("/", File.separator)))
+                    .allMatch(projectFilesystem::isFile))
+        .orElse(true);
+  }
+
   @Override
   public void validateArtifact(Set<Path> extractedFiles) throws IOException {
     // TODO(bertrand): It would be good to validate OUTPUT_HASH and RECORDED_PATH_HASHES, but we
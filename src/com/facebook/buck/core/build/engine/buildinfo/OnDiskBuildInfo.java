@@ -80,6 +80,23 @@ public interface OnDiskBuildInfo {
   void calculateOutputSizeAndWriteOutputHashes(
       FileHashLoader fileHashLoader, Predicate<Long> shouldWriteOutputHashes) throws IOException;
 
+  /**
+   * Like {@link #calculateOutputSizeAndWriteOutputHashes(FileHashLoader, Predicate)}, for outputs
+   * some of which are not on disk. Those are counted with the given sizes, and their hashes must
+   * already be known to the {@code fileHashLoader}.
+   */
+  void calculateOutputSizeAndWriteOutputHashes(
+      FileHashLoader fileHashLoader,
+      ImmutableMap<Path, Long> deferredOutputSizes,
+      Predicate<Long> shouldWriteOutputHashes)
+      throws IOException;
+
+  /**
+   * Returns whether the outputs that were not written to disk when the rule was last built, if
+   * any, have all been written since. Until they are, the rule's outputs are not up to date.
+   */
+  boolean areDeferredOutputsOnDisk();
+
   void validateArtifact(Set<Path> extractedFiles) throws IOException;
 
   ImmutableSortedSet<Path> getOutputPaths();
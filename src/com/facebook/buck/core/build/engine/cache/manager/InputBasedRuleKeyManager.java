@@ -134,7 +134,8 @@ public class InputBasedRuleKeyManager {
   private boolean checkMatchingInputBasedKey(RuleKey inputRuleKey) {
     Optional<RuleKey> lastInputRuleKey =
         onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.INPUT_BASED_RULE_KEY);
-    return inputRuleKey.equals(lastInputRuleKey.orElse(null));
+    return inputRuleKey.equals(lastInputRuleKey.orElse(null))
+        && onDiskBuildInfo.areDeferredOutputsOnDisk();
   }
 
   private BuildInfoRecorder getBuildInfoRecorder() {
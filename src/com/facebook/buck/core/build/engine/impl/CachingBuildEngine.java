@@ -70,8 +70,11 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -451,9 +454,40 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     registerTopLevelRule(rule, buildContext.getEventBus());
     ListenableFuture<BuildResult> resultFuture =
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
+    if (customBuildRuleStrategy.isPresent()) {
+      // Top-level rules are what the user asked for, so their outputs must end up on disk.
+      resultFuture =
+          Futures.transformAsync(
+              resultFuture,
+              result -> materializeDeferredOutputs(rule, result),
+              MoreExecutors.directExecutor());
+    }
     return BuildEngineResult.builder().setResult(resultFuture).build();
   }
 
+  private ListenableFuture<BuildResult> materializeDeferredOutputs(
+      BuildRule rule, BuildResult result) {
+    if (!result.isSuccess()) {
+      return Futures.immediateFuture(result);
+    }
+    Set<BuildRule> rules = new LinkedHashSet<>();
+    Deque<BuildRule> toVisit = new ArrayDeque<>(Collections.singleton(rule));
+    while (!toVisit.isEmpty()) {
+      BuildRule next = toVisit.remove();
+      if (rules.add(next)) {
+        toVisit.addAll(ruleDeps.getRuntimeDeps(next));
+      }
+    }
+    return Futures.catching(
+        Futures.transform(
+            customBuildRuleStrategy.get().materializeDeferredOutputs(rules),
+            ignored -> result,
+            MoreExecutors.directExecutor()),
+        Throwable.class,
+        throwable -> BuildResult.failure(rule, throwable),
+        MoreExecutors.directExecutor());
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
@@ -68,6 +68,7 @@ import com.facebook.buck.core.rules.attr.SupportsDependencyFileRuleKey;
 import com.facebook.buck.core.rules.attr.SupportsInputBasedRuleKey;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy.StrategyBuildResult;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
 import com.facebook.buck.core.rules.pipeline.RulePipelineState;
 import com.facebook.buck.core.rules.pipeline.SupportsPipelining;
 import com.facebook.buck.core.rules.schedule.OverrideScheduleRule;
@@ -100,9 +101,11 @@ import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.json.ObjectMappers;
 import com.facebook.buck.util.types.Pair;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
@@ -114,14 +117,18 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 import javax.annotation.Nonnull;
@@ -149,6 +156,7 @@ class CachingBuildRuleBuilder {
   private final ArtifactCache artifactCache;
   private final BuildId buildId;
   private final RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter;
+  private final RuleDepsCache ruleDeps;
   private final Set<String> depsWithCacheMiss = Collections.synchronizedSet(new HashSet<>());
 
   private final BuildRuleScopeManager buildRuleScopeManager;
@@ -187,6 +195,7 @@ class CachingBuildRuleBuilder {
 
   private volatile ListenableFuture<Void> uploadCompleteFuture = Futures.immediateFuture(null);
   private volatile boolean depsAreAvailable;
+  private volatile boolean hasDeferredOutputs;
   private final Optional<BuildRuleStrategy> customBuildRuleStrategy;
 
   private @Nullable volatile Throwable firstFailure = null;
@@ -239,6 +248,7 @@ class CachingBuildRuleBuilder {
     this.artifactCache = buildContext.getArtifactCache();
     this.buildId = buildContext.getBuildId();
     this.remoteBuildRuleCompletionWaiter = remoteBuildRuleCompletionWaiter;
+    this.ruleDeps = ruleDeps;
 
     this.defaultKey = ruleKeyFactories.getDefaultRuleKeyFactory().build(rule);
 
@@ -646,6 +656,20 @@ class CachingBuildRuleBuilder {
   private void finalizeBuiltLocally()
       throws IOException, StepFailedException, InterruptedException {
     BuildRuleSuccessType success = BuildRuleSuccessType.BUILT_LOCALLY;
+    ImmutableMap<Path, DeferredOutput> deferredOutputs =
+        customBuildRuleStrategy
+            .map(strategy -> strategy.getDeferredOutputs(rule))
+            .orElse(ImmutableMap.of());
+    if (!deferredOutputs.isEmpty()
+        && (rule instanceof HasPostBuildSteps
+            || rule instanceof InitializableFromDisk
+            || dependencyFileRuleKeyManager.useDependencyFileRuleKey())) {
+      // These read the outputs of the rule as soon as it's built.
+      materializeDeferredOutputs(ImmutableList.of(rule));
+      deferredOutputs = ImmutableMap.of();
+    }
+    hasDeferredOutputs = !deferredOutputs.isEmpty();
+
     if (rule instanceof HasPostBuildSteps) {
       executePostBuildSteps(((HasPostBuildSteps) rule).getPostBuildSteps(buildRuleBuildContext));
     }
@@ -654,6 +678,11 @@ class CachingBuildRuleBuilder {
     for (Path path : getBuildInfoRecorder().getRecordedPaths()) {
       fileHashCache.invalidate(rule.getProjectFilesystem().resolve(path));
     }
+    // The hashes of the deferred outputs are known without their contents.
+    for (Map.Entry<Path, DeferredOutput> entry : deferredOutputs.entrySet()) {
+      fileHashCache.set(
+          rule.getProjectFilesystem().resolve(entry.getKey()), entry.getValue().getHash());
+    }
 
     // Doing this here is probably not strictly necessary, however in the case of
     // pipelined rules built locally we will never do an input-based cache check.
@@ -751,6 +780,15 @@ class CachingBuildRuleBuilder {
                 .map(Object::toString)
                 .map(path -> path.replace(File.separator, "/"))
                 .collect(ImmutableList.toImmutableList()));
+    if (!deferredOutputs.isEmpty()) {
+      getBuildInfoRecorder()
+          .addMetadata(
+              BuildInfo.MetadataKey.DEFERRED_OUTPUTS,
+              deferredOutputs.keySet().stream()
+                  .map(Object::toString)
+                  .map(path -> path.replace(File.separator, "/"))
+                  .collect(ImmutableList.toImmutableList()));
+    }
     if (success.shouldWriteRecordedMetadataToDiskAfterBuilding()) {
       try {
         boolean clearExistingMetadata = success.shouldClearAndOverwriteMetadataOnDisk();
@@ -762,10 +800,40 @@ class CachingBuildRuleBuilder {
 
     try (Scope ignored = LeafEvents.scope(eventBus, "computing_output_hashes")) {
       onDiskBuildInfo.calculateOutputSizeAndWriteOutputHashes(
-          fileHashCache, this::shouldWriteOutputHashes);
+          fileHashCache,
+          ImmutableMap.copyOf(Maps.transformValues(deferredOutputs, DeferredOutput::getSize)),
+          this::shouldWriteOutputHashes);
     }
   }
 
+  /** Waits for the outputs of the given rules that the build strategy deferred to be written. */
+  private void materializeDeferredOutputs(Iterable<BuildRule> rules)
+      throws IOException, InterruptedException {
+    if (!customBuildRuleStrategy.isPresent()) {
+      return;
+    }
+    try {
+      customBuildRuleStrategy.get().materializeDeferredOutputs(rules).get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+      throw new BuckUncheckedExecutionException(
+          e.getCause(), "When fetching the outputs needed to build %s.", rule);
+    }
+  }
+
+  /** @return the rules whose outputs the steps of this rule may read when they run locally. */
+  private Set<BuildRule> getRulesReadByLocalSteps() {
+    Set<BuildRule> rules = new LinkedHashSet<>();
+    Deque<BuildRule> toVisit = new ArrayDeque<>(rule.getBuildDeps());
+    while (!toVisit.isEmpty()) {
+      BuildRule dep = toVisit.remove();
+      if (rules.add(dep)) {
+        toVisit.addAll(ruleDeps.getRuntimeDeps(dep));
+      }
+    }
+    return rules;
+  }
+
   private boolean shouldWriteOutputHashes(long outputSize) {
     Optional<Long> sizeLimit = ruleKeyFactories.getInputBasedRuleKeyFactory().getInputSizeLimit();
     return !sizeLimit.isPresent() || (outputSize <= sizeLimit.get());
@@ -820,6 +888,11 @@ class CachingBuildRuleBuilder {
               buildCacheArtifactUploader.shouldUploadToCache(success, outputSize.get());
         }
 
+        // Outputs that were never written can't be uploaded.
+        if (hasDeferredOutputs) {
+          shouldUploadToCache = UploadToCacheResultType.UNCACHEABLE;
+        }
+
         // Upload it to the cache.
         if (shouldUploadToCache.equals(UploadToCacheResultType.CACHEABLE)) {
           uploadToCache(success);
@@ -851,6 +924,14 @@ class CachingBuildRuleBuilder {
         new BuildStrategyContext() {
           @Override
           public ListenableFuture<Optional<BuildResult>> runWithDefaultBehavior() {
+            try {
+              materializeDeferredOutputs(getRulesReadByLocalSteps());
+            } catch (IOException | RuntimeException e) {
+              return Futures.immediateFailedFuture(e);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return Futures.immediateFailedFuture(e);
+            }
             if (SupportsPipelining.isSupported(rule)
                 && ((SupportsPipelining<?>) rule).useRulePipelining()) {
               return pipelinesRunner.runPipelineStartingAt(
@@ -1158,7 +1239,8 @@ class CachingBuildRuleBuilder {
 
   private Optional<BuildResult> checkMatchingLocalKey() {
     Optional<RuleKey> cachedRuleKey = onDiskBuildInfo.getRuleKey(BuildInfo.MetadataKey.RULE_KEY);
-    if (defaultKey.equals(cachedRuleKey.orElse(null))) {
+    if (defaultKey.equals(cachedRuleKey.orElse(null))
+        && onDiskBuildInfo.areDeferredOutputsOnDisk()) {
       return Optional.of(
           success(BuildRuleSuccessType.MATCHING_RULE_KEY, CacheResult.localKeyUnchangedHit()));
     }
@@ -32,13 +32,19 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 class ToposortBasedDepsAwareTask<T>
     extends AbstractDepsAwareTask<T, ToposortBasedDepsAwareTask<T>> {
+  /** The priority of tasks created without an explicit priority */
+  static final int DEFAULT_PRIORITY = 0;
+
   AtomicLong numOutStandingDependencies = new AtomicLong();
   ConcurrentLinkedQueue<ToposortBasedDepsAwareTask<T>> dependants = new ConcurrentLinkedQueue<>();
+  private final int priority;
 
   private ToposortBasedDepsAwareTask(
       Callable<T> callable,
-      DepsAwareTask.DepsSupplier<ToposortBasedDepsAwareTask<T>> depsSupplier) {
+      DepsAwareTask.DepsSupplier<ToposortBasedDepsAwareTask<T>> depsSupplier,
+      int priority) {
     super(callable, depsSupplier);
+    this.priority = priority;
   }
 
   public static <T> ToposortBasedDepsAwareTask<T> of(Callable<T> callable) {
@@ -48,7 +54,23 @@ class ToposortBasedDepsAwareTask<T>
   public static <T> ToposortBasedDepsAwareTask<T> of(
       Callable<T> callable,
       DepsAwareTask.DepsSupplier<ToposortBasedDepsAwareTask<T>> depsSupplier) {
-    return new ToposortBasedDepsAwareTask<>(callable, depsSupplier);
+    return of(callable, depsSupplier, DEFAULT_PRIORITY);
+  }
+
+  /**
+   * @param priority the scheduling priority of the task. When several tasks become ready at once,
+   *     executors that support priorities run higher priority tasks first.
+   */
+  public static <T> ToposortBasedDepsAwareTask<T> of(
+      Callable<T> callable,
+      DepsAwareTask.DepsSupplier<ToposortBasedDepsAwareTask<T>> depsSupplier,
+      int priority) {
+    return new ToposortBasedDepsAwareTask<>(callable, depsSupplier, priority);
+  }
+
+  /** @return the scheduling priority of this task, where larger values are more urgent */
+  int getPriority() {
+    return priority;
   }
 
   /**
@@ -19,6 +19,8 @@ import com.facebook.buck.core.graph.transformation.executor.impl.AbstractDepsAwa
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -117,6 +119,7 @@ class ToposortDepsAwareWorker<T> extends AbstractDepsAwareWorker<ToposortBasedDe
     task.call();
     ImmutableList<ToposortBasedDepsAwareTask<T>> toReschedule = task.reportCompletionToDependents();
 
+    List<ToposortBasedDepsAwareTask<T>> readyTasks = new ArrayList<>(toReschedule.size());
     for (ToposortBasedDepsAwareTask<T> taskToSchedule : toReschedule) {
       if (taskToSchedule.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
         // at this point, we know that all its deps have been registered, which means its
@@ -138,27 +141,44 @@ class ToposortDepsAwareWorker<T> extends AbstractDepsAwareWorker<ToposortBasedDe
             continue;
           }
         }
-        sharedQueue.putFirst(taskToSchedule);
+        readyTasks.add(taskToSchedule);
       }
     }
+    schedule(readyTasks);
     return true;
   }
 
+  /**
+   * Queues the given tasks, which have all been atomically set to {@link TaskStatus#SCHEDULED}, to
+   * be ran by a worker.
+   */
+  protected void schedule(List<ToposortBasedDepsAwareTask<T>> tasks) throws InterruptedException {
+    for (ToposortBasedDepsAwareTask<T> task : tasks) {
+      sharedQueue.putFirst(task);
+    }
+  }
+
   private ImmutableList<ToposortBasedDepsAwareTask<T>> checkTasksReadyOrReschedule(
       ImmutableSet<? extends ToposortBasedDepsAwareTask<T>> tasks)
       throws InterruptedException, ExecutionException {
 
     ImmutableList.Builder<ToposortBasedDepsAwareTask<T>> notDoneDepsBuilder =
         ImmutableList.builderWithExpectedSize(tasks.size());
-    for (ToposortBasedDepsAwareTask<T> task : tasks) {
-      TaskStatus status = task.getStatus();
-      if (status != TaskStatus.DONE) {
-        notDoneDepsBuilder.add(task);
-        if (task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
-          sharedQueue.putFirst(task);
+    List<ToposortBasedDepsAwareTask<T>> toSchedule = new ArrayList<>();
+    try {
+      for (ToposortBasedDepsAwareTask<T> task : tasks) {
+        TaskStatus status = task.getStatus();
+        if (status != TaskStatus.DONE) {
+          notDoneDepsBuilder.add(task);
+          if (task.compareAndSetStatus(TaskStatus.NOT_SCHEDULED, TaskStatus.SCHEDULED)) {
+            toSchedule.add(task);
+          }
         }
+        propagateException(task);
       }
-      propagateException(task);
+    } finally {
+      // tasks marked as SCHEDULED must always make it into a queue, even if a dependency failed
+      schedule(toSchedule);
     }
 
     return notDoneDepsBuilder.build();
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask.DepsSupplier;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.collect.ImmutableSet;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A {@link com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor} that uses the
+ * same dependency counting as {@link ToposortBasedDepsAwareExecutor}, but gives each worker its own
+ * deque of tasks and lets idle workers steal from the others.
+ *
+ * <p>Dependents that become unblocked run on the thread that completed their last dependency, and
+ * tasks can be given a priority that decides which of several simultaneously ready tasks runs
+ * first. See {@link WorkStealingDepsAwareWorker}.
+ */
+public class WorkStealingDepsAwareExecutor<T>
+    extends AbstractDepsAwareExecutor<T, ToposortBasedDepsAwareTask<T>> {
+
+  private WorkStealingDepsAwareExecutor(
+      LinkedBlockingDeque<ToposortBasedDepsAwareTask<T>> workQueue,
+      Future<?>[] workers,
+      ExecutorService executorService) {
+    super(workQueue, workers, executorService);
+  }
+
+  /** Creates a {@link WorkStealingDepsAwareExecutor} with the given {@code numOfThreads} */
+  public static <U> WorkStealingDepsAwareExecutor<U> of(int numOfThreads) {
+    ExecutorService executorService = Executors.newFixedThreadPool(numOfThreads);
+    LinkedBlockingDeque<ToposortBasedDepsAwareTask<U>> workQueue = new LinkedBlockingDeque<>();
+
+    @SuppressWarnings("unchecked")
+    Deque<ToposortBasedDepsAwareTask<U>>[] localQueues = new Deque[numOfThreads];
+    for (int i = 0; i < numOfThreads; i++) {
+      localQueues[i] = new ConcurrentLinkedDeque<>();
+    }
+    AtomicInteger nextIndex = new AtomicInteger();
+    Future<?>[] workers =
+        startWorkers(
+            executorService,
+            numOfThreads,
+            workQueue,
+            queue ->
+                new WorkStealingDepsAwareWorker<>(
+                    queue, localQueues, nextIndex.getAndIncrement()));
+    return new WorkStealingDepsAwareExecutor<>(workQueue, workers, executorService);
+  }
+
+  @Override
+  public ToposortBasedDepsAwareTask<T> createTask(
+      Callable<T> callable, Supplier<ImmutableSet<ToposortBasedDepsAwareTask<T>>> depsSupplier) {
+    return createTask(callable, depsSupplier, ToposortBasedDepsAwareTask.DEFAULT_PRIORITY);
+  }
+
+  /**
+   * @param priority the priority of the task. When multiple tasks become ready at the same time,
+   *     the one with the largest priority is ran first.
+   * @see #createTask(Callable, Supplier)
+   */
+  public ToposortBasedDepsAwareTask<T> createTask(
+      Callable<T> callable,
+      Supplier<ImmutableSet<ToposortBasedDepsAwareTask<T>>> depsSupplier,
+      int priority) {
+    return ToposortBasedDepsAwareTask.of(
+        callable, DepsSupplier.of(ThrowingSupplier.fromSupplier(depsSupplier)), priority);
+  }
+
+  @Override
+  public ToposortBasedDepsAwareTask<T> createThrowingTask(
+      Callable<T> callable,
+      ThrowingSupplier<ImmutableSet<ToposortBasedDepsAwareTask<T>>, Exception> prereqSupplier,
+      ThrowingSupplier<ImmutableSet<ToposortBasedDepsAwareTask<T>>, Exception> depsSupplier) {
+    return ToposortBasedDepsAwareTask.of(callable, DepsSupplier.of(prereqSupplier, depsSupplier));
+  }
+
+  @Override
+  public ToposortBasedDepsAwareTask<T> createTask(Callable<T> callable) {
+    return ToposortBasedDepsAwareTask.of(callable);
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.google.common.base.Preconditions;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link ToposortDepsAwareWorker} that keeps its own deque of tasks, and steals from the deques
+ * of other workers when it runs out of work.
+ *
+ * <p>Tasks made ready by this worker, either because they are dependencies discovered by this
+ * worker or because this worker completed their last outstanding dependency, are kept local. The
+ * highest priority of those tasks is placed in a slot that cannot be stolen, so that a dependent
+ * always runs on the thread that completed its last dependency while the data it consumes is still
+ * hot in that thread's caches. The remaining tasks are pushed onto the head of the local deque in
+ * priority order, and other workers steal from the tail, taking the oldest work first.
+ *
+ * <p>Tasks submitted from outside of the executor are taken from the shared queue.
+ */
+class WorkStealingDepsAwareWorker<T> extends ToposortDepsAwareWorker<T> {
+
+  /** How long an idle worker blocks on the shared queue before it attempts to steal again. */
+  private static final long IDLE_POLL_TIMEOUT_MICROS = 500;
+
+  private static final Comparator<ToposortBasedDepsAwareTask<?>> PRIORITY_ORDER =
+      Comparator.comparingInt(ToposortBasedDepsAwareTask::getPriority);
+
+  private final Deque<ToposortBasedDepsAwareTask<T>>[] localQueues;
+  private final int index;
+
+  /** The next task to run. This is only ever accessed by the thread running this worker. */
+  @Nullable private ToposortBasedDepsAwareTask<T> nextTask = null;
+
+  /**
+   * @param sharedQueue the queue of externally submitted tasks
+   * @param localQueues the deques of all workers of the executor, indexed by worker
+   * @param index the index of this worker's own deque in {@code localQueues}
+   */
+  WorkStealingDepsAwareWorker(
+      LinkedBlockingDeque<ToposortBasedDepsAwareTask<T>> sharedQueue,
+      Deque<ToposortBasedDepsAwareTask<T>>[] localQueues,
+      int index) {
+    super(sharedQueue);
+    Preconditions.checkElementIndex(index, localQueues.length);
+    this.localQueues = localQueues;
+    this.index = index;
+  }
+
+  @Override
+  protected ToposortBasedDepsAwareTask<T> takeTask() throws InterruptedException {
+    while (true) {
+      ToposortBasedDepsAwareTask<T> task = nextTask;
+      if (task != null) {
+        nextTask = null;
+        return task;
+      }
+      task = localQueues[index].pollFirst();
+      if (task != null) {
+        return task;
+      }
+      task = sharedQueue.pollFirst();
+      if (task != null) {
+        return task;
+      }
+      task = steal();
+      if (task != null) {
+        return task;
+      }
+      task = sharedQueue.pollFirst(IDLE_POLL_TIMEOUT_MICROS, TimeUnit.MICROSECONDS);
+      if (task != null) {
+        return task;
+      }
+    }
+  }
+
+  @Nullable
+  private ToposortBasedDepsAwareTask<T> steal() {
+    for (int i = 1; i < localQueues.length; i++) {
+      ToposortBasedDepsAwareTask<T> task =
+          localQueues[(index + i) % localQueues.length].pollLast();
+      if (task != null) {
+        return task;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  protected void schedule(List<ToposortBasedDepsAwareTask<T>> tasks) {
+    if (tasks.isEmpty()) {
+      return;
+    }
+    tasks.sort(PRIORITY_ORDER);
+
+    Deque<ToposortBasedDepsAwareTask<T>> localQueue = localQueues[index];
+    if (nextTask != null) {
+      localQueue.addFirst(nextTask);
+    }
+    int last = tasks.size() - 1;
+    for (int i = 0; i < last; i++) {
+      localQueue.addFirst(tasks.get(i));
+    }
+    nextTask = tasks.get(last);
+  }
+}
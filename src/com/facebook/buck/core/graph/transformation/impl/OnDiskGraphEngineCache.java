@@ -0,0 +1,247 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.impl;
+
+import com.facebook.buck.core.graph.transformation.GraphEngineCache;
+import com.facebook.buck.core.graph.transformation.model.ComputeKey;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link GraphEngineCache} that persists results on disk so that they can be reused across
+ * daemon restarts, or across machines that share the cache directory.
+ *
+ * <p>Keys and values are converted to bytes by the given {@link Serializer}s. Each entry is stored
+ * in its own file, named after the hash of the serialized key. Every file records the serialized
+ * key, the serialized value and a hash of both. On read, the hash is verified and the stored key is
+ * compared to the requested key, and entries that fail either check are discarded, so a truncated
+ * or otherwise corrupted file is treated as a cache miss rather than an error.
+ *
+ * <p>The {@code version} given on construction is mixed into all entry hashes. It should change
+ * whenever the serialized format of keys or values, or the computation producing the values,
+ * changes in a way that makes old entries invalid.
+ *
+ * <p>Results are also kept in memory, so each entry is read from disk at most once per instance.
+ */
+public class OnDiskGraphEngineCache<Key extends ComputeKey<Value>, Value extends ComputeResult>
+    implements GraphEngineCache<Key, Value> {
+
+  private static final Logger LOG = Logger.get(OnDiskGraphEngineCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  /**
+   * Converts objects to and from bytes for storage in an {@link OnDiskGraphEngineCache}.
+   *
+   * <p>{@link #deserialize(DataInput)} must return an object equal to the one given to {@link
+   * #serialize(Object, DataOutput)}.
+   */
+  public interface Serializer<T> {
+
+    /** Writes {@code value} to {@code output} */
+    void serialize(T value, DataOutput output) throws IOException;
+
+    /** Reads back an object written by {@link #serialize(Object, DataOutput)} */
+    T deserialize(DataInput input) throws IOException;
+  }
+
+  private final Path root;
+  private final byte[] version;
+  private final Serializer<Key> keySerializer;
+  private final Serializer<Value> valueSerializer;
+  private final ConcurrentHashMap<Key, Value> memoryCache = new ConcurrentHashMap<>();
+
+  private OnDiskGraphEngineCache(
+      Path root, String version, Serializer<Key> keySerializer, Serializer<Value> valueSerializer) {
+    this.root = root;
+    this.version = version.getBytes(StandardCharsets.UTF_8);
+    this.keySerializer = keySerializer;
+    this.valueSerializer = valueSerializer;
+  }
+
+  /**
+   * @param root the directory to store the cache entries in. It is created on the first write if it
+   *     does not exist.
+   * @param version a string identifying the format and semantics of the cached results
+   * @param keySerializer the {@link Serializer} for the keys
+   * @param valueSerializer the {@link Serializer} for the values
+   * @return a new {@link OnDiskGraphEngineCache} storing entries under {@code root}
+   */
+  public static <Key extends ComputeKey<Value>, Value extends ComputeResult>
+      OnDiskGraphEngineCache<Key, Value> of(
+          Path root,
+          String version,
+          Serializer<Key> keySerializer,
+          Serializer<Value> valueSerializer) {
+    return new OnDiskGraphEngineCache<>(root, version, keySerializer, valueSerializer);
+  }
+
+  @Override
+  public Optional<Value> get(Key key) {
+    Value value = memoryCache.get(key);
+    if (value != null) {
+      return Optional.of(value);
+    }
+
+    Optional<Value> stored;
+    try {
+      byte[] keyBytes = serializeKey(key);
+      stored = read(key, keyBytes, pathForKey(keyBytes));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to read cache entry for %s", key);
+      return Optional.empty();
+    }
+    stored.ifPresent(storedValue -> memoryCache.putIfAbsent(key, storedValue));
+    return stored;
+  }
+
+  @Override
+  public void put(Key key, Value value) {
+    memoryCache.put(key, value);
+    try {
+      byte[] keyBytes = serializeKey(key);
+      write(keyBytes, value, pathForKey(keyBytes));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to write cache entry for %s", key);
+    }
+  }
+
+  /** Removes the entry for the given key from memory and from disk */
+  public void invalidate(Key key) {
+    memoryCache.remove(key);
+    try {
+      Files.deleteIfExists(pathForKey(serializeKey(key)));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete cache entry for %s", key);
+    }
+  }
+
+  private byte[] serializeKey(Key key) throws IOException {
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    keySerializer.serialize(key, output);
+    return output.toByteArray();
+  }
+
+  private Path pathForKey(byte[] keyBytes) {
+    String name = HASH_FUNCTION.newHasher().putBytes(version).putBytes(keyBytes).hash().toString();
+    return root.resolve(name.substring(0, 2)).resolve(name.substring(2));
+  }
+
+  private HashCode contentHash(byte[] keyBytes, byte[] valueBytes) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    hasher.putBytes(version);
+    hasher.putInt(keyBytes.length).putBytes(keyBytes);
+    hasher.putInt(valueBytes.length).putBytes(valueBytes);
+    return hasher.hash();
+  }
+
+  private Optional<Value> read(Key key, byte[] keyBytes, Path path) throws IOException {
+    byte[] contents;
+    try {
+      contents = Files.readAllBytes(path);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    }
+
+    try {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(contents));
+      if (input.readInt() != FORMAT_VERSION) {
+        return discard(path, "unknown format version");
+      }
+      byte[] storedKeyBytes = readBytes(input);
+      byte[] valueBytes = readBytes(input);
+      byte[] storedHash = readBytes(input);
+
+      if (!Arrays.equals(storedKeyBytes, keyBytes)) {
+        return discard(path, "key hash collision");
+      }
+      if (!Arrays.equals(storedHash, contentHash(storedKeyBytes, valueBytes).asBytes())) {
+        return discard(path, "content hash mismatch");
+      }
+      if (!key.equals(keySerializer.deserialize(ByteStreams.newDataInput(storedKeyBytes)))) {
+        return discard(path, "stored key does not match");
+      }
+      return Optional.of(valueSerializer.deserialize(ByteStreams.newDataInput(valueBytes)));
+    } catch (IOException | IllegalStateException e) {
+      // ByteArrayDataInput reports truncated data as IllegalStateException
+      LOG.debug(e, "Unable to parse cache entry %s", path);
+      return discard(path, "malformed entry");
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length < 0 || length > input.available()) {
+      throw new IOException(String.format("Invalid length %d", length));
+    }
+    byte[] bytes = new byte[length];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private Optional<Value> discard(Path path, String reason) throws IOException {
+    LOG.warn("Discarding cache entry %s: %s", path, reason);
+    Files.deleteIfExists(path);
+    return Optional.empty();
+  }
+
+  private void write(byte[] keyBytes, Value value, Path path) throws IOException {
+    ByteArrayDataOutput valueOutput = ByteStreams.newDataOutput();
+    valueSerializer.serialize(value, valueOutput);
+    byte[] valueBytes = valueOutput.toByteArray();
+    byte[] hash = contentHash(keyBytes, valueBytes).asBytes();
+
+    ByteArrayDataOutput output = ByteStreams.newDataOutput();
+    output.writeInt(FORMAT_VERSION);
+    output.writeInt(keyBytes.length);
+    output.write(keyBytes);
+    output.writeInt(valueBytes.length);
+    output.write(valueBytes);
+    output.writeInt(hash.length);
+    output.write(hash);
+
+    // write to a temporary file first so that concurrent readers never observe a partial entry
+    Path dir = path.getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+    try {
+      Files.write(tmp, output.toByteArray());
+      Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
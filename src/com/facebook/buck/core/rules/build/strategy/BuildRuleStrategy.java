@@ -19,9 +19,12 @@ package com.facebook.buck.core.rules.build.strategy;
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildStrategyContext;
 import com.facebook.buck.core.rules.BuildRule;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 
 /** Interface for injecting customized behavior into the CachingBuildEngine. */
@@ -35,6 +38,23 @@ public interface BuildRuleStrategy extends Closeable {
   /** A rule will be built by the custom strategy only if canBuild() returns true. */
   boolean canBuild(BuildRule instance);
 
+  /**
+   * Returns the output files of a rule built by this strategy that it has not written to the
+   * filesystem, keyed by their paths relative to the rule's filesystem. The engine records their
+   * hashes and sizes in place of reading them, and asks for their contents with {@link
+   * #materializeDeferredOutputs(Iterable)} when something needs them.
+   */
+  @SuppressWarnings("unused")
+  default ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return ImmutableMap.of();
+  }
+
+  /** Writes the deferred outputs of the given rules, if they have any, to the filesystem. */
+  @SuppressWarnings("unused")
+  default ListenableFuture<Void> materializeDeferredOutputs(Iterable<BuildRule> rules) {
+    return Futures.immediateFuture(null);
+  }
+
   /** A simple interface for build results exposing an explicit cancellation. */
   interface StrategyBuildResult {
     /**
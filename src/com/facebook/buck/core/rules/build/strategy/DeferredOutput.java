@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.rules.build.strategy;
+
+import com.google.common.hash.HashCode;
+
+/**
+ * An output file of a rule that a {@link BuildRuleStrategy} has not written to the filesystem yet.
+ * Its hash is the hash that the file hash cache would compute from its contents.
+ */
+public final class DeferredOutput {
+  private final HashCode hash;
+  private final long size;
+
+  public DeferredOutput(HashCode hash, long size) {
+    this.hash = hash;
+    this.size = size;
+  }
+
+  public HashCode getHash() {
+    return hash;
+  }
+
+  public long getSize() {
+    return size;
+  }
+}
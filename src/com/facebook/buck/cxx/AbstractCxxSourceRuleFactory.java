@@ -37,6 +37,7 @@ import com.facebook.buck.cxx.toolchain.Compiler;
 import com.facebook.buck.cxx.toolchain.CxxFlavorSanitizer;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.DebugPathSanitizer;
+import com.facebook.buck.cxx.toolchain.DependencyTrackingMode;
 import com.facebook.buck.cxx.toolchain.InferBuckConfig;
 import com.facebook.buck.cxx.toolchain.PicType;
 import com.facebook.buck.cxx.toolchain.Preprocessor;
@@ -83,6 +84,7 @@ abstract class AbstractCxxSourceRuleFactory {
 
   private static final Logger LOG = Logger.get(AbstractCxxSourceRuleFactory.class);
   private static final String COMPILE_FLAVOR_PREFIX = "compile-";
+  private static final String PREPROCESS_FLAVOR_PREFIX = "preprocess-";
   private static final Flavor AGGREGATED_PREPROCESS_DEPS_FLAVOR =
       InternalFlavor.of("preprocessor-deps");
 
@@ -288,6 +290,34 @@ abstract class AbstractCxxSourceRuleFactory {
                     outputName)));
   }
 
+  private static String getPreprocessOutputExtension(CxxSource.Type type) {
+    return CxxSourceTypes.getPreprocessorOutputType(type).getExtensions().iterator().next();
+  }
+
+  /** @return the name of the preprocessed source for the source with the given name and type. */
+  private String getPreprocessOutputName(String name, CxxSource.Type type) {
+    String outName = getCxxPlatform().getFilepathLengthLimited() ? "out" : getOutputName(name);
+    return outName + "." + getPreprocessOutputExtension(type);
+  }
+
+  /**
+   * @return a build target for a {@link CxxPreprocessAndCompile} rule that only preprocesses the
+   *     source with the given name and type.
+   */
+  @VisibleForTesting
+  BuildTarget createPreprocessBuildTarget(String name, CxxSource.Type type) {
+    String outputName =
+        CxxFlavorSanitizer.sanitize(getOutputName(name) + "." + getPreprocessOutputExtension(type));
+    return getBaseBuildTarget()
+        .withAppendedFlavors(
+            getCxxPlatform().getFlavor(),
+            InternalFlavor.of(
+                String.format(
+                    PREPROCESS_FLAVOR_PREFIX + "%s%s",
+                    getPicType() == PicType.PIC ? "pic-" : "",
+                    outputName)));
+  }
+
   public BuildTarget createInferCaptureBuildTarget(String name) {
     String outputName = CxxFlavorSanitizer.sanitize(getCompileFlavorSuffix(name));
     return getBaseBuildTarget()
@@ -509,6 +539,34 @@ abstract class AbstractCxxSourceRuleFactory {
             PreprocessorDelegateCacheKey.of(source.getType(), source.getFlags()));
     PreprocessorDelegate preprocessorDelegate = preprocessorDelegateValue.getPreprocessorDelegate();
 
+    if (shouldSplitPreprocessing(source, compilerDelegate.getCompiler())) {
+      PreprocessorDelegate delegate = preprocessorDelegate;
+      CxxPreprocessAndCompile preprocessRule =
+          (CxxPreprocessAndCompile)
+              getActionGraphBuilder()
+                  .computeIfAbsent(
+                      createPreprocessBuildTarget(name, source.getType()),
+                      preprocessTarget ->
+                          CxxPreprocessAndCompile.preprocess(
+                              preprocessTarget,
+                              getProjectFilesystem(),
+                              getActionGraphBuilder(),
+                              delegate,
+                              compilerDelegate,
+                              getPreprocessOutputName(name, source.getType()),
+                              source.getPath(),
+                              source.getType(),
+                              getSanitizer()));
+      return CxxPreprocessAndCompile.compilePreprocessed(
+          target,
+          getProjectFilesystem(),
+          getActionGraphBuilder(),
+          compilerDelegate,
+          getCompileOutputName(name),
+          preprocessRule,
+          getSanitizer());
+    }
+
     Optional<CxxPrecompiledHeader> precompiledHeaderRule =
         getOptionalPrecompiledHeader(preprocessorDelegateValue, source);
     if (precompiledHeaderRule.isPresent() && getPrecompiledHeader().isPresent()) {
@@ -561,6 +619,18 @@ abstract class AbstractCxxSourceRuleFactory {
             getPathResolver()));
   }
 
+  /**
+   * Should the source be preprocessed by a rule of its own, so that its object is cached by the
+   * contents of the preprocessed source? Only C/C++ sources without a prefix or precompiled header
+   * are, when the compiler writes makefile depfiles, which it also does when only preprocessing.
+   */
+  private boolean shouldSplitPreprocessing(CxxSource source, Compiler compiler) {
+    return getCxxBuckConfig().isSplitPreprocessingEnabled()
+        && (source.getType() == CxxSource.Type.C || source.getType() == CxxSource.Type.CXX)
+        && !getPreInclude().isPresent()
+        && compiler.getDependencyTrackingMode() == DependencyTrackingMode.MAKEFILE;
+  }
+
   @VisibleForTesting
   public CxxPreprocessAndCompile requirePreprocessAndCompileBuildRule(
       String name, CxxSource source) {
@@ -571,7 +641,7 @@ abstract class AbstractCxxSourceRuleFactory {
                     createCompileBuildTarget(name),
                     target -> createPreprocessAndCompileBuildRule(name, source));
     Preconditions.checkState(
-        rule.getInput().equals(source.getPath()),
+        rule.getSourceInput().equals(source.getPath()),
         "Hash collision for %s; a build rule would have been ignored.",
         name);
     return rule;
@@ -666,7 +736,7 @@ abstract class AbstractCxxSourceRuleFactory {
                 if (CxxSourceTypes.isPreprocessableType(source.getType())) {
                   CxxPreprocessAndCompile rule = createPreprocessAndCompileBuildRule(name, source);
                   Preconditions.checkState(
-                      rule.getInput().equals(source.getPath()),
+                      rule.getSourceInput().equals(source.getPath()),
                       "Hash collision for %s; a build rule would have been ignored.",
                       name);
                   return rule;
@@ -87,6 +87,10 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders implements RuleK
   @CustomFieldBehavior(HeaderMapInputsBehavior.class)
   public abstract Optional<SourcePath> getHeaderMap();
 
+  @Override
+  @CustomFieldBehavior(HeaderMapInputsBehavior.class)
+  public abstract Optional<SourcePath> getVfsOverlay();
+
   @Value.Auxiliary
   @CustomFieldBehavior(NameToPathMapInputsBehavior.class)
   abstract ImmutableSortedMap<Path, SourcePath> getNameToPathMap();
@@ -110,6 +114,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders implements RuleK
       ruleFinder.getRule(getIncludeRoot().getRight()).ifPresent(builder);
     }
     getHeaderMap().flatMap(ruleFinder::getRule).ifPresent(builder);
+    getVfsOverlay().flatMap(ruleFinder::getRule).ifPresent(builder);
 
     // return a stream of the cached dependencies, or compute and store it
     return Stream.concat(
@@ -147,6 +152,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders implements RuleK
     builder.setRoot(symlinkTree.getRootSourcePath());
     builder.setNameToPathMap(symlinkTree.getLinks());
     builder.setSymlinkTreeClass(symlinkTree.getClass().getName());
+    symlinkTree.getVfsOverlaySourcePath().ifPresent(builder::setVfsOverlay);
 
     if (includeType == CxxPreprocessables.IncludeType.LOCAL) {
       builder.setIncludeRoot(Either.ofLeft(symlinkTree.getIncludeSourcePath()));
@@ -171,6 +177,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders implements RuleK
         CxxSymlinkTreeHeaders instance, ValueVisitor<E> serializer) throws E {
       INCLUDE_TYPE_TYPE_INFO.visit(instance.getIncludeType(), serializer);
       HEADER_MAP_TYPE_INFO.visit(instance.getHeaderMap(), serializer);
+      HEADER_MAP_TYPE_INFO.visit(instance.getVfsOverlay(), serializer);
       serializer.visitSourcePath(instance.getRoot());
       INCLUDE_ROOT_TYPE_INFO.visit(instance.getIncludeRoot(), serializer);
       ImmutableSortedMap<Path, SourcePath> nameToPathMap = instance.getNameToPathMap();
@@ -191,6 +198,7 @@ abstract class AbstractCxxSymlinkTreeHeaders extends CxxHeaders implements RuleK
       Builder builder = CxxSymlinkTreeHeaders.builder();
       builder.setIncludeType(INCLUDE_TYPE_TYPE_INFO.createNotNull(deserializer));
       builder.setHeaderMap(HEADER_MAP_TYPE_INFO.createNotNull(deserializer));
+      builder.setVfsOverlay(HEADER_MAP_TYPE_INFO.createNotNull(deserializer));
       builder.setRoot(deserializer.createSourcePath());
       builder.setIncludeRoot(INCLUDE_ROOT_TYPE_INFO.createNotNull(deserializer));
       int nameToPathMapSize = deserializer.createInteger();
@@ -67,22 +67,17 @@ abstract class AbstractElfCompactSectionsStep implements Step {
 
   // We want to compact the sections into the new ELF file, so find out the new addresses of each
   // section.
-  private ImmutableMap<String, Long> getNewSectionAddresses() throws IOException {
+  static ImmutableMap<String, Long> getNewSectionAddresses(Elf elf) {
     ImmutableMap.Builder<String, Long> addresses = ImmutableMap.builder();
-    try (FileChannel channel =
-        FileChannel.open(getInputFilesystem().resolve(getInput()), StandardOpenOption.READ)) {
-      MappedByteBuffer buffer = channel.map(READ_ONLY, 0, channel.size());
-      Elf elf = new Elf(buffer);
-
-      // We start placing sections right after the program headers.
-      long end = elf.header.e_phoff + elf.header.e_phnum * elf.header.e_phentsize;
-      for (int index = 0; index < elf.getNumberOfSections(); index++) {
-        ElfSection section = elf.getSectionByIndex(index);
-        String name = elf.getSectionName(section.header);
-        if ((section.header.sh_flags & SHF_ALLOC) != 0) {
-          addresses.put(name, end);
-          end += section.header.sh_size;
-        }
+
+    // We start placing sections right after the program headers.
+    long end = elf.header.e_phoff + elf.header.e_phnum * elf.header.e_phentsize;
+    for (int index = 0; index < elf.getNumberOfSections(); index++) {
+      ElfSection section = elf.getSectionByIndex(index);
+      String name = elf.getSectionName(section.header);
+      if ((section.header.sh_flags & SHF_ALLOC) != 0) {
+        addresses.put(name, end);
+        end += section.header.sh_size;
       }
     }
     return addresses.build();
@@ -105,7 +100,18 @@ abstract class AbstractElfCompactSectionsStep implements Step {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
-    ImmutableMap<String, Long> addresses = getNewSectionAddresses();
+    ImmutableMap<String, Long> addresses;
+    try (FileChannel channel =
+        FileChannel.open(getInputFilesystem().resolve(getInput()), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(READ_ONLY, 0, channel.size());
+      addresses = getNewSectionAddresses(new Elf(buffer));
+    }
+    return compact(context, addresses);
+  }
+
+  /** Compacts the sections of the input into the output, at the given addresses. */
+  StepExecutionResult compact(ExecutionContext context, ImmutableMap<String, Long> addresses)
+      throws IOException, InterruptedException {
     Step objcopy =
         new DefaultShellStep(
             getOutputFilesystem().getRootPath(),
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.immutables.BuckStylePackageVisibleTuple;
+import com.facebook.buck.cxx.toolchain.elf.Elf;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Collectors;
+import org.immutables.value.Value;
+
+/**
+ * A step which rewrites an ELF file in place and then compacts its sections into a new ELF file.
+ * The file is opened and mapped once for all of the rewrites and for laying out the compacted file,
+ * instead of once per step, and no intermediate copies of it are written.
+ */
+@Value.Immutable
+@BuckStylePackageVisibleTuple
+abstract class AbstractElfRewriteAndCompactSectionsStep implements Step {
+
+  /** @return the rewrites to apply, in order, to the input of {@link #getCompaction()}. */
+  abstract ImmutableList<ElfRewriteStep> getRewrites();
+
+  abstract ElfCompactSectionsStep getCompaction();
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ElfCompactSectionsStep compaction = getCompaction();
+    ImmutableMap<String, Long> addresses;
+    try (FileChannel channel =
+        FileChannel.open(
+            compaction.getInputFilesystem().resolve(compaction.getInput()),
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+      for (ElfRewriteStep rewrite : getRewrites()) {
+        buffer.rewind();
+        rewrite.rewrite(buffer);
+      }
+      buffer.rewind();
+      addresses = ElfCompactSectionsStep.getNewSectionAddresses(new Elf(buffer));
+    }
+    // objcopy sees the rewrites through the page cache, without them being flushed to disk.
+    return compaction.compact(context, addresses);
+  }
+
+  @Override
+  public final String getShortName() {
+    return "elf_rewrite_and_compact_sections";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    ElfCompactSectionsStep compaction = getCompaction();
+    return String.format(
+        "Rewrite and compact ELF sections in %s (%s)",
+        compaction.getInputFilesystem().resolve(compaction.getInput()),
+        getRewrites().stream()
+            .map(rewrite -> rewrite.getDescription(context))
+            .collect(Collectors.joining(", ")));
+  }
+}
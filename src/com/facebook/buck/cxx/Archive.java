@@ -28,6 +28,7 @@ import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.cxx.toolchain.ArchiveContents;
 import com.facebook.buck.cxx.toolchain.Archiver;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.GnuArchiver;
 import com.facebook.buck.cxx.toolchain.LinkerMapMode;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.rules.args.Arg;
@@ -67,11 +68,47 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       String outputFileName,
       ImmutableList<SourcePath> inputs,
       boolean cacheable) {
+    this(
+        buildTarget,
+        projectFilesystem,
+        ruleFinder,
+        archiver,
+        archiverFlags,
+        ranlib,
+        ranlibFlags,
+        contents,
+        outputFileName,
+        inputs,
+        cacheable,
+        false);
+  }
+
+  private Archive(
+      BuildTarget buildTarget,
+      ProjectFilesystem projectFilesystem,
+      SourcePathRuleFinder ruleFinder,
+      Archiver archiver,
+      ImmutableList<String> archiverFlags,
+      Optional<Tool> ranlib,
+      ImmutableList<String> ranlibFlags,
+      ArchiveContents contents,
+      String outputFileName,
+      ImmutableList<SourcePath> inputs,
+      boolean cacheable,
+      boolean builtinArchiver) {
     super(
         buildTarget,
         projectFilesystem,
         ruleFinder,
-        new Impl(archiver, archiverFlags, ranlib, ranlibFlags, contents, outputFileName, inputs));
+        new Impl(
+            archiver,
+            archiverFlags,
+            ranlib,
+            ranlibFlags,
+            contents,
+            outputFileName,
+            inputs,
+            builtinArchiver));
     Preconditions.checkState(
         contents == ArchiveContents.NORMAL || archiver.supportsThinArchives(),
         "%s: archive tool for this platform does not support thin archives",
@@ -94,18 +131,26 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       String outputFileName,
       ImmutableList<SourcePath> inputs,
       boolean cacheable) {
+    Archiver archiver = platform.getAr().resolve(resolver, target.getTargetConfiguration());
+    // The builtin archiver writes what ar and ranlib write without flags, so it can't honor them.
+    boolean builtinArchiver =
+        platform.getUseBuiltinArchiver()
+            && archiver instanceof GnuArchiver
+            && platform.getArflags().isEmpty()
+            && platform.getRanlibflags().isEmpty();
     return new Archive(
         target,
         projectFilesystem,
         resolver,
-        platform.getAr().resolve(resolver, target.getTargetConfiguration()),
+        archiver,
         platform.getArflags(),
         platform.getRanlib().map(r -> r.resolve(resolver, target.getTargetConfiguration())),
         platform.getRanlibflags(),
         platform.getArchiveContents(),
         outputFileName,
         inputs,
-        cacheable);
+        cacheable,
+        builtinArchiver);
   }
 
   /** internal buildable implementation */
@@ -118,6 +163,7 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
     @AddToRuleKey private final ArchiveContents contents;
     @AddToRuleKey private final OutputPath output;
     @AddToRuleKey private final ImmutableList<SourcePath> inputs;
+    @AddToRuleKey private final boolean builtinArchiver;
 
     Impl(
         Archiver archiver,
@@ -126,7 +172,8 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
         ImmutableList<String> ranlibFlags,
         ArchiveContents contents,
         String outputFileName,
-        ImmutableList<SourcePath> inputs) {
+        ImmutableList<SourcePath> inputs,
+        boolean builtinArchiver) {
       this.archiver = archiver;
       this.archiverFlags = archiverFlags;
       this.ranlib = ranlib;
@@ -134,6 +181,7 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
       this.contents = contents;
       this.output = new OutputPath(outputFileName);
       this.inputs = inputs;
+      this.builtinArchiver = builtinArchiver;
     }
 
     @Override
@@ -154,27 +202,27 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
         Preconditions.checkState(resolver.getFilesystem(input).getRootPath().equals(rootPath));
       }
 
-      ImmutableList.Builder<Step> builder = ImmutableList.builder();
       Path outputPath = outputPathResolver.resolvePath(output);
-      builder
-          .add(MkdirStep.of(buildCellPathFactory.from(outputPath.getParent())))
-          .add(
-              new ArchiveStep(
-                  filesystem,
-                  archiver.getEnvironment(resolver),
-                  archiver.getCommandPrefix(resolver),
-                  archiverFlags,
-                  archiver.getArchiveOptions(contents == ArchiveContents.THIN),
-                  outputPath,
-                  inputs.stream()
-                      .map(resolver::getRelativePath)
-                      .collect(ImmutableList.toImmutableList()),
-                  archiver,
-                  outputPathResolver.getTempPath()));
+      ImmutableList<Path> relativeInputs =
+          inputs.stream()
+              .map(resolver::getRelativePath)
+              .collect(ImmutableList.toImmutableList());
 
+      ImmutableList.Builder<Step> archiveSteps = ImmutableList.builder();
+      archiveSteps.add(
+          new ArchiveStep(
+              filesystem,
+              archiver.getEnvironment(resolver),
+              archiver.getCommandPrefix(resolver),
+              archiverFlags,
+              archiver.getArchiveOptions(contents == ArchiveContents.THIN),
+              outputPath,
+              relativeInputs,
+              archiver,
+              outputPathResolver.getTempPath()));
       if (archiver.isRanLibStepRequired()) {
         Tool tool = ranlib.get();
-        builder.add(
+        archiveSteps.add(
             new RanlibStep(
                 filesystem,
                 tool.getEnvironment(resolver),
@@ -183,6 +231,20 @@ public class Archive extends ModernBuildRule<Archive.Impl> {
                 outputPath));
       }
 
+      ImmutableList.Builder<Step> builder = ImmutableList.builder();
+      builder.add(MkdirStep.of(buildCellPathFactory.from(outputPath.getParent())));
+      if (builtinArchiver) {
+        builder.add(
+            new GnuArchiveStep(
+                filesystem,
+                outputPath,
+                relativeInputs,
+                contents == ArchiveContents.THIN,
+                archiveSteps.build()));
+      } else {
+        builder.addAll(archiveSteps.build());
+      }
+
       if (!archiver.getScrubbers().isEmpty()) {
         builder.add(new FileScrubberStep(filesystem, outputPath, archiver.getScrubbers()));
       }
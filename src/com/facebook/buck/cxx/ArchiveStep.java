@@ -36,6 +36,7 @@ import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -83,7 +84,18 @@ class ArchiveStep implements Step {
   }
 
   private ImmutableList<String> getAllInputs() throws IOException {
-    ImmutableList.Builder<String> allInputs = ImmutableList.builder();
+    return getAllInputs(filesystem, inputs).stream()
+        .map(Path::toString)
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * @return the files to archive, in the order the archiver gets them: the given inputs, with
+   *     directories replaced by the files found under them
+   */
+  static ImmutableList<Path> getAllInputs(ProjectFilesystem filesystem, ImmutableList<Path> inputs)
+      throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
 
     // Inputs can either be files or directories.  In the case of the latter, we add all files
     // found from a recursive search.
@@ -91,19 +103,19 @@ class ArchiveStep implements Step {
       if (filesystem.isDirectory(input)) {
         // We make sure to sort the files we find under the directories so that we get
         // deterministic output.
-        Set<String> dirFiles = new TreeSet<>();
+        Set<Path> dirFiles = new TreeSet<>(Comparator.comparing(Path::toString));
         filesystem.walkFileTree(
             filesystem.resolve(input),
             new SimpleFileVisitor<Path>() {
               @Override
               public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                dirFiles.add(file.toString());
+                dirFiles.add(file);
                 return FileVisitResult.CONTINUE;
               }
             });
         allInputs.addAll(dirFiles);
       } else {
-        allInputs.add(input.toString());
+        allInputs.add(input);
       }
     }
 
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.toolchain.elf.Elf;
+import com.facebook.buck.cxx.toolchain.elf.ElfHeader;
+import com.facebook.buck.cxx.toolchain.elf.ElfSection;
+import com.facebook.buck.cxx.toolchain.elf.ElfSectionHeader;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The symbols that the object files archived in this process add to the symbol index of their
+ * archives, as GNU ar and ranlib would list them.
+ *
+ * <p>Objects are identified by the hash of their contents, so an object is only parsed when it
+ * changes, and relinking after an edit to one source only parses the object compiled from it.
+ * Symbol names are kept as ISO-8859-1 strings, which map every byte of a name to one char and back.
+ */
+@ThreadSafe
+final class ArchiveSymbolIndex {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final long DEFAULT_MAX_SYMBOL_BYTES = 64 * 1024 * 1024;
+
+  private static final ArchiveSymbolIndex INSTANCE =
+      new ArchiveSymbolIndex(DEFAULT_MAX_SYMBOL_BYTES);
+
+  private static final int ET_REL = 1;
+  private static final int SHN_UNDEF = 0;
+  private static final int STB_GLOBAL = 1;
+  private static final int STB_WEAK = 2;
+  private static final int STB_GNU_UNIQUE = 10;
+
+  /** Sections of objects that GCC compiled for link-time optimization. */
+  private static final String GNU_LTO_SECTION_PREFIX = ".gnu.lto_";
+
+  private final Cache<HashCode, Optional<ImmutableList<String>>> symbolsByObject;
+
+  @VisibleForTesting
+  ArchiveSymbolIndex(long maxSymbolBytes) {
+    this.symbolsByObject =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxSymbolBytes)
+            .<HashCode, Optional<ImmutableList<String>>>weigher(
+                (key, symbols) ->
+                    symbols.map(names -> names.stream().mapToInt(String::length).sum()).orElse(0)
+                        + 1)
+            .build();
+  }
+
+  /** @return the index shared by all archives */
+  static ArchiveSymbolIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the symbols that the object in the file adds to the symbol index of an archive, in the
+   *     order of its symbol table, or nothing if the file is not an ELF object whose symbols can be
+   *     read without the help of a compiler plugin
+   */
+  Optional<ImmutableList<String>> getSymbols(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      HashCode key = HASH_FUNCTION.newHasher().putBytes(buffer.duplicate()).hash();
+      Optional<ImmutableList<String>> symbols = symbolsByObject.getIfPresent(key);
+      if (symbols == null) {
+        // Reading twice in a race is harmless, and cheaper than holding a lock while reading.
+        symbols = readSymbols(buffer);
+        symbolsByObject.put(key, symbols);
+      }
+      return symbols;
+    }
+  }
+
+  @VisibleForTesting
+  static Optional<ImmutableList<String>> readSymbols(ByteBuffer buffer) {
+    if (!Elf.isElf(buffer)) {
+      return Optional.empty();
+    }
+    try {
+      Elf elf = new Elf(buffer);
+      if (elf.header.e_type != ET_REL) {
+        return Optional.empty();
+      }
+      ElfSection symbolTable = null;
+      for (int index = 0; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (elf.getSectionName(section.header).startsWith(GNU_LTO_SECTION_PREFIX)) {
+          // The symbols of LTO objects are only known to the plugin that ar loads for them.
+          return Optional.empty();
+        }
+        if (symbolTable == null
+            && section.header.sh_type == ElfSectionHeader.SHType.SHT_SYMTAB) {
+          symbolTable = section;
+        }
+      }
+      if (symbolTable == null) {
+        return Optional.of(ImmutableList.of());
+      }
+      ElfSection stringTable = elf.getSectionByIndex((int) symbolTable.header.sh_link);
+      return Optional.of(readSymbols(elf.header.ei_class, symbolTable.body, stringTable.body));
+    } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+      // Leave malformed objects to ar, which reports what's wrong with them.
+      return Optional.empty();
+    }
+  }
+
+  private static ImmutableList<String> readSymbols(
+      ElfHeader.EIClass eiClass, ByteBuffer symbols, ByteBuffer strings) {
+    boolean is32Bit = eiClass == ElfHeader.EIClass.ELFCLASS32;
+    int entrySize = is32Bit ? 16 : 24;
+    int infoOffset = is32Bit ? 12 : 4;
+    int sectionIndexOffset = is32Bit ? 14 : 6;
+
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    // The first entry of a symbol table is always the undefined symbol.
+    for (int offset = entrySize; offset + entrySize <= symbols.limit(); offset += entrySize) {
+      int info = Byte.toUnsignedInt(symbols.get(offset + infoOffset));
+      int bind = info >> 4;
+      int sectionIndex = Short.toUnsignedInt(symbols.getShort(offset + sectionIndexOffset));
+      if ((bind == STB_GLOBAL || bind == STB_WEAK || bind == STB_GNU_UNIQUE)
+          && sectionIndex != SHN_UNDEF) {
+        names.add(readString(strings, Integer.toUnsignedLong(symbols.getInt(offset))));
+      }
+    }
+    return names.build();
+  }
+
+  private static String readString(ByteBuffer strings, long offset) {
+    int start = (int) offset;
+    int end = start;
+    while (strings.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - start];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = strings.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.ISO_8859_1);
+  }
+}
@@ -71,7 +71,8 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
         ImmutableSortedSet.naturalOrder();
     for (CxxPreprocessAndCompile compileRule : compileAndPreprocessRules) {
       compileRules.add(compileRule);
-      deps.addAll(compileRule.getBuildDeps());
+      // A separate preprocess rule has the deps the compile command needs, and is not one of them.
+      deps.addAll(compileRule.getPreprocessRule().orElse(compileRule).getBuildDeps());
     }
 
     return new CxxCompilationDatabase(
@@ -174,7 +175,7 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasRunt
 
     private CxxCompilationDatabaseEntry createEntry(CxxPreprocessAndCompile compileRule) {
 
-      SourcePath inputSourcePath = compileRule.getInput();
+      SourcePath inputSourcePath = compileRule.getSourceInput();
       ProjectFilesystem inputFilesystem = compileRule.getProjectFilesystem();
 
       String fileToCompile =
@@ -135,22 +135,33 @@ public class CxxDescriptionEnhancer {
       TargetConfiguration targetConfiguration,
       CxxPlatform cxxPlatform,
       boolean shouldCreateHeadersSymlinks) {
-    return cxxPlatform
-        .getHeaderMode()
-        .orElseGet(
-            () -> {
-              boolean useHeaderMap =
-                  (cxxPlatform.getCpp().resolve(resolver, targetConfiguration).supportsHeaderMaps()
-                      && cxxPlatform
-                          .getCxxpp()
-                          .resolve(resolver, targetConfiguration)
-                          .supportsHeaderMaps());
-              return !useHeaderMap
-                  ? HeaderMode.SYMLINK_TREE_ONLY
-                  : (shouldCreateHeadersSymlinks
-                      ? HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP
-                      : HeaderMode.HEADER_MAP_ONLY);
-            });
+    Optional<HeaderMode> configuredMode = cxxPlatform.getHeaderMode();
+    if (configuredMode.equals(Optional.of(HeaderMode.VFS_OVERLAY_ONLY))
+        && !RichStream.of(cxxPlatform.getAspp(), cxxPlatform.getCpp(), cxxPlatform.getCxxpp())
+            .concat(RichStream.from(cxxPlatform.getCudapp()))
+            .concat(RichStream.from(cxxPlatform.getHippp()))
+            .concat(RichStream.from(cxxPlatform.getAsmpp()))
+            .allMatch(
+                preprocessor ->
+                    preprocessor.resolve(resolver, targetConfiguration).supportsVfsOverlays())) {
+      // Preprocessors like gcc have no way to read a virtual tree of headers, and the same trees
+      // are used to preprocess every language of the platform.
+      return HeaderMode.SYMLINK_TREE_ONLY;
+    }
+    return configuredMode.orElseGet(
+        () -> {
+          boolean useHeaderMap =
+              (cxxPlatform.getCpp().resolve(resolver, targetConfiguration).supportsHeaderMaps()
+                  && cxxPlatform
+                      .getCxxpp()
+                      .resolve(resolver, targetConfiguration)
+                      .supportsHeaderMaps());
+          return !useHeaderMap
+              ? HeaderMode.SYMLINK_TREE_ONLY
+              : (shouldCreateHeadersSymlinks
+                  ? HeaderMode.SYMLINK_TREE_WITH_HEADER_MAP
+                  : HeaderMode.HEADER_MAP_ONLY);
+        });
   }
 
   public static HeaderSymlinkTree createHeaderSymlinkTree(
@@ -63,17 +63,20 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
 
   private final Path output;
   private final Optional<CxxPrecompiledHeader> precompiledHeaderRule;
+  private final Optional<CxxPreprocessAndCompile> preprocessRule;
 
   private CxxPreprocessAndCompile(
       BuildTarget buildTarget,
       ProjectFilesystem projectFilesystem,
       SourcePathRuleFinder ruleFinder,
       Optional<PreprocessorDelegate> preprocessDelegate,
+      boolean preprocessOnly,
       CompilerDelegate compilerDelegate,
       String outputName,
       SourcePath input,
       Type inputType,
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
+      Optional<CxxPreprocessAndCompile> preprocessRule,
       DebugPathSanitizer sanitizer) {
     super(
         buildTarget,
@@ -82,6 +85,7 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
         new Impl(
             buildTarget,
             preprocessDelegate,
+            preprocessOnly,
             compilerDelegate,
             outputName,
             input,
@@ -96,6 +100,7 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
           "Precompiled headers are only used when compilation includes preprocessing.");
     }
     this.precompiledHeaderRule = precompiledHeaderRule;
+    this.preprocessRule = preprocessRule;
     Preconditions.checkArgument(
         !buildTarget.getFlavors().contains(CxxStrip.RULE_FLAVOR)
             || !StripStyle.FLAVOR_DOMAIN.containsAnyOf(buildTarget.getFlavors()),
@@ -122,11 +127,71 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
         projectFilesystem,
         ruleFinder,
         Optional.empty(),
+        false,
         compilerDelegate,
         outputName,
         input,
         inputType,
         Optional.empty(),
+        Optional.empty(),
+        sanitizer);
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} step that compiles the source preprocessed by the
+   *     given {@link #preprocess} rule.
+   */
+  public static CxxPreprocessAndCompile compilePreprocessed(
+      BuildTarget buildTarget,
+      ProjectFilesystem projectFilesystem,
+      SourcePathRuleFinder ruleFinder,
+      CompilerDelegate compilerDelegate,
+      String outputName,
+      CxxPreprocessAndCompile preprocessRule,
+      DebugPathSanitizer sanitizer) {
+    Preconditions.checkArgument(preprocessRule.getBuildable().preprocessOnly);
+    return new CxxPreprocessAndCompile(
+        buildTarget,
+        projectFilesystem,
+        ruleFinder,
+        Optional.empty(),
+        false,
+        compilerDelegate,
+        outputName,
+        preprocessRule.getSourcePathToOutput(),
+        CxxSourceTypes.getPreprocessorOutputType(preprocessRule.getBuildable().inputType),
+        Optional.empty(),
+        Optional.of(preprocessRule),
+        sanitizer);
+  }
+
+  /**
+   * @return a {@link CxxPreprocessAndCompile} step that only preprocesses the given source, with
+   *     the paths of the line markers in its output sanitized, so that the preprocessed source can
+   *     be compiled by {@link #compilePreprocessed} with a rule key that only depends on it.
+   */
+  public static CxxPreprocessAndCompile preprocess(
+      BuildTarget buildTarget,
+      ProjectFilesystem projectFilesystem,
+      SourcePathRuleFinder ruleFinder,
+      PreprocessorDelegate preprocessorDelegate,
+      CompilerDelegate compilerDelegate,
+      String outputName,
+      SourcePath input,
+      Type inputType,
+      DebugPathSanitizer sanitizer) {
+    return new CxxPreprocessAndCompile(
+        buildTarget,
+        projectFilesystem,
+        ruleFinder,
+        Optional.of(preprocessorDelegate),
+        true,
+        compilerDelegate,
+        outputName,
+        input,
+        inputType,
+        Optional.empty(),
+        Optional.empty(),
         sanitizer);
   }
 
@@ -149,11 +214,13 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
         projectFilesystem,
         ruleFinder,
         Optional.of(preprocessorDelegate),
+        false,
         compilerDelegate,
         outputName,
         input,
         inputType,
         precompiledHeaderRule,
+        Optional.empty(),
         sanitizer);
   }
 
@@ -185,6 +252,10 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
 
   /** Returns the compilation command (used for compdb). */
   public ImmutableList<String> getCommand(BuildContext context) {
+    if (preprocessRule.isPresent()) {
+      // The preprocessor command is the one with all the flags used to compile the source.
+      return preprocessRule.get().getCommand(context);
+    }
     return getBuildable()
         .makeMainStep(context, getProjectFilesystem(), getOutputPathResolver(), false)
         .getCommand();
@@ -199,6 +270,19 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
     return getBuildable().input;
   }
 
+  /**
+   * @return the rule that preprocesses the source this rule compiles, if preprocessing is done by a
+   *     separate rule
+   */
+  public Optional<CxxPreprocessAndCompile> getPreprocessRule() {
+    return preprocessRule;
+  }
+
+  /** @return the source compiled by this rule, before it was preprocessed by another rule. */
+  public SourcePath getSourceInput() {
+    return preprocessRule.map(CxxPreprocessAndCompile::getInput).orElseGet(this::getInput);
+  }
+
   @Override
   public boolean useDependencyFileRuleKeys() {
     return CxxSourceTypes.supportsDepFiles(getBuildable().inputType);
@@ -270,6 +354,8 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
     @AddToRuleKey private final BuildTarget targetName;
     /** The presence or absence of this field denotes whether the input needs to be preprocessed. */
     @AddToRuleKey private final Optional<PreprocessorDelegate> preprocessDelegate;
+    /** Whether the preprocessed input is the output, instead of being compiled. */
+    @AddToRuleKey private final boolean preprocessOnly;
 
     @AddToRuleKey private final CompilerDelegate compilerDelegate;
     @AddToRuleKey private final DebugPathSanitizer sanitizer;
@@ -282,14 +368,17 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
     public Impl(
         BuildTarget targetName,
         Optional<PreprocessorDelegate> preprocessDelegate,
+        boolean preprocessOnly,
         CompilerDelegate compilerDelegate,
         String outputName,
         SourcePath input,
         Optional<CxxPrecompiledHeader> precompiledHeaderRule,
         Type inputType,
         DebugPathSanitizer sanitizer) {
+      Preconditions.checkArgument(!preprocessOnly || preprocessDelegate.isPresent());
       this.targetName = targetName;
       this.preprocessDelegate = preprocessDelegate;
+      this.preprocessOnly = preprocessOnly;
       this.compilerDelegate = compilerDelegate;
       this.sanitizer = sanitizer;
       this.output = new OutputPath(outputName);
@@ -321,11 +410,18 @@ public class CxxPreprocessAndCompile extends ModernBuildRule<CxxPreprocessAndCom
       Path relativeInputPath = filesystem.relativize(resolver.getAbsolutePath(input));
       Path resolvedOutput = outputPathResolver.resolvePath(output);
 
+      CxxPreprocessAndCompileStep.Operation operation;
+      if (preprocessOnly) {
+        operation = CxxPreprocessAndCompileStep.Operation.PREPROCESS;
+      } else if (preprocessDelegate.isPresent()) {
+        operation = CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE;
+      } else {
+        operation = CxxPreprocessAndCompileStep.Operation.COMPILE;
+      }
+
       return new CxxPreprocessAndCompileStep(
           filesystem,
-          preprocessDelegate.isPresent()
-              ? CxxPreprocessAndCompileStep.Operation.PREPROCESS_AND_COMPILE
-              : CxxPreprocessAndCompileStep.Operation.COMPILE,
+          operation,
           resolvedOutput,
           // Use a depfile if there's a preprocessing stage, this logic should be kept in sync with
           // getInputsAfterBuildingLocally.
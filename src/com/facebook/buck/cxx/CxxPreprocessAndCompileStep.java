@@ -176,7 +176,7 @@ class CxxPreprocessAndCompileStep implements Step {
                 useUnixPathSeparator
                     ? PathFormatter.pathWithUnixSeparators(output.toString())
                     : output.toString()))
-        .add("-c")
+        .add(operation == Operation.PREPROCESS ? "-E" : "-c")
         .addAll(
             depFile
                 .map(depFile -> compiler.outputDependenciesArgs(depFile.toString()))
@@ -374,6 +374,16 @@ class CxxPreprocessAndCompileStep implements Step {
         sanitizer.restoreCompilationDirectory(path, filesystem.getRootPath().toAbsolutePath());
         FILE_LAST_MODIFIED_DATE_SCRUBBER.scrubFileWithPath(path);
       }
+
+      // The preprocessed source is compiled by another rule, which can only reuse the objects
+      // compiled from the same preprocessed source if its line markers don't depend on where the
+      // headers and the repo are.
+      if (operation == Operation.PREPROCESS) {
+        Path root = filesystem.getRootPath().toAbsolutePath();
+        new LineMarkerSanitizer(
+                root, headerPathNormalizer.getPrefixMap(), sanitizer.sanitizer(Optional.of(root)))
+            .sanitize(path);
+      }
     }
 
     if (exitCode != 0) {
@@ -416,6 +426,8 @@ class CxxPreprocessAndCompileStep implements Step {
     COMPILE,
     /** Run the preprocessor and compiler on source files. */
     PREPROCESS_AND_COMPILE,
+    /** Run only the preprocessor on source files, sanitizing the paths of its line markers. */
+    PREPROCESS,
     GENERATE_PCH,
     ;
   }
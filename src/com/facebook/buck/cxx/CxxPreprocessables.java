@@ -157,6 +157,8 @@ public class CxxPreprocessables {
         return HeaderSymlinkTreeWithModuleMap.create(target, filesystem, root, links, ruleFinder);
       case HEADER_MAP_ONLY:
         return new DirectHeaderMap(target, filesystem, root, links, ruleFinder);
+      case VFS_OVERLAY_ONLY:
+        return new HeaderVfsOverlay(target, filesystem, root, links, ruleFinder);
       default:
       case SYMLINK_TREE_ONLY:
         return new HeaderSymlinkTree(target, filesystem, root, links, ruleFinder);
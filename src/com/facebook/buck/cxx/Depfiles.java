@@ -33,11 +33,16 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharSource;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
@@ -207,17 +212,61 @@ class Depfiles {
     }
   }
 
-  private static ImmutableList<String> getRawUsedHeadersFromDepfile(
+  /**
+   * @return the absolute, normalized paths of the headers listed by the depfile, which are only
+   *     parsed if the depfile is not in the {@link HeaderDependencyIndex} already
+   */
+  private static ImmutableList<Path> getUsedHeadersFromDepfile(
       ProjectFilesystem filesystem,
       Path sourceDepFile,
       Path inputPath,
       DependencyTrackingMode dependencyTrackingMode,
       boolean useUnixPathSeparator)
       throws IOException {
+    if (dependencyTrackingMode == DependencyTrackingMode.NONE) {
+      return ImmutableList.of();
+    }
+
+    // Sizes and modification times can't tell apart depfiles written within the resolution of the
+    // filesystem's clock, so the depfile is keyed on its contents. Reading it is cheap next to
+    // parsing it and resolving the headers, which is what the index saves. The headers are
+    // resolved against the project root, so that is part of the key as well.
+    byte[] contents;
+    try (InputStream input = filesystem.newFileInputStream(sourceDepFile)) {
+      contents = ByteStreams.toByteArray(input);
+    }
+    HashCode depfileKey =
+        HeaderDependencyIndex.newKeyHasher()
+            .putBytes(contents)
+            .putString(filesystem.getRootPath().toString(), StandardCharsets.UTF_8)
+            .putString(inputPath.toString(), StandardCharsets.UTF_8)
+            .putString(dependencyTrackingMode.name(), StandardCharsets.UTF_8)
+            .putBoolean(useUnixPathSeparator)
+            .hash();
+    return HeaderDependencyIndex.getInstance()
+        .getHeaders(
+            depfileKey,
+            () -> {
+              ImmutableList.Builder<Path> headers = ImmutableList.builder();
+              for (String rawHeader :
+                  getRawUsedHeadersFromDepfile(
+                      contents, inputPath, dependencyTrackingMode, useUnixPathSeparator)) {
+                headers.add(filesystem.resolve(rawHeader).normalize());
+              }
+              return headers.build();
+            });
+  }
+
+  private static ImmutableList<String> getRawUsedHeadersFromDepfile(
+      byte[] contents,
+      Path inputPath,
+      DependencyTrackingMode dependencyTrackingMode,
+      boolean useUnixPathSeparator)
+      throws IOException {
     switch (dependencyTrackingMode) {
       case MAKEFILE:
-        try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(new ByteArrayInputStream(contents)))) {
           ImmutableList<String> prereqs = Depfiles.parseDepfile(reader).getPrereqs();
           // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
           // appear first in the dep file, followed by the input source file.  So, just skip over
@@ -245,7 +294,8 @@ class Depfiles {
         // An intermediate depfile in `show_include` mode contains a source file + used headers
         // (see CxxPreprocessAndCompileStep for details).
         // So, we "strip" the the source file first.
-        List<String> srcAndIncludes = filesystem.readLines(sourceDepFile);
+        List<String> srcAndIncludes =
+            CharSource.wrap(new String(contents, StandardCharsets.UTF_8)).readLines();
         List<String> includes = srcAndIncludes.subList(1, srcAndIncludes.size());
         // We don't require the tree structure here, we remove the spaces
         return includes.stream().map(String::trim).collect(ImmutableList.toImmutableList());
@@ -301,8 +351,8 @@ class Depfiles {
             PerfEventId.of("depfile-parse"),
             ImmutableMap.of("input", inputPath, "output", outputPath))) {
 
-      List<String> headers =
-          getRawUsedHeadersFromDepfile(
+      List<Path> headers =
+          getUsedHeadersFromDepfile(
               filesystem, sourceDepFile, inputPath, dependencyTrackingMode, useUnixPathSeparator);
 
       return normalizeAndVerifyHeaders(
@@ -323,7 +373,7 @@ class Depfiles {
       HeaderPathNormalizer headerPathNormalizer,
       HeaderVerification headerVerification,
       Path inputPath,
-      List<String> headers,
+      List<Path> headers,
       Path sourceDepFile,
       DependencyTrackingMode dependencyTrackingMode)
       throws IOException, HeaderVerificationException {
@@ -332,22 +382,21 @@ class Depfiles {
         new UntrackedHeaderReporterWithFallback(
             dependencyTrackingMode, filesystem, headerPathNormalizer, sourceDepFile, inputPath);
     List<String> errors = new ArrayList<String>();
-    for (String rawHeader : headers) {
-      Path header = filesystem.resolve(rawHeader).normalize();
+    for (Path header : headers) {
       Optional<Path> absolutePath = headerPathNormalizer.getAbsolutePathForUnnormalizedPath(header);
-      Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
       if (absolutePath.isPresent()) {
         Preconditions.checkState(absolutePath.get().isAbsolute());
         resultBuilder.add(absolutePath.get());
       } else if ((headerVerification.getMode() != HeaderVerification.Mode.IGNORE)
           && (!(headerVerification.isWhitelisted(header.toString())
-              || repoRelativePath
+              || filesystem
+                  .getPathRelativeToProjectRoot(header)
                   .map(path -> headerVerification.isWhitelisted(path.toString()))
                   .orElse(false)))) {
         // Check again with the real path with all symbolic links resolved.
-        header = header.toRealPath();
-        if (!(headerVerification.isWhitelisted(header.toString()))) {
-          String errorMessage = untrackedHeaderReporter.getErrorReport(header);
+        Path realHeader = header.toRealPath();
+        if (!(headerVerification.isWhitelisted(realHeader.toString()))) {
+          String errorMessage = untrackedHeaderReporter.getErrorReport(realHeader);
           errors.add(errorMessage);
         }
       }
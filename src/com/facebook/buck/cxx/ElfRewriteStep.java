@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+
+import com.facebook.buck.step.Step;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A step which rewrites an ELF file in place, through a writable mapping of the whole file. Several
+ * of these steps can share a single mapping of the file, see {@link
+ * ElfRewriteAndCompactSectionsStep}.
+ */
+interface ElfRewriteStep extends Step {
+
+  /**
+   * Rewrites the ELF file mapped into {@code buffer}, which is positioned at the beginning of the
+   * file. Other steps may already have rewritten the file through the same buffer, so the file must
+   * be parsed again rather than from a cached {@link com.facebook.buck.cxx.toolchain.elf.Elf}.
+   */
+  void rewrite(MappedByteBuffer buffer) throws IOException;
+
+  /** Maps {@code file} and applies the rewrites of {@code steps} to it, in order. */
+  static void rewriteInPlace(Path file, Iterable<? extends ElfRewriteStep> steps)
+      throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      MappedByteBuffer buffer = channel.map(READ_WRITE, 0, channel.size());
+      for (ElfRewriteStep step : steps) {
+        buffer.rewind();
+        step.rewrite(buffer);
+      }
+    }
+  }
+}
@@ -134,7 +134,11 @@ class ElfSharedLibraryInterface<T extends AbstractBuildable> extends ModernBuild
               input.getFirst(),
               input.getSecond(),
               filesystem,
-              outputScratch),
+              outputScratch));
+
+      // The scratch file is rewritten in place through a single mapping of it.
+      ImmutableList.Builder<ElfRewriteStep> rewrites = ImmutableList.builder();
+      rewrites.add(
           ElfSymbolTableScrubberStep.of(
               filesystem,
               outputScratch,
@@ -163,16 +167,18 @@ class ElfSharedLibraryInterface<T extends AbstractBuildable> extends ModernBuild
       // If we're removing undefined symbols, rewrite the dynamic string table so that strings for
       // undefined symbol names are removed.
       if (removeUndefinedSymbols) {
-        steps.add(ElfRewriteDynStrSectionStep.of(filesystem, outputScratch));
+        rewrites.add(ElfRewriteDynStrSectionStep.of(filesystem, outputScratch));
       }
+      // objcopy doesn't like the section-address shuffling chicanery we're doing in
+      // the ElfCompactSectionsStep, since the new addresses may not jive with the current
+      // segment locations.  So kill the segments (program headers) in the scratch file
+      // prior to compacting sections, and _again_ in the interface .so file.
+      rewrites.add(ElfClearProgramHeadersStep.of(filesystem, outputScratch));
       steps.add(
-          // objcopy doesn't like the section-address shuffling chicanery we're doing in
-          // the ElfCompactSectionsStep, since the new addresses may not jive with the current
-          // segment locations.  So kill the segments (program headers) in the scratch file
-          // prior to compacting sections, and _again_ in the interface .so file.
-          ElfClearProgramHeadersStep.of(filesystem, outputScratch),
-          ElfCompactSectionsStep.of(
-              buildTarget, commandPrefix, filesystem, outputScratch, filesystem, output),
+          ElfRewriteAndCompactSectionsStep.of(
+              rewrites.build(),
+              ElfCompactSectionsStep.of(
+                  buildTarget, commandPrefix, filesystem, outputScratch, filesystem, output)),
           ElfClearProgramHeadersStep.of(filesystem, output));
       return steps.build();
     }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Creates an archive and its symbol index in process, the way GNU ar and ranlib would create them,
+ * without running either of them.
+ *
+ * <p>The symbols of the inputs are read in parallel, and only for the inputs that are not in the
+ * {@link ArchiveSymbolIndex} yet. Inputs that ar can only index with the help of a plugin, such as
+ * the objects of link-time optimized builds, and anything else that isn't an ELF object, are left
+ * to ar and ranlib: the archive is then created by the fallback steps instead.
+ */
+class GnuArchiveStep implements Step {
+
+  private static final Logger LOG = Logger.get(GnuArchiveStep.class);
+
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+  private final boolean thin;
+  private final ImmutableList<Step> fallbackSteps;
+
+  public GnuArchiveStep(
+      ProjectFilesystem filesystem,
+      Path output,
+      ImmutableList<Path> inputs,
+      boolean thin,
+      ImmutableList<Step> fallbackSteps) {
+    Preconditions.checkArgument(!output.isAbsolute());
+    for (Path input : inputs) {
+      Preconditions.checkArgument(!input.isAbsolute());
+    }
+    this.filesystem = filesystem;
+    this.output = output;
+    this.inputs = inputs;
+    this.thin = thin;
+    this.fallbackSteps = fallbackSteps;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList<Path> allInputs = ArchiveStep.getAllInputs(filesystem, inputs);
+    if (allInputs.isEmpty()) {
+      filesystem.writeContentsToPath("!<arch>\n", output);
+      return StepExecutionResults.SUCCESS;
+    }
+
+    Optional<ImmutableList<GnuArchiveWriter.Member>> members = getMembers(allInputs);
+    if (members.isPresent()
+        && new GnuArchiveWriter(thin, members.get()).write(filesystem.resolve(output))) {
+      return StepExecutionResults.SUCCESS;
+    }
+
+    LOG.debug("Creating %s with the archiver", output);
+    for (Step step : fallbackSteps) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResults.SUCCESS;
+  }
+
+  /** @return the members of the archive, or nothing if one of them can't be indexed here */
+  private Optional<ImmutableList<GnuArchiveWriter.Member>> getMembers(ImmutableList<Path> allInputs)
+      throws IOException {
+    ArchiveSymbolIndex index = ArchiveSymbolIndex.getInstance();
+    List<ForkJoinTask<Optional<ImmutableList<String>>>> symbols =
+        new ArrayList<>(allInputs.size());
+    for (Path input : allInputs) {
+      Path file = filesystem.resolve(input);
+      symbols.add(POOL.submit(() -> index.getSymbols(file)));
+    }
+
+    try {
+      Path archiveDirectory = filesystem.resolve(output).getParent().toRealPath();
+      ImmutableList.Builder<GnuArchiveWriter.Member> members = ImmutableList.builder();
+      for (int i = 0; i < allInputs.size(); i++) {
+        Optional<ImmutableList<String>> memberSymbols = getSymbols(symbols.get(i));
+        if (!memberSymbols.isPresent()) {
+          LOG.debug("%s can't be indexed without the archiver", allInputs.get(i));
+          return Optional.empty();
+        }
+        Path input = allInputs.get(i);
+        Path file = filesystem.resolve(input);
+        String name;
+        if (!thin) {
+          name = file.getFileName().toString();
+        } else if (input.isAbsolute()) {
+          name = input.toString();
+        } else {
+          // Like ar, refer to members by their real path relative to the archive.
+          name = archiveDirectory.relativize(file.toRealPath()).toString();
+        }
+        members.add(
+            new GnuArchiveWriter.Member(file, name, Files.size(file), memberSymbols.get()));
+      }
+      return Optional.of(members.build());
+    } finally {
+      // Nothing is waiting for the remaining symbols if reading one of them failed.
+      for (ForkJoinTask<Optional<ImmutableList<String>>> task : symbols) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  private static Optional<ImmutableList<String>> getSymbols(
+      ForkJoinTask<Optional<ImmutableList<String>>> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading the symbols of objects");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return Joiner.on(' ')
+        .join(
+            ImmutableList.builder()
+                .add("gnu-archive", thin ? "--thin" : "--full", output)
+                .addAll(inputs)
+                .build());
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+}
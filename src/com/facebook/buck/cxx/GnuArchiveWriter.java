@@ -0,0 +1,204 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Writes archives the way {@code ar qcD} followed by {@code ranlib -D} writes them with GNU
+ * binutils, given the symbols that each member adds to the symbol index.
+ *
+ * <p>The symbol index comes first, then the table of the member names that don't fit in a member
+ * header, then the members. Thin archives only refer to their members, by their path relative to
+ * the archive, and all these paths are in the table of names.
+ */
+final class GnuArchiveWriter {
+
+  private static final byte[] GLOBAL_HEADER = "!<arch>\n".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] GLOBAL_THIN_HEADER = "!<thin>\n".getBytes(StandardCharsets.US_ASCII);
+  private static final int HEADER_SIZE = 60;
+  private static final int MAX_SHORT_NAME_LENGTH = 15;
+
+  /** A file to archive. */
+  static final class Member {
+    private final Path file;
+    private final String name;
+    private final long size;
+    private final ImmutableList<String> symbols;
+
+    /**
+     * @param file the file to copy into a full archive
+     * @param name the name of the member: the file name in a full archive, or the path of the file
+     *     relative to the archive in a thin archive
+     * @param symbols the symbols the member adds to the symbol index, as ISO-8859-1 strings
+     */
+    Member(Path file, String name, long size, ImmutableList<String> symbols) {
+      this.file = file;
+      this.name = name;
+      this.size = size;
+      this.symbols = symbols;
+    }
+  }
+
+  private final boolean thin;
+  private final ImmutableList<Member> members;
+
+  GnuArchiveWriter(boolean thin, ImmutableList<Member> members) {
+    Preconditions.checkArgument(!members.isEmpty());
+    this.thin = thin;
+    this.members = members;
+  }
+
+  /**
+   * Writes the archive, unless its members can't be found through a 32-bit symbol index.
+   *
+   * @return whether the archive has been written
+   */
+  boolean write(Path archive) throws IOException {
+    ByteArrayOutputStream names = new ByteArrayOutputStream();
+    List<String> headerNames = new ArrayList<>(members.size());
+    String previousName = null;
+    String previousHeaderName = null;
+    for (Member member : members) {
+      String headerName;
+      if (thin && member.name.equals(previousName)) {
+        // Like ar, refer to the same path as the member before.
+        headerName = Objects.requireNonNull(previousHeaderName);
+      } else if (thin || member.name.length() > MAX_SHORT_NAME_LENGTH) {
+        headerName = "/" + names.size();
+        names.write((member.name + "/\n").getBytes(StandardCharsets.ISO_8859_1));
+      } else {
+        headerName = member.name + "/";
+      }
+      headerNames.add(headerName);
+      previousName = member.name;
+      previousHeaderName = headerName;
+    }
+    if (names.size() % 2 != 0) {
+      names.write('\n');
+    }
+
+    ByteArrayOutputStream symbolNames = new ByteArrayOutputStream();
+    int symbolCount = 0;
+    for (Member member : members) {
+      for (String symbol : member.symbols) {
+        symbolNames.write(symbol.getBytes(StandardCharsets.ISO_8859_1));
+        symbolNames.write(0);
+        symbolCount++;
+      }
+    }
+    long symbolTableSize = 4 + 4L * symbolCount + symbolNames.size();
+    if (symbolTableSize % 2 != 0) {
+      symbolNames.write(0);
+      symbolTableSize++;
+    }
+
+    long offset = GLOBAL_HEADER.length + HEADER_SIZE + symbolTableSize;
+    if (names.size() > 0) {
+      offset += HEADER_SIZE + names.size();
+    }
+    long[] memberOffsets = new long[members.size()];
+    for (int i = 0; i < members.size(); i++) {
+      memberOffsets[i] = offset;
+      offset += HEADER_SIZE;
+      if (!thin) {
+        long size = members.get(i).size;
+        offset += size + size % 2;
+      }
+    }
+    if (memberOffsets[memberOffsets.length - 1] > 0xffffffffL) {
+      return false;
+    }
+
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(archive)))) {
+      output.write(thin ? GLOBAL_THIN_HEADER : GLOBAL_HEADER);
+
+      writeHeader(output, "/", Optional.of("0"), Optional.of("0"), symbolTableSize);
+      output.writeInt(symbolCount);
+      for (int i = 0; i < members.size(); i++) {
+        for (int j = 0; j < members.get(i).symbols.size(); j++) {
+          output.writeInt((int) memberOffsets[i]);
+        }
+      }
+      symbolNames.writeTo(output);
+
+      if (names.size() > 0) {
+        writeHeader(output, "//", Optional.empty(), Optional.empty(), names.size());
+        names.writeTo(output);
+      }
+
+      for (int i = 0; i < members.size(); i++) {
+        Member member = members.get(i);
+        writeHeader(output, headerNames.get(i), Optional.of("0"), Optional.of("644"), member.size);
+        if (thin) {
+          continue;
+        }
+        long copied;
+        try (InputStream input = Files.newInputStream(member.file)) {
+          copied = ByteStreams.copy(input, output);
+        }
+        if (copied != member.size) {
+          throw new IOException(String.format("%s changed while archiving it", member.file));
+        }
+        if (copied % 2 != 0) {
+          output.write('\n');
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the header of a member. The modification time, owner and group are all 0, as {@code ar
+   * -D} writes them, or blank when {@code ids} is empty.
+   */
+  private static void writeHeader(
+      OutputStream output, String name, Optional<String> ids, Optional<String> mode, long size)
+      throws IOException {
+    String header =
+        pad(name, 16)
+            + pad(ids.orElse(""), 12)
+            + pad(ids.orElse(""), 6)
+            + pad(ids.orElse(""), 6)
+            + pad(mode.orElse(""), 8)
+            + pad(String.valueOf(size), 10)
+            + "`\n";
+    output.write(header.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static String pad(String field, int length) {
+    Preconditions.checkArgument(field.length() <= length, "%s doesn't fit in the header", field);
+    return Strings.padEnd(field, length, ' ');
+  }
+}
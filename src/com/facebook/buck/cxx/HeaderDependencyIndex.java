@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Path;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The headers listed by the depfiles of all the compilations in this process, parsed and resolved
+ * against the root of their project.
+ *
+ * <p>Depfiles are identified by a hash of their contents, together with everything else that
+ * parsing them depends on, so a depfile is only parsed again when its contents change.
+ * The paths of the headers are interned, so that the many rules that include the same headers share
+ * the same {@link Path} objects, and lookups of these paths in the memoized results of {@link
+ * HeaderPathNormalizer} do not hash the paths again.
+ */
+@ThreadSafe
+final class HeaderDependencyIndex {
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final long DEFAULT_MAX_HEADERS = 4 * 1024 * 1024;
+
+  private static final HeaderDependencyIndex INSTANCE =
+      new HeaderDependencyIndex(DEFAULT_MAX_HEADERS);
+
+  /** Parses a depfile on a cache miss. */
+  interface Parser {
+    ImmutableList<Path> parse() throws IOException;
+  }
+
+  private final Cache<HashCode, ImmutableList<Path>> headersByDepfile;
+  private final Interner<Path> headerPaths = Interners.newWeakInterner();
+
+  @VisibleForTesting
+  HeaderDependencyIndex(long maxHeaders) {
+    this.headersByDepfile =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxHeaders)
+            .<HashCode, ImmutableList<Path>>weigher((key, headers) -> headers.size())
+            .build();
+  }
+
+  /** @return the index shared by all compilations */
+  static HeaderDependencyIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /** @return a hasher for the key of a depfile, which must cover everything parsing depends on */
+  static Hasher newKeyHasher() {
+    return HASH_FUNCTION.newHasher();
+  }
+
+  /**
+   * @param depfileKey the hash of the contents of the depfile and of everything else that parsing
+   *     it depends on
+   * @return the headers listed by the depfile, parsed by {@code parser} if the depfile has not been
+   *     parsed before
+   */
+  ImmutableList<Path> getHeaders(HashCode depfileKey, Parser parser) throws IOException {
+    ImmutableList<Path> headers = headersByDepfile.getIfPresent(depfileKey);
+    if (headers == null) {
+      // Parsing twice in a race is harmless, and cheaper than holding a lock while parsing.
+      headers =
+          parser.parse().stream()
+              .map(headerPaths::intern)
+              .collect(ImmutableList.toImmutableList());
+      headersByDepfile.put(depfileKey, headers);
+    }
+    return headers;
+  }
+}
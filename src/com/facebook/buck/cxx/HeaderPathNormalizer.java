@@ -20,7 +20,10 @@ import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.util.types.Pair;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.nio.file.Path;
@@ -28,23 +31,35 @@ import java.util.AbstractMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 class HeaderPathNormalizer {
 
+  /**
+   * The results of the lookups in each header map so far, shared by all the normalizers in this
+   * process that have the same map. Rules compiling against the same headers, and the same rules in
+   * later builds, mostly look up the same header paths, so each path is only looked up once. The
+   * results are source paths rather than absolute paths, so they do not depend on the resolver.
+   * Normalizers are only weakly memoized, so the results are kept until memory is needed.
+   */
+  private static final Cache<ImmutableMap<Path, SourcePath>, Lookups> LOOKUPS =
+      CacheBuilder.newBuilder().softValues().build();
+
   private final SourcePathResolver pathResolver;
 
   /**
    * A mapping from absolute path of a header path (file or directory) to it's corresponding source
    * path.
    */
-  private final ImmutableMap<Path, SourcePath> headers;
+  private final Lookups headers;
 
   /**
    * A mapping of unnormalized header paths that are used by the tooling to the absolute path
    * representation of the corresponding source path.
    */
-  private final ImmutableMap<Path, SourcePath> normalized;
+  private final Lookups normalized;
 
   /** Minimal mappings to translate paths used during compilation to their real locations. */
   private final ImmutableMap<Path, Path> prefixMap;
@@ -55,8 +70,8 @@ class HeaderPathNormalizer {
       ImmutableMap<Path, SourcePath> normalized,
       ImmutableMap<Path, Path> prefixMap) {
     this.pathResolver = pathResolver;
-    this.headers = headers;
-    this.normalized = normalized;
+    this.headers = LOOKUPS.asMap().computeIfAbsent(headers, Lookups::new);
+    this.normalized = LOOKUPS.asMap().computeIfAbsent(normalized, Lookups::new);
     this.prefixMap = prefixMap;
   }
 
@@ -78,7 +93,7 @@ class HeaderPathNormalizer {
 
   public Optional<Path> getAbsolutePathForUnnormalizedPath(Path unnormalizedPath) {
     Preconditions.checkArgument(unnormalizedPath.isAbsolute());
-    Optional<Map.Entry<Path, SourcePath>> result = pathLookup(unnormalizedPath, normalized);
+    Optional<Map.Entry<Path, SourcePath>> result = normalized.get(unnormalizedPath);
     if (!result.isPresent()) {
       return Optional.empty();
     }
@@ -91,11 +106,16 @@ class HeaderPathNormalizer {
   /** @return the {@link SourcePath} which corresponds to the given absolute path. */
   public SourcePath getSourcePathForAbsolutePath(Path absolutePath) {
     Preconditions.checkArgument(absolutePath.isAbsolute());
-    Optional<Map.Entry<Path, SourcePath>> path = pathLookup(absolutePath, headers);
+    Optional<Map.Entry<Path, SourcePath>> path = headers.get(absolutePath);
     Preconditions.checkState(path.isPresent(), "no headers mapped to %s", absolutePath);
     return path.get().getValue();
   }
 
+  @VisibleForTesting
+  boolean sharesLookupsWith(HeaderPathNormalizer other) {
+    return headers == other.headers && normalized == other.normalized;
+  }
+
   /**
    * @return a map of replacement prefix paths to convert unnormalized paths to their original
    *     locations.
@@ -104,6 +124,21 @@ class HeaderPathNormalizer {
     return prefixMap;
   }
 
+  /** The results of looking up paths in a header map. */
+  private static class Lookups {
+    private final ImmutableMap<Path, SourcePath> map;
+    private final ConcurrentMap<Path, Optional<Map.Entry<Path, SourcePath>>> results =
+        new ConcurrentHashMap<>();
+
+    private Lookups(ImmutableMap<Path, SourcePath> map) {
+      this.map = map;
+    }
+
+    private Optional<Map.Entry<Path, SourcePath>> get(Path path) {
+      return results.computeIfAbsent(path, key -> pathLookup(key, map));
+    }
+  }
+
   public static class Builder {
 
     private final SourcePathResolver pathResolver;
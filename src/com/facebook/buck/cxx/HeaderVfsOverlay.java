@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.core.build.buildable.context.BuildableContext;
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.sourcepath.ExplicitBuildTargetSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.cxx.toolchain.HeaderSymlinkTree;
+import com.facebook.buck.io.BuildCellRelativePath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A tree of headers that only exists in a clang VFS overlay, which maps the paths in the tree to
+ * the headers in the source tree. Building it writes a single file, no matter how many headers are
+ * in the tree.
+ */
+class HeaderVfsOverlay extends HeaderSymlinkTree {
+
+  private static final Logger LOG = Logger.get(HeaderVfsOverlay.class);
+
+  @AddToRuleKey(stringify = true)
+  private final Path overlayPath;
+
+  public HeaderVfsOverlay(
+      BuildTarget target,
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, SourcePath> links,
+      SourcePathRuleFinder ruleFinder) {
+    super(target, filesystem, root, links, ruleFinder);
+    this.overlayPath = BuildTargetPaths.getGenPath(filesystem, target, "%s.vfsoverlay.yaml");
+  }
+
+  @Override
+  public SourcePath getSourcePathToOutput() {
+    return ExplicitBuildTargetSourcePath.of(getBuildTarget(), overlayPath);
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context, BuildableContext buildableContext) {
+    LOG.debug("Generating build steps to write VFS overlay to %s", overlayPath);
+    ImmutableSortedMap.Builder<Path, Path> entriesBuilder = ImmutableSortedMap.naturalOrder();
+    Path absoluteRoot = getProjectFilesystem().resolve(getRoot());
+    for (Map.Entry<Path, SourcePath> entry : getLinks().entrySet()) {
+      entriesBuilder.put(
+          absoluteRoot.resolve(entry.getKey()),
+          context.getSourcePathResolver().getAbsolutePath(entry.getValue()));
+    }
+    return ImmutableList.<Step>builder()
+        .add(getVerifyStep())
+        // The root stays empty, so that nothing on disk shadows the headers in the overlay.
+        .addAll(
+            MakeCleanDirectoryStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(), getProjectFilesystem(), getRoot())))
+        .add(
+            MkdirStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(),
+                    getProjectFilesystem(),
+                    overlayPath.getParent())))
+        .add(
+            RmStep.of(
+                BuildCellRelativePath.fromCellRelativePath(
+                    context.getBuildCellRootPath(), getProjectFilesystem(), overlayPath)))
+        .add(new VfsOverlayStep(getProjectFilesystem(), overlayPath, entriesBuilder.build()))
+        .build();
+  }
+
+  @Override
+  public Optional<SourcePath> getVfsOverlaySourcePath() {
+    return Optional.of(ExplicitBuildTargetSourcePath.of(getBuildTarget(), overlayPath));
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Rewrites the paths in the line markers of preprocessed sources, so that the preprocessed output
+ * of a source doesn't depend on where its headers were found or where the repo is checked out.
+ *
+ * <p>Headers behind symlink trees are mapped to their real locations using the prefix map of the
+ * {@link HeaderPathNormalizer}, and the paths are then sanitized like the compiler sanitizes the
+ * paths in debug info, so that compiling the sanitized output produces the same object file as
+ * preprocessing and compiling the source in one step would.
+ */
+final class LineMarkerSanitizer {
+
+  private final Path root;
+  private final ImmutableMap<Path, Path> prefixMap;
+  private final Function<String, String> pathSanitizer;
+
+  /**
+   * @param root the absolute path of the directory the preprocessor ran in
+   * @param prefixMap relative prefixes of header paths, mapped to the prefixes to replace them with
+   * @param pathSanitizer the function that sanitizes the (mapped) paths
+   */
+  LineMarkerSanitizer(
+      Path root, ImmutableMap<Path, Path> prefixMap, Function<String, String> pathSanitizer) {
+    this.root = root;
+    this.prefixMap = prefixMap;
+    this.pathSanitizer = pathSanitizer;
+  }
+
+  /** Sanitizes the line markers of the given preprocessed source in place. */
+  void sanitize(Path file) throws IOException {
+    byte[] contents = Files.readAllBytes(file);
+    ByteArrayOutputStream sanitized = null;
+    int copied = 0;
+    for (int start = 0; start < contents.length; ) {
+      int end = start;
+      while (end < contents.length && contents[end] != '\n') {
+        end++;
+      }
+      if (contents[start] == '#') {
+        String line = new String(contents, start, end - start, StandardCharsets.UTF_8);
+        String sanitizedLine = sanitizeLine(line);
+        if (!sanitizedLine.equals(line)) {
+          if (sanitized == null) {
+            sanitized = new ByteArrayOutputStream(contents.length);
+          }
+          sanitized.write(contents, copied, start - copied);
+          byte[] bytes = sanitizedLine.getBytes(StandardCharsets.UTF_8);
+          sanitized.write(bytes, 0, bytes.length);
+          copied = end;
+        }
+      }
+      start = end + 1;
+    }
+    if (sanitized != null) {
+      sanitized.write(contents, copied, contents.length - copied);
+      Files.write(file, sanitized.toByteArray());
+    }
+  }
+
+  /**
+   * @return the line with the path of its line marker sanitized, or the line itself if it isn't a
+   *     line marker, such as {@code # 1 "foo/bar.h" 1} or {@code #line 1 "foo/bar.h"}
+   */
+  String sanitizeLine(String line) {
+    int index = 1;
+    if (line.startsWith("line", index)) {
+      index += "line".length();
+    }
+    int number = skip(line, index, ' ');
+    int digits = skip(line, number, '0', '9');
+    if (number == index || digits == number) {
+      return line;
+    }
+    int open = skip(line, digits, ' ');
+    if (open == digits || open >= line.length() || line.charAt(open) != '"') {
+      return line;
+    }
+
+    StringBuilder path = new StringBuilder();
+    int close = open + 1;
+    for (; close < line.length() && line.charAt(close) != '"'; close++) {
+      char c = line.charAt(close);
+      if (c == '\\' && close + 1 < line.length()) {
+        c = line.charAt(++close);
+      }
+      path.append(c);
+    }
+    if (close >= line.length()) {
+      return line;
+    }
+
+    String sanitizedPath = sanitizePath(path.toString());
+    if (sanitizedPath.equals(path.toString())) {
+      return line;
+    }
+    return line.substring(0, open + 1) + escape(sanitizedPath) + line.substring(close);
+  }
+
+  private String sanitizePath(String path) {
+    // Pseudo-files, such as <built-in> and <command-line>, have nothing to sanitize.
+    if (path.startsWith("<")) {
+      return path;
+    }
+    try {
+      Path original = Paths.get(path);
+      if (!original.isAbsolute()) {
+        Path mapped = mapPrefix(original);
+        if (mapped != original) {
+          path = mapped.toString();
+        }
+      } else if (original.startsWith(root)) {
+        Path relative = root.relativize(original);
+        Path mapped = mapPrefix(relative);
+        if (mapped != relative) {
+          path = root.resolve(mapped).toString();
+        }
+      }
+    } catch (InvalidPathException e) {
+      // Not a path we know how to map, but it can still be sanitized.
+    }
+    return pathSanitizer.apply(path);
+  }
+
+  /** @return the path with its longest mapped prefix replaced, or the path itself if none is */
+  private Path mapPrefix(Path path) {
+    Map.Entry<Path, Path> longest = null;
+    for (Map.Entry<Path, Path> entry : prefixMap.entrySet()) {
+      if (path.startsWith(entry.getKey())
+          && (longest == null
+              || entry.getKey().getNameCount() > longest.getKey().getNameCount())) {
+        longest = entry;
+      }
+    }
+    if (longest == null) {
+      return path;
+    }
+    return longest.getValue().resolve(longest.getKey().relativize(path));
+  }
+
+  private static int skip(String line, int index, char c) {
+    return skip(line, index, c, c);
+  }
+
+  private static int skip(String line, int index, char from, char to) {
+    while (index < line.length() && line.charAt(index) >= from && line.charAt(index) <= to) {
+      index++;
+    }
+    return index;
+  }
+
+  private static String escape(String path) {
+    return path.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.apple.clang.VFSOverlay;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/** Writes a clang VFS overlay that maps virtual paths of files to their real paths. */
+class VfsOverlayStep implements Step {
+
+  private static final Logger LOG = Logger.get(VfsOverlayStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableSortedMap<Path, Path> entries;
+
+  public VfsOverlayStep(
+      ProjectFilesystem filesystem, Path output, ImmutableSortedMap<Path, Path> entries) {
+    this.filesystem = filesystem;
+    this.output = output;
+    this.entries = entries;
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "vfs overlay @ " + output;
+  }
+
+  @Override
+  public String getShortName() {
+    return "vfs_overlay";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    LOG.debug("Writing VFS overlay with %d entries to %s", entries.size(), output);
+    filesystem.writeContentsToPath(new VFSOverlay(entries).render(), output);
+    return StepExecutionResults.SUCCESS;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof VfsOverlayStep)) {
+      return false;
+    }
+    VfsOverlayStep that = (VfsOverlayStep) obj;
+    return Objects.equal(this.output, that.output) && Objects.equal(this.entries, that.entries);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(output, entries);
+  }
+}
@@ -92,6 +92,8 @@ public class CxxBuckConfig {
   private static final String CACHE_BINARIES = "cache_binaries";
   private static final String PCH_ENABLED = "pch_enabled";
   private static final String ARCHIVE_CONTENTS = "archive_contents";
+  private static final String USE_BUILTIN_ARCHIVER = "use_builtin_archiver";
+  private static final String SPLIT_PREPROCESSING = "split_preprocessing";
   private static final String DEBUG_PATH_SANITIZER_LIMIT = "debug_path_sanitizer_limit";
   private static final String SHOULD_REMAP_HOST_PLATFORM = "should_remap_host_platform";
   private static final String UNIQUE_LIBRARY_NAME_ENABLED = "unique_library_name_enabled";
@@ -464,10 +466,26 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, PCH_ENABLED, true);
   }
 
+  /**
+   * @return whether to preprocess C/C++ sources in rules of their own, so that their objects are
+   *     cached by the contents of the preprocessed sources
+   */
+  public boolean isSplitPreprocessingEnabled() {
+    return delegate.getBooleanValue(cxxSection, SPLIT_PREPROCESSING, false);
+  }
+
   public Optional<ArchiveContents> getArchiveContents() {
     return delegate.getEnum(cxxSection, ARCHIVE_CONTENTS, ArchiveContents.class);
   }
 
+  /**
+   * @return whether to write GNU archives and their symbol indexes in process, which falls back to
+   *     the archiver for inputs that only it can index, such as objects built for LTO
+   */
+  public boolean getUseBuiltinArchiver() {
+    return delegate.getBooleanValue(cxxSection, USE_BUILTIN_ARCHIVER, false);
+  }
+
   public ImmutableMap<String, Flavor> getDefaultFlavorsForRuleType(RuleType type) {
     return ImmutableMap.copyOf(
         Maps.transformValues(
@@ -101,6 +101,15 @@ interface AbstractCxxPlatform extends FlavorConvertible {
 
   ArchiveContents getArchiveContents();
 
+  /**
+   * @return whether buck writes the archives of a GNU archiver and their symbol indexes itself,
+   *     instead of running the archiver and ranlib, for platforms that give neither of them flags
+   */
+  @Value.Default
+  default boolean getUseBuiltinArchiver() {
+    return false;
+  }
+
   List<String> getArflags();
 
   Optional<ToolProvider> getRanlib();
@@ -31,4 +31,10 @@ public class ClangWindowsPreprocessor extends ClangPreprocessor implements Prepr
   public boolean supportsHeaderMaps() {
     return false;
   }
+
+  @Override
+  // The overlays buck generates use absolute unix paths.
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
 }
@@ -38,6 +38,11 @@ public class GccPreprocessor extends DelegatingTool implements Preprocessor {
     return false;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     return true;
@@ -57,6 +62,11 @@ public class GccPreprocessor extends DelegatingTool implements Preprocessor {
         Iterables.transform(includeRoots, PathFormatter::pathWithUnixSeparators));
   }
 
+  @Override
+  public final Iterable<String> vfsOverlayArgs(Iterable<String> overlays) {
+    throw new UnsupportedOperationException("VFS overlays not supported by " + getClass());
+  }
+
   @Override
   public final Iterable<String> prefixHeaderArgs(Path prefixHeader) {
     Preconditions.checkArgument(
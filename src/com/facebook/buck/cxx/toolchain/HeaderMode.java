@@ -27,6 +27,12 @@ public enum HeaderMode implements FlavorConvertible {
   SYMLINK_TREE_ONLY,
   /** Creates the header map that references the headers directly in the source tree. */
   HEADER_MAP_ONLY,
+  /**
+   * Creates a clang VFS overlay that maps the paths in the tree of headers to the headers in the
+   * source tree, so that no file is created in the tree. Only supported by preprocessors that
+   * support VFS overlays, other preprocessors use {@link #SYMLINK_TREE_ONLY} instead.
+   */
+  VFS_OVERLAY_ONLY,
   /**
    * Creates the tree of symbolic links of headers and creates the header map that references the
    * symbolic links to the headers.
@@ -54,4 +54,12 @@ public class HeaderSymlinkTree extends SymlinkTree {
   public Optional<SourcePath> getHeaderMapSourcePath() {
     return Optional.empty();
   }
+
+  /**
+   * @return the clang VFS overlay that provides the files in the tree, which needs to be passed to
+   *     the preprocessor for the include path to work.
+   */
+  public Optional<SourcePath> getVfsOverlaySourcePath() {
+    return Optional.empty();
+  }
 }
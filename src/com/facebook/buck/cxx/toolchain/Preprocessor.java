@@ -24,12 +24,17 @@ public interface Preprocessor extends Tool {
 
   boolean supportsHeaderMaps();
 
+  /** @return whether the headers of a library can be provided by a clang VFS overlay file. */
+  boolean supportsVfsOverlays();
+
   boolean supportsPrecompiledHeaders();
 
   Iterable<String> localIncludeArgs(Iterable<String> includeRoots);
 
   Iterable<String> systemIncludeArgs(Iterable<String> includeRoots);
 
+  Iterable<String> vfsOverlayArgs(Iterable<String> overlays);
+
   Iterable<String> precompiledHeaderArgs(Path pchOutputPath);
 
   Iterable<String> prefixHeaderArgs(Path prefixHeader);
@@ -32,6 +32,11 @@ public class WindowsPreprocessor extends DelegatingTool implements Preprocessor
     return false;
   }
 
+  @Override
+  public boolean supportsVfsOverlays() {
+    return false;
+  }
+
   @Override
   public boolean supportsPrecompiledHeaders() {
     // TODO(steveo) Should be easy to add support; will try @ later time,
@@ -54,6 +59,11 @@ public class WindowsPreprocessor extends DelegatingTool implements Preprocessor
     return Iterables.transform(includeRoots, WindowsPreprocessor::prependIncludeFlag);
   }
 
+  @Override
+  public Iterable<String> vfsOverlayArgs(Iterable<String> overlays) {
+    throw new UnsupportedOperationException("VFS overlays not supported by " + getClass());
+  }
+
   @Override
   public Iterable<String> prefixHeaderArgs(Path prefixHeader) {
     throw new UnsupportedOperationException("prefix header not supported by " + getClass());
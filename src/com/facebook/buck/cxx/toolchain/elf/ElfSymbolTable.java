@@ -16,13 +16,24 @@
 
 package com.facebook.buck.cxx.toolchain.elf;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
 // CHECKSTYLE.OFF: LocalVariableName
 // CHECKSTYLE.OFF: ParameterName
 public class ElfSymbolTable {
 
+  /**
+   * Symbol tables with at least this many entries are parsed and written in chunks of this many
+   * entries in parallel, as the symbol tables of the largest shared libraries have millions of
+   * entries.
+   */
+  @VisibleForTesting static final int PARALLEL_CHUNK_SIZE = 64 * 1024;
+
   public final ImmutableList<Entry> entries;
 
   public ElfSymbolTable(ImmutableList<Entry> entries) {
@@ -30,17 +41,73 @@ public class ElfSymbolTable {
   }
 
   public static ElfSymbolTable parse(ElfHeader.EIClass eiClass, ByteBuffer buffer) {
-    ImmutableList.Builder<Entry> entries = ImmutableList.builder();
-    while (buffer.hasRemaining()) {
-      entries.add(Entry.parse(eiClass, buffer));
+    return parse(eiClass, buffer, PARALLEL_CHUNK_SIZE);
+  }
+
+  @VisibleForTesting
+  static ElfSymbolTable parse(ElfHeader.EIClass eiClass, ByteBuffer buffer, int chunkSize) {
+    int entrySize = Entry.getSize(eiClass);
+    int count = buffer.remaining() / entrySize;
+    if (count < chunkSize || buffer.remaining() % entrySize != 0) {
+      ImmutableList.Builder<Entry> entries = ImmutableList.builder();
+      while (buffer.hasRemaining()) {
+        entries.add(Entry.parse(eiClass, buffer));
+      }
+      return new ElfSymbolTable(entries.build());
     }
-    return new ElfSymbolTable(entries.build());
+
+    Entry[] entries = new Entry[count];
+    int start = buffer.position();
+    IntStream.range(0, (count + chunkSize - 1) / chunkSize)
+        .parallel()
+        .forEach(
+            chunk -> {
+              ByteBuffer chunkBuffer = chunkAt(buffer, start, entrySize, chunk * chunkSize);
+              int end = Math.min(count, (chunk + 1) * chunkSize);
+              for (int index = chunk * chunkSize; index < end; index++) {
+                entries[index] = Entry.parse(eiClass, chunkBuffer);
+              }
+            });
+    buffer.position(start + count * entrySize);
+    return new ElfSymbolTable(ImmutableList.copyOf(Arrays.asList(entries)));
   }
 
   public void write(ElfHeader.EIClass eiClass, ByteBuffer buffer) {
-    for (Entry entry : entries) {
-      entry.write(eiClass, buffer);
+    write(eiClass, buffer, PARALLEL_CHUNK_SIZE);
+  }
+
+  @VisibleForTesting
+  void write(ElfHeader.EIClass eiClass, ByteBuffer buffer, int chunkSize) {
+    int entrySize = Entry.getSize(eiClass);
+    if (entries.size() < chunkSize) {
+      for (Entry entry : entries) {
+        entry.write(eiClass, buffer);
+      }
+      return;
+    }
+
+    int start = buffer.position();
+    if (buffer.remaining() < entries.size() * entrySize) {
+      throw new BufferOverflowException();
     }
+    IntStream.range(0, (entries.size() + chunkSize - 1) / chunkSize)
+        .parallel()
+        .forEach(
+            chunk -> {
+              ByteBuffer chunkBuffer = chunkAt(buffer, start, entrySize, chunk * chunkSize);
+              int end = Math.min(entries.size(), (chunk + 1) * chunkSize);
+              for (int index = chunk * chunkSize; index < end; index++) {
+                entries.get(index).write(eiClass, chunkBuffer);
+              }
+            });
+    buffer.position(start + entries.size() * entrySize);
+  }
+
+  /** @return a view of the buffer positioned at the given entry, for a single thread to use. */
+  private static ByteBuffer chunkAt(ByteBuffer buffer, int start, int entrySize, int index) {
+    ByteBuffer chunk = buffer.duplicate().order(buffer.order());
+    chunk.position(start + index * entrySize);
+    return chunk;
   }
 
   /** Encapsulate the data in an ELF section header. */
@@ -65,6 +132,11 @@ public class ElfSymbolTable {
       this.st_size = st_size;
     }
 
+    /** @return the size of a symbol table entry in the given class of ELF file. */
+    static int getSize(ElfHeader.EIClass eiClass) {
+      return eiClass == ElfHeader.EIClass.ELFCLASS32 ? 16 : 24;
+    }
+
     /**
      * @return either a 32- or 64-bit ELF symbol table entry header parsed from the given buffer.
      */
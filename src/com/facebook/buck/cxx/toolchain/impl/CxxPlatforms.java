@@ -182,6 +182,7 @@ public class CxxPlatforms {
         config.getNm().<SymbolNameTool>map(PosixNmSymbolNameTool::new).orElse(nm));
 
     builder.setArchiveContents(config.getArchiveContents().orElse(archiveContents));
+    builder.setUseBuiltinArchiver(config.getUseBuiltinArchiver());
 
     builder.setSharedLibraryInterfaceParams(getSharedLibraryInterfaceParams(config, platform));
 
@@ -97,6 +97,10 @@ public class DistBuildConfig {
   private static final String MATERIALIZE_SOURCE_FILES_ON_DEMAND =
       "materialize_source_files_on_demand";
 
+  private static final String PIPELINE_SOURCE_FILE_PRELOAD = "pipeline_source_file_preload";
+  private static final String SOURCE_FILE_WRITER_THREADS = "source_file_writer_threads";
+  private static final int DEFAULT_SOURCE_FILE_WRITER_THREADS = 4;
+
   private static final String MAX_WAIT_FOR_REMOTE_LOGS_TO_BE_AVAILABLE_MILLIS =
       "max_wait_for_remote_logs_to_be_available_millis";
   private static final long DEFAULT_MAX_WAIT_FOR_REMOTE_LOGS_TO_BE_AVAILABLE_MILLIS =
@@ -182,6 +186,11 @@ public class DistBuildConfig {
   private static final String ENABLE_RELEASING_MINIONS_EARLY = "enable_releasing_minions_early";
   private static final boolean DEFAULT_ENABLE_RELEASING_MINIONS_EARLY = true;
 
+  private static final String ENABLE_CRITICAL_PATH_SCHEDULING = "enable_critical_path_scheduling";
+  private static final boolean DEFAULT_ENABLE_CRITICAL_PATH_SCHEDULING = false;
+
+  private static final String TARGET_DURATION_HISTORY_FILE = "target_duration_history_file";
+
   /**
    * While the experiments.stampede_beta_test flag is set to true, this flag can be used to
    * configure whether we want auto-stampede conversion for all builds, no builds, or some builds.
@@ -261,6 +270,21 @@ public class DistBuildConfig {
     return buckConfig.getBooleanValue(STAMPEDE_SECTION, MATERIALIZE_SOURCE_FILES_ON_DEMAND, false);
   }
 
+  /**
+   * Whether source files should be pre-loaded while the target graph is being deserialized, instead
+   * of before it.
+   */
+  public boolean isSourceFilePreloadPipelined() {
+    return buckConfig.getBooleanValue(STAMPEDE_SECTION, PIPELINE_SOURCE_FILE_PRELOAD, false);
+  }
+
+  /** @return the number of threads that write fetched source files to disk. */
+  public int getSourceFileWriterThreadCount() {
+    return buckConfig
+        .getInteger(STAMPEDE_SECTION, SOURCE_FILE_WRITER_THREADS)
+        .orElse(DEFAULT_SOURCE_FILE_WRITER_THREADS);
+  }
+
   public Optional<ImmutableList<String>> getOptionalPathWhitelist() {
     // Can't use getOptionalPathList here because sparse checkouts may mean we don't have all files
     // in other cells.
@@ -648,4 +672,18 @@ public class DistBuildConfig {
     return buckConfig.getBooleanValue(
         STAMPEDE_SECTION, ENABLE_RELEASING_MINIONS_EARLY, DEFAULT_ENABLE_RELEASING_MINIONS_EARLY);
   }
+
+  /**
+   * @return whether the coordinator should hand out the targets with the longest estimated path to
+   *     the top of the graph first, and give the work units of slow minions to idle ones
+   */
+  public boolean isCriticalPathSchedulingEnabled() {
+    return buckConfig.getBooleanValue(
+        STAMPEDE_SECTION, ENABLE_CRITICAL_PATH_SCHEDULING, DEFAULT_ENABLE_CRITICAL_PATH_SCHEDULING);
+  }
+
+  /** @return file in which the coordinator keeps how long each target took to build */
+  public Optional<Path> getTargetDurationHistoryFile() {
+    return buckConfig.getPath(STAMPEDE_SECTION, TARGET_DURATION_HISTORY_FILE);
+  }
 }
@@ -54,9 +54,11 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Supplier;
 import org.pf4j.PluginManager;
 
@@ -67,6 +69,8 @@ public class DistBuildState {
   private final BuildJobState remoteState;
   private final ImmutableBiMap<Integer, Cell> cells;
   private final Map<ProjectFilesystem, BuildJobStateFileHashes> fileHashes;
+  private final List<MaterializerDummyFileHashCache> preloadingMaterializers =
+      new CopyOnWriteArrayList<>();
 
   private DistBuildState(BuildJobState remoteState, ImmutableBiMap<Integer, Cell> cells) {
     this.remoteState = remoteState;
@@ -296,6 +300,21 @@ public class DistBuildState {
       FileContentsProvider provider,
       ListeningExecutorService executorService)
       throws IOException {
+    ProjectFileHashCache materializer =
+        createMaterializerAndStartPreload(decoratedCache, provider, executorService);
+    waitForPreloadedFiles();
+    return materializer;
+  }
+
+  /**
+   * Same as {@link #createMaterializerAndPreload}, except that the files are written in the
+   * background. {@link #waitForPreloadedFiles()} must be called before the files are used.
+   */
+  public ProjectFileHashCache createMaterializerAndStartPreload(
+      ProjectFileHashCache decoratedCache,
+      FileContentsProvider provider,
+      ListeningExecutorService executorService)
+      throws IOException {
     BuildJobStateFileHashes remoteFileHashes = fileHashes.get(decoratedCache.getFilesystem());
     if (remoteFileHashes == null) {
       // Roots that have no BuildJobStateFileHashes are deemed as not being Cells and don't get
@@ -310,11 +329,20 @@ public class DistBuildState {
     // Create all symlinks and touch all other files.
     DistBuildConfig remoteConfig = new DistBuildConfig(getRootCell().getBuckConfig());
     boolean materializeAllFilesDuringPreload = !remoteConfig.materializeSourceFilesOnDemand();
-    materializer.preloadAllFiles(materializeAllFilesDuringPreload);
+    materializer.startPreloadingAllFiles(materializeAllFilesDuringPreload);
+    preloadingMaterializers.add(materializer);
 
     return materializer;
   }
 
+  /** Blocks until the files preloaded by all the materializers created so far are written. */
+  public void waitForPreloadedFiles() {
+    for (MaterializerDummyFileHashCache materializer : preloadingMaterializers) {
+      materializer.waitForPreloadedFiles();
+      preloadingMaterializers.remove(materializer);
+    }
+  }
+
   /** The RootCell of the Remote machine. */
   public BuckConfig getRemoteRootCellConfig() {
     return getRootCell().getBuckConfig();
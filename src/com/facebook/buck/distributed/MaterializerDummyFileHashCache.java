@@ -86,6 +86,16 @@ class MaterializerDummyFileHashCache implements ProjectFileHashCache {
    * doesn't read from file system.
    */
   public void preloadAllFiles(boolean materializeAllFiles) throws IOException {
+    startPreloadingAllFiles(materializeAllFiles);
+    waitForPreloadedFiles();
+  }
+
+  /**
+   * Same as {@link #preloadAllFiles(boolean)}, except that it returns as soon as the contents of
+   * the files have been requested, so that other work can go on while they are being written.
+   * Symlinks, directories and touched files are all in place when this returns.
+   */
+  public void startPreloadingAllFiles(boolean materializeAllFiles) throws IOException {
     for (Path absPath : remoteFileHashesByAbsPath.keySet()) {
       LOG.info("Preloading: [%s]", absPath.toString());
       BuildJobStateFileHashEntry fileHashEntry = remoteFileHashesByAbsPath.get(absPath);
@@ -127,7 +137,10 @@ class MaterializerDummyFileHashCache implements ProjectFileHashCache {
       projectFilesystem.createParentDirs(absPath);
       projectFilesystem.touch(absPath);
     }
+  }
 
+  /** Blocks until all the files whose materialization has been started are written. */
+  public void waitForPreloadedFiles() {
     try {
       getMaterializationFuturesAsList()
           .get(DEFAULT_PRELOAD_FILE_MATERIALIZATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
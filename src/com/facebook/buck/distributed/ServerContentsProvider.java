@@ -50,6 +50,7 @@ public class ServerContentsProvider implements FileContentsProvider {
   private final int multiFetchBufferMaxSize;
   private final FileMaterializationStatsTracker statsTracker;
   private final ListeningExecutorService networkThreadPool;
+  private final ListeningExecutorService fileWriteExecutor;
 
   private final Object multiFetchLock = new Object();
 
@@ -68,13 +69,37 @@ public class ServerContentsProvider implements FileContentsProvider {
       FileMaterializationStatsTracker statsTracker,
       Optional<Long> multiFetchBufferPeriodMs,
       OptionalInt multiFetchBufferMaxSize) {
+    this(
+        service,
+        networkScheduler,
+        networkThreadPool,
+        statsTracker,
+        multiFetchBufferPeriodMs,
+        multiFetchBufferMaxSize,
+        MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * @param fileWriteExecutor writes the files of a multi-fetch to disk in parallel, instead of one
+   *     after the other on the thread that completed the fetch. It is shut down when this provider
+   *     is closed.
+   */
+  public ServerContentsProvider(
+      DistBuildService service,
+      ScheduledExecutorService networkScheduler,
+      ListeningExecutorService networkThreadPool,
+      FileMaterializationStatsTracker statsTracker,
+      Optional<Long> multiFetchBufferPeriodMs,
+      OptionalInt multiFetchBufferMaxSize,
+      ListeningExecutorService fileWriteExecutor) {
     this(
         service,
         networkScheduler,
         networkThreadPool,
         statsTracker,
         multiFetchBufferPeriodMs.orElse(MULTI_FETCH_BUFFER_PERIOD_MS),
-        multiFetchBufferMaxSize.orElse(MULTI_FETCH_BUFFER_MAX_SIZE));
+        multiFetchBufferMaxSize.orElse(MULTI_FETCH_BUFFER_MAX_SIZE),
+        fileWriteExecutor);
   }
 
   public ServerContentsProvider(
@@ -84,10 +109,29 @@ public class ServerContentsProvider implements FileContentsProvider {
       FileMaterializationStatsTracker statsTracker,
       long multiFetchBufferPeriodMs,
       int multiFetchBufferMaxSize) {
+    this(
+        service,
+        networkScheduler,
+        networkThreadPool,
+        statsTracker,
+        multiFetchBufferPeriodMs,
+        multiFetchBufferMaxSize,
+        MoreExecutors.newDirectExecutorService());
+  }
+
+  public ServerContentsProvider(
+      DistBuildService service,
+      ScheduledExecutorService networkScheduler,
+      ListeningExecutorService networkThreadPool,
+      FileMaterializationStatsTracker statsTracker,
+      long multiFetchBufferPeriodMs,
+      int multiFetchBufferMaxSize,
+      ListeningExecutorService fileWriteExecutor) {
     this.service = service;
     this.multiFetchBufferMaxSize = multiFetchBufferMaxSize;
     this.statsTracker = statsTracker;
     this.networkThreadPool = networkThreadPool;
+    this.fileWriteExecutor = fileWriteExecutor;
 
     synchronized (multiFetchLock) {
       hashCodesToFetch = new HashSet<>();
@@ -104,6 +148,8 @@ public class ServerContentsProvider implements FileContentsProvider {
 
   @Override
   public void close() {
+    // Files that have already been fetched are still written.
+    fileWriteExecutor.shutdown();
     if (scheduledBufferProcessor.isCancelled() || scheduledBufferProcessor.isDone()) {
       return;
     }
@@ -212,6 +258,6 @@ public class ServerContentsProvider implements FileContentsProvider {
     return Futures.transform(
         fileFuture,
         (byte[] fileContents) -> writeFileContentsToPath(fileContents, targetAbsPath),
-        MoreExecutors.directExecutor());
+        fileWriteExecutor);
   }
 }
@@ -38,6 +38,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -313,6 +314,25 @@ public class CacheOptimizedBuildTargetsQueueFactory {
       Iterable<BuildTarget> targetsToBuild,
       CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
       int mostBuildRulesFinishedPercentageThreshold) {
+    return createBuildTargetsQueue(
+        targetsToBuild,
+        coordinatorBuildRuleEventsPublisher,
+        mostBuildRulesFinishedPercentageThreshold,
+        Optional.empty());
+  }
+
+  /**
+   * Create {@link BuildTargetsQueue} with the given parameters.
+   *
+   * @param targetsToBuild top-level targets that need to be built.
+   * @param durationEstimates if present, ready targets are handed out longest critical path first.
+   * @return an instance of {@link BuildTargetsQueue} with the top-level targets at the root.
+   */
+  public ReverseDepBuildTargetsQueue createBuildTargetsQueue(
+      Iterable<BuildTarget> targetsToBuild,
+      CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<TargetDurationEstimates> durationEstimates) {
     LOG.info("Starting to create the %s.", BuildTargetsQueue.class.getName());
     GraphTraversalData results = traverseGraphFromTopLevelUsingAvailableCaches(targetsToBuild);
 
@@ -386,7 +406,8 @@ public class CacheOptimizedBuildTargetsQueueFactory {
 
     return new ReverseDepBuildTargetsQueue(
         new DistributableBuildGraph(allNodes.build(), zeroDependencyNodes.build()),
-        mostBuildRulesFinishedPercentageThreshold);
+        mostBuildRulesFinishedPercentageThreshold,
+        durationEstimates);
   }
 
   private static String ruleToTarget(BuildRule rule) {
@@ -60,6 +60,7 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
   private final MinionCountProvider minionCountProvider;
   private final Optional<String> coordinatorMinionId;
   private final boolean releasingMinionsEarlyEnabled;
+  private final Optional<TargetDurationEstimates> durationEstimates;
 
   /** Constructor. */
   public CoordinatorModeRunner(
@@ -76,6 +77,44 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
       MinionCountProvider minionCountProvider,
       Optional<String> coordinatorMinionId,
       boolean releasingMinionsEarlyEnabled) {
+    this(
+        coordinatorPort,
+        queue,
+        stampedeId,
+        eventListener,
+        logDirectoryPath,
+        clientBuildId,
+        traceUploadUri,
+        coordinatorBuildRuleEventsPublisher,
+        distBuildService,
+        minionHealthTracker,
+        minionCountProvider,
+        coordinatorMinionId,
+        releasingMinionsEarlyEnabled,
+        Optional.empty());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param durationEstimates if present, used to schedule the critical path first, and updated
+   *     with the durations measured in this build, which are saved when the build is over.
+   */
+  public CoordinatorModeRunner(
+      OptionalInt coordinatorPort,
+      ListenableFuture<BuildTargetsQueue> queue,
+      StampedeId stampedeId,
+      EventListener eventListener,
+      Path logDirectoryPath,
+      Optional<BuildId> clientBuildId,
+      Optional<URI> traceUploadUri,
+      CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
+      DistBuildService distBuildService,
+      MinionHealthTracker minionHealthTracker,
+      MinionCountProvider minionCountProvider,
+      Optional<String> coordinatorMinionId,
+      boolean releasingMinionsEarlyEnabled,
+      Optional<TargetDurationEstimates> durationEstimates) {
     this.stampedeId = stampedeId;
     this.clientBuildId = clientBuildId;
     this.traceUploadUri = traceUploadUri;
@@ -90,6 +129,7 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
     this.minionCountProvider = minionCountProvider;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.durationEstimates = durationEstimates;
   }
 
   public CoordinatorModeRunner(
@@ -118,7 +158,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
         minionHealthTracker,
         minionCountProvider,
         coordinatorMinionId,
-        releasingMinionsEarlyEnabled);
+        releasingMinionsEarlyEnabled,
+        Optional.empty());
   }
 
   @Override
@@ -187,7 +228,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
                   distBuildService,
                   minionCountProvider,
                   coordinatorMinionId,
-                  releasingMinionsEarlyEnabled));
+                  releasingMinionsEarlyEnabled,
+                  durationEstimates));
       this.server.start();
       this.closer.register(
           service.addCallback("ReportCoordinatorAlive", createHeartbeatCallback()));
@@ -211,6 +253,18 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
 
       // TODO(shivanker): This should be async, but blocking the process from shutting down.
       dumpAndUploadChromeTrace();
+      saveTargetDurations();
+    }
+
+    private void saveTargetDurations() {
+      if (!durationEstimates.isPresent()) {
+        return;
+      }
+      try {
+        durationEstimates.get().save();
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to save the durations of the targets.");
+      }
     }
 
     private void dumpAndUploadChromeTrace() {
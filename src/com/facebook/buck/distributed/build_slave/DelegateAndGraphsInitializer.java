@@ -90,12 +90,20 @@ public class DelegateAndGraphsInitializer {
   }
 
   private DelegateAndGraphs createDelegateAndGraphs() throws InterruptedException {
+    // Deserializing the target graph doesn't read source files, so it can overlap with writing
+    // them. The action graph may check that they exist, so it waits for all of them.
+    boolean preloadInBackground = args.getDistBuildConfig().isSourceFilePreloadPipelined();
     LOG.info("Starting to preload source files.");
-    StackedFileHashCaches stackedCaches = createStackedFileHashesAndPreload();
-    LOG.info("Finished pre-loading source files.");
+    StackedFileHashCaches stackedCaches = createStackedFileHashesAndStartPreload();
+    if (!preloadInBackground) {
+      waitForPreloadedFiles();
+    }
     LOG.info("Starting to create the target graph.");
     TargetGraph targetGraph = createTargetGraph();
     LOG.info("Finished creating the target graph.");
+    if (preloadInBackground) {
+      waitForPreloadedFiles();
+    }
     LOG.info("Starting to create the action graph.");
     ActionGraphAndBuilder actionGraphAndBuilder = createActionGraphAndResolver(targetGraph);
     LOG.info("Finished creating the action graph.");
@@ -251,36 +259,42 @@ public class DelegateAndGraphsInitializer {
     }
   }
 
-  private StackedFileHashCaches createStackedFileHashesAndPreload() throws InterruptedException {
+  private StackedFileHashCaches createStackedFileHashesAndStartPreload()
+      throws InterruptedException {
     args.getTimingStatsTracker().startTimer(SlaveEvents.SOURCE_FILE_PRELOAD_TIME);
-    try {
-      StackedFileHashCache stackedFileHashCache = createStackOfDefaultFileHashCache();
-      // Used for rule key computations.
-      StackedFileHashCache remoteStackedFileHashCache =
-          stackedFileHashCache.newDecoratedFileHashCache(
-              cache -> args.getState().createRemoteFileHashCache(cache));
+    StackedFileHashCache stackedFileHashCache = createStackOfDefaultFileHashCache();
+    // Used for rule key computations.
+    StackedFileHashCache remoteStackedFileHashCache =
+        stackedFileHashCache.newDecoratedFileHashCache(
+            cache -> args.getState().createRemoteFileHashCache(cache));
 
-      // Used for the real build.
-      StackedFileHashCache materializingStackedFileHashCache =
-          stackedFileHashCache.newDecoratedFileHashCache(
-              cache -> {
-                try {
-                  return args.getState()
-                      .createMaterializerAndPreload(
-                          cache,
-                          args.getProvider(),
-                          Objects.requireNonNull(args.getExecutors().get(ExecutorPool.CPU)));
-                } catch (IOException exception) {
-                  throw new RuntimeException(
-                      String.format(
-                          "Failed to create the Materializer for file system [%s]",
-                          cache.getFilesystem()),
-                      exception);
-                }
-              });
+    // Used for the real build.
+    StackedFileHashCache materializingStackedFileHashCache =
+        stackedFileHashCache.newDecoratedFileHashCache(
+            cache -> {
+              try {
+                return args.getState()
+                    .createMaterializerAndStartPreload(
+                        cache,
+                        args.getProvider(),
+                        Objects.requireNonNull(args.getExecutors().get(ExecutorPool.CPU)));
+              } catch (IOException exception) {
+                throw new RuntimeException(
+                    String.format(
+                        "Failed to create the Materializer for file system [%s]",
+                        cache.getFilesystem()),
+                    exception);
+              }
+            });
 
-      return new StackedFileHashCaches(
-          remoteStackedFileHashCache, materializingStackedFileHashCache);
+    return new StackedFileHashCaches(
+        remoteStackedFileHashCache, materializingStackedFileHashCache);
+  }
+
+  private void waitForPreloadedFiles() {
+    try {
+      args.getState().waitForPreloadedFiles();
+      LOG.info("Finished pre-loading source files.");
     } finally {
       args.getTimingStatsTracker().stopTimer(SlaveEvents.SOURCE_FILE_PRELOAD_TIME);
     }
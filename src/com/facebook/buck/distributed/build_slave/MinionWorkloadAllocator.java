@@ -20,9 +20,12 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.distributed.thrift.CoordinatorBuildProgress;
 import com.facebook.buck.distributed.thrift.MinionType;
 import com.facebook.buck.distributed.thrift.WorkUnit;
+import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -37,10 +40,19 @@ import java.util.stream.Collectors;
 /**
  * Allocates and keeps track of what BuildTargetPaths are allocated to which Minions. This class is
  * thread safe.
+ *
+ * <p>With duration estimates, how long each target takes is measured from when it could start on
+ * its minion to when the minion reports it finished, and a minion with spare capacity and nothing
+ * else to do is given the work units that other minions take much longer than expected to build.
+ * The target is then built by whichever of the two minions gets to it first.
  */
 public class MinionWorkloadAllocator {
   private static final Logger LOG = Logger.get(MinionWorkloadAllocator.class);
 
+  // A work unit is slow when its next target has been waiting for longer than both of these.
+  static final long SLOW_WORK_UNIT_MIN_MILLIS = 30_000;
+  static final int SLOW_WORK_UNIT_ESTIMATE_MULTIPLIER = 3;
+
   private final BuildTargetsQueue queue;
   private final Set<String> nodesAssignedToMinions = new HashSet<>();
 
@@ -49,6 +61,13 @@ public class MinionWorkloadAllocator {
   // Maps each target to the work unit that contains it.
   private final Map<String, WorkUnit> workUnitsByTarget = new HashMap<>();
 
+  // Maps each target that is not finished yet to the minion its work unit is assigned to.
+  private final Map<String, String> minionIdsByTarget = new HashMap<>();
+  private final Map<String, Long> startMillisByTarget = new HashMap<>();
+  private final Set<String> finishedTargets = new HashSet<>();
+  // First targets of the work units that were taken from slow minions, as they are only taken once.
+  private final Set<String> targetsTakenFromSlowMinions = new HashSet<>();
+
   // These should be immediately re-assigned when capacity becomes available on other minions
   private Queue<WorkUnit> workUnitsFromFailedMinions = new LinkedList<>();
 
@@ -62,6 +81,8 @@ public class MinionWorkloadAllocator {
   private final boolean releasingMinionsEarlyEnabled;
 
   private final DistBuildTraceTracker chromeTraceTracker;
+  private final Optional<TargetDurationEstimates> durationEstimates;
+  private final Clock clock;
 
   /**
    * Result of updating allocation - indicates if minion should be now released (capacity no longer
@@ -86,10 +107,28 @@ public class MinionWorkloadAllocator {
       DistBuildTraceTracker chromeTraceTracker,
       Optional<String> coordinatorMinionId,
       boolean releasingMinionsEarlyEnabled) {
+    this(
+        queue,
+        chromeTraceTracker,
+        coordinatorMinionId,
+        releasingMinionsEarlyEnabled,
+        Optional.empty(),
+        new DefaultClock());
+  }
+
+  public MinionWorkloadAllocator(
+      BuildTargetsQueue queue,
+      DistBuildTraceTracker chromeTraceTracker,
+      Optional<String> coordinatorMinionId,
+      boolean releasingMinionsEarlyEnabled,
+      Optional<TargetDurationEstimates> durationEstimates,
+      Clock clock) {
     this.queue = queue;
     this.chromeTraceTracker = chromeTraceTracker;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.durationEstimates = durationEstimates;
+    this.clock = clock;
   }
 
   public synchronized boolean isBuildFinished() {
@@ -147,7 +186,8 @@ public class MinionWorkloadAllocator {
 
     Set<WorkUnit> workUnitsAllocatedToMinion =
         Objects.requireNonNull(workUnitsAssignedToMinions.get(minionId));
-    deallocateFinishedNodes(workUnitsAllocatedToMinion, finishedNodes);
+    // Targets of work units taken from slow minions may be reported by both minions.
+    List<String> newlyFinishedNodes = deallocateFinishedNodes(finishedNodes);
 
     // First try and re-allocate work units from any minions that have failed recently
     List<WorkUnit> newWorkUnitsForMinion =
@@ -156,17 +196,24 @@ public class MinionWorkloadAllocator {
     // For any remaining capacity on this minion, fetch new work units, if they exist.
     maxWorkUnitsToFetch -= newWorkUnitsForMinion.size();
     newWorkUnitsForMinion.addAll(
-        queue.dequeueZeroDependencyNodes(finishedNodes, maxWorkUnitsToFetch));
+        queue.dequeueZeroDependencyNodes(newlyFinishedNodes, maxWorkUnitsToFetch));
+
+    // If there is still nothing to do, help out the minions that are slow at their work.
+    if (durationEstimates.isPresent()) {
+      newWorkUnitsForMinion.addAll(
+          takeWorkUnitsFromSlowMinions(
+              minionId, maxWorkUnitsToFetch - newWorkUnitsForMinion.size()));
+    }
 
     List<String> newNodesForMinion =
-        allocateNewNodes(workUnitsAllocatedToMinion, newWorkUnitsForMinion);
+        allocateNewNodes(minionId, workUnitsAllocatedToMinion, newWorkUnitsForMinion);
 
     LOG.info(
         String.format(
             "Minion [%s] finished [%s] nodes, and fetched [%s] new nodes. "
                 + "Total nodes assigned to minions [%s]. Unscheduled zero dependency nodes? [%s]",
             minionId,
-            finishedNodes.size(),
+            newlyFinishedNodes.size(),
             newNodesForMinion.size(),
             nodesAssignedToMinions.size(),
             queue.hasReadyZeroDependencyNodes()));
@@ -187,7 +234,7 @@ public class MinionWorkloadAllocator {
     }
 
     minionFreeCapacities.put(minionId, maxWorkUnitsToFetch - result.newWorkUnitsForMinion.size());
-    chromeTraceTracker.updateWork(minionId, finishedNodes, result.newWorkUnitsForMinion);
+    chromeTraceTracker.updateWork(minionId, newlyFinishedNodes, result.newWorkUnitsForMinion);
     return result;
   }
 
@@ -265,15 +312,73 @@ public class MinionWorkloadAllocator {
     return reallocatedWorkUnits;
   }
 
+  /**
+   * Takes work units away from the minions that have been building them for much longer than
+   * expected, and gives them to the given minion, which has nothing else to do.
+   */
+  private List<WorkUnit> takeWorkUnitsFromSlowMinions(String minionId, int maxWorkUnits) {
+    List<WorkUnit> takenWorkUnits = new ArrayList<>();
+    if (maxWorkUnits <= 0 || minionTypesByMinionId.get(minionId) == MinionType.LOW_SPEC) {
+      return takenWorkUnits;
+    }
+
+    long nowMillis = clock.currentTimeMillis();
+    Map<WorkUnit, Long> overdueMillisByWorkUnit = new HashMap<>();
+    for (Map.Entry<String, Set<WorkUnit>> entry : workUnitsAssignedToMinions.entrySet()) {
+      if (entry.getKey().equals(minionId)) {
+        continue;
+      }
+      for (WorkUnit workUnit : entry.getValue()) {
+        String nextTarget = workUnit.getBuildTargets().get(0);
+        Long startMillis = startMillisByTarget.get(nextTarget);
+        if (startMillis == null || targetsTakenFromSlowMinions.contains(nextTarget)) {
+          continue;
+        }
+        long slowAfterMillis =
+            Math.max(
+                SLOW_WORK_UNIT_MIN_MILLIS,
+                SLOW_WORK_UNIT_ESTIMATE_MULTIPLIER
+                    * durationEstimates.get().getEstimatedDurationMillis(nextTarget));
+        long overdueMillis = nowMillis - startMillis - slowAfterMillis;
+        if (overdueMillis > 0) {
+          overdueMillisByWorkUnit.put(workUnit, overdueMillis);
+        }
+      }
+    }
+
+    overdueMillisByWorkUnit.entrySet().stream()
+        .sorted(Map.Entry.<WorkUnit, Long>comparingByValue(Comparator.reverseOrder()))
+        .limit(maxWorkUnits)
+        .forEach(entry -> takenWorkUnits.add(entry.getKey()));
+
+    for (WorkUnit workUnit : takenWorkUnits) {
+      String slowMinionId =
+          Objects.requireNonNull(minionIdsByTarget.get(workUnit.getBuildTargets().get(0)));
+      Preconditions.checkArgument(
+          Objects.requireNonNull(workUnitsAssignedToMinions.get(slowMinionId)).remove(workUnit));
+      targetsTakenFromSlowMinions.add(workUnit.getBuildTargets().get(0));
+      LOG.info(
+          String.format(
+              "Moving work unit with [%d] targets from slow minion [%s] to minion [%s].",
+              workUnit.getBuildTargets().size(), slowMinionId, minionId));
+    }
+
+    return takenWorkUnits;
+  }
+
   private List<String> allocateNewNodes(
-      Set<WorkUnit> workUnitsForMinion, List<WorkUnit> newWorkUnitsForMinion) {
+      String minionId, Set<WorkUnit> workUnitsForMinion, List<WorkUnit> newWorkUnitsForMinion) {
+    long nowMillis = clock.currentTimeMillis();
     List<String> nodesForMinion = new ArrayList<>();
     for (WorkUnit workUnit : newWorkUnitsForMinion) {
       nodesForMinion.addAll(workUnit.getBuildTargets());
 
       for (String node : workUnit.getBuildTargets()) {
         workUnitsByTarget.put(node, workUnit);
+        minionIdsByTarget.put(node, minionId);
       }
+      // Only the first target of the unit can start now, the others wait for the one before.
+      startMillisByTarget.put(workUnit.getBuildTargets().get(0), nowMillis);
     }
 
     workUnitsForMinion.addAll(newWorkUnitsForMinion);
@@ -281,16 +386,41 @@ public class MinionWorkloadAllocator {
     return nodesForMinion;
   }
 
-  private void deallocateFinishedNodes(
-      Set<WorkUnit> workUnitsForMinion, List<String> finishedNodes) {
-    nodesAssignedToMinions.removeAll(finishedNodes);
-
+  /** @return the given nodes, except for the ones that had already been reported as finished */
+  private List<String> deallocateFinishedNodes(List<String> finishedNodes) {
+    long nowMillis = clock.currentTimeMillis();
+    List<String> newlyFinishedNodes = new ArrayList<>(finishedNodes.size());
     for (String finishedNode : finishedNodes) {
+      if (!finishedTargets.add(finishedNode)) {
+        LOG.info(
+            String.format("Target [%s] has already been finished by another minion", finishedNode));
+        continue;
+      }
+      newlyFinishedNodes.add(finishedNode);
+      nodesAssignedToMinions.remove(finishedNode);
+
+      Long startMillis = startMillisByTarget.remove(finishedNode);
+      if (startMillis != null && durationEstimates.isPresent()) {
+        durationEstimates.get().recordDuration(finishedNode, nowMillis - startMillis);
+      }
+
       if (!workUnitsByTarget.containsKey(finishedNode)) {
         LOG.error(String.format("No work unit could be found for target [%s]", finishedNode));
         continue;
       }
       WorkUnit workUnitForNode = workUnitsByTarget.get(finishedNode);
+      String assignedMinionId = minionIdsByTarget.remove(finishedNode);
+      Set<WorkUnit> workUnitsForMinion =
+          assignedMinionId == null ? null : workUnitsAssignedToMinions.get(assignedMinionId);
+      if (workUnitsForMinion == null) {
+        // The work unit was taken from a slow minion by one that failed since, so the unit is
+        // waiting to be re-allocated, and the slow minion has just finished a target of it.
+        workUnitForNode.getBuildTargets().remove(finishedNode);
+        if (workUnitForNode.getBuildTargets().isEmpty()) {
+          workUnitsFromFailedMinions.removeIf(workUnit -> workUnit == workUnitForNode);
+        }
+        continue;
+      }
 
       // Important: workUnitForNode must be removed from workUnitsForMinion Set before we modify
       // workUnitForNode, as after modification its hashCode/equals properties will have changed.
@@ -300,7 +430,9 @@ public class MinionWorkloadAllocator {
       if (workUnitForNode.getBuildTargets().size() > 0) {
         // Work unit still has items remaining, so re-add it to Set (using new hashCode)
         workUnitsForMinion.add(workUnitForNode);
+        startMillisByTarget.putIfAbsent(workUnitForNode.getBuildTargets().get(0), nowMillis);
       }
     }
+    return newlyFinishedNodes;
   }
 }
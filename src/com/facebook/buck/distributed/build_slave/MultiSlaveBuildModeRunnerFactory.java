@@ -80,6 +80,11 @@ public class MultiSlaveBuildModeRunnerFactory {
       Optional<BuildSlaveTimingStatsTracker> timingStatsTracker,
       Optional<String> coordinatorMinionId) {
 
+    Optional<TargetDurationEstimates> durationEstimates =
+        distBuildConfig.isCriticalPathSchedulingEnabled()
+            ? Optional.of(
+                TargetDurationEstimates.load(distBuildConfig.getTargetDurationHistoryFile()))
+            : Optional.empty();
     ListenableFuture<BuildTargetsQueue> queueFuture =
         Futures.transformAsync(
             asyncRuleKeyCalculator,
@@ -108,7 +113,8 @@ public class MultiSlaveBuildModeRunnerFactory {
                                 .createBuildTargetsQueue(
                                     topLevelTargetsToBuild,
                                     coordinatorBuildRuleEventsPublisher,
-                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold());
+                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold(),
+                                    durationEstimates);
                       } catch (Exception e) {
                         LOG.error(e, "Failed to create BuildTargetsQueue.");
                         throw new RuntimeException(e);
@@ -151,18 +157,20 @@ public class MultiSlaveBuildModeRunnerFactory {
     Optional<URI> traceUploadUri = chromeTraceBuckConfig.getTraceUploadUriIfEnabled();
 
     return new CoordinatorModeRunner(
+        OptionalInt.empty(),
         queueFuture,
         stampedeId,
         listenerAndMinionCountProvider,
         logDirectoryPath,
-        coordinatorBuildRuleEventsPublisher,
-        distBuildService,
         clientBuildId,
         traceUploadUri,
+        coordinatorBuildRuleEventsPublisher,
+        distBuildService,
         minionHealthTracker,
         listenerAndMinionCountProvider,
         coordinatorMinionId,
-        distBuildConfig.isReleasingMinionsEarlyEnabled());
+        distBuildConfig.isReleasingMinionsEarlyEnabled(),
+        durationEstimates);
   }
 
   /**
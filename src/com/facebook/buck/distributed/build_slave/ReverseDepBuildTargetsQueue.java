@@ -20,15 +20,21 @@ import com.facebook.buck.distributed.build_slave.DistributableBuildGraph.Distrib
 import com.facebook.buck.distributed.thrift.CoordinatorBuildProgress;
 import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.log.TimedLogger;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -37,6 +43,11 @@ import java.util.stream.Collectors;
 public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   private static final TimedLogger LOG =
       new TimedLogger(Logger.get(ReverseDepBuildTargetsQueue.class));
+
+  // Critical paths are computed again once durations have been recorded for this percentage of
+  // the targets in the graph since they were last computed.
+  private static final int CRITICAL_PATH_UPDATE_PERCENTAGE = 10;
+
   private final DistributableBuildGraph distributableBuildGraph;
   private final int totalCacheableNodes;
   private final int mostBuildRulesFinishedPercentageThreshold;
@@ -49,11 +60,26 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   private int totalBuiltCount = 0;
   private int skippedUncacheablesCount = 0;
 
+  // When present, ready targets are scheduled longest critical path first.
+  private final Optional<TargetDurationEstimates> durationEstimates;
+  private final Map<String, Long> criticalPathMillisByTarget = new HashMap<>();
+  private final List<DistributableNode> nodesInReverseTopologicalOrder = new ArrayList<>();
+  private final long criticalPathUpdateInterval;
+  private long criticalPathRecordedDurationsCount;
+
   ReverseDepBuildTargetsQueue(
       DistributableBuildGraph distributableBuildGraph,
       int mostBuildRulesFinishedPercentageThreshold) {
+    this(distributableBuildGraph, mostBuildRulesFinishedPercentageThreshold, Optional.empty());
+  }
+
+  ReverseDepBuildTargetsQueue(
+      DistributableBuildGraph distributableBuildGraph,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<TargetDurationEstimates> durationEstimates) {
     this.distributableBuildGraph = distributableBuildGraph;
     this.mostBuildRulesFinishedPercentageThreshold = mostBuildRulesFinishedPercentageThreshold;
+    this.durationEstimates = durationEstimates;
 
     this.zeroDependencyTargets =
         distributableBuildGraph.leafNodes.stream()
@@ -65,6 +91,12 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
             .map(DistributableNode::getTargetName)
             .collect(Collectors.toSet());
     totalCacheableNodes = distributableBuildGraph.getNumberOfCacheableNodes();
+    this.criticalPathUpdateInterval =
+        Math.max(1, distributableBuildGraph.size() * CRITICAL_PATH_UPDATE_PERCENTAGE / 100);
+    if (durationEstimates.isPresent()) {
+      sortNodesInReverseTopologicalOrder();
+      computeCriticalPaths();
+    }
 
     LOG.verbose(
         String.format(
@@ -123,7 +155,7 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
 
     List<WorkUnit> newUnitsOfWork = new ArrayList<>();
     createWorkUnitsStartingAtNodes(
-        new HashSet<>(zeroDependencyTargets), newUnitsOfWork, maxUnitsOfWork);
+        getZeroDependencyTargetsInSchedulingOrder(), newUnitsOfWork, maxUnitsOfWork);
 
     if (newUnitsOfWork.size() > 0) {
       LOG.info(String.format("Returning [%s] work units", newUnitsOfWork.size()));
@@ -215,8 +247,91 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
     }
   }
 
+  /**
+   * Without duration estimates, ready targets are scheduled in no particular order. With them, the
+   * targets with the longest estimated path to the top of the graph go first, as the build can't
+   * finish sooner than it takes to build those paths.
+   */
+  private Collection<String> getZeroDependencyTargetsInSchedulingOrder() {
+    Set<String> targets = new HashSet<>(zeroDependencyTargets);
+    if (!durationEstimates.isPresent()) {
+      return targets;
+    }
+
+    // Updated once up front, so that the paths can't change while sorting.
+    updateCriticalPathsIfStale();
+    Comparator<String> longestPathFirst =
+        Comparator.comparingLong(target -> -criticalPathMillisByTarget.get(target));
+    return targets.stream()
+        .sorted(longestPathFirst.thenComparing(Comparator.naturalOrder()))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @return estimated time it takes to build the target and, one after the other, the slowest
+   *     chain of targets that depend on it
+   */
+  @VisibleForTesting
+  long getCriticalPathMillis(DistributableNode node) {
+    updateCriticalPathsIfStale();
+    return criticalPathMillisByTarget.get(node.getTargetName());
+  }
+
+  /**
+   * Every recorded duration changes the estimates of the targets that haven't been built before,
+   * so all the critical paths are computed again, but only once enough durations have been
+   * recorded for it to be worth walking the whole graph.
+   */
+  private void updateCriticalPathsIfStale() {
+    long recordedDurationsCount = durationEstimates.get().getRecordedDurationsCount();
+    if (recordedDurationsCount - criticalPathRecordedDurationsCount
+        >= criticalPathUpdateInterval) {
+      computeCriticalPaths();
+    }
+  }
+
+  /** Orders the nodes so that every node comes after all the nodes that depend on it. */
+  private void sortNodesInReverseTopologicalOrder() {
+    Map<String, Integer> dependentsRemaining = new HashMap<>();
+    Queue<DistributableNode> nodesToVisit = new LinkedList<>();
+    for (DistributableNode leafNode : distributableBuildGraph.leafNodes) {
+      nodesToVisit.add(leafNode);
+    }
+    List<DistributableNode> topologicalOrder = new ArrayList<>(distributableBuildGraph.size());
+    while (!nodesToVisit.isEmpty()) {
+      DistributableNode node = nodesToVisit.remove();
+      topologicalOrder.add(node);
+      for (String dependent : node.dependentTargets) {
+        DistributableNode dependentNode = distributableBuildGraph.getNode(dependent);
+        int remaining =
+            dependentsRemaining.getOrDefault(dependent, dependentNode.allDependencies.size()) - 1;
+        dependentsRemaining.put(dependent, remaining);
+        if (remaining == 0) {
+          nodesToVisit.add(dependentNode);
+        }
+      }
+    }
+    nodesInReverseTopologicalOrder.addAll(Lists.reverse(topologicalOrder));
+  }
+
+  private void computeCriticalPaths() {
+    TargetDurationEstimates estimates = durationEstimates.get();
+    // Read first, so that durations recorded while computing count towards the next update.
+    criticalPathRecordedDurationsCount = estimates.getRecordedDurationsCount();
+    for (DistributableNode node : nodesInReverseTopologicalOrder) {
+      long longestDependentPathMillis = 0;
+      for (String dependent : node.dependentTargets) {
+        longestDependentPathMillis =
+            Math.max(longestDependentPathMillis, criticalPathMillisByTarget.get(dependent));
+      }
+      criticalPathMillisByTarget.put(
+          node.getTargetName(),
+          estimates.getEstimatedDurationMillis(node.getTargetName()) + longestDependentPathMillis);
+    }
+  }
+
   private void createWorkUnitsStartingAtNodes(
-      Set<String> nodes, List<WorkUnit> newUnitsOfWork, int maxUnitsOfWork) {
+      Collection<String> nodes, List<WorkUnit> newUnitsOfWork, int maxUnitsOfWork) {
     for (String node : nodes) {
       if (newUnitsOfWork.size() >= maxUnitsOfWork) {
         return;
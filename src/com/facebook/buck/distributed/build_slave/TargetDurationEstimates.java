@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * How long each target is expected to take to build, based on how long it took in earlier builds
+ * and on how long it has taken in this build so far. Used by the coordinator to build the targets
+ * on the critical path first and to notice minions that are slow at building their work units.
+ *
+ * <p>The history is kept in a file with one target and its duration in milliseconds per line. The
+ * durations measured in this build replace the ones from earlier builds when the history is saved.
+ */
+public class TargetDurationEstimates {
+  private static final Logger LOG = Logger.get(TargetDurationEstimates.class);
+
+  /** Used for every target while nothing has been measured yet. */
+  static final long DEFAULT_DURATION_MILLIS = 1;
+
+  private static final String SEPARATOR = "\t";
+
+  private final Optional<Path> historyFile;
+  private final Map<String, Long> durationsMillis;
+  private long totalDurationMillis = 0;
+  private long recordedDurationsCount = 0;
+
+  public TargetDurationEstimates(Optional<Path> historyFile, Map<String, Long> durationsMillis) {
+    this.historyFile = historyFile;
+    this.durationsMillis = new HashMap<>();
+    durationsMillis.forEach(this::recordDuration);
+  }
+
+  /** @return estimates without any history, which can only learn from the current build */
+  public static TargetDurationEstimates empty() {
+    return new TargetDurationEstimates(Optional.empty(), ImmutableMap.of());
+  }
+
+  /**
+   * Reads the durations from the history file, if there is one. A missing or unreadable history
+   * only means that the targets are scheduled without knowing how long they take.
+   */
+  public static TargetDurationEstimates load(Optional<Path> historyFile) {
+    Map<String, Long> durationsMillis = new HashMap<>();
+    if (historyFile.isPresent() && Files.isRegularFile(historyFile.get())) {
+      try {
+        for (String line : Files.readAllLines(historyFile.get(), StandardCharsets.UTF_8)) {
+          int separator = line.lastIndexOf(SEPARATOR);
+          if (separator <= 0) {
+            continue;
+          }
+          try {
+            durationsMillis.put(
+                line.substring(0, separator), Long.parseLong(line.substring(separator + 1)));
+          } catch (NumberFormatException e) {
+            LOG.warn("Ignoring malformed line [%s] of [%s].", line, historyFile.get());
+          }
+        }
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to read target durations from [%s].", historyFile.get());
+      }
+    }
+    LOG.info("Loaded durations of [%d] targets.", durationsMillis.size());
+    return new TargetDurationEstimates(historyFile, durationsMillis);
+  }
+
+  /** Records how long the target took to build, replacing any earlier duration. */
+  public synchronized void recordDuration(String target, long durationMillis) {
+    if (durationMillis < 0) {
+      return;
+    }
+    Long previousDurationMillis = durationsMillis.put(target, durationMillis);
+    if (previousDurationMillis != null) {
+      totalDurationMillis -= previousDurationMillis;
+    }
+    totalDurationMillis += durationMillis;
+    recordedDurationsCount++;
+  }
+
+  /** @return how many durations have been recorded, including the ones loaded from the history */
+  public synchronized long getRecordedDurationsCount() {
+    return recordedDurationsCount;
+  }
+
+  /**
+   * @return how long the target took the last time it was built or, for targets that have never
+   *     been built, the average duration of the targets that have
+   */
+  public synchronized long getEstimatedDurationMillis(String target) {
+    Long durationMillis = durationsMillis.get(target);
+    if (durationMillis != null) {
+      return durationMillis;
+    }
+    if (durationsMillis.isEmpty()) {
+      return DEFAULT_DURATION_MILLIS;
+    }
+    return Math.max(DEFAULT_DURATION_MILLIS, totalDurationMillis / durationsMillis.size());
+  }
+
+  public synchronized ImmutableMap<String, Long> getDurationsMillis() {
+    return ImmutableMap.copyOf(durationsMillis);
+  }
+
+  /** Writes all the durations to the history file, if there is one. */
+  public void save() throws IOException {
+    if (!historyFile.isPresent()) {
+      return;
+    }
+    List<String> lines = new ArrayList<>();
+    getDurationsMillis().forEach((target, millis) -> lines.add(target + SEPARATOR + millis));
+
+    Path file = historyFile.get();
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(tempFile, lines, StandardCharsets.UTF_8);
+    Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    LOG.info("Saved durations of [%d] targets to [%s].", lines.size(), file);
+  }
+}
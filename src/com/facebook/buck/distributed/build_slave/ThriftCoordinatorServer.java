@@ -33,6 +33,7 @@ import com.facebook.buck.distributed.thrift.ReportMinionAliveResponse;
 import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.log.TimedLogger;
 import com.facebook.buck.slb.ThriftException;
+import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -131,6 +132,7 @@ public class ThriftCoordinatorServer implements Closeable {
   private final MinionCountProvider minionCountProvider;
   private final Optional<String> coordinatorMinionId;
   private final boolean releasingMinionsEarlyEnabled;
+  private final Optional<TargetDurationEstimates> durationEstimates;
   private final Set<String> deadMinions;
 
   private volatile OptionalInt port;
@@ -152,6 +154,32 @@ public class ThriftCoordinatorServer implements Closeable {
       MinionCountProvider minionCountProvider,
       Optional<String> coordinatorMinionId,
       boolean releasingMinionsEarlyEnabled) {
+    this(
+        port,
+        queue,
+        stampedeId,
+        eventListener,
+        coordinatorBuildRuleEventsPublisher,
+        minionHealthTracker,
+        distBuildService,
+        minionCountProvider,
+        coordinatorMinionId,
+        releasingMinionsEarlyEnabled,
+        Optional.empty());
+  }
+
+  public ThriftCoordinatorServer(
+      OptionalInt port,
+      ListenableFuture<BuildTargetsQueue> queue,
+      StampedeId stampedeId,
+      EventListener eventListener,
+      CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
+      MinionHealthTracker minionHealthTracker,
+      DistBuildService distBuildService,
+      MinionCountProvider minionCountProvider,
+      Optional<String> coordinatorMinionId,
+      boolean releasingMinionsEarlyEnabled,
+      Optional<TargetDurationEstimates> durationEstimates) {
     this.eventListener = eventListener;
     this.stampedeId = stampedeId;
     this.coordinatorBuildRuleEventsPublisher = coordinatorBuildRuleEventsPublisher;
@@ -160,6 +188,7 @@ public class ThriftCoordinatorServer implements Closeable {
     this.minionCountProvider = minionCountProvider;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.durationEstimates = durationEstimates;
     this.lock = new Object();
     this.exitCodeFuture = new CompletableFuture<>();
     this.chromeTraceTracker = new DistBuildTraceTracker(stampedeId);
@@ -339,7 +368,12 @@ public class ThriftCoordinatorServer implements Closeable {
       chromeTraceTracker.setBuildGraph(queue.getDistributableBuildGraph());
       allocator =
           new MinionWorkloadAllocator(
-              queue, chromeTraceTracker, coordinatorMinionId, releasingMinionsEarlyEnabled);
+              queue,
+              chromeTraceTracker,
+              coordinatorMinionId,
+              releasingMinionsEarlyEnabled,
+              durationEstimates,
+              new DefaultClock());
       this.handler =
           new ActiveCoordinatorService(
               allocator, exitCodeFuture, coordinatorBuildRuleEventsPublisher, minionHealthTracker);
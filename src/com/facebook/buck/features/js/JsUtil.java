@@ -112,6 +112,9 @@ public class JsUtil {
                 tool.getCommandPrefix(pathResolver),
                 tool.getEnvironment(pathResolver),
                 worker.getMaxWorkers(),
+                worker.getMaxJobsPerWorker(),
+                worker.getIdleTimeoutMillis(),
+                worker.getMaxResidentMemoryBytes(),
                 worker.isPersistent()
                     ? Optional.of(
                         WorkerProcessIdentity.of(
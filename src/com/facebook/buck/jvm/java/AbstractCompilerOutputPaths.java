@@ -77,6 +77,15 @@ abstract class AbstractCompilerOutputPaths {
     return CompilerOutputPaths.of(target, filesystem).getClassesDir();
   }
 
+  /**
+   * The directory in which incremental compilation keeps the class files and the state of the last
+   * compilation. It is not an output of the library, so it survives its next build.
+   */
+  public static Path getIncrementalCompilationStateDir(
+      BuildTarget target, ProjectFilesystem filesystem) {
+    return getClassesDir(target, filesystem).resolveSibling("incremental");
+  }
+
   public static Path getOutputJarDirPath(BuildTarget target, ProjectFilesystem filesystem) {
     return CompilerOutputPaths.of(target, filesystem).getOutputJarDirPath();
   }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.collect.ImmutableSortedMap;
+import org.immutables.value.Value;
+
+/**
+ * Everything {@link IncrementalJavaCompiler} remembers about the last compilation of a library, so
+ * that the next one only needs to recompile the source files it affects.
+ */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonDeserialize(as = IncrementalCompilationState.class)
+abstract class AbstractIncrementalCompilationState {
+
+  /** Bumped whenever the format or the meaning of the state changes. */
+  static final int CURRENT_VERSION = 2;
+
+  @JsonProperty("version")
+  public abstract int getVersion();
+
+  /** A hash of the compiler, its options and the classpath the library was compiled with. */
+  @JsonProperty("configuration")
+  public abstract String getConfiguration();
+
+  /** The hashes of the contents of the jars on the classpath, by absolute path. */
+  @JsonProperty("jarHashes")
+  public abstract ImmutableSortedMap<String, String> getJarHashes();
+
+  /**
+   * Hashes of the names and compile-time constants of the classes in the jars on the classpath, by
+   * absolute path.
+   */
+  @JsonProperty("jarStructures")
+  public abstract ImmutableSortedMap<String, String> getJarStructures();
+
+  /** By path of the source file relative to the project root. */
+  @JsonProperty("sources")
+  public abstract ImmutableSortedMap<String, IncrementalSourceState> getSources();
+
+  /**
+   * The fingerprints of the ABIs of all classes used by the library, including the ABIs of their
+   * supertypes, by internal name.
+   */
+  @JsonProperty("fingerprints")
+  public abstract ImmutableSortedMap<String, String> getFingerprints();
+}
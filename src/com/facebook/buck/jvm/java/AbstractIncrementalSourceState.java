@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.common.collect.ImmutableSortedSet;
+import org.immutables.value.Value;
+
+/** What the last compilation of a library produced from one of its source files. */
+@Value.Immutable
+@BuckStyleImmutable
+@JsonDeserialize(as = IncrementalSourceState.class)
+abstract class AbstractIncrementalSourceState {
+
+  /** The hash of the contents of the source file. */
+  @Value.Parameter
+  @JsonProperty("hash")
+  public abstract String getHash();
+
+  /** The internal names of the classes compiled from the source file. */
+  @Value.Parameter
+  @JsonProperty("classes")
+  public abstract ImmutableSortedSet<String> getClasses();
+
+  /**
+   * A hash of the names and compile-time constants of the classes compiled from the source file.
+   * Other source files can depend on these without referring to the classes in their class files.
+   */
+  @Value.Parameter
+  @JsonProperty("structure")
+  public abstract String getStructure();
+
+  /**
+   * Whether the classes compiled from the source file declare non-private compile-time constants.
+   * Changes to such a source file compile all source files right away, since the constants may
+   * have changed and their uses cannot be traced.
+   */
+  @Value.Parameter
+  @JsonProperty("declaresConstants")
+  public abstract boolean getDeclaresConstants();
+
+  /**
+   * The internal names of the classes of the library and of its classpath that the classes
+   * compiled from the source file refer to.
+   */
+  @Value.Parameter
+  @JsonProperty("uses")
+  public abstract ImmutableSortedSet<String> getUses();
+}
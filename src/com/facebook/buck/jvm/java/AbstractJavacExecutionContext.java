@@ -50,4 +50,7 @@ abstract class AbstractJavacExecutionContext {
   public abstract ImmutableMap<String, String> getEnvironment();
 
   public abstract ProcessExecutor getProcessExecutor();
+
+  /** Whether in-process javac reads classpath jars through the {@link SharedClasspathCache}. */
+  public abstract boolean shouldUseSharedClasspathCache();
 }
@@ -130,6 +130,27 @@ abstract class AbstractJavacOptions implements AddsToRuleKey {
     return false;
   }
 
+  /**
+   * Whether java libraries only recompile the source files affected by the changes since their
+   * last compilation. The output is the same as for a full compilation, so this is not part of
+   * rule keys.
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  protected boolean compileIncrementally() {
+    return false;
+  }
+
+  /**
+   * Whether in-process javac reads classpath jars through a cache shared by all the compilations in
+   * the process. This does not change the output, so it is not part of rule keys.
+   */
+  @Value.Default
+  @CustomFieldBehavior(DefaultFieldSerialization.class)
+  protected boolean useSharedClasspathCache() {
+    return false;
+  }
+
   public void validateOptions(Function<String, Boolean> classpathChecker) throws IOException {
     if (getBootclasspath().isPresent()) {
       String bootclasspath = getBootclasspath().get();
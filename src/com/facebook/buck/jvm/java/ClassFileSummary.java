@@ -0,0 +1,304 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * What incremental compilation needs to know about a class file: where it came from, which classes
+ * it refers to and fingerprints of the parts of it that other classes can depend on.
+ */
+final class ClassFileSummary {
+
+  private final String name;
+  @Nullable private final String sourceFile;
+  @Nullable private final String superName;
+  private final ImmutableList<String> interfaces;
+  private final boolean isLocalOrAnonymous;
+  private final ImmutableSortedSet<String> referencedClasses;
+  private final HashCode abiHash;
+  private final HashCode constantsHash;
+  private final boolean declaresConstants;
+
+  private ClassFileSummary(
+      String name,
+      @Nullable String sourceFile,
+      @Nullable String superName,
+      ImmutableList<String> interfaces,
+      boolean isLocalOrAnonymous,
+      ImmutableSortedSet<String> referencedClasses,
+      HashCode abiHash,
+      HashCode constantsHash,
+      boolean declaresConstants) {
+    this.name = name;
+    this.sourceFile = sourceFile;
+    this.superName = superName;
+    this.interfaces = interfaces;
+    this.isLocalOrAnonymous = isLocalOrAnonymous;
+    this.referencedClasses = referencedClasses;
+    this.abiHash = abiHash;
+    this.constantsHash = constantsHash;
+    this.declaresConstants = declaresConstants;
+  }
+
+  static ClassFileSummary read(byte[] classFile) {
+    Set<String> referencedClasses = new HashSet<>();
+    ClassNode classNode = new ClassNode(Opcodes.ASM7);
+    // Remapping every name to itself is the simplest way to see every class name in descriptors,
+    // signatures, annotations and instructions.
+    new ClassReader(classFile)
+        .accept(
+            new ClassRemapper(
+                classNode,
+                new Remapper() {
+                  @Override
+                  public String map(String internalName) {
+                    referencedClasses.add(internalName);
+                    return internalName;
+                  }
+                }),
+            ClassReader.SKIP_FRAMES);
+    referencedClasses.remove(classNode.name);
+
+    boolean isLocalOrAnonymous = false;
+    for (InnerClassNode innerClass : classNode.innerClasses) {
+      if (innerClass.name.equals(classNode.name) && innerClass.outerName == null) {
+        isLocalOrAnonymous = true;
+      }
+    }
+
+    return new ClassFileSummary(
+        classNode.name,
+        classNode.sourceFile,
+        classNode.superName,
+        ImmutableList.copyOf(classNode.interfaces),
+        isLocalOrAnonymous,
+        ImmutableSortedSet.copyOf(referencedClasses),
+        hashAbi(classNode),
+        hashConstants(classNode),
+        classNode.fields.stream().anyMatch(ClassFileSummary::isConstant));
+  }
+
+  /** @return the internal name of the class, such as {@code com/example/Foo$Bar} */
+  String getName() {
+    return name;
+  }
+
+  /** @return the name of the source file the class was compiled from, without its directory */
+  @Nullable
+  String getSourceFile() {
+    return sourceFile;
+  }
+
+  /** @return the internal names of the superclass and the implemented interfaces */
+  ImmutableList<String> getSupertypes() {
+    if (superName == null) {
+      return interfaces;
+    }
+    return ImmutableList.<String>builder().add(superName).addAll(interfaces).build();
+  }
+
+  /** Local and anonymous classes cannot be referred to from other source files. */
+  boolean isLocalOrAnonymous() {
+    return isLocalOrAnonymous;
+  }
+
+  /** @return the internal names of all other classes the class file refers to */
+  ImmutableSortedSet<String> getReferencedClasses() {
+    return referencedClasses;
+  }
+
+  /**
+   * @return a hash of the declaration of the class and of its non-private members, ignoring their
+   *     implementation
+   */
+  HashCode getAbiHash() {
+    return abiHash;
+  }
+
+  /**
+   * @return a hash of the values of the non-private compile-time constants of the class. Uses of
+   *     these constants are inlined by javac and cannot be seen in the class files using them.
+   */
+  HashCode getConstantsHash() {
+    return constantsHash;
+  }
+
+  /** @return whether the class declares non-private compile-time constants */
+  boolean declaresConstants() {
+    return declaresConstants;
+  }
+
+  private static HashCode hashAbi(ClassNode classNode) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putInt(classNode.access & ~Opcodes.ACC_SUPER);
+    putString(hasher, classNode.name);
+    putString(hasher, classNode.signature);
+    putString(hasher, classNode.superName);
+    hasher.putInt(classNode.interfaces.size());
+    classNode.interfaces.forEach(interfaceName -> putString(hasher, interfaceName));
+    putAnnotations(hasher, classNode.visibleAnnotations);
+    putAnnotations(hasher, classNode.invisibleAnnotations);
+
+    // Only the entries describing this class and its member classes are part of its API; the other
+    // entries just list the nested classes that the class file happens to refer to.
+    List<InnerClassNode> innerClasses = new ArrayList<>();
+    for (InnerClassNode innerClass : classNode.innerClasses) {
+      if (innerClass.name.equals(classNode.name) || classNode.name.equals(innerClass.outerName)) {
+        innerClasses.add(innerClass);
+      }
+    }
+    innerClasses.sort(Comparator.comparing(innerClass -> innerClass.name));
+    hasher.putInt(innerClasses.size());
+    for (InnerClassNode innerClass : innerClasses) {
+      putString(hasher, innerClass.name);
+      putString(hasher, innerClass.outerName);
+      putString(hasher, innerClass.innerName);
+      hasher.putInt(innerClass.access);
+    }
+
+    List<FieldNode> fields = new ArrayList<>();
+    for (FieldNode field : classNode.fields) {
+      if (isVisibleOutsideClass(field.access)) {
+        fields.add(field);
+      }
+    }
+    fields.sort(Comparator.comparing(field -> field.name));
+    hasher.putInt(fields.size());
+    for (FieldNode field : fields) {
+      hasher.putInt(field.access);
+      putString(hasher, field.name);
+      putString(hasher, field.desc);
+      putString(hasher, field.signature);
+      putValue(hasher, field.value);
+      putAnnotations(hasher, field.visibleAnnotations);
+      putAnnotations(hasher, field.invisibleAnnotations);
+    }
+
+    List<MethodNode> methods = new ArrayList<>();
+    for (MethodNode method : classNode.methods) {
+      if (isVisibleOutsideClass(method.access)) {
+        methods.add(method);
+      }
+    }
+    methods.sort(Comparator.comparing(method -> method.name + method.desc));
+    hasher.putInt(methods.size());
+    for (MethodNode method : methods) {
+      hasher.putInt(method.access);
+      putString(hasher, method.name);
+      putString(hasher, method.desc);
+      putString(hasher, method.signature);
+      hasher.putInt(method.exceptions.size());
+      method.exceptions.forEach(exception -> putString(hasher, exception));
+      putValue(hasher, method.annotationDefault);
+      putAnnotations(hasher, method.visibleAnnotations);
+      putAnnotations(hasher, method.invisibleAnnotations);
+    }
+    return hasher.hash();
+  }
+
+  private static HashCode hashConstants(ClassNode classNode) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (FieldNode field : classNode.fields) {
+      if (isConstant(field)) {
+        putString(hasher, field.name);
+        putString(hasher, field.desc);
+        putValue(hasher, field.value);
+      }
+    }
+    return hasher.hash();
+  }
+
+  private static boolean isConstant(FieldNode field) {
+    return field.value != null
+        && isVisibleOutsideClass(field.access)
+        && (field.access & Opcodes.ACC_STATIC) != 0
+        && (field.access & Opcodes.ACC_FINAL) != 0;
+  }
+
+  private static boolean isVisibleOutsideClass(int access) {
+    return (access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0;
+  }
+
+  private static void putAnnotations(Hasher hasher, @Nullable List<AnnotationNode> annotations) {
+    if (annotations == null) {
+      hasher.putInt(0);
+      return;
+    }
+    hasher.putInt(annotations.size());
+    for (AnnotationNode annotation : annotations) {
+      putValue(hasher, annotation);
+    }
+  }
+
+  private static void putValue(Hasher hasher, @Nullable Object value) {
+    if (value == null) {
+      hasher.putByte((byte) 0);
+    } else if (value instanceof AnnotationNode) {
+      AnnotationNode annotation = (AnnotationNode) value;
+      hasher.putByte((byte) 1);
+      putString(hasher, annotation.desc);
+      putValue(hasher, annotation.values);
+    } else if (value instanceof List) {
+      List<?> values = (List<?>) value;
+      hasher.putByte((byte) 2).putInt(values.size());
+      values.forEach(element -> putValue(hasher, element));
+    } else if (value instanceof String[]) {
+      // An enum constant: its type descriptor and name.
+      String[] enumValue = (String[]) value;
+      hasher.putByte((byte) 3);
+      putString(hasher, enumValue[0]);
+      putString(hasher, enumValue[1]);
+    } else if (value instanceof Type) {
+      hasher.putByte((byte) 4);
+      putString(hasher, ((Type) value).getDescriptor());
+    } else {
+      hasher.putByte((byte) 5);
+      putString(hasher, value.getClass().getName());
+      putString(hasher, value.toString());
+    }
+  }
+
+  private static void putString(Hasher hasher, @Nullable String string) {
+    if (string == null) {
+      hasher.putInt(-1);
+    } else {
+      hasher.putInt(string.length()).putString(string, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -39,7 +39,7 @@ class DefaultClassUsageFileReader {
   /** Utility code, not instantiable */
   private DefaultClassUsageFileReader() {}
 
-  private static ImmutableMap<String, ImmutableList<String>> loadClassUsageMap(Path mapFilePath)
+  static ImmutableMap<String, ImmutableList<String>> loadClassUsageMap(Path mapFilePath)
       throws IOException {
     return ObjectMappers.readValue(
         mapFilePath, new TypeReference<ImmutableMap<String, ImmutableList<String>>>() {});
@@ -19,5 +19,10 @@ package com.facebook.buck.jvm.java;
 public enum ForkMode {
   NONE,
   PER_TEST,
+  /**
+   * The test classes are split into shards that run at the same time, each in its own process.
+   * Shards are balanced by how long each class took to run before.
+   */
+  SHARDED,
   ;
 }
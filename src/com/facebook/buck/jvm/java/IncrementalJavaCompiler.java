@@ -0,0 +1,679 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+/**
+ * Compiles a library by recompiling only the source files affected by the changes since its last
+ * compilation.
+ *
+ * <p>The class files of the last compilation are kept in a state directory, together with an
+ * {@link IncrementalCompilationState} describing which classes each source file produced, which
+ * classes they use and fingerprints of the ABIs of those classes. A source file is recompiled when
+ * its contents changed or when the ABI of a class it uses changed, including the ABIs of the
+ * supertypes of that class. Recompiling a source file can change the ABI of its own classes, so
+ * this is repeated until no more source files are affected. The resulting class files are the same
+ * as those of a full compilation, so the library jar stays deterministic and cacheable.
+ *
+ * <p>Some changes cannot be traced through the class files using them, so they fall back to a full
+ * compilation: added or removed source files, added or removed classes and changed compile-time
+ * constants, both in the library and on its classpath, and changes to the compiler options or to
+ * the list of classpath entries. A changed source file that declares compile-time constants falls
+ * back to a full compilation before any round of javac, since its constants are likely to be what
+ * changed.
+ */
+final class IncrementalJavaCompiler {
+
+  private static final Logger LOG = Logger.get(IncrementalJavaCompiler.class);
+
+  private static final String STATE_FILE = "state.json";
+  private static final String CLASSES_DIRECTORY = "classes";
+  private static final String USED_CLASSES_FILE = "used-classes.json";
+
+  /** Structures of the jars on classpaths, by the hash of their contents. */
+  private static final Cache<HashCode, String> JAR_STRUCTURES =
+      CacheBuilder.newBuilder().maximumSize(16 * 1024).build();
+
+  /** Compiles source files into a directory. */
+  interface Compiler {
+    /**
+     * @param sourceFiles the source files to compile, relative to the project root
+     * @param outputDirectory the directory to write class files to, relative to the project root.
+     *     The class files of the other source files of the library are in this directory, so it
+     *     must be on the classpath of the compilation.
+     * @return the exit code of the compiler
+     */
+    int compile(ImmutableSortedSet<Path> sourceFiles, Path outputDirectory)
+        throws IOException, InterruptedException;
+  }
+
+  private final ProjectFilesystem filesystem;
+  private final Path stateDirectory;
+  private final SharedClasspathCache classpathCache;
+
+  /**
+   * @param stateDirectory a directory relative to the project root that is only used by
+   *     incremental compilations of a single library
+   */
+  IncrementalJavaCompiler(
+      ProjectFilesystem filesystem, Path stateDirectory, SharedClasspathCache classpathCache) {
+    this.filesystem = filesystem;
+    this.stateDirectory = stateDirectory;
+    this.classpathCache = classpathCache;
+  }
+
+  /**
+   * Compiles the library and copies its class files to {@code classesDirectory}.
+   *
+   * @param sourceFiles the source files of the library, relative to the project root
+   * @param classpath the absolute paths of the classpath entries, in classpath order
+   * @param configuration identifies everything else the output of the compiler depends on
+   * @param depFile the class usage file the compiler writes, if it tracks class usage
+   * @return the exit code of the compiler
+   */
+  int compile(
+      ImmutableSortedSet<Path> sourceFiles,
+      ImmutableList<Path> classpath,
+      String configuration,
+      Path classesDirectory,
+      Optional<Path> depFile,
+      Compiler compiler)
+      throws IOException, InterruptedException {
+    Path stateFile = stateDirectory.resolve(STATE_FILE);
+    Optional<IncrementalCompilationState> previousState = readState(stateFile);
+    // The state is only written back after a successful compilation, so that a failed or
+    // interrupted compilation can never leave behind a state that does not match the class files.
+    filesystem.deleteFileAtPathIfExists(stateFile);
+
+    Compilation compilation =
+        new Compilation(sourceFiles, openClasspath(classpath), configuration, depFile, compiler);
+    int exitCode = compilation.run(previousState);
+    if (exitCode != 0) {
+      return exitCode;
+    }
+
+    filesystem.copyFolder(getOutputDirectory(), classesDirectory);
+    Optional<IncrementalCompilationState> state = compilation.getState();
+    if (state.isPresent()) {
+      filesystem.writeContentsToPath(
+          ObjectMappers.WRITER.writeValueAsString(state.get()), stateFile);
+    }
+    return 0;
+  }
+
+  private Path getOutputDirectory() {
+    return stateDirectory.resolve(CLASSES_DIRECTORY);
+  }
+
+  private Optional<IncrementalCompilationState> readState(Path stateFile) {
+    if (!filesystem.isFile(stateFile)) {
+      return Optional.empty();
+    }
+    try {
+      IncrementalCompilationState state =
+          ObjectMappers.readValue(filesystem.resolve(stateFile), IncrementalCompilationState.class);
+      return state.getVersion() == IncrementalCompilationState.CURRENT_VERSION
+          ? Optional.of(state)
+          : Optional.empty();
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to read incremental compilation state from %s", stateFile);
+      return Optional.empty();
+    }
+  }
+
+  /** @return the jars of the classpath, or empty if some entries are not jars that can be read */
+  private Optional<ImmutableList<SharedClasspathCache.IndexedJar>> openClasspath(
+      ImmutableList<Path> classpath) throws IOException {
+    ImmutableList.Builder<SharedClasspathCache.IndexedJar> jars = ImmutableList.builder();
+    for (Path entry : classpath) {
+      if (!Files.isRegularFile(entry)) {
+        return Optional.empty();
+      }
+      Optional<SharedClasspathCache.IndexedJar> jar = classpathCache.getIndexedJar(entry);
+      if (!jar.isPresent()) {
+        return Optional.empty();
+      }
+      jars.add(jar.get());
+    }
+    return Optional.of(jars.build());
+  }
+
+  @VisibleForTesting
+  static String getJarStructure(
+      SharedClasspathCache classpathCache, SharedClasspathCache.IndexedJar jar) throws IOException {
+    String structure = JAR_STRUCTURES.getIfPresent(jar.getHash());
+    if (structure == null) {
+      SortedMap<String, JarIndex.Entry> classEntries = new TreeMap<>();
+      for (JarIndex.Entry entry :
+          jar.getIndex().list("", EnumSet.of(JavaFileObject.Kind.CLASS), true)) {
+        classEntries.putIfAbsent(entry.getName(), entry);
+      }
+      List<ClassFileSummary> classes = new ArrayList<>();
+      for (JarIndex.Entry entry : classEntries.values()) {
+        classes.add(ClassFileSummary.read(classpathCache.getEntry(jar, entry)));
+      }
+      structure = hashStructure(classes);
+      JAR_STRUCTURES.put(jar.getHash(), structure);
+    }
+    return structure;
+  }
+
+  /** Hashes the names and constants of the classes that other classes can refer to. */
+  private static String hashStructure(Collection<ClassFileSummary> classes) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    classes.stream()
+        .filter(summary -> !summary.isLocalOrAnonymous())
+        .sorted(Comparator.comparing(ClassFileSummary::getName))
+        .forEach(
+            summary ->
+                hasher
+                    .putString(summary.getName(), StandardCharsets.UTF_8)
+                    .putByte((byte) 0)
+                    .putBytes(summary.getConstantsHash().asBytes()));
+    return hasher.hash().toString();
+  }
+
+  /** A single compilation of the library, possibly made of several rounds of javac. */
+  private class Compilation {
+    private final ImmutableSortedSet<Path> sourceFiles;
+    private final Optional<ImmutableList<SharedClasspathCache.IndexedJar>> classpath;
+    private final String configuration;
+    private final Optional<Path> depFile;
+    private final Compiler compiler;
+
+    private final Map<String, IncrementalSourceState> sources = new TreeMap<>();
+    private final Map<String, String> sourcesByClass = new HashMap<>();
+    private final Map<String, Optional<ClassFileSummary>> classpathSummaries = new HashMap<>();
+    private final Map<String, ClassFileSummary> librarySummaries = new HashMap<>();
+    private final Map<String, HashCode> fingerprints = new HashMap<>();
+    private final Set<String> fingerprintsInProgress = new HashSet<>();
+    @Nullable private ImmutableSortedMap<String, String> sourceHashes;
+    private boolean isIncremental = true;
+
+    private Compilation(
+        ImmutableSortedSet<Path> sourceFiles,
+        Optional<ImmutableList<SharedClasspathCache.IndexedJar>> classpath,
+        String configuration,
+        Optional<Path> depFile,
+        Compiler compiler) {
+      this.sourceFiles = sourceFiles;
+      this.classpath = classpath;
+      this.configuration = configuration;
+      this.depFile = depFile;
+      this.compiler = compiler;
+    }
+
+    private int run(Optional<IncrementalCompilationState> previousState)
+        throws IOException, InterruptedException {
+      if (!classpath.isPresent()) {
+        LOG.debug("Some classpath entries are not jars, compiling all source files.");
+        return compileAll();
+      }
+      if (!previousState.isPresent() || !canCompileIncrementally(previousState.get())) {
+        return compileAll();
+      }
+
+      IncrementalCompilationState state = previousState.get();
+      sources.putAll(state.getSources());
+      sources.forEach(
+          (source, sourceState) ->
+              sourceState.getClasses().forEach(name -> sourcesByClass.put(name, source)));
+
+      Set<String> toCompile = new TreeSet<>();
+      getSourceHashes()
+          .forEach(
+              (source, hash) -> {
+                if (!hash.equals(sources.get(source).getHash())) {
+                  toCompile.add(source);
+                }
+              });
+      for (String source : toCompile) {
+        if (sources.get(source).getDeclaresConstants()) {
+          // Finding out whether the constants changed would take a round of javac that the full
+          // compilation would have to repeat anyway.
+          LOG.debug("%s declares constants and changed, compiling all source files.", source);
+          return compileAll();
+        }
+      }
+      toCompile.addAll(getSourcesUsingChangedClasses(state.getFingerprints(), toCompile));
+
+      Map<String, String> expectedFingerprints = state.getFingerprints();
+      Map<String, Set<String>> usedClasses = new TreeMap<>();
+      if (depFile.isPresent()) {
+        addUsedClasses(usedClasses, stateDirectory.resolve(USED_CLASSES_FILE));
+      }
+      while (!toCompile.isEmpty()) {
+        LOG.debug("Recompiling %d of %d source files.", toCompile.size(), sourceFiles.size());
+        for (String source : toCompile) {
+          for (String name : sources.get(source).getClasses()) {
+            filesystem.deleteFileAtPathIfExists(getClassFile(name));
+            sourcesByClass.remove(name);
+          }
+        }
+
+        int exitCode =
+            compiler.compile(
+                toCompile.stream()
+                    .map(filesystem::getPath)
+                    .collect(ImmutableSortedSet.toImmutableSortedSet(Comparator.naturalOrder())),
+                getOutputDirectory());
+        if (exitCode != 0) {
+          return exitCode;
+        }
+        if (depFile.isPresent()) {
+          // The compiler only saw the classes used by the recompiled source files, the classes used
+          // by the other ones are still used too.
+          addUsedClasses(usedClasses, depFile.get());
+        }
+
+        Optional<ImmutableMap<String, IncrementalSourceState>> compiled = analyze(toCompile);
+        if (!compiled.isPresent()) {
+          return compileAll();
+        }
+        for (Map.Entry<String, IncrementalSourceState> entry : compiled.get().entrySet()) {
+          if (!entry.getValue().getStructure().equals(sources.get(entry.getKey()).getStructure())) {
+            LOG.debug(
+                "Classes or constants declared in %s changed, compiling all source files.",
+                entry.getKey());
+            return compileAll();
+          }
+        }
+        sources.putAll(compiled.get());
+
+        librarySummaries.clear();
+        fingerprints.clear();
+        Set<String> compiledSources = ImmutableSortedSet.copyOf(toCompile);
+        toCompile.clear();
+        toCompile.addAll(getSourcesUsingChangedClasses(expectedFingerprints, compiledSources));
+        // The source files that are not recompiled in the next round were compiled against the
+        // current version of every class they use.
+        expectedFingerprints = computeFingerprints();
+      }
+
+      if (depFile.isPresent()) {
+        writeUsedClasses(usedClasses, depFile.get());
+        writeUsedClasses(usedClasses, stateDirectory.resolve(USED_CLASSES_FILE));
+      }
+      return 0;
+    }
+
+    private boolean canCompileIncrementally(IncrementalCompilationState state)
+        throws IOException {
+      if (!state.getConfiguration().equals(configuration)) {
+        LOG.debug("The compiler configuration changed, compiling all source files.");
+        return false;
+      }
+      if (!state.getSources().keySet().equals(getSourceHashes().keySet())) {
+        LOG.debug("Source files were added or removed, compiling all source files.");
+        return false;
+      }
+      if (!filesystem.isDirectory(getOutputDirectory())
+          || (depFile.isPresent()
+              && !filesystem.isFile(stateDirectory.resolve(USED_CLASSES_FILE)))) {
+        return false;
+      }
+
+      ImmutableList<SharedClasspathCache.IndexedJar> jars = classpath.get();
+      if (state.getJarHashes().size() != jars.size()) {
+        return false;
+      }
+      for (SharedClasspathCache.IndexedJar jar : jars) {
+        String path = jar.getPath().toString();
+        String hash = state.getJarHashes().get(path);
+        if (hash == null) {
+          return false;
+        }
+        if (!hash.equals(jar.getHash().toString())
+            && !getJarStructure(classpathCache, jar).equals(state.getJarStructures().get(path))) {
+          LOG.debug(
+              "Classes or constants declared in %s changed, compiling all source files.", path);
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int compileAll() throws IOException, InterruptedException {
+      sources.clear();
+      sourcesByClass.clear();
+      librarySummaries.clear();
+      fingerprints.clear();
+
+      filesystem.deleteRecursivelyIfExists(getOutputDirectory());
+      filesystem.mkdirs(getOutputDirectory());
+      int exitCode = compiler.compile(sourceFiles, getOutputDirectory());
+      if (exitCode != 0) {
+        return exitCode;
+      }
+      if (depFile.isPresent() && filesystem.isFile(depFile.get())) {
+        filesystem.copyFile(depFile.get(), stateDirectory.resolve(USED_CLASSES_FILE));
+      }
+
+      isIncremental = classpath.isPresent();
+      if (!isIncremental) {
+        return 0;
+      }
+      Optional<ImmutableMap<String, IncrementalSourceState>> compiled =
+          analyze(getSourceHashes().keySet());
+      if (!compiled.isPresent()) {
+        isIncremental = false;
+        return 0;
+      }
+      sources.putAll(compiled.get());
+      for (String name : sourcesByClass.keySet()) {
+        if (isOnClasspath(name)) {
+          // Which of the two classes javac uses depends on whether the library class is compiled
+          // in the same round, so incremental compilation could use a different one.
+          LOG.debug("%s is both in the library and on its classpath.", name);
+          isIncremental = false;
+          return 0;
+        }
+      }
+      return 0;
+    }
+
+    private Optional<IncrementalCompilationState> getState() throws IOException {
+      if (!isIncremental) {
+        return Optional.empty();
+      }
+      ImmutableSortedMap.Builder<String, String> jarHashes = ImmutableSortedMap.naturalOrder();
+      ImmutableSortedMap.Builder<String, String> jarStructures = ImmutableSortedMap.naturalOrder();
+      for (SharedClasspathCache.IndexedJar jar : classpath.get()) {
+        String path = jar.getPath().toString();
+        jarHashes.put(path, jar.getHash().toString());
+        jarStructures.put(path, getJarStructure(classpathCache, jar));
+      }
+      return Optional.of(
+          IncrementalCompilationState.builder()
+              .setVersion(IncrementalCompilationState.CURRENT_VERSION)
+              .setConfiguration(configuration)
+              .setJarHashes(jarHashes.build())
+              .setJarStructures(jarStructures.build())
+              .setSources(ImmutableSortedMap.copyOf(sources))
+              .setFingerprints(computeFingerprints())
+              .build());
+    }
+
+    private ImmutableSortedMap<String, String> getSourceHashes() throws IOException {
+      if (sourceHashes == null) {
+        ImmutableSortedMap.Builder<String, String> hashes = ImmutableSortedMap.naturalOrder();
+        for (Path source : sourceFiles) {
+          hashes.put(
+              source.toString(),
+              MoreFiles.asByteSource(filesystem.resolve(source))
+                  .hash(Hashing.murmur3_128())
+                  .toString());
+        }
+        sourceHashes = hashes.build();
+      }
+      return sourceHashes;
+    }
+
+    /**
+     * Reads the class files the given source files were just compiled to, which are all class
+     * files in the output directory that do not belong to other source files.
+     *
+     * @return the state of each of the source files, or empty if some classes cannot be traced
+     *     back to the source file they were compiled from
+     */
+    private Optional<ImmutableMap<String, IncrementalSourceState>> analyze(
+        Collection<String> compiledSources) throws IOException {
+      Map<String, List<String>> sourcesByFileName = new HashMap<>();
+      for (String source : compiledSources) {
+        sourcesByFileName
+            .computeIfAbsent(
+                filesystem.getPath(source).getFileName().toString(), key -> new ArrayList<>())
+            .add(source);
+      }
+
+      Path outputDirectory = filesystem.resolve(getOutputDirectory());
+      List<Path> classFiles;
+      try (Stream<Path> files = Files.walk(outputDirectory)) {
+        classFiles =
+            files
+                .filter(path -> path.getFileName().toString().endsWith(".class"))
+                .collect(Collectors.toList());
+      }
+
+      Map<String, List<ClassFileSummary>> classesBySource = new TreeMap<>();
+      compiledSources.forEach(source -> classesBySource.put(source, new ArrayList<>()));
+      for (Path classFile : classFiles) {
+        String relativePath = outputDirectory.relativize(classFile).toString().replace('\\', '/');
+        String name = relativePath.substring(0, relativePath.length() - ".class".length());
+        if (sourcesByClass.containsKey(name)) {
+          continue;
+        }
+        ClassFileSummary summary = ClassFileSummary.read(Files.readAllBytes(classFile));
+        Optional<String> source = findSource(summary, sourcesByFileName);
+        if (!source.isPresent()) {
+          LOG.debug("Unable to find the source file of %s.", name);
+          return Optional.empty();
+        }
+        classesBySource.get(source.get()).add(summary);
+        sourcesByClass.put(summary.getName(), source.get());
+        librarySummaries.put(summary.getName(), summary);
+      }
+
+      ImmutableMap.Builder<String, IncrementalSourceState> result = ImmutableMap.builder();
+      for (Map.Entry<String, List<ClassFileSummary>> entry : classesBySource.entrySet()) {
+        ImmutableSortedSet<String> classes =
+            entry.getValue().stream()
+                .map(ClassFileSummary::getName)
+                .collect(ImmutableSortedSet.toImmutableSortedSet(Comparator.naturalOrder()));
+        ImmutableSortedSet.Builder<String> uses = ImmutableSortedSet.naturalOrder();
+        for (ClassFileSummary summary : entry.getValue()) {
+          for (String referencedClass : summary.getReferencedClasses()) {
+            boolean isDependency =
+                sourcesByClass.containsKey(referencedClass) || isOnClasspath(referencedClass);
+            if (!classes.contains(referencedClass) && isDependency) {
+              uses.add(referencedClass);
+            }
+          }
+        }
+        result.put(
+            entry.getKey(),
+            IncrementalSourceState.of(
+                getSourceHashes().get(entry.getKey()),
+                classes,
+                hashStructure(entry.getValue()),
+                entry.getValue().stream().anyMatch(ClassFileSummary::declaresConstants),
+                uses.build()));
+      }
+      return Optional.of(result.build());
+    }
+
+    private Optional<String> findSource(
+        ClassFileSummary summary, Map<String, List<String>> sourcesByFileName) {
+      String sourceFile = summary.getSourceFile();
+      if (sourceFile == null) {
+        return Optional.empty();
+      }
+      List<String> candidates = sourcesByFileName.getOrDefault(sourceFile, ImmutableList.of());
+      if (candidates.size() > 1) {
+        // Several source files with the same name, try to tell them apart by their package.
+        int lastSlash = summary.getName().lastIndexOf('/');
+        if (lastSlash < 0) {
+          return Optional.empty();
+        }
+        Path packageDirectory = filesystem.getPath(summary.getName().substring(0, lastSlash));
+        candidates =
+            candidates.stream()
+                .filter(
+                    candidate ->
+                        filesystem.getPath(candidate).getParent().endsWith(packageDirectory))
+                .collect(Collectors.toList());
+      }
+      return candidates.size() == 1 ? Optional.of(candidates.get(0)) : Optional.empty();
+    }
+
+    /**
+     * @param expectedFingerprints the fingerprints of the classes as the source files were compiled
+     *     against them
+     * @return the source files, other than {@code excludedSources}, that use a class whose
+     *     fingerprint changed
+     */
+    private Set<String> getSourcesUsingChangedClasses(
+        Map<String, String> expectedFingerprints, Set<String> excludedSources) throws IOException {
+      Set<String> changedClasses = new HashSet<>();
+      for (Map.Entry<String, String> entry : expectedFingerprints.entrySet()) {
+        if (!getFingerprint(entry.getKey()).toString().equals(entry.getValue())) {
+          changedClasses.add(entry.getKey());
+        }
+      }
+
+      Set<String> result = new TreeSet<>();
+      if (changedClasses.isEmpty()) {
+        return result;
+      }
+      sources.forEach(
+          (source, sourceState) -> {
+            if (!excludedSources.contains(source)
+                && sourceState.getUses().stream().anyMatch(changedClasses::contains)) {
+              result.add(source);
+            }
+          });
+      return result;
+    }
+
+    private ImmutableSortedMap<String, String> computeFingerprints() throws IOException {
+      Set<String> usedClasses = new TreeSet<>();
+      sources.values().forEach(sourceState -> usedClasses.addAll(sourceState.getUses()));
+      ImmutableSortedMap.Builder<String, String> result = ImmutableSortedMap.naturalOrder();
+      for (String name : usedClasses) {
+        result.put(name, getFingerprint(name).toString());
+      }
+      return result.build();
+    }
+
+    /**
+     * The fingerprint of a class covers its ABI and the ABIs of its supertypes, whose members are
+     * inherited by the class and are referred to through it.
+     */
+    private HashCode getFingerprint(String name) throws IOException {
+      HashCode fingerprint = fingerprints.get(name);
+      if (fingerprint != null) {
+        return fingerprint;
+      }
+
+      Hasher hasher = Hashing.murmur3_128().newHasher().putString(name, StandardCharsets.UTF_8);
+      ClassFileSummary summary = findClass(name);
+      // Classes that are not found, such as those of the JDK, only contribute their name.
+      if (summary != null && fingerprintsInProgress.add(name)) {
+        hasher.putBytes(summary.getAbiHash().asBytes());
+        for (String supertype : summary.getSupertypes()) {
+          hasher.putBytes(getFingerprint(supertype).asBytes());
+        }
+        fingerprintsInProgress.remove(name);
+      }
+      fingerprint = hasher.hash();
+      fingerprints.put(name, fingerprint);
+      return fingerprint;
+    }
+
+    @Nullable
+    private ClassFileSummary findClass(String name) throws IOException {
+      if (sourcesByClass.containsKey(name)) {
+        ClassFileSummary summary = librarySummaries.get(name);
+        if (summary == null) {
+          summary =
+              ClassFileSummary.read(Files.readAllBytes(filesystem.resolve(getClassFile(name))));
+          librarySummaries.put(name, summary);
+        }
+        return summary;
+      }
+
+      Optional<ClassFileSummary> summary = classpathSummaries.get(name);
+      if (summary == null) {
+        summary = Optional.empty();
+        for (SharedClasspathCache.IndexedJar jar : classpath.get()) {
+          JarIndex.Entry entry = jar.getIndex().getEntry(name + ".class");
+          if (entry != null) {
+            summary = Optional.of(ClassFileSummary.read(classpathCache.getEntry(jar, entry)));
+            break;
+          }
+        }
+        classpathSummaries.put(name, summary);
+      }
+      return summary.orElse(null);
+    }
+
+    private boolean isOnClasspath(String name) {
+      for (SharedClasspathCache.IndexedJar jar : classpath.get()) {
+        if (jar.getIndex().getEntry(name + ".class") != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private Path getClassFile(String name) {
+      return getOutputDirectory().resolve(name + ".class");
+    }
+
+    private void addUsedClasses(Map<String, Set<String>> usedClasses, Path classUsageFile)
+        throws IOException {
+      if (!filesystem.isFile(classUsageFile)) {
+        return;
+      }
+      DefaultClassUsageFileReader.loadClassUsageMap(filesystem.resolve(classUsageFile))
+          .forEach(
+              (jar, classes) ->
+                  usedClasses.computeIfAbsent(jar, key -> new TreeSet<>()).addAll(classes));
+    }
+
+    private void writeUsedClasses(Map<String, Set<String>> usedClasses, Path classUsageFile)
+        throws IOException {
+      filesystem.writeContentsToPath(
+          ObjectMappers.WRITER.writeValueAsString(usedClasses), classUsageFile);
+    }
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Compiles the classes of a java library with {@link IncrementalJavaCompiler}, running a {@link
+ * JavacStep} for every round of compilation.
+ */
+public class IncrementalJavacStep implements Step {
+
+  private final Javac javac;
+  private final JavacOptions javacOptions;
+  private final BuildTarget invokingRule;
+  private final SourcePathResolver resolver;
+  private final ProjectFilesystem filesystem;
+  private final ClasspathChecker classpathChecker;
+  private final CompilerParameters compilerParameters;
+
+  public IncrementalJavacStep(
+      Javac javac,
+      JavacOptions javacOptions,
+      BuildTarget invokingRule,
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      ClasspathChecker classpathChecker,
+      CompilerParameters compilerParameters) {
+    this.javac = javac;
+    this.javacOptions = javacOptions;
+    this.invokingRule = invokingRule;
+    this.resolver = resolver;
+    this.filesystem = filesystem;
+    this.classpathChecker = classpathChecker;
+    this.compilerParameters = compilerParameters;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    Path stateDirectory =
+        CompilerOutputPaths.getIncrementalCompilationStateDir(invokingRule, filesystem);
+    ImmutableSortedSet<Path> classpath = compilerParameters.getClasspathEntries();
+    StepExecutionResult[] lastResult = {StepExecutionResults.SUCCESS};
+
+    int exitCode =
+        new IncrementalJavaCompiler(filesystem, stateDirectory, SharedClasspathCache.getInstance())
+            .compile(
+                compilerParameters.getSourceFilePaths(),
+                classpath.asList(),
+                getConfiguration(context, stateDirectory),
+                compilerParameters.getOutputPaths().getClassesDir(),
+                compilerParameters.shouldTrackClassUsage()
+                    ? Optional.of(CompilerOutputPaths.getDepFilePath(invokingRule, filesystem))
+                    : Optional.empty(),
+                (sourceFiles, outputDirectory) -> {
+                  lastResult[0] =
+                      createJavacStep(sourceFiles, outputDirectory).execute(context);
+                  return lastResult[0].getExitCode();
+                });
+    return exitCode == 0 ? StepExecutionResults.SUCCESS : lastResult[0];
+  }
+
+  private JavacStep createJavacStep(ImmutableSortedSet<Path> sourceFiles, Path outputDirectory) {
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .from(compilerParameters)
+            .setSourceFilePaths(sourceFiles)
+            .setClasspathEntries(
+                ImmutableSortedSet.<Path>naturalOrder()
+                    .addAll(compilerParameters.getClasspathEntries())
+                    .add(filesystem.resolve(outputDirectory))
+                    .build())
+            .setOutputPaths(
+                CompilerOutputPaths.builder()
+                    .from(compilerParameters.getOutputPaths())
+                    .setClassesDir(outputDirectory)
+                    .build())
+            .build();
+    return new JavacStep(
+        javac,
+        javacOptions,
+        invokingRule,
+        resolver,
+        filesystem,
+        classpathChecker,
+        parameters,
+        null,
+        null);
+  }
+
+  /** Everything other than the sources and the classpath that the class files depend on. */
+  private String getConfiguration(ExecutionContext context, Path stateDirectory) {
+    ImmutableList<String> options =
+        JavacPipelineState.getOptions(
+            javacOptions,
+            filesystem,
+            resolver,
+            stateDirectory,
+            compilerParameters.getOutputPaths().getAnnotationPath(),
+            context,
+            compilerParameters.getClasspathEntries());
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(javac.getShortName(), StandardCharsets.UTF_8).putByte((byte) 0);
+    hasher.putString(System.getProperty("java.version"), StandardCharsets.UTF_8);
+    for (String option : options) {
+      hasher.putByte((byte) 0).putString(option, StandardCharsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "incremental_javac";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "incrementally compile %d source files of %s",
+        compilerParameters.getSourceFilePaths().size(), invokingRule);
+  }
+}
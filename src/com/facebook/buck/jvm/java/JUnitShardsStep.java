@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the shards of the test classes of a test rule at the same time, each in its own {@link
+ * JUnitStep}.
+ */
+public class JUnitShardsStep implements Step {
+
+  private final ImmutableList<JUnitStep> shards;
+
+  public JUnitShardsStep(ImmutableList<JUnitStep> shards) {
+    Preconditions.checkArgument(!shards.isEmpty(), "There must be at least one shard.");
+    this.shards = shards;
+  }
+
+  public ImmutableList<JUnitStep> getShards() {
+    return shards;
+  }
+
+  /** @return the result of the first shard that failed, or success if none did */
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ExecutorService executor = MostExecutors.newMultiThreadExecutor("junit-shard", shards.size());
+    try {
+      List<Future<StepExecutionResult>> results = new ArrayList<>(shards.size());
+      for (JUnitStep shard : shards) {
+        results.add(executor.submit(() -> shard.execute(context)));
+      }
+      StepExecutionResult result = StepExecutionResults.SUCCESS;
+      for (Future<StepExecutionResult> shardResult : results) {
+        StepExecutionResult shardExecutionResult = getShardResult(shardResult);
+        if (result.isSuccess() && !shardExecutionResult.isSuccess()) {
+          result = shardExecutionResult;
+        }
+      }
+      return result;
+    } finally {
+      // Interrupts the shards that are still running if waiting for them was interrupted.
+      executor.shutdownNow();
+    }
+  }
+
+  private static StepExecutionResult getShardResult(Future<StepExecutionResult> result)
+      throws IOException, InterruptedException {
+    try {
+      return result.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfInstanceOf(cause, InterruptedException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new IOException(cause);
+    }
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return shards.stream()
+        .map(shard -> shard.getDescription(context))
+        .collect(Collectors.joining(" & "));
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+import javax.tools.JavaFileObject;
+
+/**
+ * An immutable index of the central directory of a jar, grouping its entries by package.
+ *
+ * <p>The index only records where the entries are in the jar. Their contents are read with
+ * positional reads of the jar file when they are needed, so the same index can be used for every
+ * copy of a jar with the same contents, and no file stays open or mapped between reads. Every entry
+ * read is checked against the CRC recorded in the index, so that a jar rewritten since it was
+ * indexed is detected instead of yielding corrupt contents.
+ *
+ * <p>Only the subset of the zip format that jar tools write is supported. Jars that use ZIP64
+ * extensions, encryption or compression methods other than stored and deflated are rejected with a
+ * {@link ZipException}.
+ */
+final class JarIndex {
+
+  private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+  private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+
+  private static final int STORED = 0;
+  private static final int DEFLATED = 8;
+  private static final int ENCRYPTED_FLAG = 1;
+
+  /** An entry of the jar. */
+  static final class Entry {
+    private final String name;
+    private final JavaFileObject.Kind kind;
+    private final int method;
+    private final long crc;
+    private final long localHeaderOffset;
+    private final int compressedSize;
+    private final int size;
+
+    private Entry(
+        String name, int method, long crc, long localHeaderOffset, int compressedSize, int size) {
+      this.name = name;
+      this.kind = kindOf(name);
+      this.method = method;
+      this.crc = crc;
+      this.localHeaderOffset = localHeaderOffset;
+      this.compressedSize = compressedSize;
+      this.size = size;
+    }
+
+    /** @return the full name of the entry within the jar, such as {@code com/example/A.class} */
+    String getName() {
+      return name;
+    }
+
+    JavaFileObject.Kind getKind() {
+      return kind;
+    }
+
+    /** @return the binary name of the class this entry contains, assuming it is a class file */
+    String getBinaryName() {
+      return name.substring(0, name.length() - kind.extension.length()).replace('/', '.');
+    }
+  }
+
+  /** Entries by package name, in the order they appear in the central directory. */
+  private final ImmutableMap<String, ImmutableList<Entry>> packages;
+
+  private final ImmutableMap<String, Entry> entries;
+
+  private JarIndex(
+      ImmutableMap<String, ImmutableList<Entry>> packages, ImmutableMap<String, Entry> entries) {
+    this.packages = packages;
+    this.entries = entries;
+  }
+
+  /** Reads the central directory of a jar. */
+  static JarIndex read(FileChannel jar) throws IOException {
+    long fileSize = jar.size();
+    int tailSize =
+        (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + (long) MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(jar, fileSize - tailSize, tailSize);
+    int end = findEndOfCentralDirectory(tail);
+    int entryCount = Short.toUnsignedInt(tail.getShort(end + 10));
+    long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+    long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+    if (entryCount == 0xffff
+        || centralDirectoryOffset == 0xffffffffL
+        || centralDirectorySize > Integer.MAX_VALUE
+        || centralDirectoryOffset + centralDirectorySize > fileSize) {
+      throw new ZipException("ZIP64 jars are not supported");
+    }
+
+    ByteBuffer buffer = read(jar, centralDirectoryOffset, (int) centralDirectorySize);
+    Map<String, List<Entry>> packages = new LinkedHashMap<>();
+    Map<String, Entry> entries = new LinkedHashMap<>();
+    int offset = 0;
+    for (int i = 0; i < entryCount; i++) {
+      checkBounds(buffer, offset, CENTRAL_HEADER_SIZE);
+      if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+        throw new ZipException("Invalid central directory header");
+      }
+      int flags = Short.toUnsignedInt(buffer.getShort(offset + 8));
+      int method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+      long crc = Integer.toUnsignedLong(buffer.getInt(offset + 16));
+      long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+      long size = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+      int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+      int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+      int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+      String name = readName(buffer, offset + CENTRAL_HEADER_SIZE, nameLength);
+      offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+      if (name.endsWith("/")) {
+        continue;
+      }
+      if ((flags & ENCRYPTED_FLAG) != 0) {
+        throw new ZipException("Encrypted entries are not supported: " + name);
+      }
+      if (method != STORED && method != DEFLATED) {
+        throw new ZipException("Unsupported compression method for " + name + ": " + method);
+      }
+      if (method == STORED && compressedSize != size) {
+        throw new ZipException("Invalid size of stored entry " + name);
+      }
+      if (compressedSize > Integer.MAX_VALUE
+          || size > Integer.MAX_VALUE
+          || localHeaderOffset >= centralDirectoryOffset) {
+        throw new ZipException("ZIP64 entries are not supported: " + name);
+      }
+
+      Entry entry =
+          new Entry(name, method, crc, localHeaderOffset, (int) compressedSize, (int) size);
+      // Only the first of several entries with the same name can be looked up by name.
+      entries.putIfAbsent(name, entry);
+      packages.computeIfAbsent(getPackageName(name), key -> new ArrayList<>()).add(entry);
+    }
+
+    ImmutableMap.Builder<String, ImmutableList<Entry>> packagesBuilder = ImmutableMap.builder();
+    packages.forEach(
+        (name, packageEntries) -> packagesBuilder.put(name, ImmutableList.copyOf(packageEntries)));
+    return new JarIndex(packagesBuilder.build(), ImmutableMap.copyOf(entries));
+  }
+
+  /**
+   * @param packageName the package name in the form used by {@link
+   *     javax.tools.JavaFileManager#list}, such as {@code com.example}
+   * @return the entries of the given kinds in the given package, and in its subpackages if {@code
+   *     recurse} is set
+   */
+  List<Entry> list(String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse) {
+    String directory = packageName.replace('.', '/');
+    List<Entry> result = new ArrayList<>();
+    if (recurse) {
+      String prefix = directory.isEmpty() ? "" : directory + "/";
+      packages.forEach(
+          (name, packageEntries) -> {
+            if (name.equals(directory) || name.startsWith(prefix)) {
+              addMatching(packageEntries, kinds, result);
+            }
+          });
+    } else {
+      addMatching(packages.getOrDefault(directory, ImmutableList.of()), kinds, result);
+    }
+    return result;
+  }
+
+  /** @return the entry with the given full name, or null if there is no such entry */
+  @Nullable
+  Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /**
+   * Reads the contents of an entry.
+   *
+   * @param jar the jar this index was read from
+   * @throws ZipException if the entry is not where the index says it is, or its contents do not
+   *     match the CRC in the index, such as when the jar was rewritten after it was indexed
+   */
+  static byte[] readEntry(FileChannel jar, Entry entry) throws IOException {
+    ByteBuffer header = read(jar, entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+      throw new ZipException("Invalid local header for " + entry.name);
+    }
+    int nameLength = Short.toUnsignedInt(header.getShort(26));
+    int extraLength = Short.toUnsignedInt(header.getShort(28));
+    long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    byte[] contents =
+        entry.method == STORED
+            ? read(jar, dataOffset, entry.size).array()
+            : inflate(entry, read(jar, dataOffset, entry.compressedSize).array());
+
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+    if (crc.getValue() != entry.crc) {
+      throw new ZipException("CRC of " + entry.name + " differs from the indexed one");
+    }
+    return contents;
+  }
+
+  private static byte[] inflate(Entry entry, byte[] deflated) throws ZipException {
+    // The inflater in nowrap mode may need an extra dummy byte at the end of its input.
+    byte[] compressed = Arrays.copyOf(deflated, deflated.length + 1);
+    Inflater inflater = new Inflater(true);
+    try {
+      inflater.setInput(compressed);
+      byte[] contents = new byte[entry.size];
+      int length = 0;
+      while (length < contents.length) {
+        int inflated = inflater.inflate(contents, length, contents.length - length);
+        if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+          break;
+        }
+        length += inflated;
+      }
+      if (length != contents.length) {
+        throw new ZipException("Truncated entry " + entry.name);
+      }
+      return contents;
+    } catch (DataFormatException e) {
+      ZipException zipException = new ZipException("Invalid entry " + entry.name);
+      zipException.initCause(e);
+      throw zipException;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void addMatching(
+      List<Entry> entries, Set<JavaFileObject.Kind> kinds, List<Entry> result) {
+    for (Entry entry : entries) {
+      if (kinds.contains(entry.kind)) {
+        result.add(entry);
+      }
+    }
+  }
+
+  private static int findEndOfCentralDirectory(ByteBuffer buffer) throws ZipException {
+    for (int offset = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= 0; offset--) {
+      if (buffer.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+        return offset;
+      }
+    }
+    throw new ZipException("End of central directory not found");
+  }
+
+  private static String readName(ByteBuffer buffer, int offset, int length) throws ZipException {
+    checkBounds(buffer, offset, length);
+    byte[] bytes = new byte[length];
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset);
+    slice.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of jar");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void checkBounds(ByteBuffer buffer, int offset, int length) throws ZipException {
+    if (offset < 0 || length < 0 || (long) offset + length > buffer.limit()) {
+      throw new ZipException("Entry out of bounds");
+    }
+  }
+
+  private static String getPackageName(String name) {
+    int lastSlash = name.lastIndexOf('/');
+    return lastSlash < 0 ? "" : name.substring(0, lastSlash);
+  }
+
+  private static JavaFileObject.Kind kindOf(String name) {
+    for (JavaFileObject.Kind kind : JavaFileObject.Kind.values()) {
+      if (kind != JavaFileObject.Kind.OTHER && name.endsWith(kind.extension)) {
+        return kind;
+      }
+    }
+    return JavaFileObject.Kind.OTHER;
+  }
+}
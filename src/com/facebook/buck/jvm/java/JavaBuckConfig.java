@@ -112,6 +112,16 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     if (trackJavacPhaseEvents.isPresent()) {
       builder.setTrackJavacPhaseEvents(trackJavacPhaseEvents.get());
     }
+    Optional<Boolean> compileIncrementally =
+        delegate.getBoolean(SECTION, "incremental_compilation");
+    if (compileIncrementally.isPresent()) {
+      builder.setCompileIncrementally(compileIncrementally.get());
+    }
+    Optional<Boolean> useSharedClasspathCache =
+        delegate.getBoolean(SECTION, "shared_classpath_cache");
+    if (useSharedClasspathCache.isPresent()) {
+      builder.setUseSharedClasspathCache(useSharedClasspathCache.get());
+    }
 
     Optional<AbstractJavacOptions.SpoolMode> spoolMode =
         delegate.getEnum(SECTION, "jar_spool_mode", AbstractJavacOptions.SpoolMode.class);
@@ -260,6 +270,15 @@ public class JavaBuckConfig implements ConfigView<BuckConfig> {
     return delegate.getValue("java", "test_temp_dir");
   }
 
+  /**
+   * Returns how many processes run the test classes of a test rule with a sharded fork mode, if
+   * set. Each test rule runs this many processes, next to the other test rules running at the same
+   * time.
+   */
+  public OptionalInt getTestShardCount() {
+    return delegate.getInteger("java", "test_shard_count");
+  }
+
   public Level getDuplicatesLogLevel() {
     return delegate
         .getEnum(SECTION, "duplicates_log_level", DuplicatesLogLevel.class)
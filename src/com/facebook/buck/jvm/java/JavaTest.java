@@ -80,6 +80,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
@@ -139,9 +140,17 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
 
   private static final int TEST_CLASSES_SHUFFLE_SEED = 0xFACEB00C;
 
+  /**
+   * How many shards run the test classes of a rule when {@code java.test_shard_count} is not set.
+   * Several test rules usually run at the same time, so this is kept small rather than using every
+   * processor for each rule.
+   */
+  private static final int DEFAULT_SHARD_COUNT = 4;
+
   private static final Logger LOG = Logger.get(JavaTest.class);
 
-  @Nullable private ImmutableList<JUnitStep> junits;
+  /** The step that runs each test class, set when the tests are run. */
+  @Nullable private ImmutableMap<String, JUnitStep> junitsByTestClass;
 
   private final boolean runTestSeparately;
 
@@ -298,31 +307,59 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
             BuildCellRelativePath.fromCellRelativePath(
                 buildContext.getBuildCellRootPath(), getProjectFilesystem(), pathToTestOutput)));
     addPreTestSteps(buildContext, steps);
+    ImmutableMap.Builder<String, JUnitStep> junitsByTestClassBuilder = ImmutableMap.builder();
     if (forkMode() == ForkMode.PER_TEST) {
-      ImmutableList.Builder<JUnitStep> junitsBuilder = ImmutableList.builder();
       for (String testClass : testClassNames) {
-        junitsBuilder.add(
+        JUnitStep junit =
             getJUnitStep(
                 executionContext,
                 buildContext.getSourcePathResolver(),
                 options,
                 Optional.of(pathToTestOutput),
                 Optional.of(pathToTestLogs),
-                Collections.singleton(testClass)));
+                Collections.singleton(testClass));
+        junitsByTestClassBuilder.put(testClass, junit);
+        steps.add(junit);
+      }
+    } else if (forkMode() == ForkMode.SHARDED) {
+      ImmutableList<ImmutableSet<String>> shards =
+          JavaTestShards.balance(
+              testClassNames,
+              JavaTestShards.readDurations(getProjectFilesystem(), getPathToTestClassDurations()),
+              getShardCount(executionContext.isDebugEnabled(), options.getJavaTestShardCount()));
+      LOG.debug("Running these classes in %d shards: %s", shards.size(), shards);
+      ImmutableList.Builder<JUnitStep> shardJunits = ImmutableList.builder();
+      for (int i = 0; i < shards.size(); i++) {
+        // Each shard logs to its own file, since they all run at the same time.
+        JUnitStep junit =
+            getJUnitStep(
+                executionContext,
+                buildContext.getSourcePathResolver(),
+                options,
+                Optional.of(pathToTestOutput),
+                Optional.of(getPathToShardTestLogs(i)),
+                shards.get(i));
+        for (String testClass : shards.get(i)) {
+          junitsByTestClassBuilder.put(testClass, junit);
+        }
+        shardJunits.add(junit);
       }
-      junits = junitsBuilder.build();
+      steps.add(new JUnitShardsStep(shardJunits.build()));
     } else {
-      junits =
-          ImmutableList.of(
-              getJUnitStep(
-                  executionContext,
-                  buildContext.getSourcePathResolver(),
-                  options,
-                  Optional.of(pathToTestOutput),
-                  Optional.of(pathToTestLogs),
-                  testClassNames));
+      JUnitStep junit =
+          getJUnitStep(
+              executionContext,
+              buildContext.getSourcePathResolver(),
+              options,
+              Optional.of(pathToTestOutput),
+              Optional.of(pathToTestLogs),
+              testClassNames);
+      for (String testClass : testClassNames) {
+        junitsByTestClassBuilder.put(testClass, junit);
+      }
+      steps.add(junit);
     }
-    steps.addAll(junits);
+    junitsByTestClass = junitsByTestClassBuilder.build();
     return steps.build();
   }
 
@@ -383,6 +420,16 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         getProjectFilesystem(), getBuildTarget(), "__java_test_%s_output__");
   }
 
+  /** Where the durations of the test classes are kept between runs when running in shards. */
+  private Path getPathToTestClassDurations() {
+    return BuildTargetPaths.getGenPath(
+        getProjectFilesystem(), getBuildTarget(), "%s/test_class_durations.json");
+  }
+
+  private Path getPathToShardTestLogs(int shard) {
+    return getPathToTestOutputDirectory().resolve(String.format("logs.shard-%d.txt", shard));
+  }
+
   /** @return a test case result, named "main", signifying a failure of the entire test class. */
   private TestCaseSummary getTestClassFailedSummary(String testClass, String message, long time) {
     return new TestCaseSummary(
@@ -420,15 +467,14 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
                 .getPathForRelativePath(getPathToTestOutputDirectory().resolve(path));
         if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
           String message;
-          for (JUnitStep junit : Objects.requireNonNull(junits)) {
-            if (junit.hasTimedOut()) {
-              message = "test timed out before generating results file";
-            } else {
-              message = "test exited before generating results file";
-            }
-            summaries.add(
-                getTestClassFailedSummary(testClass, message, testRuleTimeoutMs.orElse(0L)));
+          JUnitStep junit = Objects.requireNonNull(junitsByTestClass).get(testClass);
+          if (junit != null && junit.hasTimedOut()) {
+            message = "test timed out before generating results file";
+          } else {
+            message = "test exited before generating results file";
           }
+          summaries.add(
+              getTestClassFailedSummary(testClass, message, testRuleTimeoutMs.orElse(0L)));
           // Not having a test result file at all (which only happens when we are using test
           // selectors) is interpreted as meaning a test didn't run at all, so we'll completely
           // ignore it.  This is another result of the fact that JUnit is the only thing that can
@@ -439,13 +485,35 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         }
       }
 
-      return TestResults.builder()
-          .setBuildTarget(getBuildTarget())
-          .setTestCases(summaries)
-          .setContacts(contacts)
-          .setLabels(labels.stream().map(Object::toString).collect(ImmutableSet.toImmutableSet()))
-          .addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs))
-          .build();
+      TestResults.Builder results =
+          TestResults.builder()
+              .setBuildTarget(getBuildTarget())
+              .setTestCases(summaries)
+              .setContacts(contacts)
+              .setLabels(
+                  labels.stream().map(Object::toString).collect(ImmutableSet.toImmutableSet()));
+      if (forkMode() == ForkMode.SHARDED) {
+        int shardCount =
+            ImmutableSet.copyOf(Objects.requireNonNull(junitsByTestClass).values()).size();
+        for (int i = 0; i < shardCount; i++) {
+          results.addTestLogPaths(getProjectFilesystem().resolve(getPathToShardTestLogs(i)));
+        }
+        if (!isUsingTestSelectors) {
+          // With test selectors, only some of the tests of each class run.
+          JavaTestShards.recordDurations(
+              getProjectFilesystem(),
+              getPathToTestClassDurations(),
+              summaries.stream()
+                  .collect(
+                      ImmutableMap.toImmutableMap(
+                          TestCaseSummary::getTestCaseName,
+                          TestCaseSummary::getTotalTime,
+                          Math::max)));
+        }
+      } else {
+        results.addTestLogPaths(getProjectFilesystem().resolve(pathToTestLogs));
+      }
+      return results.build();
     };
   }
 
@@ -503,6 +571,19 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
     return ImmutableSortedSet.of();
   }
 
+  /**
+   * @return how many shards run the test classes. A debugged test runs in a single shard, since
+   *     every shard would wait for a debugger on the same port.
+   */
+  @VisibleForTesting
+  static int getShardCount(boolean isDebugEnabled, OptionalInt configuredShardCount) {
+    if (isDebugEnabled) {
+      return 1;
+    }
+    return configuredShardCount.orElse(
+        Math.min(DEFAULT_SHARD_COUNT, Runtime.getRuntime().availableProcessors()));
+  }
+
   @VisibleForTesting
   static class CompiledClassFileFinder {
 
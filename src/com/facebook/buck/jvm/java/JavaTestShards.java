@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Splits the test classes of a {@link JavaTest} into shards that take about as long to run, based
+ * on how long each class took in previous runs.
+ *
+ * <p>Durations are kept in a file next to the test outputs, so they are local to the machine and
+ * are lost with the rest of buck-out.
+ */
+class JavaTestShards {
+  private static final Logger LOG = Logger.get(JavaTestShards.class);
+
+  /** Assumed duration of a class that never ran, when no class ever did. */
+  private static final long DEFAULT_DURATION_MILLIS = 1000;
+
+  private JavaTestShards() {}
+
+  /**
+   * Assigns each class to a shard, longest classes first, always to the shard with the least work
+   * so far. Classes without a recorded duration are assumed to take as long as the average class
+   * that has one.
+   *
+   * @return the classes of each shard, without empty shards
+   */
+  static ImmutableList<ImmutableSet<String>> balance(
+      Collection<String> testClassNames, Map<String, Long> durationsMillis, int shardCount) {
+    long defaultDurationMillis =
+        (long)
+            testClassNames.stream()
+                .filter(durationsMillis::containsKey)
+                .mapToLong(durationsMillis::get)
+                .average()
+                .orElse(DEFAULT_DURATION_MILLIS);
+    Comparator<String> longestFirst =
+        Comparator.<String>comparingLong(
+                testClass -> durationsMillis.getOrDefault(testClass, defaultDurationMillis))
+            .reversed()
+            .thenComparing(Comparator.naturalOrder());
+    List<String> sortedClassNames = new ArrayList<>(testClassNames);
+    sortedClassNames.sort(longestFirst);
+
+    int actualShardCount = Math.max(1, Math.min(shardCount, sortedClassNames.size()));
+    PriorityQueue<Shard> shards =
+        new PriorityQueue<>(
+            actualShardCount,
+            Comparator.<Shard>comparingLong(shard -> shard.durationMillis)
+                .thenComparingInt(shard -> shard.index));
+    for (int i = 0; i < actualShardCount; i++) {
+      shards.add(new Shard(i));
+    }
+    for (String testClass : sortedClassNames) {
+      Shard shard = shards.remove();
+      shard.testClassNames.add(testClass);
+      shard.durationMillis += durationsMillis.getOrDefault(testClass, defaultDurationMillis);
+      shards.add(shard);
+    }
+
+    List<Shard> shardsByIndex = new ArrayList<>(shards);
+    shardsByIndex.sort(Comparator.comparingInt(shard -> shard.index));
+    return shardsByIndex.stream()
+        .filter(shard -> !shard.testClassNames.isEmpty())
+        .map(shard -> ImmutableSet.copyOf(shard.testClassNames))
+        .collect(ImmutableList.toImmutableList());
+  }
+
+  /** Reads the durations recorded by {@link #recordDurations}, or none if they can't be read. */
+  static ImmutableMap<String, Long> readDurations(ProjectFilesystem filesystem, Path path) {
+    Optional<String> contents = filesystem.readFileIfItExists(path);
+    if (!contents.isPresent()) {
+      return ImmutableMap.of();
+    }
+    try {
+      Map<String, Long> durations =
+          ObjectMappers.readValue(contents.get(), new TypeReference<Map<String, Long>>() {});
+      return ImmutableMap.copyOf(durations);
+    } catch (IOException | RuntimeException e) {
+      // The durations only make the shards more even, so the tests can run without them.
+      LOG.warn(e, "Failed to read test class durations from %s.", path);
+      return ImmutableMap.of();
+    }
+  }
+
+  /**
+   * Records the durations of the classes that just ran, keeping the ones of the classes that
+   * didn't.
+   */
+  static void recordDurations(
+      ProjectFilesystem filesystem, Path path, Map<String, Long> newDurationsMillis) {
+    Map<String, Long> durations = new TreeMap<>(readDurations(filesystem, path));
+    durations.putAll(newDurationsMillis);
+    try {
+      filesystem.mkdirs(path.getParent());
+      try (OutputStream output = filesystem.newFileOutputStream(path)) {
+        ObjectMappers.WRITER.writeValue(output, durations);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to record test class durations to %s.", path);
+    }
+  }
+
+  private static class Shard {
+    private final int index;
+    private final List<String> testClassNames = new ArrayList<>();
+    private long durationMillis;
+
+    private Shard(int index) {
+      this.index = index;
+    }
+  }
+}
@@ -35,6 +35,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import java.nio.file.Path;
+import java.util.Objects;
 import java.util.Optional;
 import javax.annotation.Nullable;
 
@@ -180,6 +181,29 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
                 .getEntriesToJar()
                 .contains(compilerParameters.getOutputPaths().getClassesDir()));
 
+    if (shouldCompileIncrementally(
+        invokingRule,
+        compilerParameters,
+        postprocessClassesCommands,
+        abiJarParameters,
+        libraryJarParameters)) {
+      JavacOptions buildTimeOptions =
+          javacOptions.withBootclasspathFromContext(extraClasspathProvider);
+      addAnnotationGenFolderStep(
+          invokingRule, projectFilesystem, steps, buildableContext, context);
+      steps.add(
+          new IncrementalJavacStep(
+              javac,
+              buildTimeOptions,
+              invokingRule,
+              context.getSourcePathResolver(),
+              projectFilesystem,
+              new ClasspathChecker(),
+              compilerParameters));
+      createJarStep(projectFilesystem, Objects.requireNonNull(libraryJarParameters), steps);
+      return;
+    }
+
     String spoolMode = javacOptions.getSpoolMode().name();
     // In order to use direct spooling to the Jar:
     // (1) It must be enabled through a .buckconfig.
@@ -227,6 +251,27 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
     }
   }
 
+  /**
+   * Incremental compilation only knows how to trace the dependencies of plain javac output, so it
+   * is not used when annotation processors, javac plugins or postprocessing commands can change the
+   * output, or when the compilation also produces an ABI jar.
+   */
+  private boolean shouldCompileIncrementally(
+      BuildTarget invokingRule,
+      CompilerParameters compilerParameters,
+      ImmutableList<String> postprocessClassesCommands,
+      @Nullable JarParameters abiJarParameters,
+      @Nullable JarParameters libraryJarParameters) {
+    return javacOptions.compileIncrementally()
+        && JavaAbis.isLibraryTarget(invokingRule)
+        && abiJarParameters == null
+        && libraryJarParameters != null
+        && !compilerParameters.getAbiGenerationMode().isSourceAbi()
+        && postprocessClassesCommands.isEmpty()
+        && javacOptions.getJavaAnnotationProcessorParams().isEmpty()
+        && javacOptions.getStandardJavacPluginParams().isEmpty();
+  }
+
   public void createPipelinedCompileStep(
       BuildContext context,
       ProjectFilesystem projectFilesystem,
@@ -503,6 +503,13 @@ class Jsr199JavacInvocation implements Javac.Invocation {
 
           StandardJavaFileManager standardFileManager =
               compiler.getStandardFileManager(null, null, null);
+          if (context.shouldUseSharedClasspathCache()) {
+            // Class files on the classpath are read through a cache shared by all the
+            // compilations in this process, since most targets depend on many of the same jars.
+            standardFileManager =
+                new SharedClasspathFileManager(
+                    standardFileManager, SharedClasspathCache.getInstance());
+          }
           addCloseable(standardFileManager);
 
           // Ensure plugins are loaded from their own classloader.
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.core.util.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * The jars that in-process javac reads classes from, shared by all compilations running in this
+ * process.
+ *
+ * <p>Jars are identified by the hash of their contents, so compilations whose classpaths contain
+ * the same jar, even at a different path or after it was rebuilt with identical contents, read each
+ * of its entries from disk only once. A jar is hashed and indexed again only when its size,
+ * modification time or file key changes. The index of the central directory is shared by all
+ * copies of a jar with the same contents.
+ *
+ * <p>Jars are neither kept open nor mapped into memory, since buck rewrites them in place and
+ * mapped files cannot be deleted on Windows. Entries are read with positional reads and checked
+ * against the CRC in the index, and a jar that was rewritten without changing its attributes is
+ * indexed again as soon as one of its entries does not match. Class files of jars that cannot be
+ * indexed are not cached.
+ *
+ * <p>Only immutable data is shared. Every compilation still creates its own javac task, file
+ * manager and symbol table, so compilations remain isolated from each other.
+ */
+@ThreadSafe
+final class SharedClasspathCache {
+
+  private static final Logger LOG = Logger.get(SharedClasspathCache.class);
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  private static final long DEFAULT_MAX_ENTRY_BYTES = 256L * 1024 * 1024;
+  private static final int MAX_JARS = 16 * 1024;
+  private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+  private static final SharedClasspathCache INSTANCE =
+      new SharedClasspathCache(DEFAULT_MAX_ENTRY_BYTES);
+
+  /** Reads the contents of a class file on a cache miss. */
+  interface Loader {
+    byte[] load() throws IOException;
+  }
+
+  /** A jar together with the index of its central directory. */
+  static final class IndexedJar {
+    private final Path path;
+    private final HashCode hash;
+    private final JarIndex index;
+
+    private IndexedJar(Path path, HashCode hash, JarIndex index) {
+      this.path = path;
+      this.hash = hash;
+      this.index = index;
+    }
+
+    Path getPath() {
+      return path;
+    }
+
+    /** @return the hash of the contents of the jar */
+    HashCode getHash() {
+      return hash;
+    }
+
+    JarIndex getIndex() {
+      return index;
+    }
+  }
+
+  private final Cache<Path, JarSnapshot> jarSnapshots =
+      CacheBuilder.newBuilder().maximumSize(MAX_JARS).build();
+  private final Cache<HashCode, JarIndex> jarIndexes =
+      CacheBuilder.newBuilder().maximumSize(MAX_JARS).build();
+  private final Cache<EntryKey, byte[]> entries;
+
+  @VisibleForTesting
+  SharedClasspathCache(long maxEntryBytes) {
+    this.entries =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxEntryBytes)
+            .<EntryKey, byte[]>weigher((key, contents) -> contents.length)
+            .build();
+  }
+
+  /** @return the cache shared by all in-process compilations */
+  static SharedClasspathCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param jarPath the absolute path of a jar
+   * @return the indexed jar, or empty if the jar cannot be indexed, for
+   *     example because it uses ZIP64 extensions
+   */
+  Optional<IndexedJar> getIndexedJar(Path jarPath) throws IOException {
+    return Optional.ofNullable(getSnapshot(jarPath).indexedJar);
+  }
+
+  /**
+   * @return the contents of {@code entry}, which must be an entry of the index of {@code jar}. The
+   *     returned array must not be modified.
+   */
+  byte[] getEntry(IndexedJar jar, JarIndex.Entry entry) throws IOException {
+    EntryKey key = new EntryKey(jar.hash, entry.getName());
+    byte[] contents = entries.getIfPresent(key);
+    if (contents != null) {
+      return contents;
+    }
+
+    try {
+      contents = readEntry(jar.path, entry);
+    } catch (ZipException e) {
+      // The jar was rewritten without changing its size, modification time or file key, so read
+      // the entry from what the jar contains now.
+      LOG.debug(e, "%s changed since it was indexed", jar.path);
+      jarSnapshots.invalidate(jar.path);
+      IndexedJar currentJar =
+          getIndexedJar(jar.path)
+              .orElseThrow(() -> new ZipException("Unable to index " + jar.path));
+      JarIndex.Entry currentEntry = currentJar.index.getEntry(entry.getName());
+      if (currentEntry == null) {
+        throw new ZipException(entry.getName() + " was removed from " + jar.path);
+      }
+      key = new EntryKey(currentJar.hash, currentEntry.getName());
+      contents = readEntry(currentJar.path, currentEntry);
+    }
+    entries.put(key, contents);
+    return contents;
+  }
+
+  /**
+   * @param jarPath the absolute path of the jar containing the class file
+   * @param entryName the name of the class file entry within the jar
+   * @param loader reads the class file if the jar cannot be indexed
+   * @return the contents of the class file. The returned array must not be modified.
+   */
+  byte[] getClassFile(Path jarPath, String entryName, Loader loader) throws IOException {
+    IndexedJar jar = getSnapshot(jarPath).indexedJar;
+    JarIndex.Entry entry = jar == null ? null : jar.index.getEntry(entryName);
+    if (entry == null) {
+      // Without an index, the contents cannot be checked against the jar they are cached for.
+      return loader.load();
+    }
+    return getEntry(jar, entry);
+  }
+
+  @VisibleForTesting
+  HashCode getJarHash(Path jarPath) throws IOException {
+    return getSnapshot(jarPath).hash;
+  }
+
+  private JarSnapshot getSnapshot(Path jarPath) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(jarPath, BasicFileAttributes.class);
+    JarSnapshot snapshot = jarSnapshots.getIfPresent(jarPath);
+    if (snapshot == null || !snapshot.matches(attributes)) {
+      // The attributes are read before hashing, so that a jar that changes while it is hashed does
+      // not match the snapshot anymore and is hashed again on the next call.
+      snapshot = createSnapshot(jarPath, attributes);
+      jarSnapshots.put(jarPath, snapshot);
+    }
+    return snapshot;
+  }
+
+  private JarSnapshot createSnapshot(Path jarPath, BasicFileAttributes attributes)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(jarPath, StandardOpenOption.READ)) {
+      HashCode hash = hash(channel);
+      JarIndex index = jarIndexes.getIfPresent(hash);
+      if (index == null) {
+        try {
+          index = JarIndex.read(channel);
+        } catch (ZipException e) {
+          LOG.debug(e, "Unable to index %s", jarPath);
+          return new JarSnapshot(attributes, hash, null);
+        }
+        jarIndexes.put(hash, index);
+      }
+      return new JarSnapshot(attributes, hash, new IndexedJar(jarPath, hash, index));
+    }
+  }
+
+  private static HashCode hash(FileChannel channel) throws IOException {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+    long position = 0;
+    for (int read; (read = channel.read(buffer, position)) >= 0; position += read) {
+      buffer.flip();
+      hasher.putBytes(buffer);
+      buffer.clear();
+    }
+    return hasher.hash();
+  }
+
+  private static byte[] readEntry(Path jarPath, JarIndex.Entry entry) throws IOException {
+    try (FileChannel channel = FileChannel.open(jarPath, StandardOpenOption.READ)) {
+      return JarIndex.readEntry(channel, entry);
+    }
+  }
+
+  private static final class JarSnapshot {
+    private final long size;
+    private final FileTime lastModifiedTime;
+    @Nullable private final Object fileKey;
+    private final HashCode hash;
+    @Nullable private final IndexedJar indexedJar;
+
+    private JarSnapshot(
+        BasicFileAttributes attributes, HashCode hash, @Nullable IndexedJar indexedJar) {
+      this.size = attributes.size();
+      this.lastModifiedTime = attributes.lastModifiedTime();
+      this.fileKey = attributes.fileKey();
+      this.hash = hash;
+      this.indexedJar = indexedJar;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size()
+          && lastModifiedTime.equals(attributes.lastModifiedTime())
+          && Objects.equals(fileKey, attributes.fileKey());
+    }
+  }
+
+  private static final class EntryKey {
+    private final HashCode jarHash;
+    private final String entryName;
+
+    private EntryKey(HashCode jarHash, String entryName) {
+      this.jarHash = jarHash;
+      this.entryName = entryName;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof EntryKey)) {
+        return false;
+      }
+      EntryKey that = (EntryKey) other;
+      return jarHash.equals(that.jarHash) && entryName.equals(that.entryName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(jarHash, entryName);
+    }
+  }
+}
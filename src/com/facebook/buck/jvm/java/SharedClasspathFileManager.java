@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.util.zip.JarBuilder;
+import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * A file manager that reads jars on the classpath and the platform classpath through the {@link
+ * SharedClasspathCache}, so that entries used by many compilations are read and inflated only once
+ * per process.
+ *
+ * <p>If the classpath consists only of jars that the cache can index, it is listed and searched
+ * entirely in memory, using the shared indexes of the jars' central directories, and entries are
+ * read straight from the jars at the offsets the indexes record. Only the first lookup of each
+ * compilation checks whether the jars changed on disk. Otherwise, the underlying file manager
+ * finds the files and only the contents of class files are shared.
+ */
+class SharedClasspathFileManager extends ForwardingStandardJavaFileManager {
+
+  private static final String JAR_SCHEME = "jar";
+  private static final String FILE_SCHEME = "file";
+
+  private final SharedClasspathCache cache;
+
+  /** Whether {@link #indexedClassPath} is up to date with the classpath option. */
+  private boolean classPathIndexed = false;
+
+  /** The indexed jars of the classpath, or null if it cannot be indexed. */
+  @Nullable private List<SharedClasspathCache.IndexedJar> indexedClassPath;
+
+  public SharedClasspathFileManager(
+      StandardJavaFileManager fileManager, SharedClasspathCache cache) {
+    super(fileManager);
+    this.cache = cache;
+  }
+
+  @Override
+  public boolean handleOption(String current, Iterator<String> remaining) {
+    classPathIndexed = false;
+    return super.handleOption(current, remaining);
+  }
+
+  @Override
+  public void setLocation(Location location, Iterable<? extends File> path) throws IOException {
+    classPathIndexed = false;
+    super.setLocation(location, path);
+  }
+
+  @Override
+  public String inferBinaryName(Location location, JavaFileObject file) {
+    if (file instanceof IndexedJarFileObject) {
+      return ((IndexedJarFileObject) file).entry.getBinaryName();
+    }
+    // javac does not play nice with wrapped file objects in this method; so we unwrap
+    return super.inferBinaryName(location, unwrap(file));
+  }
+
+  @Override
+  public boolean isSameFile(FileObject a, FileObject b) {
+    if (a instanceof IndexedJarFileObject || b instanceof IndexedJarFileObject) {
+      return a.toUri().equals(b.toUri());
+    }
+    // javac does not play nice with wrapped file objects in this method; so we unwrap
+    return super.isSameFile(unwrap(a), unwrap(b));
+  }
+
+  @Override
+  public Iterable<JavaFileObject> list(
+      Location location, String packageName, Set<JavaFileObject.Kind> kinds, boolean recurse)
+      throws IOException {
+    if (location == StandardLocation.CLASS_PATH) {
+      List<SharedClasspathCache.IndexedJar> jars = getIndexedClassPath();
+      if (jars != null) {
+        List<JavaFileObject> files = new ArrayList<>();
+        for (SharedClasspathCache.IndexedJar jar : jars) {
+          for (JarIndex.Entry entry : jar.getIndex().list(packageName, kinds, recurse)) {
+            files.add(new IndexedJarFileObject(jar, entry));
+          }
+        }
+        return files;
+      }
+    }
+
+    Iterable<JavaFileObject> files = super.list(location, packageName, kinds, recurse);
+    if (!isSharedLocation(location) || !kinds.contains(JavaFileObject.Kind.CLASS)) {
+      return files;
+    }
+    return Iterables.transform(files, this::maybeWrap);
+  }
+
+  @Override
+  @Nullable
+  public JavaFileObject getJavaFileForInput(
+      Location location, String className, JavaFileObject.Kind kind) throws IOException {
+    if (location == StandardLocation.CLASS_PATH) {
+      List<SharedClasspathCache.IndexedJar> jars = getIndexedClassPath();
+      if (jars != null) {
+        String entryName = className.replace('.', '/') + kind.extension;
+        for (SharedClasspathCache.IndexedJar jar : jars) {
+          JarIndex.Entry entry = jar.getIndex().getEntry(entryName);
+          if (entry != null) {
+            return new IndexedJarFileObject(jar, entry);
+          }
+        }
+        return null;
+      }
+    }
+
+    JavaFileObject file = super.getJavaFileForInput(location, className, kind);
+    if (file == null || !isSharedLocation(location)) {
+      return file;
+    }
+    return maybeWrap(file);
+  }
+
+  @Nullable
+  private List<SharedClasspathCache.IndexedJar> getIndexedClassPath() throws IOException {
+    if (!classPathIndexed) {
+      indexedClassPath = indexClassPath();
+      classPathIndexed = true;
+    }
+    return indexedClassPath;
+  }
+
+  @Nullable
+  private List<SharedClasspathCache.IndexedJar> indexClassPath() throws IOException {
+    Iterable<? extends File> classPath = getLocation(StandardLocation.CLASS_PATH);
+    if (classPath == null) {
+      return null;
+    }
+
+    List<SharedClasspathCache.IndexedJar> jars = new ArrayList<>();
+    for (File file : classPath) {
+      if (!file.exists()) {
+        // javac ignores classpath entries that do not exist
+        continue;
+      }
+      if (!file.isFile()) {
+        return null;
+      }
+      Optional<SharedClasspathCache.IndexedJar> jar =
+          cache.getIndexedJar(file.toPath().toAbsolutePath());
+      if (!jar.isPresent()) {
+        return null;
+      }
+      jars.add(jar.get());
+    }
+    return jars;
+  }
+
+  private static boolean isSharedLocation(Location location) {
+    return location == StandardLocation.CLASS_PATH
+        || location == StandardLocation.PLATFORM_CLASS_PATH;
+  }
+
+  private JavaFileObject maybeWrap(JavaFileObject file) {
+    if (file.getKind() != JavaFileObject.Kind.CLASS) {
+      return file;
+    }
+
+    URI uri = file.toUri();
+    if (!JAR_SCHEME.equals(uri.getScheme())) {
+      return file;
+    }
+    // The jar: scheme is somewhat underspecified. See the JarURLConnection docs
+    // for the closest thing it has to documentation.
+    String[] split = uri.getRawSchemeSpecificPart().split("!/");
+    if (split.length != 2) {
+      return file;
+    }
+    URI jarUri = URI.create(split[0]);
+    if (!FILE_SCHEME.equals(jarUri.getScheme())) {
+      return file;
+    }
+    return new SharedClassFileObject(file, Paths.get(jarUri), split[1]);
+  }
+
+  private static JavaFileObject unwrap(JavaFileObject file) {
+    if (file instanceof SharedClassFileObject) {
+      return ((SharedClassFileObject) file).getJavaFileObject();
+    }
+    return file;
+  }
+
+  private static FileObject unwrap(FileObject file) {
+    if (file instanceof JavaFileObject) {
+      return unwrap((JavaFileObject) file);
+    }
+    return file;
+  }
+
+  /** A file in a jar that is read at the offset recorded in the jar's index. */
+  private class IndexedJarFileObject extends JarFileObject {
+    private final SharedClasspathCache.IndexedJar jar;
+    private final JarIndex.Entry entry;
+
+    private IndexedJarFileObject(SharedClasspathCache.IndexedJar jar, JarIndex.Entry entry) {
+      super(createJarUri(jar.getPath(), entry.getName()), entry.getName(), entry.getKind());
+      this.jar = jar;
+      this.entry = entry;
+    }
+
+    @Override
+    public String getName() {
+      // Same as javac, so that diagnostics mention the jar
+      return jar.getPath() + "(" + entry.getName() + ")";
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return new ByteArrayInputStream(cache.getEntry(jar, entry));
+    }
+
+    @Override
+    public OutputStream openOutputStream() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Reader openReader(boolean ignoreEncodingErrors) throws IOException {
+      return new InputStreamReader(openInputStream(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors) throws IOException {
+      return new String(cache.getEntry(jar, entry), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Writer openWriter() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeToJar(JarBuilder jarBuilder, String owner) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /** Creates the same URIs for jar entries as javac, which {@link ClassUsageTracker} expects. */
+  private static URI createJarUri(Path jarPath, String entryName) {
+    return URI.create(JAR_SCHEME + ":" + jarPath.toFile().toURI().normalize() + "!/" + entryName);
+  }
+
+  private class SharedClassFileObject extends ForwardingJavaFileObject<JavaFileObject> {
+    private final Path jarPath;
+    private final String entryName;
+
+    private SharedClassFileObject(JavaFileObject file, Path jarPath, String entryName) {
+      super(file);
+      this.jarPath = jarPath;
+      this.entryName = entryName;
+    }
+
+    private JavaFileObject getJavaFileObject() {
+      return fileObject;
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+      return new ByteArrayInputStream(
+          cache.getClassFile(
+              jarPath,
+              entryName,
+              () -> {
+                try (InputStream stream = fileObject.openInputStream()) {
+                  return ByteStreams.toByteArray(stream);
+                }
+              }));
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+
+/**
+ * Writes the stub of a jar, stripping its classes in parallel.
+ *
+ * <p>Every class is read from the jar and stripped by its own task on a fork-join pool that is
+ * shared by all stubbers, so stubbing a large jar scales with the number of cores without
+ * oversubscribing them when many ABI rules run at once. The stub of each class is serialized in its
+ * task too, into an array of exactly the right size that the writer then only has to copy.
+ * Resources are copied from the jar as the stub jar is written, so the jar must stay open until the
+ * writer is closed.
+ *
+ * <p>The entries are written in the same order as {@link StubJar} writes the entries of any other
+ * library, so the stub jar does not depend on how the work was scheduled.
+ */
+final class ParallelJarStubber {
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private final ZipFile jar;
+  @Nullable private final AbiGenerationMode compatibilityMode;
+
+  ParallelJarStubber(ZipFile jar, @Nullable AbiGenerationMode compatibilityMode) {
+    this.jar = jar;
+    this.compatibilityMode = compatibilityMode;
+  }
+
+  void writeTo(StubJarWriter writer) throws IOException {
+    SortedMap<String, ZipEntry> entries = new TreeMap<>();
+    for (Enumeration<? extends ZipEntry> e = jar.entries(); e.hasMoreElements(); ) {
+      ZipEntry entry = e.nextElement();
+      if (!entry.isDirectory()) {
+        entries.putIfAbsent(entry.getName(), entry);
+      }
+    }
+
+    List<ForkJoinTask<byte[]>> stubs = new ArrayList<>(entries.size());
+    for (ZipEntry entry : entries.values()) {
+      stubs.add(isClass(entry) ? POOL.submit(() -> stubClass(entry)) : null);
+    }
+
+    try {
+      int index = 0;
+      for (ZipEntry entry : entries.values()) {
+        Path path = Paths.get(entry.getName());
+        ForkJoinTask<byte[]> stub = stubs.get(index++);
+        if (stub == null) {
+          writer.writeEntry(path, () -> jar.getInputStream(entry));
+          continue;
+        }
+        byte[] stubClass = getStub(stub);
+        if (stubClass != null) {
+          writer.writeEntry(path, () -> new ByteArrayInputStream(stubClass));
+        }
+      }
+    } finally {
+      // Nothing is waiting for the remaining stubs if one of them failed.
+      for (ForkJoinTask<byte[]> stub : stubs) {
+        if (stub != null) {
+          stub.cancel(false);
+        }
+      }
+    }
+  }
+
+  /** @return the stub of the class, or null if the class is not part of the ABI */
+  @Nullable
+  private byte[] stubClass(ZipEntry entry) throws IOException {
+    byte[] classFile;
+    try (InputStream input = jar.getInputStream(entry)) {
+      long size = entry.getSize();
+      if (size >= 0 && size <= Integer.MAX_VALUE) {
+        classFile = new byte[(int) size];
+        ByteStreams.readFully(input, classFile);
+      } else {
+        classFile = ByteStreams.toByteArray(input);
+      }
+    }
+    StubJarClassEntry stub =
+        StubJarClassEntry.of(Paths.get(entry.getName()), classFile, compatibilityMode);
+    return stub == null ? null : stub.toByteArray();
+  }
+
+  @Nullable
+  private static byte[] getStub(ForkJoinTask<byte[]> stub) throws IOException {
+    try {
+      return stub.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while stubbing classes");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new IOException(cause);
+    }
+  }
+
+  private static boolean isClass(ZipEntry entry) {
+    return entry.getName().endsWith(".class");
+  }
+}
@@ -21,11 +21,13 @@ import com.facebook.buck.io.pathformat.PathFormatter;
 import com.facebook.buck.jvm.java.lang.model.ElementsExtended;
 import com.facebook.buck.util.zip.JarBuilder;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
 import javax.annotation.Nullable;
 import javax.annotation.processing.Messager;
 import javax.lang.model.SourceVersion;
@@ -34,10 +36,14 @@ import javax.lang.model.util.Types;
 
 public class StubJar {
   private final Supplier<LibraryReader> libraryReaderSupplier;
+  /** The jar to mirror, if any. Classes read from jars can be stubbed in parallel. */
+  @Nullable private final Path jarToMirror;
+
   @Nullable private AbiGenerationMode compatibilityMode = null;
 
   public StubJar(Path toMirror) {
     libraryReaderSupplier = () -> LibraryReader.of(toMirror);
+    jarToMirror = Files.isDirectory(toMirror) ? null : toMirror;
   }
 
   /**
@@ -63,6 +69,8 @@ public class StubJar {
                 messager,
                 topLevelElements,
                 includeParameterMetadata);
+    // The elements of the compiler can only be used from the compiler thread.
+    jarToMirror = null;
   }
 
   /**
@@ -76,6 +84,15 @@ public class StubJar {
   }
 
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
+    if (jarToMirror != null) {
+      // As below, the jar must only be closed after the writer has copied its resources.
+      try (ZipFile jar = new ZipFile(jarToMirror.toFile());
+          StubJarWriter writer = new FilesystemStubJarWriter(filesystem, path)) {
+        new ParallelJarStubber(jar, compatibilityMode).writeTo(writer);
+      }
+      return;
+    }
+
     // The order of these declarations is important -- FilesystemStubJarWriter actually uses
     // the LibraryReader in its close method, and try-with-resources closes the items in the
     // opposite order of their creation.
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import com.facebook.buck.util.function.ThrowingConsumer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,6 +25,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import javax.annotation.Nullable;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
@@ -39,6 +41,30 @@ class StubJarClassEntry extends StubJarEntry {
   public static StubJarClassEntry of(
       LibraryReader input, Path path, @Nullable AbiGenerationMode compatibilityMode)
       throws IOException {
+    return StubJarClassEntry.<IOException>of(
+        path, visitor -> input.visitClass(path, visitor), compatibilityMode);
+  }
+
+  /** Creates the entry of a class that has already been read from the library. */
+  @Nullable
+  static StubJarClassEntry of(
+      Path path, byte[] classFile, @Nullable AbiGenerationMode compatibilityMode) {
+    return StubJarClassEntry.<RuntimeException>of(
+        path,
+        visitor ->
+            new ClassReader(classFile)
+                .accept(
+                    visitor,
+                    ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES),
+        compatibilityMode);
+  }
+
+  @Nullable
+  private static <E extends Exception> StubJarClassEntry of(
+      Path path,
+      ThrowingConsumer<ClassVisitor, E> classReader,
+      @Nullable AbiGenerationMode compatibilityMode)
+      throws E {
     ClassNode stub = new ClassNode(Opcodes.ASM7);
 
     // As we read the class in, we create a partial stub that removes non-ABI methods and fields
@@ -53,7 +79,7 @@ class StubJarClassEntry extends StubJarEntry {
     if (compatibilityMode != null && compatibilityMode != AbiGenerationMode.CLASS) {
       firstLevelFiltering = new SourceAbiCompatibleVisitor(firstLevelFiltering, compatibilityMode);
     }
-    input.visitClass(path, firstLevelFiltering);
+    classReader.accept(firstLevelFiltering);
 
     // The synthetic package-info class is how package annotations are recorded; that one is
     // actually used by the compiler
@@ -76,13 +102,18 @@ class StubJarClassEntry extends StubJarEntry {
   }
 
   private InputStream openInputStream() {
+    return new ByteArrayInputStream(toByteArray());
+  }
+
+  /** @return the contents of the stub class file */
+  byte[] toByteArray() {
     ClassWriter writer = new ClassWriter(0);
     ClassVisitor visitor = writer;
     visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
     visitor = new AbiFilteringClassVisitor(visitor, referencedClassNames);
     stub.accept(visitor);
 
-    return new ByteArrayInputStream(writer.toByteArray());
+    return writer.toByteArray();
   }
 
   private static boolean isAnonymousOrLocalOrSyntheticClass(ClassNode node) {
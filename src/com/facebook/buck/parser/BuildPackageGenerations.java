@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Numbers the invalidations of build packages performed by {@link DaemonicParserState}.
+ *
+ * <p>Every time a parsed build file is dropped from the daemon's caches, the current generation is
+ * incremented and recorded for that build file. Data derived from parsed build files, such as
+ * query results, can remember the generation at which it started reading them, and remains valid
+ * as long as none of the build files it read has been invalidated at a later generation.
+ *
+ * <p>Changes that may affect any build file, such as a watchman overflow or the addition or removal
+ * of a build file, invalidate all generations at once.
+ */
+@ThreadSafe
+public class BuildPackageGenerations {
+
+  @GuardedBy("this")
+  private long currentGeneration = 0;
+
+  @GuardedBy("this")
+  private long lastFullInvalidation = 0;
+
+  @GuardedBy("this")
+  private final Map<Path, Long> lastInvalidations = new HashMap<>();
+
+  /** @return the generation of the most recent invalidation */
+  public synchronized long getCurrentGeneration() {
+    return currentGeneration;
+  }
+
+  /** Records that the build file at the given absolute path was dropped from the caches. */
+  synchronized void invalidate(Path buildFile) {
+    lastInvalidations.put(buildFile, ++currentGeneration);
+  }
+
+  /** Records that the caches of all build files were dropped. */
+  synchronized void invalidateAll() {
+    lastInvalidations.clear();
+    lastFullInvalidation = ++currentGeneration;
+  }
+
+  /**
+   * @param generation the value of {@link #getCurrentGeneration()} before any of the build files
+   *     were read
+   * @param buildFiles absolute paths of the build files that were read
+   * @param directories absolute paths of directories all of whose build files, recursively, were
+   *     read
+   * @return whether none of the given build files has been invalidated since {@code generation}
+   */
+  public synchronized boolean isUpToDate(
+      long generation, Set<Path> buildFiles, Set<Path> directories) {
+    if (lastFullInvalidation > generation) {
+      return false;
+    }
+    for (Path buildFile : buildFiles) {
+      Long lastInvalidation = lastInvalidations.get(buildFile);
+      if (lastInvalidation != null && lastInvalidation > generation) {
+        return false;
+      }
+    }
+    if (!directories.isEmpty()) {
+      for (Map.Entry<Path, Long> entry : lastInvalidations.entrySet()) {
+        if (entry.getValue() > generation
+            && directories.stream().anyMatch(entry.getKey()::startsWith)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+}
@@ -137,10 +137,13 @@ class DaemonicCellState {
 
   private final AutoCloseableReadWriteUpdateLock rawAndComputedNodesLock;
   private final int parsingThreads;
+  private final BuildPackageGenerations buildPackageGenerations;
 
-  DaemonicCellState(Cell cell, int parsingThreads) {
+  DaemonicCellState(
+      Cell cell, int parsingThreads, BuildPackageGenerations buildPackageGenerations) {
     this.cell = new AtomicReference<>(cell);
     this.parsingThreads = parsingThreads;
+    this.buildPackageGenerations = buildPackageGenerations;
     this.cellRoot = cell.getRoot();
     this.cellCanonicalName = cell.getCanonicalName();
     this.buildFileDependents = HashMultimap.create();
@@ -233,6 +236,7 @@ class DaemonicCellState {
           allRawNodeTargets.remove(target);
         }
         allBuildFileManifests.invalidate(path);
+        buildPackageGenerations.invalidate(path);
       }
 
       // We may have been given a file that other build files depend on. Iteratively remove those.
@@ -279,6 +283,16 @@ class DaemonicCellState {
     return Optional.empty();
   }
 
+  /** @return absolute paths of the parsed build files that read environment variables */
+  ImmutableSet<Path> getBuildFilesUsingEnv() {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      return buildFileEnv.entrySet().stream()
+          .filter(entry -> !entry.getValue().isEmpty())
+          .map(Map.Entry::getKey)
+          .collect(ImmutableSet.toImmutableSet());
+    }
+  }
+
   /** @return {@code true} if the given path has dependencies that are present in the given set. */
   boolean pathDependentPresentIn(Path path, Set<Path> buildFiles) {
     return !Collections.disjoint(buildFileDependents.get(cellRoot.resolve(path)), buildFiles);
@@ -315,6 +315,8 @@ public class DaemonicParserState {
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  private final BuildPackageGenerations buildPackageGenerations = new BuildPackageGenerations();
+
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
    * root path). If this value changes, then we need to invalidate all the caches.
@@ -427,7 +429,7 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       DaemonicCellState state = cellPathToDaemonicState.get(cell.getRoot());
       if (state == null) {
-        state = new DaemonicCellState(cell, parsingThreads);
+        state = new DaemonicCellState(cell, parsingThreads, buildPackageGenerations);
         cellPathToDaemonicState.put(cell.getRoot(), state);
       }
       return state;
@@ -469,6 +471,8 @@ public class DaemonicParserState {
                   fullPath, cell);
               // If a build file has been added or removed, reconstruct the build file tree.
               buildFileTrees.invalidate(cell);
+              // The set of packages matched by target patterns may have changed.
+              buildPackageGenerations.invalidateAll();
             }
 
             // Added or removed files can affect globs, so invalidate the package build file
@@ -593,6 +597,42 @@ public class DaemonicParserState {
     return event.getKind() == Kind.CREATE || event.getKind() == Kind.DELETE;
   }
 
+  /**
+   * Drops the given build files, and the build files under the given directories, that read
+   * environment variables whose values have changed since they were parsed, as looking them up
+   * while parsing would. Data derived from these build files can then check {@link
+   * #getBuildPackageGenerations()} to find out whether it is still up to date.
+   *
+   * @param rootCell the root cell of the current command, whose environment is compared
+   * @param buildFiles absolute paths of build files
+   * @param directories absolute paths of directories
+   */
+  public void invalidateIfEnvHasChanged(
+      Cell rootCell, Set<Path> buildFiles, Set<Path> directories, BuckEventBus eventBus) {
+    for (Cell cell : rootCell.getAllCells()) {
+      DaemonicCellState state = getCellState(cell);
+      if (state == null) {
+        continue;
+      }
+      Set<Path> cellBuildFiles = new HashSet<>();
+      for (Path buildFile : buildFiles) {
+        if (buildFile.startsWith(cell.getRoot())) {
+          cellBuildFiles.add(buildFile);
+        }
+      }
+      if (!directories.isEmpty()) {
+        for (Path buildFile : state.getBuildFilesUsingEnv()) {
+          if (directories.stream().anyMatch(buildFile::startsWith)) {
+            cellBuildFiles.add(buildFile);
+          }
+        }
+      }
+      for (Path buildFile : cellBuildFiles) {
+        invalidateIfBuckConfigOrEnvHasChanged(cell, buildFile, eventBus);
+      }
+    }
+  }
+
   private boolean invalidateIfBuckConfigOrEnvHasChanged(
       Cell cell, Path buildFile, BuckEventBus eventBus) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
@@ -665,6 +705,7 @@ public class DaemonicParserState {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
       if (invalidated) {
+        buildPackageGenerations.invalidateAll();
         LOG.debug("Cell cache data invalidated.");
       } else {
         LOG.debug("Cell caches were empty, no data invalidated.");
@@ -681,6 +722,7 @@ public class DaemonicParserState {
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
       configurationBuildFiles.clear();
+      buildPackageGenerations.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -690,6 +732,14 @@ public class DaemonicParserState {
     }
   }
 
+  /**
+   * @return the {@link BuildPackageGenerations} that record the invalidations of build files
+   *     performed by this state
+   */
+  public BuildPackageGenerations getBuildPackageGenerations() {
+    return buildPackageGenerations;
+  }
+
   public ImmutableList<Counter> getCounters() {
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
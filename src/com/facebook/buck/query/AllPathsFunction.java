@@ -39,6 +39,7 @@ import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -88,6 +89,11 @@ public class AllPathsFunction<T extends QueryTarget> implements QueryFunction<T,
 
     env.buildTransitiveClosure(fromSet, Integer.MAX_VALUE);
 
+    Optional<CompactDependencyGraph<T>> compactGraph = env.getCompactDependencyGraph();
+    if (compactGraph.isPresent()) {
+      return compactGraph.get().getAllPaths(fromSet, toSet);
+    }
+
     Set<T> reachableFromX = env.getTransitiveClosure(fromSet);
     Set<T> result = intersection(reachableFromX, toSet);
     Collection<T> worklist = result;
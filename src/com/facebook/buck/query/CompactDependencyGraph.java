@@ -0,0 +1,269 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import com.google.common.primitives.ImmutableIntArray;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable snapshot of a dependency graph, where every node is assigned a dense integer index
+ * and the forward and reverse edges are stored as adjacency arrays.
+ *
+ * <p>Transitive traversals over this graph represent sets of nodes as {@link BitSet}s, so they do
+ * not allocate per-node objects and set operations such as restricting a traversal to a universe
+ * are single word-wise operations. Large traversal frontiers are expanded in parallel.
+ *
+ * <p>The results of the traversals are returned in breadth first order, level by level, which is
+ * the order that the equivalent traversals over a {@link QueryEnvironment} produce.
+ */
+public final class CompactDependencyGraph<T> {
+
+  /** The frontier size above which a single breadth first step is expanded in parallel. */
+  private static final int PARALLEL_FRONTIER_THRESHOLD = 4096;
+
+  private final List<T> nodes;
+  private final Map<T, Integer> indices;
+  private final int[] forwardOffsets;
+  private final int[] forwardEdges;
+  private final int[] reverseOffsets;
+  private final int[] reverseEdges;
+
+  private CompactDependencyGraph(
+      List<T> nodes,
+      Map<T, Integer> indices,
+      int[] forwardOffsets,
+      int[] forwardEdges,
+      int[] reverseOffsets,
+      int[] reverseEdges) {
+    this.nodes = nodes;
+    this.indices = indices;
+    this.forwardOffsets = forwardOffsets;
+    this.forwardEdges = forwardEdges;
+    this.reverseOffsets = reverseOffsets;
+    this.reverseEdges = reverseEdges;
+  }
+
+  /**
+   * Builds a {@link CompactDependencyGraph} from an object graph.
+   *
+   * @param graphNodes all the nodes of the graph
+   * @param successors returns the direct dependencies of a node. Dependencies that are not in
+   *     {@code graphNodes} are ignored.
+   * @param converter converts a graph node into the node type of the compacted graph. It must be
+   *     injective.
+   */
+  public static <N, T> CompactDependencyGraph<T> of(
+      Collection<N> graphNodes,
+      Function<? super N, ? extends Iterable<? extends N>> successors,
+      Function<? super N, ? extends T> converter) {
+    List<N> nodeList = new ArrayList<>(graphNodes);
+    int size = nodeList.size();
+    Map<N, Integer> graphIndices = new HashMap<>(size * 2);
+    List<T> nodes = new ArrayList<>(size);
+    Map<T, Integer> indices = new HashMap<>(size * 2);
+    for (N node : nodeList) {
+      int index = nodes.size();
+      graphIndices.put(node, index);
+      T converted = converter.apply(node);
+      nodes.add(converted);
+      indices.put(converted, index);
+    }
+
+    int[] forwardOffsets = new int[size + 1];
+    int[] reverseCounts = new int[size];
+    ImmutableIntArray.Builder forwardEdges = ImmutableIntArray.builder(size * 4);
+    int edgeCount = 0;
+    for (int from = 0; from < size; from++) {
+      forwardOffsets[from] = edgeCount;
+      for (N dep : successors.apply(nodeList.get(from))) {
+        Integer to = graphIndices.get(dep);
+        if (to != null) {
+          forwardEdges.add(to);
+          reverseCounts[to]++;
+          edgeCount++;
+        }
+      }
+    }
+    forwardOffsets[size] = edgeCount;
+    int[] forward = forwardEdges.build().toArray();
+
+    int[] reverseOffsets = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      reverseOffsets[i + 1] = reverseOffsets[i] + reverseCounts[i];
+    }
+    int[] reverse = new int[forward.length];
+    int[] reverseFill = new int[size];
+    for (int i = 0; i < size; i++) {
+      for (int e = forwardOffsets[i]; e < forwardOffsets[i + 1]; e++) {
+        int to = forward[e];
+        reverse[reverseOffsets[to] + reverseFill[to]++] = i;
+      }
+    }
+
+    return new CompactDependencyGraph<>(
+        nodes, indices, forwardOffsets, forward, reverseOffsets, reverse);
+  }
+
+  /** @return the number of nodes in this graph */
+  public int size() {
+    return nodes.size();
+  }
+
+  /** @return whether {@code node} is part of this graph */
+  public boolean contains(T node) {
+    return indices.containsKey(node);
+  }
+
+  /**
+   * Breadth first search over the forward dependencies of {@code roots}.
+   *
+   * @param maxDepth the maximum number of edges to follow
+   * @return {@code roots} followed by their dependencies up to {@code maxDepth}, level by level.
+   *     Roots that are not part of the graph are returned but not expanded.
+   */
+  public Set<T> getDeps(Set<T> roots, int maxDepth) {
+    Set<T> result = new LinkedHashSet<>(roots);
+    BitSet visited = toBitSet(roots);
+    BitSet frontier = (BitSet) visited.clone();
+    for (int depth = 0; depth < maxDepth && !frontier.isEmpty(); depth++) {
+      frontier = expand(forwardOffsets, forwardEdges, frontier, visited, null);
+      visited.or(frontier);
+      addAll(result, frontier);
+    }
+    return result;
+  }
+
+  /**
+   * Breadth first search over the reverse dependencies of {@code roots}, restricted to the forward
+   * transitive closure of {@code universe}.
+   *
+   * @param maxDepth the maximum number of edges to follow
+   * @return the roots that are in the closure of the universe, followed by their reverse
+   *     dependencies up to {@code maxDepth}, level by level.
+   */
+  public Set<T> getReverseDeps(Set<T> universe, Set<T> roots, int maxDepth) {
+    BitSet allowed = getTransitiveClosure(toBitSet(universe));
+    BitSet frontier = toBitSet(roots);
+    frontier.and(allowed);
+    return reverseTraversal(frontier, allowed, maxDepth);
+  }
+
+  /**
+   * @return all the nodes that are on some dependency path from a node in {@code from} to a node in
+   *     {@code to}, starting with the nodes of {@code to} and continuing with their reverse
+   *     dependencies, level by level.
+   */
+  public Set<T> getAllPaths(Set<T> from, Set<T> to) {
+    BitSet reachable = getTransitiveClosure(toBitSet(from));
+    BitSet frontier = toBitSet(to);
+    frontier.and(reachable);
+    return reverseTraversal(frontier, reachable, Integer.MAX_VALUE);
+  }
+
+  /** @return the forward transitive closure of {@code roots}, including the roots themselves */
+  public Set<T> getTransitiveClosure(Set<T> roots) {
+    BitSet closure = getTransitiveClosure(toBitSet(roots));
+    Set<T> result = new LinkedHashSet<>(closure.cardinality() * 2);
+    addAll(result, closure);
+    return result;
+  }
+
+  private BitSet getTransitiveClosure(BitSet roots) {
+    BitSet visited = (BitSet) roots.clone();
+    BitSet frontier = roots;
+    while (!frontier.isEmpty()) {
+      frontier = expand(forwardOffsets, forwardEdges, frontier, visited, null);
+      visited.or(frontier);
+    }
+    return visited;
+  }
+
+  private Set<T> reverseTraversal(BitSet roots, BitSet allowed, int maxDepth) {
+    Set<T> result = new LinkedHashSet<>();
+    addAll(result, roots);
+    BitSet visited = (BitSet) roots.clone();
+    BitSet frontier = roots;
+    for (int depth = 0; depth < maxDepth && !frontier.isEmpty(); depth++) {
+      frontier = expand(reverseOffsets, reverseEdges, frontier, visited, allowed);
+      visited.or(frontier);
+      addAll(result, frontier);
+    }
+    return result;
+  }
+
+  /**
+   * One breadth first step.
+   *
+   * @return the neighbours of {@code frontier} that are not in {@code visited} and, if given, are
+   *     in {@code allowed}
+   */
+  private BitSet expand(
+      int[] offsets, int[] edges, BitSet frontier, BitSet visited, @Nullable BitSet allowed) {
+    BitSet next;
+    if (frontier.cardinality() >= PARALLEL_FRONTIER_THRESHOLD) {
+      next =
+          frontier.stream()
+              .parallel()
+              .collect(
+                  BitSet::new,
+                  (bits, node) -> addNeighbours(offsets, edges, node, bits),
+                  BitSet::or);
+    } else {
+      next = new BitSet(nodes.size());
+      for (int node = frontier.nextSetBit(0); node >= 0; node = frontier.nextSetBit(node + 1)) {
+        addNeighbours(offsets, edges, node, next);
+      }
+    }
+    next.andNot(visited);
+    if (allowed != null) {
+      next.and(allowed);
+    }
+    return next;
+  }
+
+  private static void addNeighbours(int[] offsets, int[] edges, int node, BitSet into) {
+    for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+      into.set(edges[e]);
+    }
+  }
+
+  private BitSet toBitSet(Iterable<T> targets) {
+    BitSet bits = new BitSet(nodes.size());
+    for (T target : targets) {
+      Integer index = indices.get(target);
+      if (index != null) {
+        bits.set(index);
+      }
+    }
+    return bits;
+  }
+
+  private void addAll(Set<T> result, BitSet bits) {
+    for (int node = bits.nextSetBit(0); node >= 0; node = bits.nextSetBit(node + 1)) {
+      result.add(nodes.get(node));
+    }
+  }
+}
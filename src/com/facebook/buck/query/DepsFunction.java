@@ -115,6 +115,13 @@ public class DepsFunction<T extends QueryTarget> implements QueryFunction<T, T>
         args.size() > 2 ? Optional.of(args.get(2).getExpression()) : Optional.empty();
     env.buildTransitiveClosure(argumentSet, depthBound);
 
+    if (!deps.isPresent()) {
+      Optional<CompactDependencyGraph<T>> compactGraph = env.getCompactDependencyGraph();
+      if (compactGraph.isPresent()) {
+        return compactGraph.get().getDeps(argumentSet, depthBound);
+      }
+    }
+
     // LinkedHashSet preserves the order of insertion when iterating over the values.
     // The order by which we traverse the result is meaningful because the dependencies are
     // traversed level-by-level.
@@ -34,6 +34,7 @@ import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -242,6 +243,16 @@ public interface QueryEnvironment<NODE_TYPE> {
   /** Returns the direct reverse dependencies of the specified targets. */
   Set<NODE_TYPE> getReverseDeps(Iterable<NODE_TYPE> targets) throws QueryException;
 
+  /**
+   * Returns an index based snapshot of the dependency graph built so far by {@link
+   * #buildTransitiveClosure}, if this environment supports it and has an up to date one. Graph
+   * traversal functions use it in place of {@link #getFwdDeps} and {@link #getReverseDeps} to
+   * avoid materializing intermediate sets of targets.
+   */
+  default Optional<CompactDependencyGraph<NODE_TYPE>> getCompactDependencyGraph() {
+    return Optional.empty();
+  }
+
   Set<QueryFileTarget> getInputs(NODE_TYPE target) throws QueryException;
 
   /**
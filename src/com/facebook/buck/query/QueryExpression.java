@@ -86,6 +86,20 @@ public abstract class QueryExpression<NODE_TYPE> {
     traverse(new TargetPatternCollector<NODE_TYPE>(literals));
   }
 
+  /**
+   * Collects the names of all functions that are called anywhere within this query expression and
+   * adds them to the given collection, which must be mutable.
+   */
+  public void collectFunctionNames(Collection<String> names) {
+    traverse(
+        exp -> {
+          if (exp instanceof FunctionExpression) {
+            names.add(((FunctionExpression<NODE_TYPE>) exp).getFunction().getName());
+          }
+          return VisitResult.CONTINUE;
+        });
+  }
+
   /** Accepts and applies the given visitor. */
   public abstract void traverse(Visitor<NODE_TYPE> visitor);
 
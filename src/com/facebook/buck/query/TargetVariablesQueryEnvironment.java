@@ -20,6 +20,7 @@ import com.facebook.buck.core.model.QueryTarget;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
 
@@ -54,6 +55,11 @@ public class TargetVariablesQueryEnvironment<NODE_TYPE> implements QueryEnvironm
     return delegate.getReverseDeps(targets);
   }
 
+  @Override
+  public Optional<CompactDependencyGraph<NODE_TYPE>> getCompactDependencyGraph() {
+    return delegate.getCompactDependencyGraph();
+  }
+
   @Override
   public Set<QueryFileTarget> getInputs(NODE_TYPE target) throws QueryException {
     return delegate.getInputs(target);
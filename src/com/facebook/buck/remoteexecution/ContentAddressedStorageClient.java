@@ -19,6 +19,7 @@ package com.facebook.buck.remoteexecution;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.nio.channels.WritableByteChannel;
@@ -39,6 +40,9 @@ public interface ContentAddressedStorageClient {
 
   boolean containsDigest(Digest digest);
 
+  /** Asks the CAS which of the digests it doesn't have, e.g. because it evicted them. */
+  ImmutableSet<String> getMissingHashes(List<Digest> digests) throws IOException;
+
   /** Interface for filesystem operations required for materialization. */
   interface FileMaterializer {
     /**
@@ -115,6 +115,13 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
   // Should ree try to reschedule OOMed action on a larger worker
   public static final String TRY_LARGER_WORKER_ON_OOM = "try_larger_worker_on_oom";
 
+  // Should outputs of remote actions be left in the CAS until something needs them
+  public static final String MATERIALIZE_OUTPUTS_ON_DEMAND = "materialize_outputs_on_demand";
+
+  // Max size of the results of remote actions kept on disk, so that they aren't looked up remotely
+  public static final String LOCAL_ACTION_RESULT_CACHE_MAX_SIZE_BYTES =
+      "local_action_result_cache_max_size_bytes";
+
   public static final String AUTO_RE_BUILD_PROJECTS_WHITELIST_KEY =
       "auto_re_build_projects_whitelist";
   public static final String AUTO_RE_BUILD_USERS_BLACKLIST_KEY = "auto_re_build_users_blacklist";
@@ -238,6 +245,15 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
     boolean tryLargerWorkerOnOom =
         getDelegate().getBoolean(SECTION, TRY_LARGER_WORKER_ON_OOM).orElse(false);
 
+    boolean materializeOutputsOnDemand =
+        getDelegate().getBoolean(SECTION, MATERIALIZE_OUTPUTS_ON_DEMAND).orElse(false);
+
+    OptionalLong localActionResultCacheMaxSizeBytes =
+        getDelegate()
+            .getValue(SECTION, LOCAL_ACTION_RESULT_CACHE_MAX_SIZE_BYTES)
+            .map(size -> OptionalLong.of(Long.parseLong(size)))
+            .orElseGet(OptionalLong::empty);
+
     // Some of these values are also limited by other ones (e.g. synchronous work is limited by the
     // number of threads). We detect some of these cases and log an error to the user to help them
     // understand the behavior.
@@ -319,6 +335,16 @@ abstract class AbstractRemoteExecutionConfig implements ConfigView<BuckConfig> {
       public boolean tryLargerWorkerOnOom() {
         return tryLargerWorkerOnOom;
       }
+
+      @Override
+      public boolean shouldMaterializeOutputsOnDemand() {
+        return materializeOutputsOnDemand;
+      }
+
+      @Override
+      public OptionalLong localActionResultCacheMaxSizeBytes() {
+        return localActionResultCacheMaxSizeBytes;
+      }
     };
   }
 
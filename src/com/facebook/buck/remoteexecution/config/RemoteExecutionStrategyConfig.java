@@ -36,4 +36,16 @@ public interface RemoteExecutionStrategyConfig {
   String getWorkerRequirementsFilename();
 
   boolean tryLargerWorkerOnOom();
+
+  /**
+   * Whether the output files of remotely executed actions should only be fetched from the CAS when
+   * a local step, or the user, needs them.
+   */
+  boolean shouldMaterializeOutputsOnDemand();
+
+  /**
+   * The maximum size of the results of remote actions cached on disk, which are looked up before
+   * the remote. No results are cached if this is empty.
+   */
+  OptionalLong localActionResultCacheMaxSizeBytes();
 }
@@ -29,6 +29,7 @@ import com.facebook.buck.remoteexecution.util.MultiThreadedBlobUploader;
 import com.facebook.buck.remoteexecution.util.OutputsMaterializer;
 import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.bytestream.ByteStreamGrpc.ByteStreamStub;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
 import java.util.Collection;
@@ -78,4 +79,9 @@ public class GrpcContentAddressableStorageClient implements ContentAddressedStor
   public boolean containsDigest(Digest digest) {
     return uploader.containsDigest(digest);
   }
+
+  @Override
+  public ImmutableSet<String> getMissingHashes(List<Digest> digests) throws IOException {
+    return uploader.getMissingHashes(digests);
+  }
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import build.bazel.remote.execution.v2.ExecutedActionMetadata;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.remoteexecution.RemoteExecutionServiceClient.ExecutionResult;
+import com.facebook.buck.remoteexecution.interfaces.Protocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.util.DirectoryCleaner;
+import com.facebook.buck.util.DirectoryCleanerArgs;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * A persistent cache of the results of successful remote actions, keyed by action digest, so that
+ * actions that ran in an earlier build don't need another round trip to the remote action cache.
+ *
+ * <p>Each result is a small file that only describes the outputs, the outputs themselves stay in
+ * the CAS. Like the dir artifact cache, the least recently used results are deleted once the
+ * results take more than the maximum size. Reading a result updates its access time, so that this
+ * works on file systems that don't keep track of it.
+ */
+public class LocalActionResultCache implements Closeable {
+  private static final Logger LOG = Logger.get(LocalActionResultCache.class);
+
+  private static final int FORMAT_VERSION = 1;
+  // Ratio of bytes stored to max size that triggers deleting old results.
+  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
+  // How much of the max size to leave when deleting old results.
+  private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
+  private static final String TMP_EXTENSION = ".tmp";
+
+  private final Protocol protocol;
+  private final Path cacheDir;
+  private final long maxCacheSizeBytes;
+  private final AtomicLong bytesSinceLastDeleteOldResults = new AtomicLong();
+
+  public LocalActionResultCache(Protocol protocol, Path cacheDir, long maxCacheSizeBytes) {
+    this.protocol = protocol;
+    this.cacheDir = cacheDir;
+    this.maxCacheSizeBytes = maxCacheSizeBytes;
+  }
+
+  /** @return the result of the action, if it was stored before */
+  public Optional<ExecutionResult> get(Digest actionDigest) {
+    Path path = getPath(actionDigest);
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+      ExecutionResult result = readResult(in);
+      FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+      Files.getFileAttributeView(path, BasicFileAttributeView.class).setTimes(null, now, null);
+      return Optional.of(result);
+    } catch (NoSuchFileException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to read the cached result of action %s.", actionDigest);
+      invalidate(actionDigest);
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the result of a successful action, unless it's already stored. */
+  public void put(Digest actionDigest, ExecutionResult result) {
+    if (result.getExitCode() != 0) {
+      return;
+    }
+    Path path = getPath(actionDigest);
+    if (Files.exists(path)) {
+      return;
+    }
+    try {
+      Files.createDirectories(path.getParent());
+      Path tmp = Files.createTempFile(path.getParent(), actionDigest.getHash(), TMP_EXTENSION);
+      try {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+          writeResult(out, result);
+        }
+        long size = Files.size(tmp);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        if (bytesSinceLastDeleteOldResults.addAndGet(size)
+            > maxCacheSizeBytes * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER) {
+          bytesSinceLastDeleteOldResults.set(0);
+          deleteOldResults();
+        }
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to store the result of action %s.", actionDigest);
+    }
+  }
+
+  /** Drops the result of an action, for instance because its outputs are no longer in the CAS. */
+  public void invalidate(Digest actionDigest) {
+    try {
+      Files.deleteIfExists(getPath(actionDigest));
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete the cached result of action %s.", actionDigest);
+    }
+  }
+
+  @Override
+  public void close() {
+    deleteOldResults();
+  }
+
+  synchronized void deleteOldResults() {
+    if (!Files.isDirectory(cacheDir)) {
+      return;
+    }
+    DirectoryCleaner cleaner =
+        new DirectoryCleaner(
+            DirectoryCleanerArgs.builder()
+                .setPathSelector(
+                    new DirectoryCleaner.PathSelector() {
+                      @Override
+                      public Iterable<Path> getCandidatesToDelete(Path rootPath)
+                          throws IOException {
+                        try (Stream<Path> paths = Files.walk(rootPath)) {
+                          return paths
+                              .filter(Files::isRegularFile)
+                              .filter(path -> !path.toString().endsWith(TMP_EXTENSION))
+                              .collect(Collectors.toList());
+                        }
+                      }
+
+                      @Override
+                      public int comparePaths(
+                          DirectoryCleaner.PathStats path1, DirectoryCleaner.PathStats path2) {
+                        return ComparisonChain.start()
+                            .compare(path1.getLastAccessMillis(), path2.getLastAccessMillis())
+                            .compare(path1.getCreationMillis(), path2.getCreationMillis())
+                            .result();
+                      }
+                    })
+                .setMaxTotalSizeBytes(maxCacheSizeBytes)
+                .setMaxBytesAfterDeletion((long) (maxCacheSizeBytes * MAX_BYTES_TRIM_RATIO))
+                .setMinAmountOfEntriesToKeep(0)
+                .build());
+    try {
+      cleaner.clean(cacheDir);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to delete old action results from [%s].", cacheDir);
+    }
+  }
+
+  private Path getPath(Digest actionDigest) {
+    String hash = actionDigest.getHash();
+    return cacheDir.resolve(hash.substring(0, Math.min(2, hash.length()))).resolve(hash);
+  }
+
+  private void writeResult(DataOutputStream out, ExecutionResult result) throws IOException {
+    out.writeInt(FORMAT_VERSION);
+    @Nullable Digest actionResultDigest = result.getActionResultDigest();
+    out.writeBoolean(actionResultDigest != null);
+    if (actionResultDigest != null) {
+      writeDigest(out, actionResultDigest);
+    }
+    out.writeInt(result.getOutputFiles().size());
+    for (OutputFile outputFile : result.getOutputFiles()) {
+      out.writeUTF(outputFile.getPath());
+      writeDigest(out, outputFile.getDigest());
+      out.writeBoolean(outputFile.getIsExecutable());
+    }
+    out.writeInt(result.getOutputDirectories().size());
+    for (OutputDirectory outputDirectory : result.getOutputDirectories()) {
+      out.writeUTF(outputDirectory.getPath());
+      writeDigest(out, outputDirectory.getTreeDigest());
+    }
+  }
+
+  private ExecutionResult readResult(DataInputStream in) throws IOException {
+    int version = in.readInt();
+    if (version != FORMAT_VERSION) {
+      throw new IOException("Unexpected action result format version " + version);
+    }
+    @Nullable Digest actionResultDigest = in.readBoolean() ? readDigest(in) : null;
+    ImmutableList.Builder<OutputFile> outputFiles = ImmutableList.builder();
+    for (int i = in.readInt(); i > 0; i--) {
+      Path path = Paths.get(in.readUTF());
+      outputFiles.add(protocol.newOutputFile(path, readDigest(in), in.readBoolean()));
+    }
+    ImmutableList.Builder<OutputDirectory> outputDirectories = ImmutableList.builder();
+    for (int i = in.readInt(); i > 0; i--) {
+      Path path = Paths.get(in.readUTF());
+      outputDirectories.add(protocol.newOutputDirectory(path, readDigest(in)));
+    }
+    return new CachedExecutionResult(
+        outputFiles.build(), outputDirectories.build(), actionResultDigest);
+  }
+
+  private static void writeDigest(DataOutputStream out, Digest digest) throws IOException {
+    out.writeUTF(digest.getHash());
+    out.writeInt(digest.getSize());
+  }
+
+  private Digest readDigest(DataInputStream in) throws IOException {
+    return protocol.newDigest(in.readUTF(), in.readInt());
+  }
+
+  /** The result of a successful action, as far as it's needed to materialize its outputs. */
+  private static class CachedExecutionResult implements ExecutionResult {
+    private final ImmutableList<OutputFile> outputFiles;
+    private final ImmutableList<OutputDirectory> outputDirectories;
+    @Nullable private final Digest actionResultDigest;
+
+    private CachedExecutionResult(
+        ImmutableList<OutputFile> outputFiles,
+        ImmutableList<OutputDirectory> outputDirectories,
+        @Nullable Digest actionResultDigest) {
+      this.outputFiles = outputFiles;
+      this.outputDirectories = outputDirectories;
+      this.actionResultDigest = actionResultDigest;
+    }
+
+    @Override
+    public List<OutputDirectory> getOutputDirectories() {
+      return outputDirectories;
+    }
+
+    @Override
+    public List<OutputFile> getOutputFiles() {
+      return outputFiles;
+    }
+
+    @Override
+    public int getExitCode() {
+      return 0;
+    }
+
+    @Override
+    public Optional<String> getStdout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<String> getStderr() {
+      return Optional.empty();
+    }
+
+    @Override
+    @Nullable
+    public Digest getActionResultDigest() {
+      return actionResultDigest;
+    }
+
+    @Override
+    public ExecutedActionMetadata getActionMetadata() {
+      return ExecutedActionMetadata.getDefaultInstance();
+    }
+  }
+}
@@ -205,6 +205,11 @@ public class LocalContentAddressedStorage implements ContentAddressedStorageClie
     return uploader.containsDigest(digest);
   }
 
+  @Override
+  public ImmutableSet<String> getMissingHashes(List<Digest> digests) {
+    return findMissing(digests).map(Digest::getHash).collect(ImmutableSet.toImmutableSet());
+  }
+
   /**
    * Materializes the outputs into the build root. All required data must be present (or inlined).
    */
@@ -24,6 +24,9 @@ import com.facebook.buck.remoteexecution.interfaces.Protocol.SymlinkNode;
 import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Interner;
 import com.google.common.collect.Interners;
@@ -37,6 +40,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
 /**
@@ -45,8 +49,16 @@ import javax.annotation.Nullable;
  *
  * <p>It also provides methods to get the {@link Protocol} encoded merkle tree data structures
  * (these values are cached once computed for a node).
+ *
+ * <p>The encoded data of a directory only depends on its contents: the names and digests of its
+ * children, and its files and symlinks. It is shared by all the directories with the same
+ * contents, wherever they are in the trees, and is kept across builds.
  */
 public class MerkleTreeNodeCache {
+  /** Encoded data of directories, by their contents. */
+  private static final Cache<List<Object>, NodeData> DIRECTORY_DATA =
+      CacheBuilder.newBuilder().maximumSize(64 * 1024).build();
+
   private final Interner<MerkleTreeNode> nodeInterner = Interners.newWeakInterner();
 
   private final Protocol protocol;
@@ -110,6 +122,22 @@ public class MerkleTreeNodeCache {
     rootNode.forAllNodes(n -> dataConsumer.accept(getData(n)));
   }
 
+  /**
+   * Iterate over the encoded data of the directories and over the files of the tree rooted at the
+   * provided node that are missing, according to the provided predicate.
+   *
+   * <p>Subtrees that had nothing missing the last time they were visited are skipped. Trees of
+   * different actions share most of their nodes, so this only visits the parts of a tree that are
+   * new to this cache. The predicate must keep returning false for digests it returned false for.
+   */
+  public void forAllMissingData(
+      MerkleTreeNode rootNode,
+      Predicate<Digest> isMissing,
+      Consumer<NodeData> directoryConsumer,
+      BiConsumer<Path, FileNode> fileConsumer) {
+    rootNode.forAllMissingData(protocol, isMissing, directoryConsumer, fileConsumer);
+  }
+
   /** Gets the {@link Protocol} encoded data for the provided tree. */
   public NodeData getData(MerkleTreeNode node) {
     return node.getData(protocol);
@@ -118,6 +146,7 @@ public class MerkleTreeNodeCache {
   /** Represents a node in the merkle tree of files and symlinks. */
   public static class MerkleTreeNode {
     @Nullable private volatile NodeData data;
+    private volatile boolean hasNoMissingData;
 
     private final int hashCode;
 
@@ -154,6 +183,35 @@ public class MerkleTreeNodeCache {
       children.values().forEach(child -> child.forAllNodes(nodeConsumer));
     }
 
+    /** @return whether nothing was missing in the tree rooted at this node */
+    private boolean forAllMissingData(
+        Protocol protocol,
+        Predicate<Digest> isMissing,
+        Consumer<NodeData> directoryConsumer,
+        BiConsumer<Path, FileNode> fileConsumer) {
+      if (hasNoMissingData) {
+        return true;
+      }
+      boolean nothingMissing = true;
+      NodeData nodeData = getData(protocol);
+      if (isMissing.test(nodeData.digest)) {
+        directoryConsumer.accept(nodeData);
+        nothingMissing = false;
+      }
+      for (Map.Entry<Path, FileNode> entry : files.entrySet()) {
+        if (isMissing.test(entry.getValue().getDigest())) {
+          fileConsumer.accept(entry.getKey(), entry.getValue());
+          nothingMissing = false;
+        }
+      }
+      for (MerkleTreeNode child : children.values()) {
+        nothingMissing &=
+            child.forAllMissingData(protocol, isMissing, directoryConsumer, fileConsumer);
+      }
+      hasNoMissingData = nothingMissing;
+      return nothingMissing;
+    }
+
     @Override
     public int hashCode() {
       return hashCode;
@@ -184,6 +242,27 @@ public class MerkleTreeNodeCache {
 
       // It's unlikely, but possible that multiple threads get here... that's okay they'll all
       // compute the same thing.
+      List<Object> childEntries = new ArrayList<>(2 * children.size());
+      for (Map.Entry<Path, MerkleTreeNode> entry : children.entrySet()) {
+        childEntries.add(entry.getKey().getFileName().toString());
+        childEntries.add(entry.getValue().getData(protocol).digest);
+      }
+      List<Object> contents =
+          ImmutableList.of(
+              protocol.getClass(),
+              childEntries,
+              files.values().asList(),
+              symlinks.values().asList());
+      NodeData nodeData = DIRECTORY_DATA.getIfPresent(contents);
+      if (nodeData == null) {
+        nodeData = computeData(protocol);
+        DIRECTORY_DATA.put(contents, nodeData);
+      }
+      this.data = nodeData;
+      return nodeData;
+    }
+
+    private NodeData computeData(Protocol protocol) {
       List<DirectoryNode> childNodes = new ArrayList<>();
       long totalInputsSize = 0;
       for (Map.Entry<Path, MerkleTreeNode> entry : children.entrySet()) {
@@ -197,10 +276,7 @@ public class MerkleTreeNodeCache {
         totalInputsSize += value.getDigest().getSize();
       }
       Directory directory = protocol.newDirectory(childNodes, files.values(), symlinks.values());
-      NodeData nodeData =
-          new NodeData(directory, protocol.computeDigest(directory), totalInputsSize);
-      this.data = nodeData;
-      return nodeData;
+      return new NodeData(directory, protocol.computeDigest(directory), totalInputsSize);
     }
   }
 
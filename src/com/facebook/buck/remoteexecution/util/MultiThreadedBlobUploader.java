@@ -27,11 +27,13 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -54,6 +56,11 @@ import java.util.stream.Stream;
  * does/doesn't contain. Any that are missing will be added to a queue to be uploaded. Work threads
  * will then pull those off and upload them. When the upload is finished, the future for that digest
  * will be fulfilled.
+ *
+ * <p>A digest that is already being checked or uploaded is never queued again, and the items of a
+ * single request are queued together, so that they share as few missing checks as possible. Missing
+ * items smaller than uploadSizeLimit are uploaded in batches of at most that size, larger ones are
+ * streamed to the CAS one at a time.
  */
 public class MultiThreadedBlobUploader {
   private final int missingCheckLimit;
@@ -103,6 +110,11 @@ public class MultiThreadedBlobUploader {
     return containedHashes.contains(digest.getHash());
   }
 
+  /** Asks the CAS which of the digests it doesn't have, regardless of what was uploaded. */
+  public ImmutableSet<String> getMissingHashes(List<Digest> digests) throws IOException {
+    return asyncBlobUploader.getMissingHashes(digests);
+  }
+
   private void addContainedHash(Digest digest) {
     containedHashes.add(digest.getHash());
   }
@@ -124,6 +136,7 @@ public class MultiThreadedBlobUploader {
 
   private ListenableFuture<Void> enqueue(ImmutableList<UploadDataSupplier> dataSupplier) {
     Builder<ListenableFuture<Void>> futures = ImmutableList.builder();
+    List<PendingUpload> newUploads = new ArrayList<>();
     for (UploadDataSupplier data : dataSupplier) {
       Digest digest = data.getDigest();
       ListenableFuture<Void> resultFuture =
@@ -134,7 +147,7 @@ public class MultiThreadedBlobUploader {
                   return Futures.immediateFuture(null);
                 }
                 SettableFuture<Void> future = SettableFuture.create();
-                waitingMissingCheck.add(new PendingUpload(data, future));
+                newUploads.add(new PendingUpload(data, future));
                 return Futures.transform(
                     future,
                     ignore -> {
@@ -152,7 +165,14 @@ public class MultiThreadedBlobUploader {
               }),
           directExecutor());
       futures.add(resultFuture);
-      uploadService.submit(this::processUploads);
+    }
+    if (!newUploads.isEmpty()) {
+      waitingMissingCheck.addAll(newUploads);
+      // Enough work for every missing check, each worker picks up whatever is queued by then.
+      int workers = (newUploads.size() + missingCheckLimit - 1) / missingCheckLimit;
+      for (int i = 0; i < workers; i++) {
+        uploadService.submit(this::processUploads);
+      }
     }
     return Futures.whenAllSucceed(futures.build()).call(() -> null, directExecutor());
   }
@@ -205,6 +225,7 @@ public class MultiThreadedBlobUploader {
 
       if (size == 0 || data.getSize() + size < uploadSizeLimit) {
         dataBuilder.put(data.getHash(), data);
+        size += data.getSize();
       } else {
         // This object is too large to fit in this batch.
         // Add it back to the beginning of the upload queue for the next batch.
@@ -216,7 +237,7 @@ public class MultiThreadedBlobUploader {
 
     if (!data.isEmpty()) {
       try {
-        if (size > uploadSizeLimit) {
+        if (size >= uploadSizeLimit) {
           // This should only happen when we're trying to upload a single large object
           Preconditions.checkState(data.size() == 1);
           PendingUpload largeDataUpload = data.entrySet().iterator().next().getValue();
@@ -237,7 +258,6 @@ public class MultiThreadedBlobUploader {
                     Objects.requireNonNull(data.get(result.digest.getHash()));
                 setPendingUploadResult(pendingUpload, result);
               });
-          data.forEach((k, pending) -> pending.future.setException(new RuntimeException("idk")));
         }
       } catch (Exception e) {
         data.forEach((k, pending) -> pending.future.setException(e));
@@ -116,6 +116,18 @@ public class WorkerMacroArg extends ProxyArg {
     return workerTool.getMaxWorkers();
   }
 
+  public int getMaxJobsPerWorker() {
+    return workerTool.getMaxJobsPerWorker();
+  }
+
+  public Optional<Long> getIdleTimeoutMillis() {
+    return workerTool.getIdleTimeoutMillis();
+  }
+
+  public Optional<Long> getMaxResidentMemoryBytes() {
+    return workerTool.getMaxResidentMemoryBytes();
+  }
+
   public String getJobArgs(SourcePathResolver pathResolver) {
     return Arg.stringify(arg, pathResolver).trim();
   }
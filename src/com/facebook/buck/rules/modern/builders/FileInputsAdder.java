@@ -42,6 +42,8 @@ class FileInputsAdder {
 
     void addSymlink(Path symlink, Path fixedTarget);
 
+    boolean isRegularFile(Path path);
+
     @Nullable
     Iterable<Path> getDirectoryContents(Path target) throws IOException;
 
@@ -140,7 +142,7 @@ class FileInputsAdder {
       return target;
     }
 
-    if (Files.isRegularFile(path)) {
+    if (delegate.isRegularFile(path)) {
       delegate.addFile(path);
     }
     map.put(path, path);
@@ -152,6 +154,11 @@ class FileInputsAdder {
    * operations.
    */
   public abstract static class AbstractDelegate implements Delegate {
+    @Override
+    public boolean isRegularFile(Path path) {
+      return Files.isRegularFile(path);
+    }
+
     @Override
     public Iterable<Path> getDirectoryContents(Path target) throws IOException {
       if (!Files.isDirectory(target)) {
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.builders;
+
+import com.facebook.buck.core.rules.BuildRule;
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Moving estimates of how long rules take to build locally and on the delegate of a {@link
+ * HybridLocalStrategy}, per rule type.
+ *
+ * <p>The delegate's latency is measured from the moment a rule is handed to it until its result is
+ * available, so it includes uploading inputs, waiting in remote queues and fetching outputs. Rule
+ * types that haven't been built one way yet are estimated by the average over all rule types.
+ */
+class HybridExecutionEstimates {
+  // Weight of the latest measurement, high enough to follow a remote queue as it backs up.
+  private static final double SMOOTHING_FACTOR = 0.25;
+
+  private final ConcurrentMap<String, MovingAverage> localMillis = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, MovingAverage> delegateMillis = new ConcurrentHashMap<>();
+  private final MovingAverage allLocalMillis = new MovingAverage();
+  private final MovingAverage allDelegateMillis = new MovingAverage();
+
+  void recordLocal(BuildRule rule, long millis) {
+    localMillis.computeIfAbsent(rule.getType(), ignored -> new MovingAverage()).add(millis);
+    allLocalMillis.add(millis);
+  }
+
+  void recordDelegate(BuildRule rule, long millis) {
+    delegateMillis.computeIfAbsent(rule.getType(), ignored -> new MovingAverage()).add(millis);
+    allDelegateMillis.add(millis);
+  }
+
+  OptionalDouble getLocalMillis(BuildRule rule) {
+    return get(localMillis, allLocalMillis, rule);
+  }
+
+  OptionalDouble getDelegateMillis(BuildRule rule) {
+    return get(delegateMillis, allDelegateMillis, rule);
+  }
+
+  OptionalDouble getAverageLocalMillis() {
+    return allLocalMillis.get();
+  }
+
+  OptionalDouble getAverageDelegateMillis() {
+    return allDelegateMillis.get();
+  }
+
+  private static OptionalDouble get(
+      ConcurrentMap<String, MovingAverage> averages, MovingAverage all, BuildRule rule) {
+    MovingAverage average = averages.get(rule.getType());
+    return average == null ? all.get() : average.get();
+  }
+
+  /** An exponentially weighted moving average. */
+  private static class MovingAverage {
+    private double value = Double.NaN;
+
+    synchronized void add(double sample) {
+      value = Double.isNaN(value) ? sample : value + SMOOTHING_FACTOR * (sample - value);
+    }
+
+    synchronized OptionalDouble get() {
+      return Double.isNaN(value) ? OptionalDouble.empty() : OptionalDouble.of(value);
+    }
+  }
+}
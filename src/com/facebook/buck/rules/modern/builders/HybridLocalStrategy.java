@@ -16,30 +16,40 @@
 
 package com.facebook.buck.rules.modern.builders;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildStrategyContext;
 import com.facebook.buck.core.build.engine.DelegatingBuildStrategyContext;
 import com.facebook.buck.core.exceptions.BuckUncheckedExecutionException;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.remoteexecution.WorkerRequirementsProvider;
 import com.facebook.buck.remoteexecution.proto.WorkerRequirements;
 import com.facebook.buck.util.Scope;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Verify;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -50,10 +60,18 @@ import javax.annotation.Nullable;
  * <p>It has a configurable limit for the number of active jobs to allow locally, and for the number
  * to allow to the delegate. It prefers to send them locally if the limit there hasn't been reached.
  * If both are at the limit, the jobs will be queued until space becomes available.
+ *
+ * <p>With {@link HybridExecutionEstimates}, jobs that can go either way are instead sent to
+ * whichever side is expected to finish them first, taking into account how long it takes for a slot
+ * to free up on the other side. Jobs are only stolen from the delegate when they are expected to
+ * finish locally before the delegate is done with them.
  */
 public class HybridLocalStrategy implements BuildRuleStrategy {
   private static final Logger LOG = Logger.get(HybridLocalStrategy.class);
 
+  // How far into the queue of jobs that can go either way to look for a job that fits a slot.
+  private static final int MAX_JOBS_TO_CONSIDER = 32;
+
   private final BuildRuleStrategy delegate;
 
   // Queue for Jobs that cannot be run on the delegate
@@ -75,6 +93,10 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
 
   private final WorkerRequirementsProvider workerRequirementsProvider;
 
+  private final int numLocalJobs;
+  private final int numDelegateJobs;
+  private final Optional<HybridExecutionEstimates> estimates;
+
   // If this is non-null, we've hit some unexpected unrecoverable condition.
   @Nullable private volatile Throwable hardFailure;
 
@@ -86,12 +108,18 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
     }
 
     @Nullable
-    ListenableFuture<?> stealFromDelegate() {
-      while (true) {
-        Job job = delegateJobs.pollLast();
-        if (job == null) {
-          return null;
+    ListenableFuture<?> stealFromDelegate(Predicate<Job> shouldSteal) {
+      Iterator<Job> iterator = delegateJobs.descendingIterator();
+      while (iterator.hasNext()) {
+        Job job = iterator.next();
+        if (job.future.isDone()) {
+          iterator.remove();
+          continue;
+        }
+        if (!shouldSteal.test(job)) {
+          continue;
         }
+        iterator.remove();
         try {
           ListenableFuture<?> listenableFuture =
               job.rescheduleLocally(new CancellationException("Job is being stolen."));
@@ -109,6 +137,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
           return null;
         }
       }
+      return null;
     }
   }
 
@@ -118,9 +147,28 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
       BuildRuleStrategy delegate,
       WorkerRequirementsProvider workerRequirementsProvider,
       Optional<WorkerRequirements.WorkerSize> maxWorkerSizeToStealFrom) {
+    this(
+        numLocalJobs,
+        numDelegateJobs,
+        delegate,
+        workerRequirementsProvider,
+        maxWorkerSizeToStealFrom,
+        Optional.empty());
+  }
+
+  public HybridLocalStrategy(
+      int numLocalJobs,
+      int numDelegateJobs,
+      BuildRuleStrategy delegate,
+      WorkerRequirementsProvider workerRequirementsProvider,
+      Optional<WorkerRequirements.WorkerSize> maxWorkerSizeToStealFrom,
+      Optional<HybridExecutionEstimates> estimates) {
     this.delegate = delegate;
     this.workerRequirementsProvider = workerRequirementsProvider;
     this.maxWorkerSizeToStealFrom = maxWorkerSizeToStealFrom;
+    this.numLocalJobs = numLocalJobs;
+    this.numDelegateJobs = numDelegateJobs;
+    this.estimates = estimates;
     this.localSemaphore = new Semaphore(numLocalJobs);
     this.delegateSemaphore = new Semaphore(numDelegateJobs);
     this.pendingLocalQueue = new ConcurrentLinkedQueue<>();
@@ -149,6 +197,8 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
     // The delegateResult is null if we either (1) haven't schedule the delegate yet or (2) have (or
     // are in the process of) cancelling the delegate.
     @Nullable StrategyBuildResult delegateResult;
+    // Measures how long the delegate has been working on this job.
+    @Nullable volatile Stopwatch delegateTimer;
     volatile boolean cancelledOnDelegate;
     final boolean canBuildOnDelegate;
 
@@ -169,6 +219,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
           return Futures.immediateFuture(null);
         }
 
+        Stopwatch localTimer = Stopwatch.createStarted();
         ListenableFuture<Optional<BuildResult>> localFuture =
             Futures.transform(
                 Futures.submitAsync(
@@ -183,6 +234,11 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
                                     + (cancelledOnDelegate ? " - stolen" : ""))
                             .build()),
                 MoreExecutors.directExecutor());
+        if (estimates.isPresent()) {
+          recordIfSuccessful(
+              localFuture,
+              () -> estimates.get().recordLocal(rule, localTimer.elapsed(MILLISECONDS)));
+        }
         future.setFuture(localFuture);
         return localFuture;
       }
@@ -193,6 +249,8 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
         if (future.isDone()) {
           return Futures.immediateFuture(null);
         }
+        Stopwatch timer = Stopwatch.createStarted();
+        delegateTimer = timer;
         StrategyBuildResult capturedDelegateResult =
             delegate.build(rule, new DelegatingContextWithNoOpRuleScope(strategyContext));
         delegateResult = capturedDelegateResult;
@@ -205,6 +263,11 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
         ListenableFuture<Optional<BuildResult>> buildResult =
             capturedDelegateResult.getBuildResult();
         buildResult.addListener(this::handleDelegateResult, MoreExecutors.directExecutor());
+        // A job stolen from the delegate ends up cancelled there, so it's never recorded.
+        if (estimates.isPresent()) {
+          recordIfSuccessful(
+              buildResult, () -> estimates.get().recordDelegate(rule, timer.elapsed(MILLISECONDS)));
+        }
         return buildResult;
       }
     }
@@ -344,9 +407,11 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
           () -> {
             Job job = pendingLocalQueue.poll();
             if (job == null) {
-              job = pendingDelegateOrLocalQueue.poll();
+              job = pollDelegateOrLocalJob(this::isExpectedToFinishFirstLocally);
             }
-            return job == null ? tracker.stealFromDelegate() : job.scheduleLocally();
+            return job == null
+                ? tracker.stealFromDelegate(this::isWorthStealing)
+                : job.scheduleLocally();
           });
 
       // Try scheduling a delegate task.
@@ -357,7 +422,7 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
             Job job = pendingDelegateOnlyQueue.poll();
 
             if (job == null) {
-              job = pendingDelegateOrLocalQueue.poll();
+              job = pollDelegateOrLocalJob(this::isExpectedToFinishFirstOnDelegate);
             }
             return job == null ? null : job.scheduleWithDelegate();
           });
@@ -369,6 +434,92 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
     }
   }
 
+  /**
+   * Takes the first of the jobs that can run either way that the predicate accepts. Without
+   * estimates, that's always the first job.
+   */
+  @Nullable
+  private Job pollDelegateOrLocalJob(Predicate<Job> predicate) {
+    if (!estimates.isPresent()) {
+      return pendingDelegateOrLocalQueue.poll();
+    }
+    Iterator<Job> iterator = pendingDelegateOrLocalQueue.iterator();
+    for (int i = 0; i < MAX_JOBS_TO_CONSIDER && iterator.hasNext(); i++) {
+      Job job = iterator.next();
+      if (predicate.test(job)) {
+        // Only the scheduling thread takes jobs off the queue, so the job is still there.
+        iterator.remove();
+        return job;
+      }
+    }
+    return null;
+  }
+
+  private boolean isExpectedToFinishFirstLocally(Job job) {
+    OptionalDouble localMillis = estimates.get().getLocalMillis(job.rule);
+    OptionalDouble delegateMillis = estimates.get().getDelegateMillis(job.rule);
+    if (!localMillis.isPresent() || !delegateMillis.isPresent()) {
+      return true;
+    }
+    double delegateWaitMillis =
+        delegateSemaphore.availablePermits() > 0
+            ? 0
+            : estimateWaitMillis(
+                estimates.get().getAverageDelegateMillis(),
+                pendingDelegateOnlyQueue.size(),
+                numDelegateJobs);
+    return localMillis.getAsDouble() <= delegateMillis.getAsDouble() + delegateWaitMillis;
+  }
+
+  private boolean isExpectedToFinishFirstOnDelegate(Job job) {
+    OptionalDouble localMillis = estimates.get().getLocalMillis(job.rule);
+    OptionalDouble delegateMillis = estimates.get().getDelegateMillis(job.rule);
+    if (!localMillis.isPresent() || !delegateMillis.isPresent()) {
+      return true;
+    }
+    double localWaitMillis =
+        localSemaphore.availablePermits() > 0
+            ? 0
+            : estimateWaitMillis(
+                estimates.get().getAverageLocalMillis(), pendingLocalQueue.size(), numLocalJobs);
+    return delegateMillis.getAsDouble() <= localMillis.getAsDouble() + localWaitMillis;
+  }
+
+  private boolean isWorthStealing(Job job) {
+    if (!estimates.isPresent()) {
+      return true;
+    }
+    OptionalDouble localMillis = estimates.get().getLocalMillis(job.rule);
+    OptionalDouble delegateMillis = estimates.get().getDelegateMillis(job.rule);
+    Stopwatch timer = job.delegateTimer;
+    if (!localMillis.isPresent() || !delegateMillis.isPresent() || timer == null) {
+      return true;
+    }
+    return localMillis.getAsDouble() < delegateMillis.getAsDouble() - timer.elapsed(MILLISECONDS);
+  }
+
+  /** Estimates how long a job waits for one of the slots, all of them taken, to free up. */
+  private static double estimateWaitMillis(
+      OptionalDouble averageMillis, int queuedJobs, int slots) {
+    return averageMillis.orElse(0) * (queuedJobs + 1) / Math.max(slots, 1);
+  }
+
+  private static void recordIfSuccessful(
+      ListenableFuture<Optional<BuildResult>> future, Runnable recorder) {
+    future.addListener(
+        () -> {
+          try {
+            Optional<BuildResult> result = Futures.getDone(future);
+            if (result.isPresent() && result.get().isSuccess()) {
+              recorder.run();
+            }
+          } catch (ExecutionException | CancellationException e) {
+            // Failures say nothing about how long a rule takes.
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
   private void cancelAllJobsInQueue(ConcurrentLinkedQueue<Job> jobQueue) {
     while (!jobQueue.isEmpty()) {
       Objects.requireNonNull(jobQueue.poll()).cancel(Objects.requireNonNull(hardFailure));
@@ -413,6 +564,16 @@ public class HybridLocalStrategy implements BuildRuleStrategy {
     return true;
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return delegate.getDeferredOutputs(rule);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDeferredOutputs(Iterable<BuildRule> rules) {
+    return delegate.materializeDeferredOutputs(rules);
+  }
+
   @Override
   public void close() throws IOException {
     delegate.close();
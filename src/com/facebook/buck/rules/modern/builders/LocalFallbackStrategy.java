@@ -21,17 +21,20 @@ import com.facebook.buck.core.build.engine.BuildRuleStatus;
 import com.facebook.buck.core.build.engine.BuildStrategyContext;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.remoteexecution.event.LocalFallbackEvent;
 import com.facebook.buck.remoteexecution.event.LocalFallbackEvent.Result;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -67,6 +70,16 @@ public class LocalFallbackStrategy implements BuildRuleStrategy {
     return mainBuildRuleStrategy.canBuild(instance);
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    return mainBuildRuleStrategy.getDeferredOutputs(rule);
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDeferredOutputs(Iterable<BuildRule> rules) {
+    return mainBuildRuleStrategy.materializeDeferredOutputs(rules);
+  }
+
   /** Thrown when execution needs to be halted because of cancellation */
   public static class RemoteActionCancelledException extends Exception {
     RemoteActionCancelledException(String message) {
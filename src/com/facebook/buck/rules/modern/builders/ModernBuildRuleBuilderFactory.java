@@ -134,7 +134,10 @@ public class ModernBuildRuleBuilderFactory {
         hybridLocalConfig.getDelegateJobs(),
         delegate,
         workerRequirementsProvider,
-        remoteExecutionConfig.getMaxWorkerSizeToStealFrom());
+        remoteExecutionConfig.getMaxWorkerSizeToStealFrom(),
+        hybridLocalConfig.isAdaptiveSchedulingEnabled()
+            ? Optional.of(new HybridExecutionEstimates())
+            : Optional.empty());
   }
 
   /** The passthrough strategy just forwards to executorRunner.runWithDefaultExecutor. */
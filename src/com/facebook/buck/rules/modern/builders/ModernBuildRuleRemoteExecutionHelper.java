@@ -33,6 +33,7 @@ import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.interfaces.Protocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.FileNode;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.SymlinkNode;
 import com.facebook.buck.remoteexecution.proto.WorkerRequirements;
 import com.facebook.buck.remoteexecution.util.MerkleTreeNodeCache;
@@ -58,6 +59,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
@@ -73,6 +75,7 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -179,6 +182,7 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
   private final HashFunction hasher;
 
   private final Protocol protocol;
+  private final RemoteOutputsStore remoteOutputs;
 
   public ModernBuildRuleRemoteExecutionHelper(
       BuckEventBus eventBus,
@@ -186,12 +190,27 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
       SourcePathRuleFinder ruleFinder,
       Cell rootCell,
       ThrowingFunction<Path, HashCode, IOException> fileHasher) {
+    this(eventBus, protocol, ruleFinder, rootCell, fileHasher, new RemoteOutputsStore());
+  }
+
+  /**
+   * @param remoteOutputs the outputs of other actions that are still only in the CAS, which are
+   *     used as inputs by their digests
+   */
+  ModernBuildRuleRemoteExecutionHelper(
+      BuckEventBus eventBus,
+      Protocol protocol,
+      SourcePathRuleFinder ruleFinder,
+      Cell rootCell,
+      ThrowingFunction<Path, HashCode, IOException> fileHasher,
+      RemoteOutputsStore remoteOutputs) {
     ImmutableSet<Optional<String>> cellNames = getCellNames(rootCell);
     this.cellResolver = rootCell.getCellPathResolver();
     this.cellPathPrefix = getCellPathPrefix(cellResolver, cellNames);
 
     this.eventBus = eventBus;
     this.protocol = protocol;
+    this.remoteOutputs = remoteOutputs;
 
     this.pathResolver = ruleFinder.getSourcePathResolver();
     this.projectRoot = cellPathPrefix.relativize(rootCell.getRoot());
@@ -408,18 +427,18 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
 
       MerkleTreeNode mergedMerkleTree = nodeCache.mergeNodes(allNodes);
 
-      nodeCache.forAllData(
+      // The files were collected with their own data suppliers above.
+      nodeCache.forAllMissingData(
           mergedMerkleTree,
-          childData -> {
-            if (requiredDataPredicate.test(childData.getDigest())) {
+          requiredDataPredicate,
+          childData ->
               requiredDataBuilder.add(
                   UploadDataSupplier.of(
                       childData.getDigest(),
                       () ->
                           new ByteArrayInputStream(
-                              protocol.toByteArray(childData.getDirectory()))));
-            }
-          });
+                              protocol.toByteArray(childData.getDirectory())))),
+          (path, fileNode) -> {});
 
       NodeData data = nodeCache.getData(mergedMerkleTree);
       Digest inputsRootDigest = data.getDigest();
@@ -444,9 +463,11 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
       MerkleTreeNode inputsMerkleTree,
       Predicate<Digest> requiredDataPredicate,
       Consumer<UploadDataSupplier> dataConsumer) {
-    inputsMerkleTree.forAllFiles(
-        (path, fileNode) -> {
-          if (requiredDataPredicate.test(fileNode.getDigest())) {
+    nodeCache.forAllMissingData(
+        inputsMerkleTree,
+        requiredDataPredicate,
+        directoryData -> {},
+        (path, fileNode) ->
             dataConsumer.accept(
                 new UploadDataSupplier() {
                   @Override
@@ -467,9 +488,7 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
                       return String.format("failed to describe (%s)", e.getMessage());
                     }
                   }
-                });
-          }
-        });
+                }));
   }
 
   private Stream<UploadDataSupplier> getSharedFilesData(Predicate<Digest> requiredDataPredicate)
@@ -503,13 +522,39 @@ public class ModernBuildRuleRemoteExecutionHelper implements RemoteExecutionHelp
                     new FileInputsAdder.AbstractDelegate() {
                       @Override
                       public void addFile(Path path) throws IOException {
+                        OutputFile remoteOutput = remoteOutputs.getOutput(path);
                         files.put(
                             cellPathPrefix.relativize(path),
-                            protocol.newFileNode(
-                                protocol.newDigest(
-                                    fileHasher.apply(path).toString(), (int) Files.size(path)),
-                                path.getFileName().toString(),
-                                Files.isExecutable(path)));
+                            remoteOutput != null
+                                ? protocol.newFileNode(
+                                    remoteOutput.getDigest(),
+                                    path.getFileName().toString(),
+                                    remoteOutput.getIsExecutable())
+                                : protocol.newFileNode(
+                                    protocol.newDigest(
+                                        fileHasher.apply(path).toString(), (int) Files.size(path)),
+                                    path.getFileName().toString(),
+                                    Files.isExecutable(path)));
+                      }
+
+                      @Override
+                      public boolean isRegularFile(Path path) {
+                        return remoteOutputs.getOutput(path) != null || super.isRegularFile(path);
+                      }
+
+                      @Nullable
+                      @Override
+                      public Iterable<Path> getDirectoryContents(Path target) throws IOException {
+                        Iterable<Path> contents = super.getDirectoryContents(target);
+                        ImmutableList<Path> remoteChildren = remoteOutputs.getChildren(target);
+                        if (remoteChildren.isEmpty()) {
+                          return contents;
+                        }
+                        Set<Path> children = new LinkedHashSet<>(remoteChildren);
+                        if (contents != null) {
+                          Iterables.addAll(children, contents);
+                        }
+                        return children;
                       }
 
                       @Override
@@ -27,9 +27,11 @@ import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
 import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.remoteexecution.MetadataProviderFactory;
 import com.facebook.buck.remoteexecution.RemoteExecutionClients;
 import com.facebook.buck.remoteexecution.RemoteExecutionServiceClient.ExecutionHandle;
@@ -41,6 +43,8 @@ import com.facebook.buck.remoteexecution.event.RemoteExecutionActionEvent.State;
 import com.facebook.buck.remoteexecution.event.RemoteExecutionSessionEvent;
 import com.facebook.buck.remoteexecution.interfaces.MetadataProvider;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.remoteexecution.util.LocalActionResultCache;
 import com.facebook.buck.remoteexecution.util.OutputsMaterializer.FilesystemFileMaterializer;
 import com.facebook.buck.rules.modern.ModernBuildRule;
 import com.facebook.buck.step.AbstractExecutionStep;
@@ -54,7 +58,10 @@ import com.facebook.buck.util.types.Either;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -62,10 +69,14 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
@@ -81,6 +92,8 @@ import javax.annotation.Nullable;
 public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
   private static final Logger LOG = Logger.get(RemoteExecutionStrategy.class);
 
+  private static final String ACTION_RESULT_CACHE_DIR = "re_action_results";
+
   private final BuckEventBus eventBus;
   private final RemoteExecutionClients executionClients;
   private final RemoteExecutionHelper mbrHelper;
@@ -95,6 +108,11 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
   private final WorkerRequirementsProvider requirementsProvider;
   private final MetadataProvider metadataProvider;
   private final RemoteExecutionSessionEvent.Started remoteExecutionSessionStartedEvent;
+  private final boolean materializeOutputsOnDemand;
+  private final RemoteOutputsStore remoteOutputs;
+  private final Optional<LocalActionResultCache> actionResultCache;
+  private final ConcurrentMap<BuildTarget, ListenableFuture<Void>> outputMaterializations =
+      new ConcurrentHashMap<>();
 
   RemoteExecutionStrategy(
       BuckEventBus eventBus,
@@ -104,6 +122,28 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
       RemoteExecutionHelper mbrHelper,
       WorkerRequirementsProvider requirementsProvider,
       ListeningExecutorService service) {
+    this(
+        eventBus,
+        strategyConfig,
+        executionClients,
+        metadataProvider,
+        mbrHelper,
+        requirementsProvider,
+        service,
+        new RemoteOutputsStore(),
+        Optional.empty());
+  }
+
+  RemoteExecutionStrategy(
+      BuckEventBus eventBus,
+      RemoteExecutionStrategyConfig strategyConfig,
+      RemoteExecutionClients executionClients,
+      MetadataProvider metadataProvider,
+      RemoteExecutionHelper mbrHelper,
+      WorkerRequirementsProvider requirementsProvider,
+      ListeningExecutorService service,
+      RemoteOutputsStore remoteOutputs,
+      Optional<LocalActionResultCache> actionResultCache) {
     this.executionClients = executionClients;
     this.service = service;
     this.computeActionLimiter = new JobLimiter(strategyConfig.getMaxConcurrentActionComputations());
@@ -115,6 +155,15 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     this.metadataProvider = metadataProvider;
     this.mbrHelper = mbrHelper;
     this.requirementsProvider = requirementsProvider;
+    this.materializeOutputsOnDemand = strategyConfig.shouldMaterializeOutputsOnDemand();
+    // The engine records the digests of deferred outputs as their file hashes.
+    Preconditions.checkState(
+        !materializeOutputsOnDemand
+            || executionClients.getProtocol().getHashFunction().equals(Hashing.sha1()),
+        "Outputs can only be materialized on demand with a protocol that hashes files with SHA-1, "
+            + "like the file hash cache.");
+    this.remoteOutputs = remoteOutputs;
+    this.actionResultCache = actionResultCache;
     this.remoteExecutionSessionStartedEvent = RemoteExecutionSessionEvent.started();
     this.eventBus.post(remoteExecutionSessionStartedEvent);
   }
@@ -129,6 +178,18 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
       ThrowingFunction<Path, HashCode, IOException> fileHasher,
       MetadataProvider metadataProvider,
       WorkerRequirementsProvider workerRequirementsProvider) {
+    RemoteOutputsStore remoteOutputs = new RemoteOutputsStore();
+    Optional<LocalActionResultCache> actionResultCache = Optional.empty();
+    if (strategyConfig.localActionResultCacheMaxSizeBytes().isPresent()) {
+      ProjectFilesystem filesystem = rootCell.getFilesystem();
+      actionResultCache =
+          Optional.of(
+              new LocalActionResultCache(
+                  clients.getProtocol(),
+                  filesystem.resolve(
+                      filesystem.getBuckPaths().getCacheDir().resolve(ACTION_RESULT_CACHE_DIR)),
+                  strategyConfig.localActionResultCacheMaxSizeBytes().getAsLong()));
+    }
     BuildRuleStrategy strategy =
         new RemoteExecutionStrategy(
             eventBus,
@@ -136,10 +197,12 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
             clients,
             metadataProvider,
             new ModernBuildRuleRemoteExecutionHelper(
-                eventBus, clients.getProtocol(), ruleFinder, rootCell, fileHasher),
+                eventBus, clients.getProtocol(), ruleFinder, rootCell, fileHasher, remoteOutputs),
             workerRequirementsProvider,
             MoreExecutors.listeningDecorator(
-                MostExecutors.newMultiThreadExecutor("remote-exec", strategyConfig.getThreads())));
+                MostExecutors.newMultiThreadExecutor("remote-exec", strategyConfig.getThreads())),
+            remoteOutputs,
+            actionResultCache);
     if (strategyConfig.isLocalFallbackEnabled()) {
       strategy = new LocalFallbackStrategy(strategy, eventBus);
     }
@@ -156,8 +219,65 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     return false;
   }
 
+  @Override
+  public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule rule) {
+    // The digests are SHA-1 hashes of the contents, like the file hash cache's (see constructor).
+    ImmutableMap.Builder<Path, DeferredOutput> deferredOutputs = ImmutableMap.builder();
+    remoteOutputs
+        .getOutputs(rule.getBuildTarget())
+        .forEach(
+            (path, outputFile) ->
+                deferredOutputs.put(
+                    rule.getProjectFilesystem().relativize(path),
+                    new DeferredOutput(
+                        HashCode.fromString(outputFile.getDigest().getHash()),
+                        outputFile.getDigest().getSize())));
+    return deferredOutputs.build();
+  }
+
+  @Override
+  public ListenableFuture<Void> materializeDeferredOutputs(Iterable<BuildRule> rules) {
+    List<ListenableFuture<Void>> futures = new ArrayList<>();
+    for (BuildRule rule : rules) {
+      BuildTarget target = rule.getBuildTarget();
+      if (!remoteOutputs.getOutputs(target).isEmpty()) {
+        futures.add(outputMaterializations.computeIfAbsent(target, this::materializeOutputs));
+      }
+    }
+    return Futures.transform(
+        Futures.allAsList(futures), ignored -> null, MoreExecutors.directExecutor());
+  }
+
+  private ListenableFuture<Void> materializeOutputs(BuildTarget target) {
+    ImmutableMap<Path, OutputFile> outputs = remoteOutputs.getOutputs(target);
+    Scope materializationScope =
+        RemoteExecutionActionEvent.sendEvent(
+            eventBus, State.MATERIALIZING_OUTPUTS, target, Optional.empty());
+    ListenableFuture<Void> materializationFuture;
+    try {
+      materializationFuture =
+          executionClients
+              .getContentAddressedStorage()
+              .materializeOutputs(
+                  ImmutableList.of(),
+                  outputs.values().asList(),
+                  new FilesystemFileMaterializer(mbrHelper.getCellPathPrefix()));
+    } catch (IOException e) {
+      materializationFuture = Futures.immediateFailedFuture(e);
+    }
+    materializationFuture.addListener(materializationScope::close, MoreExecutors.directExecutor());
+    return Futures.transform(
+        materializationFuture,
+        ignored -> {
+          remoteOutputs.remove(target);
+          return null;
+        },
+        MoreExecutors.directExecutor());
+  }
+
   @Override
   public void close() throws IOException {
+    actionResultCache.ifPresent(LocalActionResultCache::close);
     executionClients.close();
     eventBus.post(RemoteExecutionSessionEvent.finished(remoteExecutionSessionStartedEvent));
   }
@@ -169,21 +289,11 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
 
     RemoteExecutionActionEvent.sendScheduledEvent(eventBus, rule.getBuildTarget());
 
-    ListenableFuture<RemoteExecutionActionInfo> actionInfoFuture =
-        pendingUploadsLimiter.schedule(
-            service, () -> computeActionAndUpload(rule, strategyContext));
-
     AtomicReference<RemoteExecutionActionInfo> actionInfo = new AtomicReference<>();
+    AtomicReference<ExecutionResult> cachedResult = new AtomicReference<>();
     GuardContext guardContext = new GuardContext();
     ListenableFuture<Optional<ExecutionResult>> executionResult =
-        Futures.transformAsync(
-            actionInfoFuture,
-            actionInfoResult -> {
-              actionInfo.set(actionInfoResult);
-              return handleActionInfo(
-                  rule, strategyContext, buildTarget, actionInfoResult, guardContext);
-            },
-            service);
+        computeAndExecuteAction(rule, strategyContext, actionInfo, cachedResult, guardContext);
 
     AtomicReference<ExecutionResult> executionInfo = new AtomicReference<>();
     ListenableFuture<Optional<BuildResult>> buildResult =
@@ -211,7 +321,11 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
               return Futures.immediateFuture(
                   Optional.of(
                       strategyContext.createBuildResult(
-                          BuildRuleSuccessType.BUILT_LOCALLY, Optional.of("built remotely"))));
+                          BuildRuleSuccessType.BUILT_LOCALLY,
+                          Optional.of(
+                              cachedResult.get() == null
+                                  ? "built remotely"
+                                  : "built remotely - local action cache"))));
             },
             MoreExecutors.directExecutor());
 
@@ -277,15 +391,72 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     };
   }
 
+  private ListenableFuture<Optional<ExecutionResult>> computeAndExecuteAction(
+      BuildRule rule,
+      BuildStrategyContext strategyContext,
+      AtomicReference<RemoteExecutionActionInfo> actionInfo,
+      AtomicReference<ExecutionResult> cachedResult,
+      GuardContext guardContext) {
+    ListenableFuture<RemoteExecutionActionInfo> actionInfoFuture =
+        pendingUploadsLimiter.schedule(
+            service, () -> computeActionAndUpload(rule, strategyContext, cachedResult));
+    ListenableFuture<Optional<ExecutionResult>> executionResult =
+        Futures.transformAsync(
+            actionInfoFuture,
+            actionInfoResult -> {
+              actionInfo.set(actionInfoResult);
+              return handleActionInfo(
+                  rule,
+                  strategyContext,
+                  rule.getBuildTarget(),
+                  actionInfoResult,
+                  cachedResult.get(),
+                  guardContext);
+            },
+            service);
+    return Futures.catchingAsync(
+        executionResult,
+        Exception.class,
+        e -> {
+          ExecutionResult staleResult = cachedResult.getAndSet(null);
+          if (staleResult == null) {
+            throw e;
+          }
+          // The outputs of the cached result are most likely gone from the CAS, so forget about it
+          // and run the action as if it had never been cached.
+          Digest actionDigest = Objects.requireNonNull(actionInfo.get()).getActionDigest();
+          LOG.info(
+              e,
+              "[RE] Failed to use the cached result of [%s], action: [%s], running it again.",
+              rule.getFullyQualifiedName(),
+              actionDigest);
+          Objects.requireNonNull(actionResultCache.get()).invalidate(actionDigest);
+          return computeAndExecuteAction(
+              rule, strategyContext, actionInfo, cachedResult, guardContext);
+        },
+        service);
+  }
+
   private ListenableFuture<RemoteExecutionActionInfo> computeActionAndUpload(
-      BuildRule rule, BuildStrategyContext strategyContext) {
+      BuildRule rule,
+      BuildStrategyContext strategyContext,
+      AtomicReference<ExecutionResult> cachedResult) {
     ListenableFuture<RemoteExecutionActionInfo> actionInfoFuture =
         computeActionLimiter.schedule(
             service,
             () -> Futures.immediateFuture(getRemoteExecutionActionInfo(rule, strategyContext)));
     return Futures.transformAsync(
         actionInfoFuture,
-        actionInfo -> uploadInputs(rule.getBuildTarget(), actionInfo),
+        actionInfo -> {
+          Optional<ExecutionResult> result =
+              actionResultCache.flatMap(cache -> cache.get(actionInfo.getActionDigest()));
+          if (result.isPresent()) {
+            // Nothing needs to be uploaded for an action that won't run.
+            cachedResult.set(result.get());
+            return Futures.immediateFuture(actionInfo.withRequiredData(ImmutableList.of()));
+          }
+          return uploadInputs(rule.getBuildTarget(), actionInfo);
+        },
         MoreExecutors.directExecutor());
   }
 
@@ -323,6 +494,7 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
       BuildStrategyContext strategyContext,
       BuildTarget buildTarget,
       RemoteExecutionActionInfo actionInfo,
+      @Nullable ExecutionResult cachedResult,
       GuardContext guardContext)
       throws IOException {
     Objects.requireNonNull(actionInfo);
@@ -331,6 +503,10 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
     // very, very large.
     Digest actionDigest = actionInfo.getActionDigest();
     Iterable<? extends Path> actionOutputs = actionInfo.getOutputs();
+    if (cachedResult != null) {
+      return useCachedResult(
+          strategyContext, buildTarget, guardContext, cachedResult, actionDigest, actionOutputs);
+    }
     Scope uploadingInputsScope =
         RemoteExecutionActionEvent.sendEvent(
             eventBus, State.UPLOADING_INPUTS, buildTarget, Optional.of(actionDigest));
@@ -351,6 +527,47 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
         service);
   }
 
+  private ListenableFuture<Optional<ExecutionResult>> useCachedResult(
+      BuildStrategyContext strategyContext,
+      BuildTarget buildTarget,
+      GuardContext guardContext,
+      ExecutionResult cachedResult,
+      Digest actionDigest,
+      Iterable<? extends Path> actionOutputs)
+      throws IOException {
+    if (materializeOutputsOnDemand && !cachedResult.getOutputFiles().isEmpty()) {
+      // Output files are only fetched once they're needed, long after falling back to running the
+      // action is possible, so make sure the CAS still has them before trusting the result.
+      ImmutableSet<String> missingHashes =
+          executionClients
+              .getContentAddressedStorage()
+              .getMissingHashes(
+                  cachedResult.getOutputFiles().stream()
+                      .map(OutputFile::getDigest)
+                      .collect(ImmutableList.toImmutableList()));
+      if (!missingHashes.isEmpty()) {
+        throw new IOException(
+            String.format(
+                "%d outputs of the cached result are gone from the CAS.", missingHashes.size()));
+      }
+    }
+    // Fetching the outputs is about as much work as it gets for this action, so it's past the point
+    // where it's worth building it some other way, e.g. stealing it in the hybrid strategy.
+    if (!guardContext.tryStart() && guardContext.isCancelled()) {
+      return Futures.immediateFuture(Optional.empty());
+    }
+    return handleResultLimiter.schedule(
+        service,
+        () ->
+            handleExecutionResult(
+                strategyContext,
+                buildTarget,
+                cachedResult,
+                actionDigest,
+                actionOutputs,
+                metadataProvider));
+  }
+
   private RemoteExecutionActionInfo getRemoteExecutionActionInfo(
       BuildRule rule, BuildStrategyContext strategyContext) throws IOException {
     try (Scope ignored = strategyContext.buildRuleScope()) {
@@ -498,16 +715,30 @@ public class RemoteExecutionStrategy extends AbstractModernBuildRuleStrategy {
         RemoteExecutionActionEvent.sendEvent(
             eventBus, State.MATERIALIZING_OUTPUTS, buildTarget, Optional.of(actionDigest));
 
+    // When outputs are materialized on demand, only the files are left in the CAS.
     ListenableFuture<Void> materializationFuture =
         executionClients
             .getContentAddressedStorage()
             .materializeOutputs(
                 result.getOutputDirectories(),
-                result.getOutputFiles(),
+                materializeOutputsOnDemand ? ImmutableList.of() : result.getOutputFiles(),
                 new FilesystemFileMaterializer(mbrHelper.getCellPathPrefix()));
     materializationFuture.addListener(materializationScope::close, MoreExecutors.directExecutor());
     return Futures.transform(
-        materializationFuture, ignored -> Optional.of(result), MoreExecutors.directExecutor());
+        materializationFuture,
+        ignored -> {
+          if (materializeOutputsOnDemand) {
+            ImmutableMap.Builder<Path, OutputFile> outputs = ImmutableMap.builder();
+            for (OutputFile outputFile : result.getOutputFiles()) {
+              outputs.put(mbrHelper.getCellPathPrefix().resolve(outputFile.getPath()), outputFile);
+            }
+            outputMaterializations.remove(buildTarget);
+            remoteOutputs.put(buildTarget, outputs.build());
+          }
+          actionResultCache.ifPresent(cache -> cache.put(actionDigest, result));
+          return Optional.of(result);
+        },
+        MoreExecutors.directExecutor());
   }
 
   private static class GuardContext {
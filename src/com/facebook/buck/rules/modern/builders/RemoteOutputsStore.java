@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.builders;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Keeps track of the output files of remotely executed actions that are still only in the CAS.
+ *
+ * <p>Paths are absolute. Directories that contain such files are indexed too, so that listing a
+ * directory that is an input of another action finds them even though they aren't on disk.
+ */
+@ThreadSafe
+class RemoteOutputsStore {
+  private final ConcurrentMap<BuildTarget, ImmutableMap<Path, OutputFile>> outputsByTarget =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, OutputFile> outputsByPath = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, Set<Path>> childrenByDirectory = new ConcurrentHashMap<>();
+
+  /** Records the output files of the target, replacing the ones recorded before, if any. */
+  void put(BuildTarget target, ImmutableMap<Path, OutputFile> outputs) {
+    remove(target);
+    for (Map.Entry<Path, OutputFile> entry : outputs.entrySet()) {
+      outputsByPath.put(entry.getKey(), entry.getValue());
+      Path child = entry.getKey();
+      for (Path parent = child.getParent();
+          parent != null;
+          child = parent, parent = parent.getParent()) {
+        childrenByDirectory.computeIfAbsent(parent, ignored -> ConcurrentHashMap.newKeySet());
+        if (!childrenByDirectory.get(parent).add(child)) {
+          break;
+        }
+      }
+    }
+    outputsByTarget.put(target, outputs);
+  }
+
+  /** @return the output files of the target that haven't been written to disk, by path. */
+  ImmutableMap<Path, OutputFile> getOutputs(BuildTarget target) {
+    return outputsByTarget.getOrDefault(target, ImmutableMap.of());
+  }
+
+  @Nullable
+  OutputFile getOutput(Path path) {
+    return outputsByPath.get(path);
+  }
+
+  /**
+   * @return the children of the directory that only exist because of output files that haven't
+   *     been written to disk, including directories that contain such files.
+   */
+  ImmutableList<Path> getChildren(Path directory) {
+    Set<Path> children = childrenByDirectory.get(directory);
+    return children == null ? ImmutableList.of() : ImmutableList.copyOf(children);
+  }
+
+  /** Forgets the output files of the target, once they are on disk. */
+  void remove(BuildTarget target) {
+    ImmutableMap<Path, OutputFile> outputs = outputsByTarget.remove(target);
+    if (outputs == null) {
+      return;
+    }
+    for (Path path : outputs.keySet()) {
+      outputsByPath.remove(path);
+      // Directories are left in the index: once the files are written, they exist on disk.
+    }
+  }
+}
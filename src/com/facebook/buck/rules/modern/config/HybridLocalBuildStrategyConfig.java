@@ -21,12 +21,22 @@ public class HybridLocalBuildStrategyConfig {
   private final int localJobs;
   private final int delegateJobs;
   private final ModernBuildRuleStrategyConfig delegate;
+  private final boolean adaptiveScheduling;
 
   public HybridLocalBuildStrategyConfig(
       int localJobs, int delegateJobs, ModernBuildRuleStrategyConfig delegate) {
+    this(localJobs, delegateJobs, delegate, false);
+  }
+
+  public HybridLocalBuildStrategyConfig(
+      int localJobs,
+      int delegateJobs,
+      ModernBuildRuleStrategyConfig delegate,
+      boolean adaptiveScheduling) {
     this.localJobs = localJobs;
     this.delegateJobs = delegateJobs;
     this.delegate = delegate;
+    this.adaptiveScheduling = adaptiveScheduling;
   }
 
   public ModernBuildRuleStrategyConfig getDelegateConfig() {
@@ -40,4 +50,12 @@ public class HybridLocalBuildStrategyConfig {
   public int getDelegateJobs() {
     return delegateJobs;
   }
+
+  /**
+   * Whether jobs should go to whichever side is expected to build them first, based on how long
+   * rules of the same type took so far, instead of preferring to build them locally.
+   */
+  public boolean isAdaptiveSchedulingEnabled() {
+    return adaptiveScheduling;
+  }
 }
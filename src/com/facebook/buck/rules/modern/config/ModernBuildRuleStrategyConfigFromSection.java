@@ -68,7 +68,9 @@ public class ModernBuildRuleStrategyConfigFromSection implements ModernBuildRule
     String delegateFlavor =
         delegate.getValue(section, "delegate").orElseThrow(requires("delegate"));
     ModernBuildRuleStrategyConfig delegate = getFlavoredStrategyConfig(delegateFlavor);
-    return new HybridLocalBuildStrategyConfig(localJobs, remoteJobs, delegate);
+    boolean adaptiveScheduling =
+        this.delegate.getBooleanValue(section, "adaptive_scheduling", false);
+    return new HybridLocalBuildStrategyConfig(localJobs, remoteJobs, delegate, adaptiveScheduling);
   }
 
   private Supplier<HumanReadableException> requires(String key) {
@@ -36,6 +36,7 @@ import com.facebook.buck.file.WriteFile;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.google.common.hash.HashCode;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.SortedSet;
 import java.util.UUID;
 import java.util.function.Supplier;
@@ -59,6 +60,9 @@ public class DefaultWorkerToolRule extends WriteFile
       SourcePathRuleFinder ruleFinder,
       Tool tool,
       int maxWorkers,
+      int maxJobsPerWorker,
+      Optional<Long> idleTimeoutMillis,
+      Optional<Long> maxResidentMemoryBytes,
       boolean isPersistent) {
     super(
         buildTarget,
@@ -71,6 +75,9 @@ public class DefaultWorkerToolRule extends WriteFile
         new DefaultWorkerTool(
             new DefaultWorkerToolDelegatingTool(tool, getSourcePathToOutput()),
             maxWorkers,
+            maxJobsPerWorker,
+            idleTimeoutMillis,
+            maxResidentMemoryBytes,
             isPersistent,
             buildTarget,
             generateNewUUID());
@@ -141,6 +148,18 @@ public class DefaultWorkerToolRule extends WriteFile
     @CustomFieldBehavior(DefaultFieldSerialization.class)
     private final Integer maxWorkers;
 
+    /** Not added into RuleKey either, for the same reason as {@link #maxWorkers}. */
+    @CustomFieldBehavior(DefaultFieldSerialization.class)
+    private final Integer maxJobsPerWorker;
+
+    /** Not added into RuleKey either, as it only affects when worker processes are stopped. */
+    @CustomFieldBehavior(DefaultFieldSerialization.class)
+    private final Optional<Long> idleTimeoutMillis;
+
+    /** Not added into RuleKey either, as it only affects how many worker processes are started. */
+    @CustomFieldBehavior(DefaultFieldSerialization.class)
+    private final Optional<Long> maxResidentMemoryBytes;
+
     /**
      * Important : Do not add this field into RuleKey. Rule key should not change in case of
      * instance key modification (that is calculated during creation as random UUID).
@@ -149,9 +168,19 @@ public class DefaultWorkerToolRule extends WriteFile
     private HashCode instanceKey;
 
     DefaultWorkerTool(
-        Tool tool, int maxWorkers, boolean isPersistent, BuildTarget buildTarget, UUID uuid) {
+        Tool tool,
+        int maxWorkers,
+        int maxJobsPerWorker,
+        Optional<Long> idleTimeoutMillis,
+        Optional<Long> maxResidentMemoryBytes,
+        boolean isPersistent,
+        BuildTarget buildTarget,
+        UUID uuid) {
       this.tool = tool;
       this.maxWorkers = maxWorkers;
+      this.maxJobsPerWorker = maxJobsPerWorker;
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      this.maxResidentMemoryBytes = maxResidentMemoryBytes;
       this.isPersistent = isPersistent;
       this.buildTarget = buildTarget;
       this.instanceKey = calculateInstanceKey(uuid);
@@ -180,6 +209,21 @@ public class DefaultWorkerToolRule extends WriteFile
       return maxWorkers;
     }
 
+    @Override
+    public int getMaxJobsPerWorker() {
+      return maxJobsPerWorker;
+    }
+
+    @Override
+    public Optional<Long> getIdleTimeoutMillis() {
+      return idleTimeoutMillis;
+    }
+
+    @Override
+    public Optional<Long> getMaxResidentMemoryBytes() {
+      return maxResidentMemoryBytes;
+    }
+
     @Override
     public boolean isPersistent() {
       return isPersistent;
@@ -21,6 +21,7 @@ import com.facebook.buck.core.toolchain.tool.Tool;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.google.common.hash.HashCode;
 import java.nio.file.Path;
+import java.util.Optional;
 
 /** Worker tool definition */
 public interface WorkerTool extends AddsToRuleKey {
@@ -31,6 +32,18 @@ public interface WorkerTool extends AddsToRuleKey {
 
   int getMaxWorkers();
 
+  /**
+   * Returns how many jobs Buck may send to each worker process at once. Workers that accept more
+   * than one job use {@link com.facebook.buck.worker.WorkerProcessProtocolOne}.
+   */
+  int getMaxJobsPerWorker();
+
+  /** Returns how long a worker process may stay idle before it is stopped. */
+  Optional<Long> getIdleTimeoutMillis();
+
+  /** Returns the resident memory of all the worker processes above which no more are started. */
+  Optional<Long> getMaxResidentMemoryBytes();
+
   boolean isPersistent();
 
   HashCode getInstanceKey();
@@ -45,6 +45,7 @@ import com.google.common.collect.ImmutableMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import org.immutables.value.Value;
 
@@ -52,6 +53,8 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
 
   private static final String CONFIG_SECTION = "worker";
   private static final String CONFIG_PERSISTENT_KEY = "persistent";
+  private static final String CONFIG_IDLE_TIMEOUT_KEY = "idle_timeout_seconds";
+  private static final String CONFIG_MAX_RESIDENT_MEMORY_KEY = "max_resident_memory_mb";
 
   public static final ImmutableList<MacroExpander<? extends Macro, ?>> MACRO_EXPANDERS =
       ImmutableList.of(
@@ -152,6 +155,10 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
               .orElse(1);
     }
 
+    int maxJobsPerWorker = args.getMaxJobsPerWorker().orElse(1);
+    Preconditions.checkArgument(
+        maxJobsPerWorker > 0, "max_jobs_per_worker must be greater than 0.");
+
     CommandTool tool = builder.build();
     return new DefaultWorkerToolRule(
         buildTarget,
@@ -159,6 +166,15 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
         graphBuilder,
         tool,
         maxWorkers,
+        maxJobsPerWorker,
+        buckConfig
+            .getLong(CONFIG_SECTION, CONFIG_IDLE_TIMEOUT_KEY)
+            .filter(seconds -> seconds > 0)
+            .map(TimeUnit.SECONDS::toMillis),
+        buckConfig
+            .getLong(CONFIG_SECTION, CONFIG_MAX_RESIDENT_MEMORY_KEY)
+            .filter(megabytes -> megabytes > 0)
+            .map(megabytes -> megabytes * 1024 * 1024),
         args.getPersistent()
             .orElse(buckConfig.getBooleanValue(CONFIG_SECTION, CONFIG_PERSISTENT_KEY, false)));
   }
@@ -179,6 +195,12 @@ public class WorkerToolDescription implements DescriptionWithTargetGraph<WorkerT
 
     Optional<Integer> getMaxWorkersPerThreadPercent();
 
+    /**
+     * How many jobs each worker process may run at once. Workers are asked for more than one job at
+     * a time with version 1 of the worker protocol.
+     */
+    Optional<Integer> getMaxJobsPerWorker();
+
     Optional<Boolean> getPersistent();
   }
 }
@@ -73,6 +73,7 @@ public final class BuckGlobalState implements Closeable {
   private final ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools;
   private final VersionedTargetGraphCache versionedTargetGraphCache;
   private final ActionGraphCache actionGraphCache;
+  private final QueryResultCache queryResultCache;
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<Path, WatchmanCursor> cursor;
   private final KnownRuleTypesProvider knownRuleTypesProvider;
@@ -92,6 +93,7 @@ public final class BuckGlobalState implements Closeable {
       ConcurrentMap<String, WorkerProcessPool> persistentWorkerPools,
       VersionedTargetGraphCache versionedTargetGraphCache,
       ActionGraphCache actionGraphCache,
+      QueryResultCache queryResultCache,
       RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler,
       ImmutableMap<Path, WatchmanCursor> cursor,
       KnownRuleTypesProvider knownRuleTypesProvider,
@@ -108,6 +110,7 @@ public final class BuckGlobalState implements Closeable {
     this.persistentWorkerPools = persistentWorkerPools;
     this.versionedTargetGraphCache = versionedTargetGraphCache;
     this.actionGraphCache = actionGraphCache;
+    this.queryResultCache = queryResultCache;
     this.defaultRuleKeyFactoryCacheRecycler = defaultRuleKeyFactoryCacheRecycler;
     this.cursor = cursor;
     this.knownRuleTypesProvider = knownRuleTypesProvider;
@@ -137,6 +140,10 @@ public final class BuckGlobalState implements Closeable {
     return actionGraphCache;
   }
 
+  public QueryResultCache getQueryResultCache() {
+    return queryResultCache;
+  }
+
   public ImmutableList<ProjectFileHashCache> getFileHashCaches() {
     return hashCaches;
   }
@@ -107,6 +107,7 @@ public class BuckGlobalStateFactory {
     DaemonicParserState daemonicParserState =
         new DaemonicParserState(parserConfig.getNumParsingThreads());
     fileEventBus.register(daemonicParserState);
+    QueryResultCache queryResultCache = new QueryResultCache(daemonicParserState);
 
     // Build the the rule key cache recycler.
     RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler =
@@ -157,6 +158,7 @@ public class BuckGlobalStateFactory {
         persistentWorkerPools,
         versionedTargetGraphCache,
         actionGraphCache,
+        queryResultCache,
         defaultRuleKeyFactoryCacheRecycler,
         cursor,
         knownRuleTypesProvider,
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.support.state;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.parser.BuildPackageGenerations;
+import com.facebook.buck.parser.DaemonicParserState;
+import com.facebook.buck.query.QueryException;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+
+/**
+ * A cache of query results that lives as long as the daemon.
+ *
+ * <p>Every result is stored together with the build files it was computed from and the generation
+ * of {@link BuildPackageGenerations} at which the computation started. A result is only returned
+ * while none of those build files has been invalidated by {@link DaemonicParserState}, so editing a
+ * build file only evicts the results that depend on it.
+ *
+ * <p>Before a result is returned, the build files it depends on are checked for changes to the
+ * environment variables they read, like the parser does before it reuses them. Changes to the
+ * configuration restart the daemon, which drops the whole cache.
+ */
+public class QueryResultCache {
+
+  private static final Logger LOG = Logger.get(QueryResultCache.class);
+
+  private static final int MAX_ENTRIES = 1024;
+
+  /** Computes a query result on a cache miss. */
+  public interface Loader {
+    Entry load() throws QueryException, InterruptedException;
+  }
+
+  /** A query result together with the build files it depends on. */
+  public static final class Entry {
+    private final ImmutableSet<QueryTarget> result;
+    private final ImmutableSet<Path> buildFiles;
+    private final ImmutableSet<Path> directories;
+    private final long generation;
+
+    private Entry(
+        ImmutableSet<QueryTarget> result,
+        ImmutableSet<Path> buildFiles,
+        ImmutableSet<Path> directories,
+        long generation) {
+      this.result = result;
+      this.buildFiles = buildFiles;
+      this.directories = directories;
+      this.generation = generation;
+    }
+
+    /**
+     * @param result the result of the query
+     * @param buildFiles absolute paths of all the build files the result was computed from
+     * @param directories absolute paths of directories all of whose build files, recursively, may
+     *     affect the result, for example because they were matched by a recursive target pattern
+     */
+    public static Entry of(
+        ImmutableSet<QueryTarget> result,
+        ImmutableSet<Path> buildFiles,
+        ImmutableSet<Path> directories) {
+      return new Entry(result, buildFiles, directories, 0);
+    }
+
+    public ImmutableSet<QueryTarget> getResult() {
+      return result;
+    }
+  }
+
+  private final DaemonicParserState parserState;
+  private final BuildPackageGenerations buildPackageGenerations;
+  private final Cache<String, Entry> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+  public QueryResultCache(DaemonicParserState parserState) {
+    this.parserState = parserState;
+    this.buildPackageGenerations = parserState.getBuildPackageGenerations();
+  }
+
+  /**
+   * @param key identifies the query and everything other than build files that its result depends
+   *     on, such as the target configuration
+   * @param rootCell the root cell of the current command, whose environment the build files of a
+   *     cached result are checked against
+   * @param eventBus receives the events of the build files invalidated by environment changes
+   * @param loader computes the result if there is no up to date result cached for {@code key}
+   * @param statsTracker records the hits and misses of this request
+   * @return the result of the query
+   */
+  public ImmutableSet<QueryTarget> get(
+      String key,
+      Cell rootCell,
+      BuckEventBus eventBus,
+      Loader loader,
+      CacheStatsTracker statsTracker)
+      throws QueryException, InterruptedException {
+    CacheStatsTracker.CacheRequest request = statsTracker.startRequest();
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null) {
+      parserState.invalidateIfEnvHasChanged(
+          rootCell, entry.buildFiles, entry.directories, eventBus);
+      if (buildPackageGenerations.isUpToDate(
+          entry.generation, entry.buildFiles, entry.directories)) {
+        request.recordHit();
+        return entry.result;
+      }
+      LOG.debug("Cached result of %s depends on invalidated build files", key);
+      cache.invalidate(key);
+      statsTracker.recordInvalidation();
+      request.recordMissMatch();
+    } else {
+      request.recordMiss();
+    }
+
+    // Record the generation before loading, so that build files invalidated while the query runs
+    // make the result stale.
+    long generation = buildPackageGenerations.getCurrentGeneration();
+    Entry loaded;
+    try {
+      loaded = loader.load();
+    } catch (QueryException | InterruptedException | RuntimeException e) {
+      request.recordLoadFail();
+      throw e;
+    }
+    request.recordLoadSuccess();
+    cache.put(key, new Entry(loaded.result, loaded.buildFiles, loaded.directories, generation));
+    return loaded.result;
+  }
+}
@@ -21,6 +21,7 @@ import com.facebook.buck.test.selectors.TestSelectorList;
 import com.google.common.collect.ImmutableMap;
 import java.util.EnumSet;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Set;
 import org.immutables.value.Value;
 
@@ -74,4 +75,7 @@ abstract class AbstractTestRunningOptions {
   public abstract Optional<String> getCoverageIncludes();
 
   public abstract Optional<String> getJavaTempDir();
+
+  /** How many processes run the test classes of a java test that runs them in shards. */
+  public abstract OptionalInt getJavaTestShardCount();
 }
@@ -180,6 +180,9 @@ class LimitedFileHashCacheEngine implements FileHashCacheEngine {
         return FILE_TYPE_FILE;
       }
       throw new RuntimeException("Unrecognized file type at " + path);
+    } catch (NoSuchFileException e) {
+      // The hash of a file may be set before the file is written.
+      return FILE_TYPE_FILE;
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -153,9 +153,15 @@ public class StackedFileHashCache implements FileHashCache {
 
   @Override
   public void set(Path path, HashCode hashCode) throws IOException {
-    Optional<Pair<ProjectFileHashCache, Path>> found = lookup(path);
-    if (found.isPresent()) {
-      found.get().getFirst().set(found.get().getSecond(), hashCode);
+    Preconditions.checkArgument(path.isAbsolute());
+    // Unlike lookup(), this doesn't require the path to exist, since the hash of a file may be
+    // known before it's written, e.g. for outputs that are only fetched when they're needed.
+    for (ProjectFileHashCache cache : caches) {
+      Optional<Path> relativePath = cache.getFilesystem().getPathRelativeToProjectRoot(path);
+      if (relativePath.isPresent() && !cache.isIgnored(relativePath.get())) {
+        cache.set(relativePath.get(), hashCode);
+        return;
+      }
     }
   }
 
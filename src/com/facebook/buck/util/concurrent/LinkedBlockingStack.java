@@ -41,6 +41,14 @@ public class LinkedBlockingStack<E> implements BlockingQueue<E> {
     return true;
   }
 
+  /**
+   * Adds an element at the bottom of the stack, so that it is returned after all the elements
+   * already in the stack.
+   */
+  public void addLast(E element) {
+    delegate.addLast(element);
+  }
+
   @Override
   public boolean offer(E element) {
     return delegate.offerFirst(element);
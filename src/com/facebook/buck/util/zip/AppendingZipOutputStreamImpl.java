@@ -63,12 +63,21 @@ class AppendingZipOutputStreamImpl implements CustomZipOutputStream.Impl {
 
   @Override
   public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, false);
+  }
+
+  @Override
+  public void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, true);
+  }
+
+  private void putNextEntry(ZipEntry entry, boolean isDeflated) throws IOException {
     if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
       // Same exception as ZipOutputStream.
       throw new ZipException("duplicate entry: " + entry.getName());
     }
 
-    currentEntry = new EntryAccounting(clock, entry, currentOffset);
+    currentEntry = new EntryAccounting(clock, entry, currentOffset, isDeflated);
     entries.add(currentEntry);
 
     currentOffset += currentEntry.writeLocalFileHeader(delegate);
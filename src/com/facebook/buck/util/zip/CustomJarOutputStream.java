@@ -16,6 +16,8 @@
 
 package com.facebook.buck.util.zip;
 
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
@@ -28,6 +30,9 @@ import javax.annotation.Nullable;
 /** Extension of {@link CustomZipOutputStream} with jar-specific functionality. */
 public class CustomJarOutputStream extends CustomZipOutputStream {
   public static final String DIGEST_ATTRIBUTE_NAME = "Murmur3-128-Digest";
+  /** The hash function of the digests of entries recorded in the manifest. */
+  static final HashFunction ENTRY_HASH_FUNCTION = Hashing.murmur3_128();
+
   private final HashingImpl impl;
 
   public CustomJarOutputStream(Impl impl) {
@@ -51,9 +56,21 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
     impl.writeManifest();
   }
 
-  private static class HashingImpl extends OutputStream implements Impl {
-    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+  /**
+   * Starts writing an entry whose contents are already deflated, see {@link
+   * #putNextDeflatedEntry(ZipEntry)}.
+   *
+   * @param contentsHash the hash of the uncompressed contents of the entry, computed with {@link
+   *     #ENTRY_HASH_FUNCTION}. Only the compressed contents are written, so this is required when
+   *     entries are hashed.
+   */
+  public void putNextDeflatedEntry(ZipEntry entry, @Nullable HashCode contentsHash)
+      throws IOException {
+    impl.setDeflatedEntryHash(contentsHash);
+    putNextDeflatedEntry(entry);
+  }
 
+  private static class HashingImpl extends OutputStream implements Impl {
     private final Impl inner;
     private final DeterministicManifest manifest = new DeterministicManifest();
     private boolean shouldHashEntries = false;
@@ -61,6 +78,8 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
 
     @Nullable private ZipEntry currentEntry;
     @Nullable private Hasher hasher;
+    @Nullable private HashCode deflatedEntryHash;
+    @Nullable private HashCode currentEntryHash;
 
     HashingImpl(Impl inner) {
       this.inner = inner;
@@ -74,17 +93,37 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       this.shouldHashEntries = shouldHashEntries;
     }
 
+    public void setDeflatedEntryHash(@Nullable HashCode deflatedEntryHash) {
+      this.deflatedEntryHash = deflatedEntryHash;
+    }
+
     @Override
     public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
       inner.actuallyPutNextEntry(entry);
 
       if (shouldHashEntries && !entry.isDirectory() && hasher == null) {
-        hasher = HASH_FUNCTION.newHasher();
+        hasher = ENTRY_HASH_FUNCTION.newHasher();
       }
 
       currentEntry = entry;
     }
 
+    @Override
+    public void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+      HashCode contentsHash = deflatedEntryHash;
+      deflatedEntryHash = null;
+      if (shouldHashEntries && !entry.isDirectory()) {
+        Preconditions.checkState(
+            contentsHash != null,
+            "The hash of the contents of deflated entry %s is required to hash it.",
+            entry.getName());
+        currentEntryHash = contentsHash;
+      }
+
+      inner.actuallyPutNextDeflatedEntry(entry);
+      currentEntry = entry;
+    }
+
     @Override
     public void actuallyWrite(byte[] b, int off, int len) throws IOException {
       inner.actuallyWrite(b, off, len);
@@ -99,13 +138,17 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       inner.actuallyCloseEntry();
 
       if (hasher != null) {
+        currentEntryHash = hasher.hash();
+        hasher = null;
+      }
+      if (currentEntryHash != null) {
         if (manifestWritten) {
           throw new IllegalStateException(
               "Attempted to write an entry with hashing enabled after the manifest was written.");
         }
         manifest.setEntryAttribute(
-            currentEntry.getName(), DIGEST_ATTRIBUTE_NAME, hasher.hash().toString());
-        hasher = null;
+            currentEntry.getName(), DIGEST_ATTRIBUTE_NAME, currentEntryHash.toString());
+        currentEntryHash = null;
       }
 
       currentEntry = null;
@@ -40,6 +40,13 @@ public class CustomZipOutputStream extends OutputStream {
      */
     void actuallyPutNextEntry(ZipEntry entry) throws IOException;
 
+    /**
+     * Called by {@link CustomZipOutputStream#putNextDeflatedEntry(ZipEntry)}. Same as {@link
+     * #actuallyPutNextEntry(ZipEntry)}, except that the bytes written to the entry are already
+     * deflated and must be copied as they are.
+     */
+    void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException;
+
     /**
      * Called by {@link CustomZipOutputStream#close()} and used by impls to close the delegate
      * stream. This method will be called at most once in the lifecycle of the
@@ -77,6 +84,22 @@ public class CustomZipOutputStream extends OutputStream {
     entryOpen = true;
   }
 
+  /**
+   * Starts writing an entry whose contents are already deflated, such as an entry copied from
+   * another zip file. The bytes written to the entry are copied as they are, so the CRC, the size
+   * and the compressed size of the entry must be set.
+   */
+  public final void putNextDeflatedEntry(ZipEntry entry) throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+    Preconditions.checkArgument(
+        entry.getMethod() == ZipEntry.DEFLATED, "Entry %s is not deflated", entry.getName());
+
+    state = State.OPEN;
+    closeEntry();
+    impl.actuallyPutNextDeflatedEntry(entry);
+    entryOpen = true;
+  }
+
   private void validateEntry(ZipEntry entry) {
     if (entry.getMethod() == ZipEntry.STORED) {
       Preconditions.checkState(
@@ -24,11 +24,12 @@ import com.google.common.hash.Hashing;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
+import javax.annotation.Nullable;
 
 /**
  * A wrapper containing the {@link ZipEntry} and additional book keeping information required to
@@ -53,6 +54,7 @@ class EntryAccounting {
 
   private final ZipEntry entry;
   private final Method method;
+  private final boolean isDeflated;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -69,21 +71,42 @@ class EntryAccounting {
    */
   private int flags = UTF8_NAMES_FLAG;
 
-  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-  private final byte[] buffer = new byte[ARBITRARY_SIZE];
+  private final int compressionLevel;
+  @Nullable private Deflater deflater;
+  @Nullable private byte[] buffer;
 
   public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
+    this(clock, entry, currentOffset, false);
+  }
+
+  /**
+   * @param isDeflated whether the bytes written to the entry are already deflated, in which case
+   *     the CRC and the sizes of the entry must already be set
+   */
+  public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset, boolean isDeflated) {
     this.entry = entry;
     this.method = Method.detect(entry.getMethod());
+    this.isDeflated = isDeflated;
     this.offset = currentOffset;
 
+    Preconditions.checkArgument(
+        !isDeflated
+            || (method == Method.DEFLATE
+                && entry.getCrc() != -1
+                && entry.getSize() != -1
+                && entry.getCompressedSize() != -1),
+        "Deflated entry %s must have its CRC and sizes set.",
+        entry.getName());
+
     if (entry.getTime() == -1) {
       entry.setTime(clock.currentTimeMillis());
     }
 
     if (entry instanceof CustomZipEntry) {
-      deflater.setLevel(((CustomZipEntry) entry).getCompressionLevel());
+      compressionLevel = ((CustomZipEntry) entry).getCompressionLevel();
       externalAttributes = ((CustomZipEntry) entry).getExternalAttributes();
+    } else {
+      compressionLevel = Deflater.DEFAULT_COMPRESSION;
     }
   }
 
@@ -231,10 +254,21 @@ class EntryAccounting {
     }
   }
 
+  private Deflater getDeflater() {
+    // Entries that are stored or already deflated never need the native memory of a deflater.
+    if (deflater == null) {
+      deflater = new Deflater(compressionLevel, true);
+      buffer = new byte[ARBITRARY_SIZE];
+    }
+    return deflater;
+  }
+
   private int deflate(OutputStream out) throws IOException {
+    Deflater deflater = getDeflater();
+    byte[] buffer = Objects.requireNonNull(this.buffer);
     int written = deflater.deflate(buffer, 0, buffer.length);
     if (written > 0) {
-      out.write(Arrays.copyOf(buffer, written));
+      out.write(buffer, 0, written);
     }
     return written;
   }
@@ -243,12 +277,20 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+
+    if (isDeflated) {
+      out.write(b, off, len);
+      length += len;
+      return;
+    }
+
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
       out.write(b, off, len);
       length += len;
     } else if (method == Method.DEFLATE) {
+      Deflater deflater = getDeflater();
       Preconditions.checkState(!deflater.finished());
       deflater.setInput(b, off, len);
       while (!deflater.needsInput()) {
@@ -262,7 +304,11 @@ class EntryAccounting {
    * local file header, but counting the data descriptor if present). Must be called exactly once.
    */
   public long finish(OutputStream out) throws IOException {
-    if (method == Method.STORE) {
+    if (isDeflated) {
+      Preconditions.checkState(
+          entry.getCompressedSize() == length,
+          "Number of bytes written differs from what is specified in the entry.");
+    } else if (method == Method.STORE) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
@@ -270,6 +316,7 @@ class EntryAccounting {
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
     } else if (method == Method.DEFLATE) {
+      Deflater deflater = getDeflater();
       deflater.finish();
       while (!deflater.finished()) {
         deflate(out);
@@ -280,7 +327,9 @@ class EntryAccounting {
     }
 
     // regardless of the method used, end the deflater to free native resources.
-    deflater.end();
+    if (deflater != null) {
+      deflater.end();
+    }
 
     // write the data descriptor if required
     byte[] dataDescriptor = getDataDescriptor();
@@ -21,7 +21,6 @@ import com.facebook.buck.util.RichStream;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import java.io.IOException;
 import java.io.InputStream;
@@ -139,18 +138,24 @@ public class JarBuilder {
             outputFile, ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
       jar.setEntryHashingEnabled(shouldHashEntries);
       this.outputFile = outputFile;
+      ParallelJarEntryWriter writer = new ParallelJarEntryWriter(jar, shouldHashEntries);
 
-      // Write the manifest first.
-      writeManifest(jar);
+      try {
+        // Write the manifest first.
+        writeManifest(jar, writer);
 
-      // Sort entries across all suppliers
-      List<JarEntrySupplier> sortedEntries = new ArrayList<>();
-      for (JarEntryContainer sourceContainer : sourceContainers) {
-        sourceContainer.stream().forEach(sortedEntries::add);
-      }
-      sortedEntries.sort(Comparator.comparing(supplier -> supplier.getEntry().getName()));
+        // Sort entries across all suppliers
+        List<JarEntrySupplier> sortedEntries = new ArrayList<>();
+        for (JarEntryContainer sourceContainer : sourceContainers) {
+          sourceContainer.stream().forEach(sortedEntries::add);
+        }
+        sortedEntries.sort(Comparator.comparing(supplier -> supplier.getEntry().getName()));
 
-      addEntriesToJar(sortedEntries, jar);
+        addEntriesToJar(sortedEntries, writer);
+        writer.flush();
+      } finally {
+        writer.cancel();
+      }
 
       addServices(jar);
 
@@ -172,8 +177,10 @@ public class JarBuilder {
     }
   }
 
-  private void writeManifest(CustomJarOutputStream jar) throws IOException {
-    mkdirs("META-INF/", jar);
+  private void writeManifest(CustomJarOutputStream jar, ParallelJarEntryWriter writer)
+      throws IOException {
+    mkdirs("META-INF/", writer);
+    writer.flush();
     DeterministicManifest manifest = jar.getManifest();
     manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
 
@@ -221,14 +228,14 @@ public class JarBuilder {
     return entry;
   }
 
-  private void addEntriesToJar(Iterable<JarEntrySupplier> entries, CustomJarOutputStream jar)
-      throws IOException {
+  private void addEntriesToJar(
+      Iterable<JarEntrySupplier> entries, ParallelJarEntryWriter writer) throws IOException {
     for (JarEntrySupplier entrySupplier : entries) {
-      addEntryToJar(entrySupplier, jar);
+      addEntryToJar(entrySupplier, writer);
     }
   }
 
-  private void addEntryToJar(JarEntrySupplier entrySupplier, CustomJarOutputStream jar)
+  private void addEntryToJar(JarEntrySupplier entrySupplier, ParallelJarEntryWriter writer)
       throws IOException {
     CustomZipEntry entry = entrySupplier.getEntry();
     String entryName = entry.getName();
@@ -243,7 +250,7 @@ public class JarBuilder {
       return;
     }
 
-    mkdirs(getParentDir(entryName), jar);
+    mkdirs(getParentDir(entryName), writer);
 
     // We're in the process of merging a bunch of different jar files. These typically contain
     // just ".class" files and the manifest, but they can also include things like license files
@@ -270,21 +277,14 @@ public class JarBuilder {
       return;
     }
 
-    jar.putNextEntry(entry);
-    try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
-      if (entryInputStream != null) {
-        // Null stream means a directory
-        ByteStreams.copy(entryInputStream, jar);
-      }
-    }
-    jar.closeEntry();
+    writer.putEntry(entrySupplier);
   }
 
   private boolean isService(String entryName) {
     return entryName.startsWith("META-INF/services/") && !entryName.endsWith("/");
   }
 
-  private void mkdirs(String name, CustomJarOutputStream jar) throws IOException {
+  private void mkdirs(String name, ParallelJarEntryWriter writer) throws IOException {
     if (name.isEmpty()) {
       return;
     }
@@ -295,10 +295,9 @@ public class JarBuilder {
     }
 
     String parent = getParentDir(name);
-    mkdirs(parent, jar);
+    mkdirs(parent, writer);
 
-    jar.putNextEntry(new CustomZipEntry(name));
-    jar.closeEntry();
+    writer.putEntry(new CustomZipEntry(name));
     alreadyAddedEntries.add(name);
   }
 
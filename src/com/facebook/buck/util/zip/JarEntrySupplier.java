@@ -19,6 +19,8 @@ package com.facebook.buck.util.zip;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
+import javax.annotation.Nullable;
 
 /**
  * Encapsulates a file or directory to be added as a single entry to a jar by {@link JarBuilder}.
@@ -27,14 +29,28 @@ public class JarEntrySupplier {
   private final CustomZipEntry entry;
   private final String owner;
   private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
+  @Nullable private final DeflatedContents deflatedContents;
 
   public JarEntrySupplier(
       CustomZipEntry entry,
       String owner,
       ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+    this(entry, owner, inputStreamSupplier, null);
+  }
+
+  /**
+   * @param deflatedContents the contents of the entry exactly as deflated in the zip file it comes
+   *     from, for an entry whose crc, size and method are already set
+   */
+  JarEntrySupplier(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<InputStream, IOException> inputStreamSupplier,
+      @Nullable DeflatedContents deflatedContents) {
     this.entry = entry;
     this.owner = owner;
     this.inputStreamSupplier = inputStreamSupplier;
+    this.deflatedContents = deflatedContents;
   }
 
   public CustomZipEntry getEntry() {
@@ -48,4 +64,30 @@ public class JarEntrySupplier {
   public ThrowingSupplier<InputStream, IOException> getInputStreamSupplier() {
     return inputStreamSupplier;
   }
+
+  /** @return the deflated contents of the entry, if they can be copied as they are */
+  Optional<DeflatedContents> getDeflatedContents() {
+    return Optional.ofNullable(deflatedContents);
+  }
+
+  /** The contents of an entry exactly as they are deflated in the zip file it comes from. */
+  static class DeflatedContents {
+    private final long compressedSize;
+    private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
+
+    DeflatedContents(
+        long compressedSize, ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+      this.compressedSize = compressedSize;
+      this.inputStreamSupplier = inputStreamSupplier;
+    }
+
+    long getCompressedSize() {
+      return compressedSize;
+    }
+
+    /** @return a stream of the deflated bytes, which doesn't have to be buffered */
+    InputStream openStream() throws IOException {
+      return inputStreamSupplier.get();
+    }
+  }
 }
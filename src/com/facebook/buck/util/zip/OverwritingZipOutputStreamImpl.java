@@ -70,8 +70,17 @@ public class OverwritingZipOutputStreamImpl implements CustomZipOutputStream.Imp
 
   @Override
   public void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, false);
+  }
+
+  @Override
+  public void actuallyPutNextDeflatedEntry(ZipEntry entry) throws IOException {
+    putNextEntry(entry, true);
+  }
+
+  private void putNextEntry(ZipEntry entry, boolean isDeflated) throws IOException {
     // We calculate the actual offset when closing the stream, so 0 is fine.
-    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0);
+    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0, isDeflated);
 
     long md5 = Hashing.md5().hashUnencodedChars(entry.getName()).asLong();
     String name = String.valueOf(md5);
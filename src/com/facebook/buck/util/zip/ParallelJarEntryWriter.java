@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.facebook.buck.io.TeeInputStream;
+import com.facebook.buck.util.zip.JarEntrySupplier.DeflatedContents;
+import com.google.common.base.Throwables;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+
+/**
+ * Writes entries to a jar in the order they are put, while their contents are read, deflated and
+ * hashed in parallel.
+ *
+ * <p>Every entry is prepared by its own task on a fork-join pool that is shared by all writers, a
+ * bounded number of entries ahead of the one being written. Entries whose deflated contents can be
+ * copied from the zip file they come from are never deflated again, only inflated to check their
+ * CRC and to hash them. Large entries are streamed into the jar when their turn comes, just like a
+ * sequential writer would, so that the memory used doesn't depend on the entries.
+ *
+ * <p>Contents are deflated with the same settings and the same sequence of calls as {@link
+ * EntryAccounting} uses, so the jar is the same as if it had been written sequentially, except for
+ * the copied entries, whose contents are the same as in the zip file they come from.
+ */
+class ParallelJarEntryWriter {
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  /** Entries larger than this are streamed into the jar instead of being prepared in memory. */
+  static final int MAX_PREPARED_SIZE = 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  private final CustomJarOutputStream jar;
+  private final boolean shouldHashEntries;
+  private final int maxPendingEntries = 2 * POOL.getParallelism();
+  private final Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+
+  ParallelJarEntryWriter(CustomJarOutputStream jar, boolean shouldHashEntries) {
+    this.jar = jar;
+    this.shouldHashEntries = shouldHashEntries;
+  }
+
+  /** Puts an entry without contents, such as a directory. */
+  void putEntry(CustomZipEntry entry) throws IOException {
+    enqueue(new PendingEntry(entry, null, null));
+  }
+
+  void putEntry(JarEntrySupplier supplier) throws IOException {
+    ForkJoinTask<PreparedEntry> task = null;
+    if (supplier.getEntry().getSize() <= MAX_PREPARED_SIZE) {
+      task = POOL.submit(() -> prepare(supplier));
+    }
+    enqueue(new PendingEntry(supplier.getEntry(), supplier, task));
+  }
+
+  /** Writes all the entries that have been put. */
+  void flush() throws IOException {
+    while (!pendingEntries.isEmpty()) {
+      writeNextEntry();
+    }
+  }
+
+  /** Drops the entries that have not been written yet, after writing the jar failed. */
+  void cancel() {
+    for (PendingEntry pendingEntry : pendingEntries) {
+      if (pendingEntry.task != null) {
+        pendingEntry.task.cancel(false);
+      }
+    }
+    pendingEntries.clear();
+  }
+
+  private void enqueue(PendingEntry pendingEntry) throws IOException {
+    pendingEntries.add(pendingEntry);
+    while (pendingEntries.size() > maxPendingEntries) {
+      writeNextEntry();
+    }
+  }
+
+  private void writeNextEntry() throws IOException {
+    PendingEntry pendingEntry = pendingEntries.remove();
+    JarEntrySupplier supplier = pendingEntry.supplier;
+    if (supplier == null) {
+      jar.putNextEntry(pendingEntry.entry);
+      jar.closeEntry();
+      return;
+    }
+
+    PreparedEntry prepared = null;
+    if (pendingEntry.task != null) {
+      prepared = getPreparedEntry(pendingEntry.task);
+    } else if (supplier.getDeflatedContents().isPresent()) {
+      // Copying is still much cheaper than deflating, even for the largest of entries.
+      writeCopied(supplier.getEntry(), supplier.getDeflatedContents().get());
+      return;
+    }
+    if (prepared == null) {
+      writeStreamed(supplier);
+      return;
+    }
+
+    if (prepared.isDeflated) {
+      jar.putNextDeflatedEntry(pendingEntry.entry, prepared.contentsHash);
+    } else {
+      jar.putNextEntry(pendingEntry.entry);
+    }
+    if (prepared.contents != null) {
+      jar.write(prepared.contents);
+    }
+    jar.closeEntry();
+  }
+
+  private void writeStreamed(JarEntrySupplier supplier) throws IOException {
+    jar.putNextEntry(supplier.getEntry());
+    try (InputStream entryInputStream = supplier.getInputStreamSupplier().get()) {
+      if (entryInputStream != null) {
+        // Null stream means a directory
+        ByteStreams.copy(entryInputStream, jar);
+      }
+    }
+    jar.closeEntry();
+  }
+
+  private void writeCopied(CustomZipEntry entry, DeflatedContents deflatedContents)
+      throws IOException {
+    entry.setCompressedSize(deflatedContents.getCompressedSize());
+    HashCode contentsHash = null;
+    if (shouldHashEntries && !entry.isDirectory()) {
+      // The hash goes in the jar before the contents, so they're read once to check and hash them.
+      try (InputStream compressed = deflatedContents.openStream()) {
+        contentsHash = checkDeflated(entry, compressed, true);
+      }
+    }
+
+    jar.putNextDeflatedEntry(entry, contentsHash);
+    try (InputStream compressed = deflatedContents.openStream()) {
+      if (contentsHash != null) {
+        ByteStreams.copy(compressed, jar);
+      } else {
+        checkDeflated(entry, new TeeInputStream(compressed, jar), false);
+      }
+    }
+    jar.closeEntry();
+  }
+
+  /** @return the prepared entry, or null if it's too large to be prepared in memory */
+  @Nullable
+  private PreparedEntry prepare(JarEntrySupplier supplier) throws IOException {
+    CustomZipEntry entry = supplier.getEntry();
+    Optional<DeflatedContents> deflatedContents = supplier.getDeflatedContents();
+    if (deflatedContents.isPresent()) {
+      return prepareCopy(entry, deflatedContents.get());
+    }
+
+    byte[] contents;
+    try (InputStream entryInputStream = supplier.getInputStreamSupplier().get()) {
+      if (entryInputStream == null) {
+        return new PreparedEntry(null, false, null);
+      }
+      contents = readAtMost(entryInputStream, MAX_PREPARED_SIZE);
+    }
+    if (contents == null) {
+      return null;
+    }
+    if (entry.getMethod() == ZipEntry.STORED) {
+      // Stored entries already have their CRC and size set, and the jar hashes them as written.
+      return new PreparedEntry(contents, false, null);
+    }
+    return prepareDeflated(entry, contents);
+  }
+
+  private PreparedEntry prepareCopy(CustomZipEntry entry, DeflatedContents deflatedContents)
+      throws IOException {
+    byte[] compressed;
+    try (InputStream input = deflatedContents.openStream()) {
+      compressed = ByteStreams.toByteArray(input);
+    }
+    entry.setCompressedSize(compressed.length);
+    HashCode contentsHash =
+        checkDeflated(
+            entry,
+            new ByteArrayInputStream(compressed),
+            shouldHashEntries && !entry.isDirectory());
+    return new PreparedEntry(compressed, true, contentsHash);
+  }
+
+  private PreparedEntry prepareDeflated(CustomZipEntry entry, byte[] contents) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length / 2 + 64);
+    byte[] buffer = new byte[BUFFER_SIZE];
+    Deflater deflater = new Deflater(entry.getCompressionLevel(), true);
+    try {
+      // The same sequence of calls as EntryAccounting makes, for the same deflated bytes.
+      deflater.setInput(contents);
+      while (!deflater.needsInput()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length));
+      }
+      deflater.finish();
+      while (!deflater.finished()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length));
+      }
+    } finally {
+      deflater.end();
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(contents);
+    entry.setCrc(crc.getValue());
+    entry.setSize(contents.length);
+    entry.setCompressedSize(compressed.size());
+
+    HashCode contentsHash = null;
+    if (shouldHashEntries && !entry.isDirectory()) {
+      contentsHash = CustomJarOutputStream.ENTRY_HASH_FUNCTION.hashBytes(contents);
+    }
+    return new PreparedEntry(compressed.toByteArray(), true, contentsHash);
+  }
+
+  /**
+   * Inflates copied contents to check them against the size and CRC of their entry, since they are
+   * not written through a deflater that would compute them.
+   *
+   * @return the hash of the contents if {@code shouldHash}, or null
+   */
+  @Nullable
+  private static HashCode checkDeflated(ZipEntry entry, InputStream compressed, boolean shouldHash)
+      throws IOException {
+    Hasher hasher = shouldHash ? CustomJarOutputStream.ENTRY_HASH_FUNCTION.newHasher() : null;
+    CRC32 crc = new CRC32();
+    byte[] input = new byte[BUFFER_SIZE];
+    byte[] buffer = new byte[BUFFER_SIZE];
+    Inflater inflater = new Inflater(true);
+    try {
+      boolean paddedInput = false;
+      while (!inflater.finished()) {
+        int inflated = inflater.inflate(buffer);
+        crc.update(buffer, 0, inflated);
+        if (hasher != null) {
+          hasher.putBytes(buffer, 0, inflated);
+        }
+        if (inflated == 0 && inflater.needsInput()) {
+          int read = compressed.read(input);
+          if (read > 0) {
+            inflater.setInput(input, 0, read);
+          } else if (!paddedInput) {
+            // Without the zlib header, the inflater may need an extra byte to finish.
+            inflater.setInput(new byte[1]);
+            paddedInput = true;
+          } else {
+            throw new ZipException("Truncated deflated contents of " + entry.getName());
+          }
+        }
+      }
+      // Copy whatever is left, so that all the contents are written when teeing.
+      ByteStreams.exhaust(compressed);
+      if (inflater.getBytesWritten() != entry.getSize()) {
+        throw new ZipException("Unexpected size of the contents of " + entry.getName());
+      }
+      if (crc.getValue() != entry.getCrc()) {
+        throw new ZipException("Unexpected CRC of the contents of " + entry.getName());
+      }
+    } catch (DataFormatException e) {
+      throw new ZipException("Invalid deflated contents of " + entry.getName());
+    } finally {
+      inflater.end();
+    }
+    return hasher == null ? null : hasher.hash();
+  }
+
+  /** @return all the bytes of the stream, or null if there are more than {@code maxSize} */
+  @Nullable
+  private static byte[] readAtMost(InputStream input, int maxSize) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long read = ByteStreams.copy(ByteStreams.limit(input, maxSize + 1L), output);
+    return read > maxSize ? null : output.toByteArray();
+  }
+
+  @Nullable
+  private static PreparedEntry getPreparedEntry(ForkJoinTask<PreparedEntry> task)
+      throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while preparing jar entries");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      // The pool wraps the checked exceptions of tasks in RuntimeExceptions.
+      for (Throwable wrapped : Throwables.getCausalChain(cause)) {
+        Throwables.throwIfInstanceOf(wrapped, IOException.class);
+      }
+      Throwables.throwIfUnchecked(cause);
+      throw new IOException(cause);
+    }
+  }
+
+  private static class PendingEntry {
+    private final CustomZipEntry entry;
+    @Nullable private final JarEntrySupplier supplier;
+    @Nullable private final ForkJoinTask<PreparedEntry> task;
+
+    private PendingEntry(
+        CustomZipEntry entry,
+        @Nullable JarEntrySupplier supplier,
+        @Nullable ForkJoinTask<PreparedEntry> task) {
+      this.entry = entry;
+      this.supplier = supplier;
+      this.task = task;
+    }
+  }
+
+  private static class PreparedEntry {
+    /** The contents to write, or null for an entry without contents. */
+    @Nullable private final byte[] contents;
+
+    private final boolean isDeflated;
+    @Nullable private final HashCode contentsHash;
+
+    private PreparedEntry(
+        @Nullable byte[] contents, boolean isDeflated, @Nullable HashCode contentsHash) {
+      this.contents = contents;
+      this.isDeflated = isDeflated;
+      this.contentsHash = contentsHash;
+    }
+  }
+}
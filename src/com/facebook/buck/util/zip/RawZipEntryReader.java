@@ -0,0 +1,242 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the deflated contents of the entries of a zip file as they are stored in the file, so that
+ * they can be copied to another zip file without inflating and deflating them again.
+ *
+ * <p>Only entries that can be copied this way are indexed: deflated, unencrypted entries with a
+ * unique name. Zip files that use ZIP64 extensions have no such entries. All reads are positional,
+ * so the contents of different entries can be read from several threads at once.
+ */
+class RawZipEntryReader implements Closeable {
+
+  private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+  private static final int MAX_COMMENT_SIZE = 0xffff;
+  private static final int CENTRAL_HEADER_SIZE = 46;
+  private static final int LOCAL_HEADER_SIZE = 30;
+  private static final int ENCRYPTED_FLAG = 1;
+
+  /** An entry whose deflated contents can be copied. */
+  static class Entry {
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final long localHeaderOffset;
+
+    private Entry(long crc, long size, long compressedSize, long localHeaderOffset) {
+      this.crc = crc;
+      this.size = size;
+      this.compressedSize = compressedSize;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    long getCompressedSize() {
+      return compressedSize;
+    }
+
+    /** @return whether this describes the same contents as the given entry of the zip file */
+    boolean matches(ZipEntry entry) {
+      return entry.getMethod() == ZipEntry.DEFLATED
+          && entry.getCrc() == crc
+          && entry.getSize() == size;
+    }
+  }
+
+  private final FileChannel channel;
+  private final ImmutableMap<String, Entry> entries;
+
+  private RawZipEntryReader(FileChannel channel, ImmutableMap<String, Entry> entries) {
+    this.channel = channel;
+    this.entries = entries;
+  }
+
+  static RawZipEntryReader open(Path zipFile) throws IOException {
+    FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.READ);
+    try {
+      return new RawZipEntryReader(channel, readEntries(channel));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Nullable
+  Entry getEntry(String name) {
+    return entries.get(name);
+  }
+
+  /** @return a stream of the deflated contents of the entry, exactly as stored in the zip file */
+  InputStream openDeflatedContents(Entry entry) throws IOException {
+    ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+    if (header.getInt(0) != ZipEntry.LOCSIG) {
+      throw new ZipException("Invalid local header at offset " + entry.localHeaderOffset);
+    }
+    int nameLength = Short.toUnsignedInt(header.getShort(26));
+    int extraLength = Short.toUnsignedInt(header.getShort(28));
+    long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    return new ContentsInputStream(dataOffset, entry.compressedSize);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static ImmutableMap<String, Entry> readEntries(FileChannel channel) throws IOException {
+    long fileSize = channel.size();
+    int tailSize =
+        (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + (long) MAX_COMMENT_SIZE);
+    ByteBuffer tail = read(channel, fileSize - tailSize, tailSize);
+    int end = -1;
+    for (int offset = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; offset >= 0; offset--) {
+      if (tail.getInt(offset) == ZipEntry.ENDSIG) {
+        end = offset;
+        break;
+      }
+    }
+    if (end < 0) {
+      throw new ZipException("End of central directory not found");
+    }
+
+    int entryCount = Short.toUnsignedInt(tail.getShort(end + 10));
+    long centralDirectorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+    long centralDirectoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+    if (entryCount == 0xffff
+        || centralDirectoryOffset == 0xffffffffL
+        || centralDirectorySize > Integer.MAX_VALUE) {
+      // ZIP64 zip files are simply copied the slow way.
+      return ImmutableMap.of();
+    }
+
+    ByteBuffer centralDirectory =
+        read(channel, centralDirectoryOffset, (int) centralDirectorySize);
+    Map<String, Entry> entries = new HashMap<>();
+    Set<String> duplicates = new HashSet<>();
+    int offset = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (offset + CENTRAL_HEADER_SIZE > centralDirectory.limit()
+          || centralDirectory.getInt(offset) != ZipEntry.CENSIG) {
+        throw new ZipException("Invalid central directory header");
+      }
+      int flags = Short.toUnsignedInt(centralDirectory.getShort(offset + 8));
+      int method = Short.toUnsignedInt(centralDirectory.getShort(offset + 10));
+      long crc = Integer.toUnsignedLong(centralDirectory.getInt(offset + 16));
+      long compressedSize = Integer.toUnsignedLong(centralDirectory.getInt(offset + 20));
+      long size = Integer.toUnsignedLong(centralDirectory.getInt(offset + 24));
+      int nameLength = Short.toUnsignedInt(centralDirectory.getShort(offset + 28));
+      int extraLength = Short.toUnsignedInt(centralDirectory.getShort(offset + 30));
+      int commentLength = Short.toUnsignedInt(centralDirectory.getShort(offset + 32));
+      long localHeaderOffset = Integer.toUnsignedLong(centralDirectory.getInt(offset + 42));
+      if (offset + CENTRAL_HEADER_SIZE + nameLength > centralDirectory.limit()) {
+        throw new ZipException("Invalid central directory header");
+      }
+      byte[] nameBytes = new byte[nameLength];
+      centralDirectory.position(offset + CENTRAL_HEADER_SIZE);
+      centralDirectory.get(nameBytes);
+      String name = new String(nameBytes, StandardCharsets.UTF_8);
+      offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+
+      if (!duplicates.add(name)) {
+        // Which of the entries a reader sees is up to the reader, so copy neither of them.
+        entries.remove(name);
+        continue;
+      }
+      if (method == ZipEntry.DEFLATED
+          && (flags & ENCRYPTED_FLAG) == 0
+          && compressedSize < Integer.MAX_VALUE
+          && localHeaderOffset < centralDirectoryOffset) {
+        entries.put(name, new Entry(crc, size, compressedSize, localHeaderOffset));
+      }
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  /** Reads a range of the zip file with positional reads, so several can be read at once. */
+  private class ContentsInputStream extends InputStream {
+    private long position;
+    private long remaining;
+
+    private ContentsInputStream(long position, long length) {
+      this.position = position;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : Byte.toUnsignedInt(b[0]);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining == 0) {
+        return -1;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, (int) Math.min(len, remaining));
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+      position += read;
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    return read(channel, position, length);
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
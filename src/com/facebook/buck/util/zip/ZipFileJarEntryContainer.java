@@ -30,6 +30,7 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
   private final String owner;
   private final Path jarFilePath;
   @Nullable private JarFile jar;
+  @Nullable private RawZipEntryReader rawReader;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -44,16 +45,48 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
 
   @Override
   public Stream<JarEntrySupplier> stream() throws IOException {
-    return getJarFile().stream()
-        .map(
-            entry ->
-                new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+    RawZipEntryReader reader = getRawReader();
+    return getJarFile().stream().map(entry -> makeEntrySupplier(reader, entry));
   }
 
   @Override
   public void close() throws IOException {
-    getJarFile().close();
+    try {
+      getJarFile().close();
+    } finally {
+      if (rawReader != null) {
+        rawReader.close();
+      }
+    }
+  }
+
+  private JarEntrySupplier makeEntrySupplier(@Nullable RawZipEntryReader reader, ZipEntry entry) {
+    RawZipEntryReader.Entry rawEntry = reader == null ? null : reader.getEntry(entry.getName());
+    if (rawEntry == null || !rawEntry.matches(entry)) {
+      return new JarEntrySupplier(
+          makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry));
+    }
+    return new JarEntrySupplier(
+        makeCustomEntry(entry),
+        owner,
+        () -> getJarFile().getInputStream(entry),
+        new JarEntrySupplier.DeflatedContents(
+            rawEntry.getCompressedSize(), () -> reader.openDeflatedContents(rawEntry)));
+  }
+
+  /** @return a reader of the deflated entries, or null if the file can't be read that way */
+  @Nullable
+  private RawZipEntryReader getRawReader() throws IOException {
+    if (rawReader == null) {
+      getJarFile();
+      try {
+        rawReader = RawZipEntryReader.open(jarFilePath);
+      } catch (IOException e) {
+        // JarFile could read it, so just copy its entries the slow way.
+        return null;
+      }
+    }
+    return rawReader;
   }
 
   private JarFile getJarFile() throws IOException {
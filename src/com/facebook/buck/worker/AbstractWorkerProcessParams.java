@@ -46,6 +46,20 @@ interface AbstractWorkerProcessParams {
   /** Maximum number of tools that pool can have. */
   int getMaxWorkers();
 
+  /**
+   * Maximum number of jobs that each tool may run at once. If this is more than one, the tool is
+   * asked to use {@link WorkerProcessProtocolOne}.
+   */
+  int getMaxJobsPerWorker();
+
+  /** How long a tool may stay idle before it is stopped. Idle tools are kept if this is absent. */
+  Optional<Long> getIdleTimeoutMillis();
+
+  /**
+   * Resident memory above which the pool stops starting more tools, as long as it has one running.
+   */
+  Optional<Long> getMaxResidentMemoryBytes();
+
   /**
    * Identifies the instance of the persisted worker process pool. Defines when worker process pool
    * should be invalidated.
@@ -21,6 +21,8 @@ import com.facebook.buck.core.util.log.Logger;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.ProcessHelper;
+import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.string.MoreStrings;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
@@ -32,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 public class WorkerProcess implements Closeable {
@@ -43,10 +46,11 @@ public class WorkerProcess implements Closeable {
   private final ProjectFilesystem filesystem;
   private final Path tmpPath;
   private final Path stdErr;
+  private final int maxJobs;
   private final AtomicInteger currentMessageID = new AtomicInteger();
   private boolean handshakePerformed = false;
-  @Nullable private WorkerProcessProtocol.CommandSender protocol;
-  @Nullable private ProcessExecutor.LaunchedProcess launchedProcess;
+  @Nullable private volatile WorkerProcessProtocol.CommandSender protocol;
+  @Nullable private volatile ProcessExecutor.LaunchedProcess launchedProcess;
 
   /**
    * Worker process is a process that stays alive and receives commands which describe jobs. Worker
@@ -67,7 +71,23 @@ public class WorkerProcess implements Closeable {
       ProjectFilesystem filesystem,
       Path stdErr,
       Path tmpPath) {
+    this(executor, processParams, filesystem, stdErr, tmpPath, 1);
+  }
+
+  /**
+   * @param maxJobs Maximum number of jobs to run at once in the process. If this is more than one,
+   *     the process is asked to use {@link WorkerProcessProtocolOne}, and may accept fewer jobs.
+   */
+  public WorkerProcess(
+      ProcessExecutor executor,
+      ProcessExecutorParams processParams,
+      ProjectFilesystem filesystem,
+      Path stdErr,
+      Path tmpPath,
+      int maxJobs) {
+    Preconditions.checkArgument(maxJobs > 0, "A worker process must run at least one job.");
     this.executor = executor;
+    this.maxJobs = maxJobs;
     this.stdErr = stdErr;
     this.processParams =
         processParams.withRedirectError(ProcessBuilder.Redirect.to(stdErr.toFile()));
@@ -79,6 +99,34 @@ public class WorkerProcess implements Closeable {
     return launchedProcess != null && launchedProcess.isAlive();
   }
 
+  /**
+   * Returns how many jobs may be submitted to the process at once, which is only known after the
+   * handshake.
+   */
+  public int getMaxConcurrentJobs() {
+    WorkerProcessProtocol.CommandSender protocol = this.protocol;
+    return protocol == null ? 1 : protocol.getMaxConcurrentJobs();
+  }
+
+  /**
+   * Returns the resources used by the process and its descendants, if the process is running and
+   * they can be measured on this platform.
+   */
+  public Optional<ProcessResourceConsumption> getResourceConsumption() {
+    ProcessExecutor.LaunchedProcess launchedProcess = this.launchedProcess;
+    if (!(launchedProcess instanceof ProcessExecutor.LaunchedProcessImpl)
+        || !launchedProcess.isAlive()) {
+      return Optional.empty();
+    }
+    ProcessHelper processHelper = ProcessHelper.getInstance();
+    Process process = ((ProcessExecutor.LaunchedProcessImpl) launchedProcess).process;
+    Long pid = processHelper.getPid(process);
+    if (pid == null) {
+      return Optional.empty();
+    }
+    return Optional.ofNullable(processHelper.getTotalResourceConsumption(pid));
+  }
+
   public synchronized void ensureLaunchAndHandshake() throws IOException {
     if (handshakePerformed) {
       return;
@@ -86,25 +134,43 @@ public class WorkerProcess implements Closeable {
     LOG.debug(
         "Starting up process %d using command: \'%s\'",
         this.hashCode(), Joiner.on(' ').join(processParams.getCommand()));
-    launchedProcess = executor.launchProcess(processParams);
-    protocol =
-        new WorkerProcessProtocolZero.CommandSender(
-            launchedProcess.getOutputStream(),
-            launchedProcess.getInputStream(),
-            stdErr,
-            () -> {
-              if (launchedProcess != null) {
-                executor.destroyLaunchedProcess(launchedProcess);
-              }
-            },
-            () -> launchedProcess != null && launchedProcess.isAlive());
+    ProcessExecutor.LaunchedProcess launchedProcess = executor.launchProcess(processParams);
+    this.launchedProcess = launchedProcess;
+    Runnable onClose = () -> executor.destroyLaunchedProcess(launchedProcess);
+    Supplier<Boolean> isAlive = launchedProcess::isAlive;
+    WorkerProcessProtocol.CommandSender protocol;
+    if (maxJobs > 1) {
+      protocol =
+          new WorkerProcessProtocolOne.CommandSender(
+              launchedProcess.getOutputStream(),
+              launchedProcess.getInputStream(),
+              stdErr,
+              onClose,
+              isAlive,
+              maxJobs);
+    } else {
+      protocol =
+          new WorkerProcessProtocolZero.CommandSender(
+              launchedProcess.getOutputStream(),
+              launchedProcess.getInputStream(),
+              stdErr,
+              onClose,
+              isAlive);
+    }
+
+    this.protocol = protocol;
 
     LOG.debug("Handshaking with process %d", this.hashCode());
     protocol.handshake(currentMessageID.getAndIncrement());
     handshakePerformed = true;
   }
 
-  public synchronized WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+  /**
+   * Submits a job and blocks until its result is received. Several threads may submit jobs at once
+   * if {@link #getMaxConcurrentJobs()} allows it.
+   */
+  public WorkerJobResult submitAndWaitForJob(String jobArgs) throws IOException {
+    WorkerProcessProtocol.CommandSender protocol = this.protocol;
     Preconditions.checkState(
         protocol != null,
         "Tried to submit a job to the worker process before the handshake was performed.");
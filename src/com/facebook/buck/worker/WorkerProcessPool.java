@@ -16,20 +16,33 @@
 
 package com.facebook.buck.worker;
 
+import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.util.log.Logger;
+import com.facebook.buck.counters.CounterRegistry;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.counters.SamplingCounter;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.concurrent.LinkedBlockingStack;
 import com.facebook.buck.util.function.ThrowingSupplier;
+import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import javax.annotation.Nullable;
@@ -40,29 +53,139 @@ import javax.annotation.concurrent.ThreadSafe;
  *
  * <p>This pool supports acquisition and release of worker processes on different threads. Workers
  * are acquired with {@link #borrowWorkerProcess()}, which returns
+ *
+ * <p>A worker process that accepts several jobs at once (see {@link
+ * WorkerProcess#getMaxConcurrentJobs()}) is lent to as many borrowers at once, so that they share
+ * its warmed up state instead of starting more processes.
+ *
+ * <p>Worker processes are only started when all the running ones are busy, up to the capacity of
+ * the pool. The pool can also stop worker processes that have been idle for a while, and stop
+ * starting more of them once the running ones use a given amount of resident memory.
  */
 @ThreadSafe
 public class WorkerProcessPool implements Closeable {
   private static final Logger LOG = Logger.get(WorkerProcessPool.class);
 
+  private static final String COUNTER_CATEGORY = "worker_process_pool";
+  private static final long MAX_MAINTENANCE_PERIOD_MILLIS = 5000;
+
+  /** Stops idle workers and samples the pools, for all the pools of the daemon. */
+  private static final ScheduledExecutorService MAINTENANCE_EXECUTOR =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("worker-process-pool-maintenance-%d")
+              .setDaemon(true)
+              .build());
+
   private final int capacity;
-  private final BlockingQueue<WorkerLifecycle> availableWorkers;
+  private final LinkedBlockingStack<WorkerLifecycle> availableWorkers;
   private final WorkerLifecycle[] workerLifecycles;
   private final HashCode poolHash;
+  private final Optional<Long> idleTimeoutMillis;
+  private final Optional<Long> maxResidentMemoryBytes;
+  private final Clock clock;
+
+  /**
+   * Workers that have not been started because the running ones use too much memory. They are
+   * made available again whenever a worker is returned or stopped.
+   */
+  private final List<WorkerLifecycle> workersOverMemoryLimit = new ArrayList<>();
+
+  @Nullable private final ScheduledFuture<?> maintenance;
+
+  private final IntegerCounter workersStarted;
+  private final IntegerCounter workersStoppedWhenIdle;
+  private final IntegerCounter startsDelayedByMemoryLimit;
+  private final SamplingCounter runningWorkers;
+  private final SamplingCounter residentMemoryBytes;
+  private final SamplingCounter borrowWaitMillis;
+  @Nullable private BuildId countersRegisteredForBuild;
 
   public WorkerProcessPool(
       int maxWorkers,
       HashCode poolHash,
       ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    this(maxWorkers, poolHash, startWorkerProcess, Optional.empty(), Optional.empty());
+  }
+
+  /**
+   * @param idleTimeoutMillis how long a worker process may stay idle before it is stopped
+   * @param maxResidentMemoryBytes resident memory of the running worker processes above which no
+   *     more are started
+   */
+  public WorkerProcessPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
+      Optional<Long> idleTimeoutMillis,
+      Optional<Long> maxResidentMemoryBytes) {
+    this(
+        maxWorkers,
+        poolHash,
+        startWorkerProcess,
+        idleTimeoutMillis,
+        maxResidentMemoryBytes,
+        new DefaultClock(),
+        Optional.of(MAINTENANCE_EXECUTOR));
+  }
+
+  @VisibleForTesting
+  WorkerProcessPool(
+      int maxWorkers,
+      HashCode poolHash,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
+      Optional<Long> idleTimeoutMillis,
+      Optional<Long> maxResidentMemoryBytes,
+      Clock clock,
+      Optional<ScheduledExecutorService> maintenanceExecutor) {
     capacity = maxWorkers;
     availableWorkers = new LinkedBlockingStack<>();
     workerLifecycles = new WorkerLifecycle[maxWorkers];
     this.poolHash = poolHash;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.maxResidentMemoryBytes = maxResidentMemoryBytes;
+    this.clock = clock;
+
+    ImmutableMap<String, String> tags = ImmutableMap.of("pool_hash", poolHash.toString());
+    workersStarted = new IntegerCounter(COUNTER_CATEGORY, "workers_started", tags);
+    workersStoppedWhenIdle =
+        new IntegerCounter(COUNTER_CATEGORY, "workers_stopped_when_idle", tags);
+    startsDelayedByMemoryLimit =
+        new IntegerCounter(COUNTER_CATEGORY, "starts_delayed_by_memory_limit", tags);
+    runningWorkers = new SamplingCounter(COUNTER_CATEGORY, "running_workers", tags);
+    residentMemoryBytes = new SamplingCounter(COUNTER_CATEGORY, "resident_memory_bytes", tags);
+    borrowWaitMillis = new SamplingCounter(COUNTER_CATEGORY, "borrow_wait_millis", tags);
 
+    ThrowingSupplier<WorkerProcess, IOException> countingStartWorkerProcess =
+        () -> {
+          WorkerProcess workerProcess = startWorkerProcess.get();
+          workersStarted.inc();
+          return workerProcess;
+        };
     Arrays.setAll(
         workerLifecycles,
-        ignored -> new WorkerLifecycle(startWorkerProcess, availableWorkers::add));
-    Collections.addAll(availableWorkers, workerLifecycles);
+        ignored ->
+            new WorkerLifecycle(
+                countingStartWorkerProcess,
+                availableWorkers::add,
+                this::returnWorkersOverMemoryLimit,
+                clock));
+    for (WorkerLifecycle lifecycle : workerLifecycles) {
+      availableWorkers.addLast(lifecycle);
+    }
+
+    long maintenancePeriodMillis =
+        Math.min(MAX_MAINTENANCE_PERIOD_MILLIS, idleTimeoutMillis.orElse(Long.MAX_VALUE));
+    maintenance =
+        maintenanceExecutor
+            .map(
+                executor ->
+                    executor.scheduleWithFixedDelay(
+                        this::runMaintenance,
+                        maintenancePeriodMillis,
+                        maintenancePeriodMillis,
+                        TimeUnit.MILLISECONDS))
+            .orElse(null);
   }
 
   /**
@@ -71,22 +194,149 @@ public class WorkerProcessPool implements Closeable {
    * BorrowedWorkerProcess#close()} after using them.
    */
   public BorrowedWorkerProcess borrowWorkerProcess() throws InterruptedException {
-    return new BorrowedWorkerProcess(availableWorkers.take());
+    long startMillis = clock.currentTimeMillis();
+    WorkerLifecycle lifecycle = availableWorkers.take();
+    while (deferIfOverMemoryLimit(lifecycle)) {
+      lifecycle = availableWorkers.take();
+    }
+    borrowWaitMillis.addSample(clock.currentTimeMillis() - startMillis);
+    return new BorrowedWorkerProcess(lifecycle.borrow());
   }
 
   @VisibleForTesting
   Optional<BorrowedWorkerProcess> borrowWorkerProcess(int timeout, TimeUnit unit)
       throws InterruptedException {
-    return Optional.ofNullable(availableWorkers.poll(timeout, unit))
-        .map(BorrowedWorkerProcess::new);
+    long deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+    WorkerLifecycle lifecycle;
+    do {
+      lifecycle = availableWorkers.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+      if (lifecycle == null) {
+        return Optional.empty();
+      }
+    } while (deferIfOverMemoryLimit(lifecycle));
+    return Optional.of(new BorrowedWorkerProcess(lifecycle.borrow()));
+  }
+
+  /**
+   * Sets a worker that would have to be started aside if the running workers already use as much
+   * memory as the pool allows. Always lets the first worker start, so that jobs can make progress.
+   * Workers starting at the same time are not accounted for, so the limit may be exceeded by the
+   * memory of the workers that are starting.
+   *
+   * @return whether the worker was set aside
+   */
+  private boolean deferIfOverMemoryLimit(WorkerLifecycle lifecycle) {
+    if (!maxResidentMemoryBytes.isPresent() || lifecycle.isStarted()) {
+      return false;
+    }
+    boolean anyStarted = false;
+    long totalResidentMemoryBytes = 0;
+    for (WorkerLifecycle other : workerLifecycles) {
+      if (other.isStarted()) {
+        anyStarted = true;
+        totalResidentMemoryBytes += other.getResidentMemoryBytes();
+      }
+    }
+    if (!anyStarted || totalResidentMemoryBytes < maxResidentMemoryBytes.get()) {
+      return false;
+    }
+    LOG.debug(
+        "Not starting another worker, running workers use %d bytes of resident memory.",
+        totalResidentMemoryBytes);
+    synchronized (workersOverMemoryLimit) {
+      workersOverMemoryLimit.add(lifecycle);
+    }
+    startsDelayedByMemoryLimit.inc();
+    return true;
+  }
+
+  private void returnWorkersOverMemoryLimit() {
+    synchronized (workersOverMemoryLimit) {
+      // Behind the running workers, so that they are preferred.
+      workersOverMemoryLimit.forEach(availableWorkers::addLast);
+      workersOverMemoryLimit.clear();
+    }
+  }
+
+  /** Stops the workers that have been idle for longer than the timeout, and samples the pool. */
+  @VisibleForTesting
+  synchronized void runMaintenance() {
+    try {
+      if (idleTimeoutMillis.isPresent()) {
+        stopWorkersIdleSince(clock.currentTimeMillis() - idleTimeoutMillis.get());
+      }
+
+      int started = 0;
+      long totalResidentMemoryBytes = 0;
+      for (WorkerLifecycle lifecycle : workerLifecycles) {
+        if (lifecycle.isStarted()) {
+          started++;
+          totalResidentMemoryBytes += lifecycle.getResidentMemoryBytes();
+        }
+      }
+      runningWorkers.addSample(started);
+      residentMemoryBytes.addSample(totalResidentMemoryBytes);
+    } catch (RuntimeException e) {
+      // An exception would cancel all the future runs.
+      LOG.warn(e, "Failed to maintain worker process pool.");
+    }
+  }
+
+  private void stopWorkersIdleSince(long cutoffMillis) {
+    boolean anyStopped = false;
+    for (WorkerLifecycle lifecycle : workerLifecycles) {
+      // Taking the worker out of the available workers makes sure nobody borrows it meanwhile.
+      if (lifecycle.isIdleSince(cutoffMillis) && availableWorkers.remove(lifecycle)) {
+        if (lifecycle.stopIfIdleSince(cutoffMillis)) {
+          anyStopped = true;
+          workersStoppedWhenIdle.inc();
+          // Stopped workers go behind the running ones, which are preferred.
+          availableWorkers.addLast(lifecycle);
+        } else {
+          availableWorkers.add(lifecycle);
+        }
+      }
+    }
+    if (anyStopped) {
+      returnWorkersOverMemoryLimit();
+    }
+  }
+
+  /**
+   * Registers the counters of this pool with the counter registry of the current build. Pools
+   * outlive builds, so this is done again for every build.
+   */
+  public synchronized void registerCounters(BuckEventBus eventBus) {
+    BuildId buildId = eventBus.getBuildId();
+    if (buildId.equals(countersRegisteredForBuild)) {
+      return;
+    }
+    countersRegisteredForBuild = buildId;
+    eventBus.post(
+        new CounterRegistry.AsyncCounterRegistrationEvent(
+            ImmutableList.of(
+                workersStarted,
+                workersStoppedWhenIdle,
+                startsDelayedByMemoryLimit,
+                runningWorkers,
+                residentMemoryBytes,
+                borrowWaitMillis)));
   }
 
   @Override
   public synchronized void close() {
     Throwable caughtWhileClosing = null;
 
+    if (maintenance != null) {
+      maintenance.cancel(false);
+    }
+
     // remove all available workers
     int numAvailableWorkers = availableWorkers.drainTo(new ArrayList<>(capacity));
+    synchronized (workersOverMemoryLimit) {
+      numAvailableWorkers += workersOverMemoryLimit.size();
+      workersOverMemoryLimit.clear();
+    }
     for (WorkerLifecycle lifecycle : this.workerLifecycles) {
       try {
         lifecycle.close();
@@ -115,10 +365,12 @@ public class WorkerProcessPool implements Closeable {
    * Represents the lifecycle of one specific worker in a {@link WorkerProcessPool}.
    *
    * <p>Concurrency is controlled by the pool, which supports acquiring and releasing workers with
-   * {@link WorkerProcessPool#availableWorkers}.
+   * {@link WorkerProcessPool#availableWorkers}. A lifecycle is in the available workers at most
+   * once, for as long as its worker process can take more borrowers.
    *
    * <p>{@link #get()} and {@link #close()} are synchronized to allow closing as part of closing the
-   * pool with a consumer trying to acquire a worker in parallel.
+   * pool with a consumer trying to acquire a worker in parallel. The worker process can also be
+   * stopped while the lifecycle is idle, and is started again by the next {@link #get()}.
    */
   @ThreadSafe
   private static class WorkerLifecycle
@@ -126,14 +378,59 @@ public class WorkerProcessPool implements Closeable {
 
     private final ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess;
     private final Consumer<WorkerLifecycle> onWorkerProcessReturn;
+    private final Runnable onRelease;
+    private final Clock clock;
     private boolean isClosed = false;
-    @Nullable private WorkerProcess workerProcess;
+    private boolean isAvailable = true;
+    private int borrowCount = 0;
+    private long lastReleasedMillis;
+    // Volatile so that the pool can measure the process without waiting for it to start up.
+    @Nullable private volatile WorkerProcess workerProcess;
 
     private WorkerLifecycle(
         ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess,
-        Consumer<WorkerLifecycle> onWorkerProcessReturn) {
+        Consumer<WorkerLifecycle> onWorkerProcessReturn,
+        Runnable onRelease,
+        Clock clock) {
       this.startWorkerProcess = startWorkerProcess;
       this.onWorkerProcessReturn = onWorkerProcessReturn;
+      this.onRelease = onRelease;
+      this.clock = clock;
+    }
+
+    public boolean isStarted() {
+      return workerProcess != null;
+    }
+
+    /** Returns the resident memory of the worker process, or zero if it can't be measured. */
+    public long getResidentMemoryBytes() {
+      WorkerProcess workerProcess = this.workerProcess;
+      if (workerProcess == null) {
+        return 0;
+      }
+      return workerProcess
+          .getResourceConsumption()
+          .map(ProcessResourceConsumption::getMemResident)
+          .orElse(0L);
+    }
+
+    public synchronized boolean isIdleSince(long cutoffMillis) {
+      return !isClosed
+          && workerProcess != null
+          && borrowCount == 0
+          && lastReleasedMillis <= cutoffMillis;
+    }
+
+    /** @return whether the worker process was stopped */
+    public synchronized boolean stopIfIdleSince(long cutoffMillis) {
+      if (!isIdleSince(cutoffMillis)) {
+        return false;
+      }
+      LOG.debug("Stopping worker process idle since %d.", lastReleasedMillis);
+      WorkerProcess workerProcess = Objects.requireNonNull(this.workerProcess);
+      this.workerProcess = null;
+      workerProcess.close();
+      return true;
     }
 
     /** Allows to retrieve the wrapped worker process, starting it up if necessary. */
@@ -154,13 +451,39 @@ public class WorkerProcessPool implements Closeable {
       // start a worker if necessary, this might throw IOException
       if (workerProcess == null) {
         workerProcess = startWorkerProcess.get();
+        // Now that the process has been started, it may take more borrowers.
+        makeAvailableIfNotFull();
       }
 
       return workerProcess;
     }
 
-    public void makeAvailable() {
-      onWorkerProcessReturn.accept(this);
+    /** Called when this lifecycle has been taken from the available workers. */
+    public synchronized WorkerLifecycle borrow() {
+      isAvailable = false;
+      borrowCount++;
+      makeAvailableIfNotFull();
+      return this;
+    }
+
+    public void release() {
+      synchronized (this) {
+        borrowCount--;
+        if (borrowCount == 0) {
+          lastReleasedMillis = clock.currentTimeMillis();
+        }
+        makeAvailableIfNotFull();
+      }
+      onRelease.run();
+    }
+
+    private synchronized void makeAvailableIfNotFull() {
+      WorkerProcess workerProcess = this.workerProcess;
+      int maxBorrowers = workerProcess == null ? 1 : workerProcess.getMaxConcurrentJobs();
+      if (!isAvailable && borrowCount < maxBorrowers) {
+        isAvailable = true;
+        onWorkerProcessReturn.accept(this);
+      }
     }
 
     @Override
@@ -198,7 +521,7 @@ public class WorkerProcessPool implements Closeable {
       if (lifecycle != null) {
         WorkerLifecycle lifecycle = this.lifecycle;
         this.lifecycle = null;
-        lifecycle.makeAvailable();
+        lifecycle.release();
       }
     }
 
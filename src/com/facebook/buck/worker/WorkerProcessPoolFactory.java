@@ -84,6 +84,7 @@ public class WorkerProcessPoolFactory {
     if (pool == null) {
       pool = createWorkerProcessPool(context, paramsToUse, processPoolMap, key, workerHash);
     }
+    pool.registerCounters(context.getBuckEventBus());
 
     int poolCapacity = pool.getCapacity();
     if (poolCapacity != paramsToUse.getMaxWorkers()) {
@@ -121,10 +122,14 @@ public class WorkerProcessPoolFactory {
             () -> {
               Path tmpDir = workerTmpDir.resolve(Integer.toString(workerNumber.getAndIncrement()));
               filesystem.mkdirs(tmpDir);
-              WorkerProcess process = createWorkerProcess(processParams, context, tmpDir);
+              WorkerProcess process =
+                  createWorkerProcess(
+                      processParams, context, tmpDir, paramsToUse.getMaxJobsPerWorker());
               process.ensureLaunchAndHandshake();
               return process;
-            });
+            },
+            paramsToUse.getIdleTimeoutMillis(),
+            paramsToUse.getMaxResidentMemoryBytes());
     WorkerProcessPool previousPool = processPoolMap.putIfAbsent(key, newPool);
     // If putIfAbsent does not return null, then that means another thread beat this thread
     // into putting an WorkerProcessPool in the map for this key. If that's the case, then we
@@ -160,10 +165,10 @@ public class WorkerProcessPoolFactory {
 
   @VisibleForTesting
   public WorkerProcess createWorkerProcess(
-      ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+      ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir, int maxJobs)
       throws IOException {
     Path stdErr = Files.createTempFile("buck-worker-", "-stderr.log");
     return new WorkerProcess(
-        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir);
+        context.getProcessExecutor(), processParams, filesystem, stdErr, tmpDir, maxJobs);
   }
 }
@@ -27,6 +27,12 @@ public interface WorkerProcessProtocol {
 
     int receiveCommandResponse(int messageID) throws IOException;
 
+    /**
+     * Returns how many commands may be sent before their responses are received, as agreed upon in
+     * the handshake.
+     */
+    int getMaxConcurrentJobs();
+
     /** Instructs the CommandReceiver to shut itself down. */
     @Override
     void close() throws IOException;
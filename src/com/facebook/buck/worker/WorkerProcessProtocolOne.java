@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.worker.WorkerProcessProtocolZero.CommandResponse;
+import com.google.common.base.Preconditions;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Version 1 of the worker protocol, which lets a worker process run several jobs at once.
+ *
+ * <p>Messages are the same as in {@link WorkerProcessProtocolZero}, except that commands are sent
+ * without waiting for the responses of the previous ones, and that their responses may come back
+ * in any order. The handshake tells the worker how many jobs Buck may send at once, and the worker
+ * replies with how many it accepts:
+ *
+ * <pre>
+ *   [{id: 0, type: 'handshake', protocol_version: '1', capabilities: [], max_concurrent_jobs: 8}
+ *   [{id: 0, type: 'handshake', protocol_version: '1', capabilities: [], max_concurrent_jobs: 4}
+ * </pre>
+ *
+ * A worker that doesn't send "max_concurrent_jobs" gets one job at a time.
+ */
+public class WorkerProcessProtocolOne {
+
+  private static final String PROTOCOL_VERSION = "1";
+
+  public static class CommandSender extends WorkerProcessProtocolZero.CommandSender {
+    private final int requestedMaxConcurrentJobs;
+    private volatile int maxConcurrentJobs = 1;
+
+    private final Object responseLock = new Object();
+
+    /** Ids of the commands that have been sent, and whose responses have not been read yet. */
+    @GuardedBy("responseLock")
+    private final Set<Integer> pendingMessageIds = new HashSet<>();
+
+    /** Exit codes of the responses that were read by a thread waiting for another response. */
+    @GuardedBy("responseLock")
+    private final Map<Integer, Integer> exitCodesByMessageId = new HashMap<>();
+
+    @GuardedBy("responseLock")
+    private boolean isReadingResponse = false;
+
+    public CommandSender(
+        OutputStream processStdin,
+        InputStream processStdout,
+        Path stdErr,
+        Runnable onClose,
+        Supplier<Boolean> isAlive,
+        int requestedMaxConcurrentJobs) {
+      super(processStdin, processStdout, stdErr, onClose, isAlive);
+      Preconditions.checkArgument(requestedMaxConcurrentJobs > 0);
+      this.requestedMaxConcurrentJobs = requestedMaxConcurrentJobs;
+    }
+
+    @Override
+    public void handshake(int messageId) throws IOException {
+      WorkerProcessProtocolZero.sendHandshake(
+          getProcessStdinWriter(),
+          messageId,
+          PROTOCOL_VERSION,
+          OptionalInt.of(requestedMaxConcurrentJobs));
+      OptionalInt acceptedMaxConcurrentJobs =
+          WorkerProcessProtocolZero.receiveHandshake(
+              getProcessStdoutReader(), messageId, PROTOCOL_VERSION, getStdErr());
+      maxConcurrentJobs =
+          Math.max(1, Math.min(requestedMaxConcurrentJobs, acceptedMaxConcurrentJobs.orElse(1)));
+    }
+
+    @Override
+    public int getMaxConcurrentJobs() {
+      return maxConcurrentJobs;
+    }
+
+    @Override
+    public void send(int messageId, WorkerProcessCommand command) throws IOException {
+      synchronized (responseLock) {
+        pendingMessageIds.add(messageId);
+      }
+      // Commands sent from different threads must not be interleaved.
+      synchronized (this) {
+        super.send(messageId, command);
+      }
+    }
+
+    /**
+     * Blocks until the response to the given command is received. Only one thread reads from the
+     * worker at a time, and it hands the responses to other commands over to the threads waiting
+     * for them.
+     */
+    @Override
+    public int receiveCommandResponse(int messageID) throws IOException {
+      synchronized (responseLock) {
+        while (true) {
+          Integer exitCode = exitCodesByMessageId.remove(messageID);
+          if (exitCode != null) {
+            return exitCode;
+          }
+          if (!isReadingResponse) {
+            break;
+          }
+          try {
+            responseLock.wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                String.format("Interrupted while waiting for the response to job %d", messageID));
+          }
+        }
+        isReadingResponse = true;
+      }
+
+      try {
+        while (true) {
+          CommandResponse response =
+              WorkerProcessProtocolZero.readCommandResponse(getProcessStdoutReader(), getStdErr());
+          WorkerProcessProtocolZero.checkCommandResponseType(response);
+          synchronized (responseLock) {
+            if (!pendingMessageIds.remove(response.id)) {
+              throw new HumanReadableException(
+                  String.format(
+                      "Expected response's \"id\" value to be the id of a job that was sent, "
+                          + "got \"%d\" instead.",
+                      response.id));
+            }
+            if (response.id == messageID) {
+              return response.exitCode;
+            }
+            exitCodesByMessageId.put(response.id, response.exitCode);
+            responseLock.notifyAll();
+          }
+        }
+      } finally {
+        synchronized (responseLock) {
+          isReadingResponse = false;
+          responseLock.notifyAll();
+        }
+      }
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.OptionalInt;
 import java.util.function.Supplier;
 
 public class WorkerProcessProtocolZero {
@@ -68,10 +69,19 @@ public class WorkerProcessProtocolZero {
       return processStdinWriter;
     }
 
+    Path getStdErr() {
+      return stdErr;
+    }
+
     @Override
     public void handshake(int messageId) throws IOException {
-      sendHandshake(processStdinWriter, messageId);
-      receiveHandshake(processStdoutReader, messageId, stdErr);
+      sendHandshake(processStdinWriter, messageId, PROTOCOL_VERSION, OptionalInt.empty());
+      receiveHandshake(processStdoutReader, messageId, PROTOCOL_VERSION, stdErr);
+    }
+
+    @Override
+    public int getMaxConcurrentJobs() {
+      return 1;
     }
 
     /*
@@ -129,47 +139,16 @@ public class WorkerProcessProtocolZero {
     */
     @Override
     public int receiveCommandResponse(int messageID) throws IOException {
-      int id = -1;
-      int exitCode = -1;
-      String type = "";
+      CommandResponse response = readCommandResponse(processStdoutReader, stdErr);
 
-      try {
-        processStdoutReader.beginObject();
-        while (processStdoutReader.hasNext()) {
-          String property = processStdoutReader.nextName();
-          if (property.equals("id")) {
-            id = processStdoutReader.nextInt();
-          } else if (property.equals("type")) {
-            type = processStdoutReader.nextString();
-          } else if (property.equals("exit_code")) {
-            exitCode = processStdoutReader.nextInt();
-          } else {
-            processStdoutReader.skipValue();
-          }
-        }
-        processStdoutReader.endObject();
-      } catch (IOException e) {
-        throw new HumanReadableException(
-            e,
-            "Error receiving command response from external process.\n"
-                + "Stderr from external process:\n%s",
-            getStdErrorOutput(stdErr));
-      }
-
-      if (id != messageID) {
+      if (response.id != messageID) {
         throw new HumanReadableException(
             String.format(
                 "Expected response's \"id\" value to be " + "\"%d\", got \"%d\" instead.",
-                messageID, id));
-      }
-      if (!type.equals(TYPE_RESULT) && !type.equals(TYPE_ERROR)) {
-        throw new HumanReadableException(
-            String.format(
-                "Expected response's \"type\" "
-                    + "to be one of [\"%s\",\"%s\"], got \"%s\" instead.",
-                TYPE_RESULT, TYPE_ERROR, type));
+                messageID, response.id));
       }
-      return exitCode;
+      checkCommandResponseType(response);
+      return response.exitCode;
     }
 
     @Override
@@ -198,6 +177,19 @@ public class WorkerProcessProtocolZero {
     }
   }
 
+  /** A response to a command, as read from the worker process. */
+  static class CommandResponse {
+    final int id;
+    final String type;
+    final int exitCode;
+
+    private CommandResponse(int id, String type, int exitCode) {
+      this.id = id;
+      this.type = type;
+      this.exitCode = exitCode;
+    }
+  }
+
   private static final String TYPE_HANDSHAKE = "handshake";
   private static final String TYPE_COMMAND = "command";
   private static final String PROTOCOL_VERSION = "0";
@@ -213,14 +205,22 @@ public class WorkerProcessProtocolZero {
          protocol_version: '0',
          capabilities: []
        }
+
+   Later protocol versions may also send the maximum number of jobs that Buck would send at once:
+         max_concurrent_jobs: <maxConcurrentJobs>
   */
-  private static void sendHandshake(JsonWriter writer, int messageId) throws IOException {
+  static void sendHandshake(
+      JsonWriter writer, int messageId, String protocolVersion, OptionalInt maxConcurrentJobs)
+      throws IOException {
     writer.beginArray();
     writer.beginObject();
     writer.name("id").value(messageId);
     writer.name("type").value(TYPE_HANDSHAKE);
-    writer.name("protocol_version").value(PROTOCOL_VERSION);
+    writer.name("protocol_version").value(protocolVersion);
     writer.name("capabilities").beginArray().endArray();
+    if (maxConcurrentJobs.isPresent()) {
+      writer.name("max_concurrent_jobs").value(maxConcurrentJobs.getAsInt());
+    }
     writer.endObject();
     writer.flush();
   }
@@ -234,12 +234,16 @@ public class WorkerProcessProtocolZero {
          protocol_version: '0',
          capabilities: []
        }
+
+   Returns the "max_concurrent_jobs" of the response, which later protocol versions may send.
   */
-  private static void receiveHandshake(JsonReader reader, int messageId, Path stdErr)
+  static OptionalInt receiveHandshake(
+      JsonReader reader, int messageId, String expectedProtocolVersion, Path stdErr)
       throws IOException {
     int id = -1;
     String type = "";
     String protocolVersion = "";
+    OptionalInt maxConcurrentJobs = OptionalInt.empty();
 
     try {
       reader.beginArray();
@@ -260,6 +264,8 @@ public class WorkerProcessProtocolZero {
             throw new HumanReadableException(
                 "Expected handshake response's \"capabilities\" to " + "be an empty array.");
           }
+        } else if (property.equals("max_concurrent_jobs")) {
+          maxConcurrentJobs = OptionalInt.of(reader.nextInt());
         } else {
           reader.skipValue();
         }
@@ -285,12 +291,54 @@ public class WorkerProcessProtocolZero {
               "Expected handshake response's \"type\" " + "to be \"%s\", got \"%s\" instead.",
               TYPE_HANDSHAKE, type));
     }
-    if (!protocolVersion.equals(PROTOCOL_VERSION)) {
+    if (!protocolVersion.equals(expectedProtocolVersion)) {
       throw new HumanReadableException(
           String.format(
               "Expected handshake response's "
                   + "\"protocol_version\" to be \"%s\", got \"%s\" instead.",
-              PROTOCOL_VERSION, protocolVersion));
+              expectedProtocolVersion, protocolVersion));
+    }
+    return maxConcurrentJobs;
+  }
+
+  /** Reads the next command response, whichever command it is for. */
+  static CommandResponse readCommandResponse(JsonReader reader, Path stdErr) throws IOException {
+    int id = -1;
+    int exitCode = -1;
+    String type = "";
+
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String property = reader.nextName();
+        if (property.equals("id")) {
+          id = reader.nextInt();
+        } else if (property.equals("type")) {
+          type = reader.nextString();
+        } else if (property.equals("exit_code")) {
+          exitCode = reader.nextInt();
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    } catch (IOException e) {
+      throw new HumanReadableException(
+          e,
+          "Error receiving command response from external process.\n"
+              + "Stderr from external process:\n%s",
+          getStdErrorOutput(stdErr));
+    }
+    return new CommandResponse(id, type, exitCode);
+  }
+
+  static void checkCommandResponseType(CommandResponse response) {
+    if (!response.type.equals(TYPE_RESULT) && !response.type.equals(TYPE_ERROR)) {
+      throw new HumanReadableException(
+          String.format(
+              "Expected response's \"type\" "
+                  + "to be one of [\"%s\",\"%s\"], got \"%s\" instead.",
+              TYPE_RESULT, TYPE_ERROR, response.type));
     }
   }
 
@@ -19,6 +19,8 @@ package com.facebook.buck.cli;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.cell.Cell;
@@ -213,6 +215,21 @@ public class BuckQueryEnvironmentTest {
         buckQueryEnvironment.getTargetsMatchingPattern("//example:"), is(equalTo(expectedTargets)));
   }
 
+  @Test
+  public void compactGraphIsOnlyRebuiltOnceTheGraphHasDoubled() throws QueryException {
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//example", "four")), Integer.MAX_VALUE);
+    assertEquals(2, buckQueryEnvironment.getCompactDependencyGraph().get().size());
+
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//example", "five")), Integer.MAX_VALUE);
+    assertFalse(buckQueryEnvironment.getCompactDependencyGraph().isPresent());
+
+    buckQueryEnvironment.buildTransitiveClosure(
+        ImmutableSet.of(createQueryBuildTarget("//example", "one")), Integer.MAX_VALUE);
+    assertEquals(6, buckQueryEnvironment.getCompactDependencyGraph().get().size());
+  }
+
   @Test
   public void whenNonExistentFileIsQueriedAWarningIsIssued() {
     ImmutableList<String> expectedTargets = ImmutableList.of("/foo/bar");
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import org.junit.Test;
+
+public class CommandHelperTest {
+
+  private static final ImmutableSortedMap<String, Object> ATTRIBUTES =
+      ImmutableSortedMap.<String, Object>of(
+          "//foo:bar",
+          ImmutableSortedMap.of("deps", ImmutableList.of("//foo:baz"), "name", "bar"),
+          "//foo:baz",
+          ImmutableSortedMap.of("deps", ImmutableList.of(), "name", "baz"));
+
+  @Test
+  public void streamedObjectMatchesSerializedObject() throws Exception {
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(streamed, false, "UTF-8");
+    try (JsonGenerator generator = CommandHelper.createPrettyJsonGenerator(printStream)) {
+      generator.writeStartObject();
+      for (Map.Entry<String, Object> entry : ATTRIBUTES.entrySet()) {
+        generator.writeFieldName(entry.getKey());
+        ObjectMappers.WRITER.writeValue(generator, entry.getValue());
+      }
+      generator.writeEndObject();
+    }
+
+    String expected =
+        ObjectMappers.WRITER.withDefaultPrettyPrinter().writeValueAsString(ATTRIBUTES);
+    assertEquals(expected, new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void closingGeneratorDoesNotCloseStream() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, false, "UTF-8");
+    try (JsonGenerator generator = CommandHelper.createPrettyJsonGenerator(printStream)) {
+      generator.writeStartArray();
+      generator.writeEndArray();
+    }
+    printStream.println();
+
+    assertFalse(printStream.checkError());
+    assertEquals(
+        "[ ]" + System.lineSeparator(), new String(output.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void closingGeneratorLeavesTruncatedOutputOpen() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    PrintStream printStream = new PrintStream(output, false, "UTF-8");
+    try (JsonGenerator generator = CommandHelper.createPrettyJsonGenerator(printStream)) {
+      generator.writeStartArray();
+      generator.writeStartObject();
+    }
+
+    assertEquals("[ {", new String(output.toByteArray(), StandardCharsets.UTF_8));
+  }
+}
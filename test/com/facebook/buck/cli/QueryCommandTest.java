@@ -26,8 +26,10 @@ import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.executor.impl.DefaultDepsAwareExecutor;
 import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.facebook.buck.core.model.BuildTargetFactory;
 import com.facebook.buck.core.model.EmptyTargetConfiguration;
 import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.parser.buildtargetparser.ParsingUnconfiguredBuildTargetViewFactory;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusForTests;
@@ -43,6 +45,8 @@ import com.facebook.buck.parser.ParsingContext;
 import com.facebook.buck.parser.PerBuildState;
 import com.facebook.buck.parser.PerBuildStateFactory;
 import com.facebook.buck.parser.SpeculativeParsing;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryException;
 import com.facebook.buck.rules.coercer.DefaultConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
@@ -75,8 +79,10 @@ public class QueryCommandTest {
   private QueryCommand queryCommand;
   private CommandRunnerParams params;
 
+  private TestConsole console;
   private int callsCount = 0;
   private Set<String> expectedExpressions = new HashSet<>();
+  private ImmutableSet<QueryTarget> queryResult = ImmutableSet.of();
 
   private BuckQueryEnvironment env;
 
@@ -93,7 +99,7 @@ public class QueryCommandTest {
 
   @Before
   public void setUp() throws IOException {
-    TestConsole console = new TestConsole();
+    console = new TestConsole();
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "query_command", tmp);
     workspace.setUp();
@@ -181,11 +187,16 @@ public class QueryCommandTest {
     public ImmutableSet<QueryTarget> evaluateQuery(String query) {
       Assert.assertTrue(expectedExpressions.contains(query));
       ++callsCount;
-      return ImmutableSet.of();
+      return queryResult;
     }
 
     @Override
     public void preloadTargetPatterns(Iterable<String> patterns) {}
+
+    @Override
+    TargetNode<?> getNode(QueryBuildTarget target) throws QueryException {
+      throw new QueryException("Failed to load %s", target);
+    }
   }
 
   @Test
@@ -224,6 +235,23 @@ public class QueryCommandTest {
     queryCommand.formatAndRunQuery(params, env);
   }
 
+  @Test
+  public void testAttributesOutputIsLeftTruncatedWhenPrintingFails() throws Exception {
+    queryCommand.outputAttributesSane = Suppliers.ofInstance(ImmutableSet.of("name"));
+    queryCommand.setArguments(ImmutableList.of("deps(%s)", "//foo:bar"));
+    expectedExpressions.add("deps(//foo:bar)");
+    queryResult =
+        ImmutableSet.of(QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:bar")));
+    try {
+      queryCommand.formatAndRunQuery(params, env);
+      Assert.fail("Expected the attributes of the target to fail to load.");
+    } catch (QueryException e) {
+      // Expected.
+    }
+    // Closing the object would make the truncated output look like a complete, empty result.
+    Assert.assertEquals("{", console.getTextWrittenToStdOut().trim());
+  }
+
   @Test
   public void testRunMultiQuery() throws Exception {
     queryCommand.setArguments(ImmutableList.of("deps(%s)", "//foo:bar", "//foo:baz"));
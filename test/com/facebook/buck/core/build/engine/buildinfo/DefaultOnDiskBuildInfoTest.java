@@ -16,7 +16,9 @@
 
 package com.facebook.buck.core.build.engine.buildinfo;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
@@ -30,6 +32,7 @@ import com.facebook.buck.util.timing.DefaultClock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Before;
@@ -150,6 +153,20 @@ public class DefaultOnDiskBuildInfoTest {
     onDiskBuildInfo.getMetadataForArtifact();
   }
 
+  @Test
+  public void deferredOutputsAreOnDiskOnlyOnceWritten() throws IOException {
+    BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder();
+    buildInfoRecorder.addMetadata(
+        BuildInfo.MetadataKey.DEFERRED_OUTPUTS, ImmutableList.of("out/a.txt"));
+    buildInfoRecorder.writeMetadataToDisk(true);
+    DefaultOnDiskBuildInfo onDiskBuildInfo = createOnDiskBuildInfo();
+    assertFalse(onDiskBuildInfo.areDeferredOutputsOnDisk());
+
+    projectFilesystem.mkdirs(Paths.get("out"));
+    projectFilesystem.writeContentsToPath("a", Paths.get("out/a.txt"));
+    assertTrue(onDiskBuildInfo.areDeferredOutputsOnDisk());
+  }
+
   private void setMetadata(String key, String value) throws IOException {
     BuildInfoRecorder buildInfoRecorder = createBuildInfoRecorder();
     buildInfoRecorder.addMetadata(key, value);
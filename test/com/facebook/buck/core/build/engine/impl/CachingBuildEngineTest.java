@@ -24,6 +24,7 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
@@ -98,6 +99,7 @@ import com.facebook.buck.core.rules.attr.InitializableFromDisk;
 import com.facebook.buck.core.rules.attr.SupportsDependencyFileRuleKey;
 import com.facebook.buck.core.rules.attr.SupportsInputBasedRuleKey;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
 import com.facebook.buck.core.rules.impl.AbstractBuildRule;
 import com.facebook.buck.core.rules.impl.AbstractBuildRuleWithDeclaredAndExtraDeps;
 import com.facebook.buck.core.rules.impl.FakeBuildRule;
@@ -165,6 +167,7 @@ import com.facebook.buck.util.types.Pair;
 import com.facebook.buck.util.zip.ZipConstants;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -173,6 +176,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.AbstractListeningExecutorService;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -189,14 +193,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Exchanger;
@@ -3525,6 +3532,238 @@ public class CachingBuildEngineTest {
     }
   }
 
+  public static class DeferredOutputTests extends CommonFixture {
+    private static final String CONTENTS = Strings.repeat("stuff", 1000);
+    private static final HashCode HASH = Hashing.sha1().hashString(CONTENTS, UTF_8);
+
+    private BuildTarget target;
+    private BuildRule rule;
+    private Path output;
+    private DeferringStrategy strategy;
+
+    /**
+     * Builds the rules it's given without writing their outputs, and writes them only when the
+     * engine materializes them, like remote execution with outputs materialized on demand.
+     */
+    private class DeferringStrategy implements BuildRuleStrategy {
+      final Set<BuildRule> rules = new HashSet<>();
+      final Set<BuildRule> pending = Sets.newConcurrentHashSet();
+      final List<BuildTarget> materialized = Collections.synchronizedList(new ArrayList<>());
+      int builds = 0;
+
+      @Override
+      public StrategyBuildResult build(BuildRule instance, BuildStrategyContext strategyContext) {
+        ListenableFuture<Optional<BuildResult>> buildResult;
+        try (Scope ignored = strategyContext.buildRuleScope()) {
+          builds++;
+          if (instance == rule) {
+            filesystem.deleteFileAtPathIfExists(output);
+            pending.add(instance);
+          }
+          buildResult =
+              Futures.immediateFuture(
+                  Optional.of(
+                      strategyContext.createBuildResult(
+                          BuildRuleSuccessType.BUILT_LOCALLY, Optional.empty())));
+        } catch (IOException e) {
+          buildResult = Futures.immediateFailedFuture(e);
+        }
+        ListenableFuture<Optional<BuildResult>> result = buildResult;
+        return new StrategyBuildResult() {
+          @Override
+          public boolean cancelIfNotComplete(Throwable reason) {
+            return false;
+          }
+
+          @Override
+          public void cancel(Throwable cause) {}
+
+          @Override
+          public ListenableFuture<Optional<BuildResult>> getBuildResult() {
+            return result;
+          }
+        };
+      }
+
+      @Override
+      public boolean canBuild(BuildRule instance) {
+        return rules.contains(instance);
+      }
+
+      @Override
+      public ImmutableMap<Path, DeferredOutput> getDeferredOutputs(BuildRule instance) {
+        if (!pending.contains(instance)) {
+          return ImmutableMap.of();
+        }
+        return ImmutableMap.of(output, new DeferredOutput(HASH, CONTENTS.length()));
+      }
+
+      @Override
+      public ListenableFuture<Void> materializeDeferredOutputs(Iterable<BuildRule> instances) {
+        for (BuildRule instance : instances) {
+          if (pending.remove(instance)) {
+            try {
+              filesystem.writeContentsToPath(CONTENTS, output);
+            } catch (IOException e) {
+              return Futures.immediateFailedFuture(e);
+            }
+            materialized.add(instance.getBuildTarget());
+          }
+        }
+        return Futures.immediateFuture(null);
+      }
+
+      @Override
+      public void close() {}
+    }
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+      super.setUp();
+      target = BuildTargetFactory.newInstance("//:rule");
+      rule =
+          new InputBasedRuleKeyTests.FailingInputRuleKeyBuildRule(
+              target, filesystem, TestBuildRuleParams.create());
+      graphBuilder.addToIndex(rule);
+      output = pathResolver.getRelativePath(rule.getSourcePathToOutput());
+      strategy = new DeferringStrategy();
+      strategy.rules.add(rule);
+    }
+
+    @Test
+    public void deferredOutputsAreRecordedWithoutBeingReadAndAreNotUploaded() throws Exception {
+      BuildResult result = build(rule, ImmutableMap.of(target, new RuleKey("aaaa")));
+      assertEquals(BuildRuleSuccessType.BUILT_LOCALLY, result.getSuccess());
+
+      OnDiskBuildInfo onDiskBuildInfo =
+          buildContext.createOnDiskBuildInfoFor(target, filesystem, buildInfoStore);
+      assertEquals(
+          Optional.of(ImmutableList.of(output.toString())),
+          onDiskBuildInfo.getValues(BuildInfo.MetadataKey.DEFERRED_OUTPUTS));
+      assertEquals(
+          HASH.toString(),
+          onDiskBuildInfo
+              .getMap(BuildInfo.MetadataKey.RECORDED_PATH_HASHES)
+              .get()
+              .get(output.toString()));
+      assertThat(
+          Long.parseLong(onDiskBuildInfo.getValue(BuildInfo.MetadataKey.OUTPUT_SIZE).get()),
+          greaterThanOrEqualTo((long) CONTENTS.length()));
+      assertEquals("should not have written to the cache", 0, cache.getArtifactCount());
+
+      // The outputs of top-level rules are written at the end of the build.
+      assertEquals(ImmutableList.of(target), strategy.materialized);
+      assertEquals(Optional.of(CONTENTS), filesystem.readFileIfItExists(output));
+    }
+
+    @Test
+    public void deferredOutputsAreMaterializedBeforeLocalStepsThatMayReadThem() throws Exception {
+      BuildRule consumer =
+          new RuleWithSteps(
+              BuildTargetFactory.newInstance("//:consumer"),
+              filesystem,
+              TestBuildRuleParams.create().withDeclaredDeps(ImmutableSortedSet.of(rule)),
+              ImmutableList.of(
+                  new AbstractExecutionStep("read_output") {
+                    @Override
+                    public StepExecutionResult execute(ExecutionContext context) {
+                      return filesystem.readFileIfItExists(output).equals(Optional.of(CONTENTS))
+                          ? StepExecutionResults.SUCCESS
+                          : StepExecutionResults.ERROR;
+                    }
+                  }),
+              null);
+      graphBuilder.addToIndex(consumer);
+
+      assertEquals(
+          BuildRuleSuccessType.BUILT_LOCALLY,
+          build(
+                  consumer,
+                  ImmutableMap.of(
+                      target, new RuleKey("aaaa"), consumer.getBuildTarget(), new RuleKey("bbbb")))
+              .getSuccess());
+      assertEquals(ImmutableList.of(target), strategy.materialized);
+    }
+
+    @Test
+    public void localRuleKeyOnlyMatchesOnceDeferredOutputsAreOnDisk() throws Exception {
+      BuildRule remoteConsumer = createRemoteConsumer();
+      RuleKey ruleKey = new RuleKey("aaaa");
+
+      // Rules that are only built as deps of rules built by the strategy are never materialized.
+      build(
+          remoteConsumer,
+          ImmutableMap.of(target, ruleKey, remoteConsumer.getBuildTarget(), new RuleKey("bbbb")));
+      assertFalse(filesystem.exists(output));
+
+      assertEquals(
+          BuildRuleSuccessType.BUILT_LOCALLY,
+          build(rule, ImmutableMap.of(target, ruleKey)).getSuccess());
+      assertEquals(
+          BuildRuleSuccessType.MATCHING_RULE_KEY,
+          build(rule, ImmutableMap.of(target, ruleKey)).getSuccess());
+      assertEquals(3, strategy.builds);
+    }
+
+    @Test
+    public void inputBasedRuleKeyOnlyMatchesOnceDeferredOutputsAreOnDisk() throws Exception {
+      BuildRule remoteConsumer = createRemoteConsumer();
+      RuleKey consumerKey = new RuleKey("aaaa");
+
+      build(
+          remoteConsumer,
+          ImmutableMap.of(
+              target, new RuleKey("bbbb"), remoteConsumer.getBuildTarget(), consumerKey));
+      assertFalse(filesystem.exists(output));
+
+      assertEquals(
+          BuildRuleSuccessType.BUILT_LOCALLY,
+          build(rule, ImmutableMap.of(target, new RuleKey("cccc"))).getSuccess());
+      assertEquals(
+          BuildRuleSuccessType.MATCHING_INPUT_BASED_RULE_KEY,
+          build(rule, ImmutableMap.of(target, new RuleKey("dddd"))).getSuccess());
+      assertEquals(3, strategy.builds);
+    }
+
+    private BuildRule createRemoteConsumer() {
+      BuildRule remoteConsumer =
+          new RuleWithSteps(
+              BuildTargetFactory.newInstance("//:remote_consumer"),
+              filesystem,
+              TestBuildRuleParams.create().withDeclaredDeps(ImmutableSortedSet.of(rule)),
+              ImmutableList.of(new FailingStep()),
+              null);
+      graphBuilder.addToIndex(remoteConsumer);
+      strategy.rules.add(remoteConsumer);
+      return remoteConsumer;
+    }
+
+    /** Builds the given rule with the given rule keys, and returns the result of {@link #rule}. */
+    private BuildResult build(BuildRule topLevelRule, ImmutableMap<BuildTarget, RuleKey> ruleKeys)
+        throws Exception {
+      try (CachingBuildEngine cachingBuildEngine =
+          cachingBuildEngineFactory()
+              .setCustomBuildRuleStrategy(strategy)
+              .setRuleKeyFactories(
+                  RuleKeyFactories.of(
+                      new FakeRuleKeyFactory(ruleKeys),
+                      new FakeRuleKeyFactory(ImmutableMap.of(target, new RuleKey("ffff"))),
+                      NOOP_DEP_FILE_RULE_KEY_FACTORY))
+              .build()) {
+        BuildResult result =
+            cachingBuildEngine
+                .build(buildContext, TestExecutionContext.newInstance(), topLevelRule)
+                .getResult()
+                .get();
+        assertTrue(
+            result.getFailureOptional().map(ErrorLogger::getUserFriendlyMessage).toString(),
+            result.isSuccess());
+        return cachingBuildEngine.getBuildRuleResult(target);
+      }
+    }
+  }
+
   public static class UncachableRuleTests extends CommonFixture {
     @Test
     public void uncachableRulesDoNotTouchTheCache() throws Exception {
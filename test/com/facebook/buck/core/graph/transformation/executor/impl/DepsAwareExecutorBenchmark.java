@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareExecutor;
+import com.facebook.buck.core.graph.transformation.executor.DepsAwareTask;
+import com.facebook.buck.core.graph.transformation.executor.factory.DepsAwareExecutorFactory;
+import com.facebook.buck.core.graph.transformation.executor.factory.DepsAwareExecutorType;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the {@link DepsAwareExecutor} implementations on synthetic graphs.
+ *
+ * <p>A deep graph is a set of long chains, where every task depends on the previous task of its
+ * chain and on the task at the same depth of the neighbouring chain. A wide graph is a single root
+ * with a large number of leaves, each of which has a small number of its own leaves.
+ */
+public class DepsAwareExecutorBenchmark {
+
+  @Param({"DEFAULT", "DEFAULT_WITH_LS", "JAVA_BASED", "TOPOSORT_BASED", "WORK_STEALING"})
+  private DepsAwareExecutorType executorType = DepsAwareExecutorType.WORK_STEALING;
+
+  @Param({"1", "4", "12"})
+  private int threadCount = 4;
+
+  @Param({"1000", "10000"})
+  private int nodeCount = 1000;
+
+  /** Units of busy work done by each task, to simulate tasks of different granularity. */
+  @Param({"0", "1000"})
+  private int workPerTask = 100;
+
+  private DepsAwareExecutor<Object, ?> executor;
+
+  private final LongAdder sink = new LongAdder();
+
+  @Before
+  @BeforeExperiment
+  public void setUp() {
+    executor = DepsAwareExecutorFactory.create(executorType, threadCount);
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() {
+    executor.close();
+  }
+
+  @Test
+  public void deepGraphCompletes() throws ExecutionException, InterruptedException {
+    deepGraph(1);
+  }
+
+  @Test
+  public void wideGraphCompletes() throws ExecutionException, InterruptedException {
+    wideGraph(1);
+  }
+
+  @Benchmark
+  public void deepGraph(int reps) throws ExecutionException, InterruptedException {
+    for (int i = 0; i < reps; i++) {
+      runDeepGraph(executor);
+    }
+  }
+
+  @Benchmark
+  public void wideGraph(int reps) throws ExecutionException, InterruptedException {
+    for (int i = 0; i < reps; i++) {
+      runWideGraph(executor);
+    }
+  }
+
+  private <TaskType extends DepsAwareTask<Object, TaskType>> void runDeepGraph(
+      DepsAwareExecutor<Object, TaskType> executor)
+      throws ExecutionException, InterruptedException {
+    int chains = Math.max(1, threadCount * 2);
+    int depth = Math.max(1, nodeCount / chains);
+
+    List<TaskType> previousLevel = new ArrayList<>(chains);
+    for (int c = 0; c < chains; c++) {
+      previousLevel.add(executor.createTask(this::work));
+    }
+    for (int d = 1; d < depth; d++) {
+      List<TaskType> level = new ArrayList<>(chains);
+      for (int c = 0; c < chains; c++) {
+        ImmutableSet<TaskType> deps =
+            ImmutableSet.of(previousLevel.get(c), previousLevel.get((c + 1) % chains));
+        level.add(executor.createTask(this::work, () -> deps));
+      }
+      previousLevel = level;
+    }
+    ImmutableSet<TaskType> tops = ImmutableSet.copyOf(previousLevel);
+    executor.submit(executor.createTask(this::work, () -> tops)).get();
+  }
+
+  private <TaskType extends DepsAwareTask<Object, TaskType>> void runWideGraph(
+      DepsAwareExecutor<Object, TaskType> executor)
+      throws ExecutionException, InterruptedException {
+    int leavesPerChild = 4;
+    int children = Math.max(1, nodeCount / (leavesPerChild + 1));
+
+    ImmutableSet.Builder<TaskType> childrenBuilder = ImmutableSet.builder();
+    for (int i = 0; i < children; i++) {
+      ImmutableSet.Builder<TaskType> leavesBuilder = ImmutableSet.builder();
+      for (int j = 0; j < leavesPerChild; j++) {
+        leavesBuilder.add(executor.createTask(this::work));
+      }
+      ImmutableSet<TaskType> leaves = leavesBuilder.build();
+      childrenBuilder.add(executor.createTask(this::work, () -> leaves));
+    }
+    ImmutableSet<TaskType> allChildren = childrenBuilder.build();
+    executor.submit(executor.createTask(this::work, () -> allChildren)).get();
+  }
+
+  private Object work() {
+    long acc = 0;
+    for (int i = 0; i < workPerTask; i++) {
+      acc += (acc << 1) ^ i;
+    }
+    sink.add(acc);
+    return null;
+  }
+}
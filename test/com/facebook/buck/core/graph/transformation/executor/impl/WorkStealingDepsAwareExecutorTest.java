@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.executor.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import org.junit.Test;
+
+public class WorkStealingDepsAwareExecutorTest {
+
+  @Test(timeout = 5000)
+  public void readyDependenciesRunInPriorityOrder()
+      throws ExecutionException, InterruptedException {
+    List<String> order = new ArrayList<>();
+    try (WorkStealingDepsAwareExecutor<Object> executor = WorkStealingDepsAwareExecutor.of(1)) {
+      ToposortBasedDepsAwareTask<Object> low =
+          executor.createTask(() -> order.add("low"), ImmutableSet::of, -1);
+      ToposortBasedDepsAwareTask<Object> high =
+          executor.createTask(() -> order.add("high"), ImmutableSet::of, 10);
+      ToposortBasedDepsAwareTask<Object> mid =
+          executor.createTask(() -> order.add("mid"), ImmutableSet::of);
+      ToposortBasedDepsAwareTask<Object> root =
+          executor.createTask(() -> order.add("root"), () -> ImmutableSet.of(low, high, mid));
+
+      executor.submit(root).get();
+    }
+
+    assertEquals(ImmutableList.of("high", "mid", "low", "root"), order);
+  }
+
+  @Test(timeout = 5000)
+  public void dependentRunsOnThreadThatCompletedItsDependency()
+      throws ExecutionException, InterruptedException {
+    int chainLength = 50;
+    Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    try (WorkStealingDepsAwareExecutor<Object> executor = WorkStealingDepsAwareExecutor.of(4)) {
+      ToposortBasedDepsAwareTask<Object> task =
+          executor.createTask(() -> threads.add(Thread.currentThread()));
+      for (int i = 1; i < chainLength; i++) {
+        ToposortBasedDepsAwareTask<Object> dep = task;
+        task =
+            executor.createTask(
+                () -> threads.add(Thread.currentThread()), () -> ImmutableSet.of(dep));
+      }
+
+      executor.submit(task).get();
+    }
+
+    assertEquals(1, threads.size());
+  }
+
+  @Test(timeout = 5000)
+  public void idleWorkersStealWideFanOut() throws ExecutionException, InterruptedException {
+    int width = 1000;
+    Set<Integer> ran = ConcurrentHashMap.newKeySet();
+    try (WorkStealingDepsAwareExecutor<Object> executor = WorkStealingDepsAwareExecutor.of(4)) {
+      ImmutableSet.Builder<ToposortBasedDepsAwareTask<Object>> deps = ImmutableSet.builder();
+      for (int i = 0; i < width; i++) {
+        int id = i;
+        deps.add(executor.createTask(() -> ran.add(id)));
+      }
+      ImmutableSet<ToposortBasedDepsAwareTask<Object>> allDeps = deps.build();
+
+      executor.submit(executor.createTask(() -> null, () -> allDeps)).get();
+    }
+
+    assertEquals(width, ran.size());
+  }
+}
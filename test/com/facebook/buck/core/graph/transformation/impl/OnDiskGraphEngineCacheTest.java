@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.graph.transformation.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.graph.transformation.impl.OnDiskGraphEngineCache.Serializer;
+import com.facebook.buck.core.graph.transformation.model.ClassBasedComputationIdentifier;
+import com.facebook.buck.core.graph.transformation.model.ComputationIdentifier;
+import com.facebook.buck.core.graph.transformation.model.ComputeKey;
+import com.facebook.buck.core.graph.transformation.model.ComputeResult;
+import com.google.common.collect.Iterables;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OnDiskGraphEngineCacheTest {
+
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void storedResultIsReadByNewInstance() {
+    Path root = tmp.getRoot().toPath();
+    newCache(root, "v1").put(new StringKey("a"), new LongResult(1));
+    newCache(root, "v1").put(new StringKey("b"), new LongResult(2));
+
+    OnDiskGraphEngineCache<StringKey, LongResult> cache = newCache(root, "v1");
+    assertEquals(Optional.of(new LongResult(1)), cache.get(new StringKey("a")));
+    assertEquals(Optional.of(new LongResult(2)), cache.get(new StringKey("b")));
+    assertEquals(Optional.empty(), cache.get(new StringKey("c")));
+  }
+
+  @Test
+  public void differentVersionDoesNotSeeEntries() {
+    Path root = tmp.getRoot().toPath();
+    newCache(root, "v1").put(new StringKey("a"), new LongResult(1));
+
+    assertEquals(Optional.empty(), newCache(root, "v2").get(new StringKey("a")));
+  }
+
+  @Test
+  public void corruptedEntryIsDiscarded() throws IOException {
+    Path root = tmp.getRoot().toPath();
+    newCache(root, "v1").put(new StringKey("a"), new LongResult(1));
+
+    Path entry = Iterables.getOnlyElement(listEntries(root));
+    byte[] contents = Files.readAllBytes(entry);
+    contents[contents.length - 1] ^= 1;
+    Files.write(entry, contents);
+
+    assertEquals(Optional.empty(), newCache(root, "v1").get(new StringKey("a")));
+    assertFalse(Files.exists(entry));
+  }
+
+  @Test
+  public void truncatedEntryIsDiscarded() throws IOException {
+    Path root = tmp.getRoot().toPath();
+    newCache(root, "v1").put(new StringKey("a"), new LongResult(1));
+
+    Path entry = Iterables.getOnlyElement(listEntries(root));
+    byte[] contents = Files.readAllBytes(entry);
+    Files.write(entry, Arrays.copyOf(contents, contents.length / 2));
+
+    assertEquals(Optional.empty(), newCache(root, "v1").get(new StringKey("a")));
+    assertFalse(Files.exists(entry));
+  }
+
+  @Test
+  public void invalidateRemovesEntryFromDisk() throws IOException {
+    Path root = tmp.getRoot().toPath();
+    OnDiskGraphEngineCache<StringKey, LongResult> cache = newCache(root, "v1");
+    cache.put(new StringKey("a"), new LongResult(1));
+    cache.invalidate(new StringKey("a"));
+
+    assertEquals(Optional.empty(), cache.get(new StringKey("a")));
+    assertEquals(0, listEntries(root).size());
+  }
+
+  private static List<Path> listEntries(Path root) throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      return paths.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+  }
+
+  private static OnDiskGraphEngineCache<StringKey, LongResult> newCache(Path root, String version) {
+    return OnDiskGraphEngineCache.of(
+        root,
+        version,
+        new Serializer<StringKey>() {
+          @Override
+          public void serialize(StringKey value, DataOutput output) throws IOException {
+            output.writeUTF(value.name);
+          }
+
+          @Override
+          public StringKey deserialize(DataInput input) throws IOException {
+            return new StringKey(input.readUTF());
+          }
+        },
+        new Serializer<LongResult>() {
+          @Override
+          public void serialize(LongResult value, DataOutput output) throws IOException {
+            output.writeLong(value.value);
+          }
+
+          @Override
+          public LongResult deserialize(DataInput input) throws IOException {
+            return new LongResult(input.readLong());
+          }
+        });
+  }
+
+  private static class StringKey implements ComputeKey<LongResult> {
+    private static final ComputationIdentifier<LongResult> IDENTIFIER =
+        ClassBasedComputationIdentifier.of(StringKey.class, LongResult.class);
+
+    private final String name;
+
+    StringKey(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public ComputationIdentifier<LongResult> getIdentifier() {
+      return IDENTIFIER;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof StringKey && name.equals(((StringKey) o).name);
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+  private static class LongResult implements ComputeResult {
+    private final long value;
+
+    LongResult(long value) {
+      this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof LongResult && value == ((LongResult) o).value;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(value);
+    }
+  }
+}
@@ -17,6 +17,9 @@
 package com.facebook.buck.cxx;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
@@ -40,6 +43,8 @@ import com.facebook.buck.core.toolchain.tool.impl.HashedFileTool;
 import com.facebook.buck.cxx.toolchain.ArchiveContents;
 import com.facebook.buck.cxx.toolchain.Archiver;
 import com.facebook.buck.cxx.toolchain.BsdArchiver;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
 import com.facebook.buck.cxx.toolchain.GnuArchiver;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
@@ -215,6 +220,37 @@ public class ArchiveTest {
         ranlibStep.getDescription(TestExecutionContext.newInstance()), containsString("-bar"));
   }
 
+  @Test
+  public void builtinArchiverIsOnlyUsedWithoutFlags() {
+    CxxPlatform platform = CxxPlatformUtils.DEFAULT_PLATFORM.withUseBuiltinArchiver(true);
+    assertThat(getArchiveSteps(platform), hasItem(instanceOf(GnuArchiveStep.class)));
+    assertThat(
+        getArchiveSteps(platform.withArflags("-foo")),
+        not(hasItem(instanceOf(GnuArchiveStep.class))));
+    assertThat(
+        getArchiveSteps(platform.withRanlibflags("-bar")),
+        not(hasItem(instanceOf(GnuArchiveStep.class))));
+  }
+
+  private static ImmutableList<Step> getArchiveSteps(CxxPlatform platform) {
+    BuildRuleResolver resolver = new TestActionGraphBuilder();
+    Archive archive =
+        Archive.from(
+            BuildTargetFactory.newInstance("//foo:bar"),
+            new FakeProjectFilesystem(),
+            resolver,
+            platform,
+            DEFAULT_OUTPUT_FILE_NAME,
+            ImmutableList.of(FakeSourcePath.of("simple.o")),
+            /* cacheable */ true);
+    BuildContext buildContext =
+        BuildContext.builder()
+            .from(FakeBuildContext.NOOP_CONTEXT)
+            .setSourcePathResolver(resolver.getSourcePathResolver())
+            .build();
+    return archive.getBuildSteps(buildContext, new FakeBuildableContext());
+  }
+
   @Test
   public void testThatBuildTargetSourcePathDepsAndPathsArePropagated() {
     ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
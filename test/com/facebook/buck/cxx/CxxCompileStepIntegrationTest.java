@@ -28,6 +28,9 @@ import com.facebook.buck.core.config.FakeBuckConfig;
 import com.facebook.buck.core.model.EmptyTargetConfiguration;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
 import com.facebook.buck.cxx.config.CxxBuckConfig;
 import com.facebook.buck.cxx.toolchain.Compiler;
 import com.facebook.buck.cxx.toolchain.CxxPlatform;
@@ -179,4 +182,99 @@ public class CxxCompileStepIntegrationTest {
     Files.delete(input);
     Files.deleteIfExists(output);
   }
+
+  @Test
+  public void preprocessedSourceDoesNotDependOnWhereHeadersAre() throws Exception {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver resolver = new TestActionGraphBuilder();
+    SourcePathResolver pathResolver = resolver.getSourcePathResolver();
+    Compiler compiler = platform.getCc().resolve(resolver, EmptyTargetConfiguration.INSTANCE);
+    ImmutableList<String> compilerCommandPrefix = compiler.getCommandPrefix(pathResolver);
+
+    // Headers behind a symlink tree that matches their real layout.
+    Path symlinkTree = Paths.get("buck-out/headers");
+    ImmutableMap.Builder<Path, SourcePath> headerMap = ImmutableMap.builder();
+    for (String header : ImmutableList.of("foo/a.h", "foo/b.h")) {
+      Path realHeader = Paths.get("lib/include").resolve(header);
+      filesystem.mkdirs(realHeader.getParent());
+      String variable = header.substring(header.length() - 3, header.length() - 2);
+      filesystem.writeContentsToPath("int " + variable + ";\n", realHeader);
+      filesystem.mkdirs(symlinkTree.resolve(header).getParent());
+      filesystem.createSymLink(symlinkTree.resolve(header), filesystem.resolve(realHeader), false);
+      headerMap.put(Paths.get(header), PathSourcePath.of(filesystem, realHeader));
+    }
+    HeaderPathNormalizer headerPathNormalizer =
+        new HeaderPathNormalizer.Builder(pathResolver)
+            .addSymlinkTree(PathSourcePath.of(filesystem, symlinkTree), headerMap.build())
+            .build();
+
+    Path relativeInput = Paths.get("input.c");
+    filesystem.writeContentsToPath(
+        "#include \"foo/a.h\"\n#include \"foo/b.h\"\nint main() { return a + b; }\n",
+        relativeInput);
+    Path preprocessed = Paths.get("input.i");
+    Path scratchDir = filesystem.getPath("scratchDir");
+    filesystem.mkdirs(scratchDir);
+    DebugPathSanitizer sanitizer = new PrefixMapDebugPathSanitizer(".", ImmutableBiMap.of());
+
+    CxxPreprocessAndCompileStep preprocess =
+        new CxxPreprocessAndCompileStep(
+            filesystem,
+            CxxPreprocessAndCompileStep.Operation.PREPROCESS,
+            preprocessed,
+            Optional.of(Paths.get("input.i.dep")),
+            relativeInput,
+            CxxSource.Type.C,
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix,
+                ImmutableList.of("-g", "-I" + symlinkTree),
+                ImmutableMap.of()),
+            headerPathNormalizer,
+            sanitizer,
+            scratchDir,
+            false,
+            ImmutableList.of(),
+            compiler,
+            Optional.empty());
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    assertEquals(
+        "preprocess step failed: " + console.getTextWrittenToStdErr(),
+        0,
+        preprocess.execute(executionContext).getExitCode());
+
+    String contents = new String(Files.readAllBytes(filesystem.resolve(preprocessed)));
+    assertThat(contents, Matchers.containsString("\"lib/include/foo/a.h\""));
+    assertThat(contents, Matchers.containsString("\"lib/include/foo/b.h\""));
+    assertThat(contents, Matchers.not(Matchers.containsString(symlinkTree.toString())));
+    assertThat(
+        contents, Matchers.not(Matchers.containsString(filesystem.getRootPath().toString())));
+    assertThat(filesystem, pathExists(Paths.get("input.i.dep")));
+
+    Path output = Paths.get("input.o");
+    CxxPreprocessAndCompileStep compile =
+        new CxxPreprocessAndCompileStep(
+            filesystem,
+            CxxPreprocessAndCompileStep.Operation.COMPILE,
+            output,
+            Optional.empty(),
+            preprocessed,
+            CxxSource.Type.C_CPP_OUTPUT,
+            new CxxPreprocessAndCompileStep.ToolCommand(
+                compilerCommandPrefix, ImmutableList.of("-g"), ImmutableMap.of()),
+            HeaderPathNormalizer.empty(pathResolver),
+            sanitizer,
+            scratchDir,
+            false,
+            ImmutableList.of(),
+            compiler,
+            Optional.empty());
+    assertEquals(
+        "compile step failed: " + console.getTextWrittenToStdErr(),
+        0,
+        compile.execute(executionContext).getExitCode());
+    assertThat(filesystem, pathExists(output));
+  }
 }
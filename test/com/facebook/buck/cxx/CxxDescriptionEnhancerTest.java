@@ -24,6 +24,7 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
 import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleParams;
@@ -32,7 +33,14 @@ import com.facebook.buck.core.rules.impl.FakeBuildRule;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.core.sourcepath.DefaultBuildTargetSourcePath;
 import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.toolchain.tool.impl.CommandTool;
+import com.facebook.buck.core.toolchain.toolprovider.impl.ConstantToolProvider;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
 import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.cxx.toolchain.CxxToolProvider;
+import com.facebook.buck.cxx.toolchain.HeaderMode;
+import com.facebook.buck.cxx.toolchain.PreprocessorProvider;
+import com.facebook.buck.cxx.toolchain.ToolType;
 import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
@@ -239,6 +247,44 @@ public class CxxDescriptionEnhancerTest {
     assertThat(soname("libfoo.$(ext 2.3)", "bad", "windows"), equalTo("libfoo.windows"));
   }
 
+  @Test
+  public void vfsOverlaysAreUsedWhenEveryPreprocessorSupportsThem() {
+    CxxPlatform cxxPlatform =
+        CxxPlatformUtils.DEFAULT_PLATFORM
+            .withHeaderMode(HeaderMode.VFS_OVERLAY_ONLY)
+            .withAspp(clangPreprocessorProvider(ToolType.ASPP))
+            .withCpp(clangPreprocessorProvider(ToolType.CPP))
+            .withCxxpp(clangPreprocessorProvider(ToolType.CXXPP))
+            .withCudapp(clangPreprocessorProvider(ToolType.CUDAPP))
+            .withAsmpp(clangPreprocessorProvider(ToolType.ASMPP));
+    assertThat(getHeaderMode(cxxPlatform), equalTo(HeaderMode.VFS_OVERLAY_ONLY));
+  }
+
+  @Test
+  public void vfsOverlaysFallBackToSymlinkTreesWhenAnyPreprocessorDoesNotSupportThem() {
+    // The default platform's asm preprocessor is gcc, which would otherwise get the overlays.
+    CxxPlatform cxxPlatform =
+        CxxPlatformUtils.DEFAULT_PLATFORM
+            .withHeaderMode(HeaderMode.VFS_OVERLAY_ONLY)
+            .withAspp(clangPreprocessorProvider(ToolType.ASPP))
+            .withCpp(clangPreprocessorProvider(ToolType.CPP))
+            .withCxxpp(clangPreprocessorProvider(ToolType.CXXPP))
+            .withCudapp(clangPreprocessorProvider(ToolType.CUDAPP));
+    assertThat(getHeaderMode(cxxPlatform), equalTo(HeaderMode.SYMLINK_TREE_ONLY));
+  }
+
+  private static HeaderMode getHeaderMode(CxxPlatform cxxPlatform) {
+    return CxxDescriptionEnhancer.getHeaderModeForPlatform(
+        new TestActionGraphBuilder(), EmptyTargetConfiguration.INSTANCE, cxxPlatform, true);
+  }
+
+  private static PreprocessorProvider clangPreprocessorProvider(ToolType toolType) {
+    return new PreprocessorProvider(
+        new ConstantToolProvider(new CommandTool.Builder().build()),
+        CxxToolProvider.Type.CLANG,
+        toolType);
+  }
+
   /** Just a helper to make this shorter to write. */
   private static String soname(String declared, String extension, String versionedFormat) {
     return CxxDescriptionEnhancer.getNonDefaultSharedLibrarySoname(
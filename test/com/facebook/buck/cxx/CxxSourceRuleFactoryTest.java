@@ -429,6 +429,72 @@ public class CxxSourceRuleFactoryTest {
       cxxPreprocess = cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource);
       assertThat(cxxPreprocess.getBuildDeps(), hasItems(cxx, cxxpp));
     }
+
+    @Test
+    public void splitPreprocessingCompilesTheSourcePreprocessedByAnotherRule() {
+      BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+      ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+      CxxBuckConfig cxxBuckConfig =
+          new CxxBuckConfig(
+              FakeBuckConfig.builder()
+                  .setSections(
+                      ImmutableMap.of("cxx", ImmutableMap.of("split_preprocessing", "true")))
+                  .build());
+
+      CxxSourceRuleFactory cxxSourceRuleFactory =
+          CxxSourceRuleFactory.builder()
+              .setProjectFilesystem(PROJECT_FILESYSTEM)
+              .setBaseBuildTarget(target)
+              .setActionGraphBuilder(graphBuilder)
+              .setPathResolver(graphBuilder.getSourcePathResolver())
+              .setCxxBuckConfig(cxxBuckConfig)
+              .setCxxPlatform(CXX_PLATFORM)
+              .addCxxPreprocessorInput(CxxPreprocessorInput.of())
+              .setPicType(PicType.PDC)
+              .build();
+
+      String name = "foo/bar.cpp";
+      SourcePath input = FakeSourcePath.of(PROJECT_FILESYSTEM, target.getBasePath().resolve(name));
+      CxxSource cxxSource = CxxSource.of(CxxSource.Type.CXX, input, ImmutableList.of());
+
+      CxxPreprocessAndCompile compile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource);
+      assertEquals(cxxSourceRuleFactory.createCompileBuildTarget(name), compile.getBuildTarget());
+      assertFalse(compile.getPreprocessorDelegate().isPresent());
+      assertEquals(input, compile.getSourceInput());
+
+      CxxPreprocessAndCompile preprocess = compile.getPreprocessRule().get();
+      assertEquals(
+          cxxSourceRuleFactory.createPreprocessBuildTarget(name, CxxSource.Type.CXX),
+          preprocess.getBuildTarget());
+      assertEquals(input, preprocess.getInput());
+      assertEquals(preprocess.getSourcePathToOutput(), compile.getInput());
+      assertThat(compile.getBuildDeps(), hasItems(preprocess));
+
+      SourcePathResolver pathResolver = graphBuilder.getSourcePathResolver();
+      BuildContext context = FakeBuildContext.withSourcePathResolver(pathResolver);
+      ImmutableList<String> preprocessCommand =
+          preprocess.makeMainStep(context, false).getCommand();
+      assertThat(preprocessCommand, hasItems("-E"));
+      assertFalse(preprocessCommand.contains("-c"));
+      assertThat(compile.makeMainStep(context, false).getCommand(), hasItems("-c"));
+
+      // The same rules are returned when they're required again.
+      assertEquals(
+          compile, cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(name, cxxSource));
+
+      // Assembly sources are still preprocessed and compiled in one step.
+      String asmName = "foo/bar.S";
+      CxxSource asmSource =
+          CxxSource.of(
+              CxxSource.Type.ASSEMBLER_WITH_CPP,
+              FakeSourcePath.of(PROJECT_FILESYSTEM, target.getBasePath().resolve(asmName)),
+              ImmutableList.of());
+      CxxPreprocessAndCompile asmCompile =
+          cxxSourceRuleFactory.requirePreprocessAndCompileBuildRule(asmName, asmSource);
+      assertFalse(asmCompile.getPreprocessRule().isPresent());
+      assertTrue(asmCompile.getPreprocessorDelegate().isPresent());
+    }
   }
 
   @RunWith(Parameterized.class)
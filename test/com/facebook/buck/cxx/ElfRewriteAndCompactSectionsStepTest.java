@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assume.assumeThat;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.cxx.toolchain.elf.ElfDynamicSection;
+import com.facebook.buck.io.ExecutableFinder;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.environment.EnvVariablesProvider;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ElfRewriteAndCompactSectionsStepTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path objcopy;
+
+  @Before
+  public void setUp() throws IOException {
+    assumeThat(Platform.detect(), Matchers.oneOf(Platform.LINUX, Platform.MACOS));
+    Optional<Path> objcopy =
+        new ExecutableFinder()
+            .getOptionalExecutable(
+                tmp.getRoot().getFileSystem().getPath("objcopy"),
+                EnvVariablesProvider.getSystemEnv());
+    assumeTrue(objcopy.isPresent());
+    this.objcopy = objcopy.get();
+
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
+    workspace.setUp();
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+  }
+
+  private ImmutableList<ElfRewriteStep> getRewrites(Path path) {
+    return ImmutableList.of(
+        ElfSymbolTableScrubberStep.of(
+            filesystem,
+            path,
+            /* section */ ".dynsym",
+            /* versymSection */ Optional.of(".gnu.version"),
+            /* allowMissing */ false,
+            /* scrubUndefinedSymbols */ true),
+        ElfSymbolTableScrubberStep.of(
+            filesystem,
+            path,
+            /* section */ ".symtab",
+            /* versymSection */ Optional.empty(),
+            /* allowMissing */ true,
+            /* scrubUndefinedSymbols */ true),
+        ElfDynamicSectionScrubberStep.of(
+            filesystem,
+            path,
+            /* whitelistedTags */ ImmutableSet.of(ElfDynamicSection.DTag.DT_SONAME),
+            /* removeScrubbedTags */ true),
+        ElfScrubFileHeaderStep.of(filesystem, path),
+        ElfRewriteDynStrSectionStep.of(filesystem, path),
+        ElfClearProgramHeadersStep.of(filesystem, path));
+  }
+
+  private ElfCompactSectionsStep getCompaction(Path input, Path output) {
+    return ElfCompactSectionsStep.of(
+        BuildTargetFactory.newInstance("//:foo"),
+        ImmutableList.of(objcopy.toString()),
+        filesystem,
+        input,
+        filesystem,
+        output);
+  }
+
+  @Test
+  public void rewritesTheSameAsTheStepsOneByOne() throws IOException, InterruptedException {
+    Path sequential = filesystem.getPath("sequential.so");
+    Path pipelined = filesystem.getPath("pipelined.so");
+    Files.copy(filesystem.resolve("libfoo.so"), filesystem.resolve(sequential));
+    Files.copy(filesystem.resolve("libfoo.so"), filesystem.resolve(pipelined));
+
+    for (Step step : getRewrites(sequential)) {
+      step.execute(TestExecutionContext.newInstance());
+    }
+    getCompaction(sequential, filesystem.getPath("sequential.out.so"))
+        .execute(TestExecutionContext.newInstanceWithRealProcessExecutor());
+
+    ElfRewriteAndCompactSectionsStep.of(
+            getRewrites(pipelined),
+            getCompaction(pipelined, filesystem.getPath("pipelined.out.so")))
+        .execute(TestExecutionContext.newInstanceWithRealProcessExecutor());
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(sequential)),
+        Files.readAllBytes(filesystem.resolve(pipelined)));
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve("sequential.out.so")),
+        Files.readAllBytes(filesystem.resolve("pipelined.out.so")));
+  }
+}
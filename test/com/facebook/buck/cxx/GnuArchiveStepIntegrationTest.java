@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.config.FakeBuckConfig;
+import com.facebook.buck.core.model.EmptyTargetConfiguration;
+import com.facebook.buck.core.rules.BuildRuleResolver;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.core.toolchain.tool.Tool;
+import com.facebook.buck.cxx.config.CxxBuckConfig;
+import com.facebook.buck.cxx.toolchain.Archiver;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.step.fs.FileScrubberStep;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.testutil.TestConsole;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class GnuArchiveStepIntegrationTest {
+
+  private static final ImmutableList<Path> OBJECTS =
+      ImmutableList.of(
+          Paths.get("symbols.o"),
+          Paths.get("le32.o"),
+          Paths.get("be32.o"),
+          Paths.get("only_local_symbols_in_a_long_name.o"),
+          Paths.get("symbols.o"));
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private SourcePathResolver pathResolver;
+  private Archiver archiver;
+  private Tool ranlib;
+  private ExecutionContext executionContext;
+
+  @Before
+  public void setUp() throws IOException {
+    assumeTrue(Platform.detect() == Platform.LINUX);
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "gnu_archive", tmp);
+    workspace.setUp();
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver ruleResolver = new TestActionGraphBuilder();
+    pathResolver = ruleResolver.getSourcePathResolver();
+    archiver = platform.getAr().resolve(ruleResolver, EmptyTargetConfiguration.INSTANCE);
+    ranlib = platform.getRanlib().get().resolve(ruleResolver, EmptyTargetConfiguration.INSTANCE);
+    executionContext = TestExecutionContext.newInstanceWithRealProcessExecutor();
+  }
+
+  @Test
+  public void fullArchivesAreTheSameAsTheArchiverCreates()
+      throws IOException, InterruptedException {
+    assertSameArchives(false);
+  }
+
+  @Test
+  public void thinArchivesAreTheSameAsTheArchiverCreates()
+      throws IOException, InterruptedException {
+    assertSameArchives(true);
+  }
+
+  @Test
+  public void archiverCreatesArchivesOfFilesThatAreNotObjects()
+      throws IOException, InterruptedException {
+    Path output = Paths.get("out/libdata.a");
+    filesystem.mkdirs(output.getParent());
+    filesystem.writeContentsToPath("data", Paths.get("data.txt"));
+
+    AtomicBoolean fellBack = new AtomicBoolean(false);
+    Step fallback =
+        new Step() {
+          @Override
+          public StepExecutionResult execute(ExecutionContext context) {
+            fellBack.set(true);
+            return StepExecutionResults.SUCCESS;
+          }
+
+          @Override
+          public String getShortName() {
+            return "fallback";
+          }
+
+          @Override
+          public String getDescription(ExecutionContext context) {
+            return "fallback";
+          }
+        };
+    execute(
+        new GnuArchiveStep(
+            filesystem,
+            output,
+            ImmutableList.of(Paths.get("symbols.o"), Paths.get("data.txt")),
+            false,
+            ImmutableList.of(fallback)));
+
+    assertTrue(fellBack.get());
+    assertFalse(filesystem.exists(output));
+  }
+
+  private void assertSameArchives(boolean thin) throws IOException, InterruptedException {
+    Path expected = Paths.get("expected/libobjects.a");
+    filesystem.mkdirs(expected.getParent());
+    for (Step step : getArchiverSteps(expected, thin)) {
+      execute(step);
+    }
+
+    Path actual = Paths.get("actual/libobjects.a");
+    filesystem.mkdirs(actual.getParent());
+    // Without any fallback steps, the archive is only created if it's created in process.
+    execute(new GnuArchiveStep(filesystem, actual, OBJECTS, thin, ImmutableList.of()));
+    execute(new FileScrubberStep(filesystem, actual, archiver.getScrubbers()));
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(expected)),
+        Files.readAllBytes(filesystem.resolve(actual)));
+  }
+
+  private ImmutableList<Step> getArchiverSteps(Path output, boolean thin) {
+    return ImmutableList.of(
+        new ArchiveStep(
+            filesystem,
+            archiver.getEnvironment(pathResolver),
+            archiver.getCommandPrefix(pathResolver),
+            ImmutableList.of(),
+            archiver.getArchiveOptions(thin),
+            output,
+            OBJECTS,
+            archiver,
+            Paths.get("scratch")),
+        new RanlibStep(
+            filesystem,
+            ranlib.getEnvironment(pathResolver),
+            ranlib.getCommandPrefix(pathResolver),
+            ImmutableList.of(),
+            output),
+        new FileScrubberStep(filesystem, output, archiver.getScrubbers()));
+  }
+
+  private void execute(Step step) throws IOException, InterruptedException {
+    TestConsole console = (TestConsole) executionContext.getConsole();
+    assertEquals(
+        step.getShortName() + " failed: " + console.getTextWrittenToStdErr(),
+        0,
+        step.execute(executionContext).getExitCode());
+  }
+}
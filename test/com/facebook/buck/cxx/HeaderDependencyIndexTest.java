@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.cxx.toolchain.DependencyTrackingMode;
+import com.facebook.buck.cxx.toolchain.HeaderVerification;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class HeaderDependencyIndexTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private HeaderDependencyIndex index;
+  private AtomicInteger parses;
+
+  @Before
+  public void setUp() {
+    index = new HeaderDependencyIndex(1024);
+    parses = new AtomicInteger();
+  }
+
+  private HeaderDependencyIndex.Parser parser(String... headers) {
+    return () -> {
+      parses.incrementAndGet();
+      ImmutableList.Builder<Path> paths = ImmutableList.builder();
+      for (String header : headers) {
+        // New path objects every time, like a parser creates.
+        paths.add(Paths.get("/project", header));
+      }
+      return paths.build();
+    };
+  }
+
+  private static HashCode key(String contents) {
+    return HeaderDependencyIndex.newKeyHasher()
+        .putString(contents, StandardCharsets.UTF_8)
+        .hash();
+  }
+
+  @Test
+  public void depfilesAreParsedOnce() throws IOException {
+    ImmutableList<Path> headers = index.getHeaders(key("a.o: a.c a.h"), parser("a.h"));
+    assertEquals(ImmutableList.of(Paths.get("/project/a.h")), headers);
+    assertSame(headers, index.getHeaders(key("a.o: a.c a.h"), parser("a.h")));
+    assertEquals(1, parses.get());
+  }
+
+  @Test
+  public void changedDepfilesAreParsedAgain() throws IOException {
+    index.getHeaders(key("a.o: a.c a.h"), parser("a.h"));
+    ImmutableList<Path> headers = index.getHeaders(key("a.o: a.c a.h b.h"), parser("a.h", "b.h"));
+    assertEquals(ImmutableList.of(Paths.get("/project/a.h"), Paths.get("/project/b.h")), headers);
+    assertEquals(2, parses.get());
+  }
+
+  @Test
+  public void depfilesShareTheSameHeaderPaths() throws IOException {
+    ImmutableList<Path> first = index.getHeaders(key("a.o: a.c common.h"), parser("common.h"));
+    ImmutableList<Path> second = index.getHeaders(key("b.o: b.c common.h"), parser("common.h"));
+    assertSame(first.get(0), second.get(0));
+  }
+
+  @Test
+  public void depfilesWithTheSameSizeAndModificationTimeAreToldApart() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem(tmp.getRoot());
+    HeaderPathNormalizer normalizer =
+        new HeaderPathNormalizer.Builder(new TestActionGraphBuilder().getSourcePathResolver())
+            .addHeader(PathSourcePath.of(filesystem, Paths.get("a.h")))
+            .addHeader(PathSourcePath.of(filesystem, Paths.get("b.h")))
+            .build();
+    Path depfile = Paths.get("a.o.dep");
+    FileTime modificationTime = FileTime.fromMillis(1000);
+
+    filesystem.writeContentsToPath("a.o: a.c a.h\n", depfile);
+    filesystem.setLastModifiedTime(depfile, modificationTime);
+    ImmutableList<Path> headers = ImmutableList.of(filesystem.resolve("a.h"));
+    assertEquals(headers, parseDepfile(filesystem, normalizer, depfile));
+    assertEquals(headers, parseDepfile(filesystem, normalizer, depfile));
+
+    filesystem.writeContentsToPath("a.o: a.c b.h\n", depfile);
+    filesystem.setLastModifiedTime(depfile, modificationTime);
+    assertEquals(
+        ImmutableList.of(filesystem.resolve("b.h")),
+        parseDepfile(filesystem, normalizer, depfile));
+  }
+
+  private static ImmutableList<Path> parseDepfile(
+      ProjectFilesystem filesystem, HeaderPathNormalizer normalizer, Path depfile)
+      throws Exception {
+    return Depfiles.parseAndVerifyDependencies(
+        BuckEventBusForTests.newInstance(),
+        filesystem,
+        normalizer,
+        HeaderVerification.of(HeaderVerification.Mode.ERROR),
+        depfile,
+        Paths.get("a.c"),
+        Paths.get("a.o"),
+        DependencyTrackingMode.MAKEFILE,
+        false);
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.facebook.buck.cxx;
 
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.core.sourcepath.PathSourcePath;
@@ -110,4 +112,29 @@ public class HeaderPathNormalizerTest {
         normalizer.getSourcePathForAbsolutePath(pathResolver.getAbsolutePath(headerPath)),
         Matchers.equalTo(headerPath));
   }
+
+  @Test
+  public void normalizersWithTheSameHeadersShareLookups() {
+    Path header = filesystem.getPath("foo/bar.h");
+    SourcePath headerPath = PathSourcePath.of(filesystem, header);
+    HeaderPathNormalizer first =
+        new HeaderPathNormalizer.Builder(new TestActionGraphBuilder().getSourcePathResolver())
+            .addHeader(headerPath)
+            .build();
+    SourcePathResolver pathResolver = new TestActionGraphBuilder().getSourcePathResolver();
+    HeaderPathNormalizer second =
+        new HeaderPathNormalizer.Builder(pathResolver).addHeader(headerPath).build();
+    HeaderPathNormalizer other =
+        new HeaderPathNormalizer.Builder(pathResolver)
+            .addHeader(PathSourcePath.of(filesystem, filesystem.getPath("foo/baz.h")))
+            .build();
+    assertTrue(first.sharesLookupsWith(second));
+    assertFalse(first.sharesLookupsWith(other));
+    assertThat(
+        second.getAbsolutePathForUnnormalizedPath(filesystem.resolve(header)),
+        Matchers.equalTo(Optional.of(pathResolver.getAbsolutePath(headerPath))));
+    assertThat(
+        other.getAbsolutePathForUnnormalizedPath(filesystem.resolve(header)),
+        Matchers.equalTo(Optional.empty()));
+  }
 }
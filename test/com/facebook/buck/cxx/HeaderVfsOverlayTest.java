@@ -0,0 +1,225 @@
+/*
+ * Copyright 2015-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.build.buildable.context.FakeBuildableContext;
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.build.context.FakeBuildContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.impl.BuildTargetPaths;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.PathSourcePath;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.io.BuildCellRelativePath;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.rules.keys.TestDefaultRuleKeyFactory;
+import com.facebook.buck.rules.keys.TestInputBasedRuleKeyFactory;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.facebook.buck.util.cache.impl.DefaultFileHashCache;
+import com.facebook.buck.util.cache.impl.StackedFileHashCache;
+import com.facebook.buck.util.hashing.FileHashLoader;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class HeaderVfsOverlayTest {
+
+  @Rule public final TemporaryPaths tmpDir = new TemporaryPaths();
+
+  private ProjectFilesystem projectFilesystem;
+  private BuildTarget buildTarget;
+  private HeaderVfsOverlay buildRule;
+  private ActionGraphBuilder graphBuilder;
+  private SourcePathResolver pathResolver;
+  private ImmutableMap<Path, SourcePath> links;
+  private Path symlinkTreeRoot;
+  private Path overlayPath;
+  private Path file1;
+  private Path file2;
+
+  @Before
+  public void setUp() throws Exception {
+    projectFilesystem = new FakeProjectFilesystem(tmpDir.getRoot());
+    buildTarget = BuildTargetFactory.newInstance("//test:test");
+
+    file1 = tmpDir.newFile();
+    Files.write(file1, "hello world".getBytes(Charsets.UTF_8));
+    file2 = tmpDir.newFile();
+    Files.write(file2, "hello world".getBytes(Charsets.UTF_8));
+
+    links =
+        ImmutableMap.of(
+            Paths.get("file"),
+            PathSourcePath.of(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file1)),
+            Paths.get("directory", "then", "file"),
+            PathSourcePath.of(projectFilesystem, MorePaths.relativize(tmpDir.getRoot(), file2)));
+
+    symlinkTreeRoot =
+        BuildTargetPaths.getGenPath(projectFilesystem, buildTarget, "%s/symlink-tree-root");
+
+    graphBuilder = new TestActionGraphBuilder();
+    pathResolver = graphBuilder.getSourcePathResolver();
+    buildRule =
+        new HeaderVfsOverlay(buildTarget, projectFilesystem, symlinkTreeRoot, links, graphBuilder);
+    graphBuilder.addToIndex(buildRule);
+
+    overlayPath = pathResolver.getRelativePath(buildRule.getSourcePathToOutput());
+  }
+
+  @Test
+  public void testBuildStepsWriteOnlyTheOverlay() {
+    BuildContext buildContext = FakeBuildContext.withSourcePathResolver(pathResolver);
+    FakeBuildableContext buildableContext = new FakeBuildableContext();
+
+    Path absoluteRoot = projectFilesystem.resolve(symlinkTreeRoot);
+    ImmutableList<Step> expectedBuildSteps =
+        ImmutableList.<Step>builder()
+            .addAll(
+                MakeCleanDirectoryStep.of(
+                    BuildCellRelativePath.fromCellRelativePath(
+                        buildContext.getBuildCellRootPath(), projectFilesystem, symlinkTreeRoot)))
+            .add(
+                MkdirStep.of(
+                    BuildCellRelativePath.fromCellRelativePath(
+                        buildContext.getBuildCellRootPath(),
+                        projectFilesystem,
+                        overlayPath.getParent())))
+            .add(
+                RmStep.of(
+                    BuildCellRelativePath.fromCellRelativePath(
+                        buildContext.getBuildCellRootPath(), projectFilesystem, overlayPath)))
+            .add(
+                new VfsOverlayStep(
+                    projectFilesystem,
+                    overlayPath,
+                    ImmutableSortedMap.of(
+                        absoluteRoot.resolve("file"), file1,
+                        absoluteRoot.resolve("directory/then/file"), file2)))
+            .build();
+    ImmutableList<Step> actualBuildSteps = buildRule.getBuildSteps(buildContext, buildableContext);
+    assertEquals(expectedBuildSteps, actualBuildSteps.subList(1, actualBuildSteps.size()));
+  }
+
+  @Test
+  public void testOverlayIsTheOutput() {
+    assertEquals(
+        Optional.of(buildRule.getSourcePathToOutput()), buildRule.getVfsOverlaySourcePath());
+    assertEquals(Optional.empty(), buildRule.getHeaderMapSourcePath());
+    assertThat(overlayPath.toString(), Matchers.endsWith(".vfsoverlay.yaml"));
+  }
+
+  @Test
+  public void testOverlayStepWritesTheSameOverlayForTheSameEntries() throws Exception {
+    Path absoluteRoot = projectFilesystem.resolve(symlinkTreeRoot);
+    ImmutableSortedMap<Path, Path> entries =
+        ImmutableSortedMap.of(
+            absoluteRoot.resolve("file"), file1,
+            absoluteRoot.resolve("directory/then/file"), file2);
+    new VfsOverlayStep(projectFilesystem, overlayPath, entries)
+        .execute(TestExecutionContext.newInstance());
+    String first = projectFilesystem.readFileIfItExists(overlayPath).get();
+    new VfsOverlayStep(
+            projectFilesystem, overlayPath, ImmutableSortedMap.copyOf(entries.descendingMap()))
+        .execute(TestExecutionContext.newInstance());
+    String second = projectFilesystem.readFileIfItExists(overlayPath).get();
+
+    assertEquals(first, second);
+    assertTrue(first.contains(file1.toString()));
+    assertTrue(first.contains(file2.toString()));
+  }
+
+  @Test
+  public void testRuleKeysChangeIfLinkMapChanges() throws Exception {
+    ImmutableMap.Builder<Path, SourcePath> modifiedLinksBuilder = ImmutableMap.builder();
+    for (Path p : links.keySet()) {
+      modifiedLinksBuilder.put(Paths.get("modified").resolve(p), links.get(p));
+    }
+    HeaderVfsOverlay modifiedBuildRule =
+        new HeaderVfsOverlay(
+            buildTarget,
+            projectFilesystem,
+            symlinkTreeRoot,
+            modifiedLinksBuilder.build(),
+            graphBuilder);
+
+    SourcePathRuleFinder ruleFinder = new TestActionGraphBuilder();
+    FileHashLoader hashCache =
+        new StackedFileHashCache(
+            ImmutableList.of(
+                DefaultFileHashCache.createDefaultFileHashCache(
+                    TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot()),
+                    FileHashCacheMode.DEFAULT)));
+    RuleKey key1 = new TestDefaultRuleKeyFactory(hashCache, ruleFinder).build(buildRule);
+    RuleKey key2 = new TestDefaultRuleKeyFactory(hashCache, ruleFinder).build(modifiedBuildRule);
+    assertNotEquals(key1, key2);
+
+    key1 = new TestInputBasedRuleKeyFactory(hashCache, ruleFinder).build(buildRule);
+    key2 = new TestInputBasedRuleKeyFactory(hashCache, ruleFinder).build(modifiedBuildRule);
+    assertNotEquals(key1, key2);
+  }
+
+  @Test
+  public void testInputRuleKeyDoesNotChangeIfHeaderContentsChange() throws IOException {
+    DefaultFileHashCache hashCache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot()),
+            FileHashCacheMode.DEFAULT);
+    FileHashLoader hashLoader = new StackedFileHashCache(ImmutableList.of(hashCache));
+
+    RuleKey defaultKey1 = new TestDefaultRuleKeyFactory(hashLoader, graphBuilder).build(buildRule);
+    RuleKey inputKey1 = new TestInputBasedRuleKeyFactory(hashLoader, graphBuilder).build(buildRule);
+
+    Files.write(file1, "hello other world".getBytes(Charsets.UTF_8));
+    hashCache.invalidateAll();
+
+    RuleKey defaultKey2 = new TestDefaultRuleKeyFactory(hashLoader, graphBuilder).build(buildRule);
+    RuleKey inputKey2 = new TestInputBasedRuleKeyFactory(hashLoader, graphBuilder).build(buildRule);
+
+    // The overlay only refers to the headers, so it needn't be written again when they change.
+    assertNotEquals(defaultKey1, defaultKey2);
+    assertEquals(inputKey1, inputKey2);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.cxx.toolchain.PrefixMapDebugPathSanitizer;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LineMarkerSanitizerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final Path ROOT = Paths.get("/home/user/repo").toAbsolutePath();
+
+  private final LineMarkerSanitizer sanitizer =
+      new LineMarkerSanitizer(
+          ROOT,
+          ImmutableMap.of(Paths.get("buck-out/gen/foo/headers"), Paths.get("foo/include")),
+          new PrefixMapDebugPathSanitizer("/fake", ImmutableBiMap.of())
+              .sanitizer(Optional.of(ROOT)));
+
+  @Test
+  public void mapsHeadersBehindSymlinkTreesToTheirRealPaths() {
+    assertEquals(
+        "# 1 \"foo/include/foo/bar.h\" 1",
+        sanitizer.sanitizeLine("# 1 \"buck-out/gen/foo/headers/foo/bar.h\" 1"));
+    assertEquals(
+        "#line 12 \"foo/include/bar.h\"",
+        sanitizer.sanitizeLine("#line 12 \"buck-out/gen/foo/headers/bar.h\""));
+  }
+
+  @Test
+  public void sanitizesAbsolutePathsInTheRepo() {
+    assertEquals("# 1 \"/fake//\"", sanitizer.sanitizeLine("# 1 \"" + ROOT + "//\""));
+    assertEquals(
+        "# 3 \"/fake/foo/include/bar.h\" 2",
+        sanitizer.sanitizeLine("# 3 \"" + ROOT + "/buck-out/gen/foo/headers/bar.h\" 2"));
+  }
+
+  @Test
+  public void leavesOtherLinesAlone() {
+    for (String line :
+        new String[] {
+          "# 1 \"<built-in>\"",
+          "# 1 \"/usr/include/stdio.h\" 1 3 4",
+          "# 1 \"foo/bar.cpp\"",
+          "#define FOO \"buck-out/gen/foo/headers/bar.h\"",
+          "#pragma once",
+          "#",
+          "# 1",
+          "int x = 1;",
+        }) {
+      assertEquals(line, sanitizer.sanitizeLine(line));
+    }
+  }
+
+  @Test
+  public void keepsEscapedCharactersInPaths() {
+    assertEquals(
+        "# 1 \"foo/include/a \\\"b\\\"\\\\c.h\"",
+        sanitizer.sanitizeLine("# 1 \"buck-out/gen/foo/headers/a \\\"b\\\"\\\\c.h\""));
+  }
+
+  @Test
+  public void sanitizesOnlyTheLineMarkersOfAFile() throws IOException {
+    Path file = tmp.newFile("source.ii");
+    String contents =
+        "# 1 \"foo/bar.cpp\"\n"
+            + "# 1 \""
+            + ROOT
+            + "//\"\n"
+            + "# 1 \"buck-out/gen/foo/headers/bar.h\" 1\n"
+            + "const char* s = \"buck-out/gen/foo/headers/bar.h\";\r\n"
+            + "\n"
+            + "# 2 \"foo/bar.cpp\" 2\n"
+            + "int main() { return 0; }";
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+
+    sanitizer.sanitize(file);
+
+    String expected =
+        "# 1 \"foo/bar.cpp\"\n"
+            + "# 1 \"/fake//\"\n"
+            + "# 1 \"foo/include/bar.h\" 1\n"
+            + "const char* s = \"buck-out/gen/foo/headers/bar.h\";\r\n"
+            + "\n"
+            + "# 2 \"foo/bar.cpp\" 2\n"
+            + "int main() { return 0; }";
+    assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(file));
+  }
+}
@@ -0,0 +1,3 @@
+static int local_function(void) {
+  return 0;
+}
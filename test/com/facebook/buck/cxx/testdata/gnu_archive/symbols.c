@@ -0,0 +1,16 @@
+int global_variable = 1;
+int common_variable;
+static int local_variable;
+extern int undefined_function(void);
+
+__attribute__((weak)) int weak_function(void) {
+  return 0;
+}
+
+__attribute__((visibility("hidden"))) int hidden_function(void) {
+  return 1;
+}
+
+int global_function(void) {
+  return undefined_function() + local_variable;
+}
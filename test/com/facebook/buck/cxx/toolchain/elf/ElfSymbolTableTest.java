@@ -23,6 +23,7 @@ import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
@@ -67,6 +68,27 @@ public class ElfSymbolTableTest {
     assertThat(someEntry.st_shndx, Matchers.equalTo(0xFFF1));
   }
 
+  @Test
+  public void parallelParsingAndWritingMatchesSequential() throws IOException {
+    for (String file : new String[] {"le64.o", "le32.o", "be32.o"}) {
+      Elf elf = ElfFile.mapReadOnly(workspace.resolve(file));
+      ByteBuffer body =
+          elf.getSectionByName(".symtab").orElseThrow(RuntimeException::new).getSection().body;
+      ElfSymbolTable sequential =
+          ElfSymbolTable.parse(elf.header.ei_class, body.duplicate().order(body.order()));
+      ElfSymbolTable parallel = ElfSymbolTable.parse(elf.header.ei_class, body, 2);
+      assertThat(body.hasRemaining(), Matchers.is(false));
+      assertThat(parallel.entries.size(), Matchers.equalTo(sequential.entries.size()));
+
+      ByteBuffer sequentialBytes = ByteBuffer.allocate(body.capacity()).order(body.order());
+      sequential.write(elf.header.ei_class, sequentialBytes);
+      ByteBuffer parallelBytes = ByteBuffer.allocate(body.capacity()).order(body.order());
+      parallel.write(elf.header.ei_class, parallelBytes, 2);
+      assertThat(parallelBytes.position(), Matchers.equalTo(sequentialBytes.position()));
+      assertThat(parallelBytes.array(), Matchers.equalTo(sequentialBytes.array()));
+    }
+  }
+
   private ElfSymbolTable parseSymbolTable(String file) throws IOException {
     Elf elf = ElfFile.mapReadOnly(workspace.resolve(file));
     return ElfSymbolTable.parse(
@@ -537,6 +537,44 @@ public class MaterializerDummyFileHashCacheTest {
     }
   }
 
+  @Test
+  public void testStartPreloadingAllFilesDoesNotWaitForContents() throws Exception {
+    SettableFuture<Boolean> future = SettableFuture.create();
+    FileContentsProvider mockFileProvider = EasyMock.createMock(FileContentsProvider.class);
+    expect(
+            mockFileProvider.materializeFileContentsAsync(
+                EasyMock.anyObject(), EasyMock.anyObject()))
+        .andReturn(future);
+    replay(mockFileProvider);
+
+    ProjectFilesystem projectFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(projectDir.getRoot().toPath());
+
+    ProjectFileHashCache mockFileHashCache = EasyMock.createNiceMock(ProjectFileHashCache.class);
+    expect(mockFileHashCache.getFilesystem()).andReturn(projectFilesystem).atLeastOnce();
+    replay(mockFileHashCache);
+
+    BuildJobStateFileHashEntry fileHashEntry = new BuildJobStateFileHashEntry();
+    fileHashEntry.setPath(unixPath(Paths.get("realfile")));
+    BuildJobStateFileHashes fileHashes = new BuildJobStateFileHashes();
+    fileHashes.addToEntries(fileHashEntry);
+
+    MaterializerDummyFileHashCache fileMaterializer =
+        new MaterializerDummyFileHashCache(
+            mockFileHashCache,
+            fileHashes,
+            mockFileProvider,
+            MoreExecutors.newDirectExecutorService());
+
+    // The contents are still being fetched when this returns.
+    fileMaterializer.startPreloadingAllFiles(true);
+    assertFalse(future.isDone());
+
+    future.set(true);
+    fileMaterializer.waitForPreloadedFiles();
+    verify(mockFileProvider);
+  }
+
   @Test
   @SuppressWarnings("PMD.EmptyCatchBlock")
   public void testPreloadAllFilesThrowsException() throws IOException {
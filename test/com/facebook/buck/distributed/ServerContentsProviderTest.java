@@ -250,4 +250,57 @@ public class ServerContentsProviderTest {
       // expected
     }
   }
+
+  @Test
+  public void testFetchedFilesAreWrittenByFileWriteExecutor()
+      throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    FakeExecutor fileWriteExecutor = new FakeExecutor();
+    provider =
+        new ServerContentsProvider(
+            distBuildService,
+            fakeScheduledExecutor,
+            MoreExecutors.newDirectExecutorService(),
+            statsTracker,
+            1,
+            100,
+            MoreExecutors.listeningDecorator(fileWriteExecutor));
+
+    ImmutableMap.Builder<String, byte[]> result = new ImmutableMap.Builder<>();
+    result.put(HASH1, FILE_CONTENTS1.getBytes(StandardCharsets.UTF_8));
+    result.put(HASH2, FILE_CONTENTS2.getBytes(StandardCharsets.UTF_8));
+    expect(distBuildService.multiFetchSourceFiles(ImmutableSet.of(HASH1, HASH2)))
+        .andReturn(result.build())
+        .once();
+    statsTracker.recordPeriodicCasMultiFetch(EasyMock.anyLong());
+    expectLastCall().once();
+    replay(distBuildService);
+    replay(statsTracker);
+
+    Future<?> future1 =
+        provider.materializeFileContentsAsync(
+            new BuildJobStateFileHashEntry().setSha1(HASH1), path1);
+    Future<?> future2 =
+        provider.materializeFileContentsAsync(
+            new BuildJobStateFileHashEntry().setSha1(HASH2), path2);
+    fakeScheduledExecutor.drain();
+
+    // The files have been fetched, but are only written by the file write executor.
+    Assert.assertFalse(future1.isDone());
+    Assert.assertFalse(future2.isDone());
+    Assert.assertFalse(Files.exists(path1));
+
+    fileWriteExecutor.drain();
+    future1.get(FUTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    future2.get(FUTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    verify(distBuildService);
+    verify(statsTracker);
+    Assert.assertArrayEquals(
+        FILE_CONTENTS1.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(path1));
+    Assert.assertArrayEquals(
+        FILE_CONTENTS2.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(path2));
+
+    provider.close();
+    Assert.assertTrue(fileWriteExecutor.isShutdown());
+  }
 }
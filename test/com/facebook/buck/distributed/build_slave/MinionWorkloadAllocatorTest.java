@@ -34,7 +34,11 @@ import com.facebook.buck.distributed.thrift.MinionType;
 import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.event.listener.NoOpCoordinatorBuildRuleEventsPublisher;
+import com.facebook.buck.util.timing.SettableFakeClock;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
@@ -56,6 +60,7 @@ public class MinionWorkloadAllocatorTest {
   private static final int FEW_REMAINING_UNITS = 1;
   private static final int MANY_REMAINING_UNITS = 100;
   private static final int MOST_BUILD_RULES_FINISHED_PERCENTAGE = 100;
+  private static final long START_MILLIS = 1000;
   private static final StampedeId STAMPEDE_ID = new StampedeId().setId("DUMMY_ID");
 
   private DistBuildTraceTracker tracker;
@@ -386,6 +391,62 @@ public class MinionWorkloadAllocatorTest {
     verify(queue);
   }
 
+  @Test
+  public void testWorkUnitOfSlowMinionIsGivenToIdleMinion() {
+    // root depends on a and on b, which are built in parallel.
+    TargetDurationEstimates estimates = TargetDurationEstimates.empty();
+    BuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            DistributableBuildGraphTest.createGraph(
+                ImmutableList.of(new Pair<>("root", "a"), new Pair<>("root", "b")),
+                ImmutableSet.of()),
+            MOST_BUILD_RULES_FINISHED_PERCENTAGE,
+            Optional.of(estimates));
+    SettableFakeClock clock = new SettableFakeClock(START_MILLIS, 0);
+    MinionWorkloadAllocator allocator =
+        new MinionWorkloadAllocator(
+            queue, tracker, Optional.empty(), false, Optional.of(estimates), clock);
+
+    assertWorkUnits(allocator, MINION_ONE, ImmutableList.of(), ImmutableList.of("a"));
+    assertWorkUnits(allocator, MINION_TWO, ImmutableList.of(), ImmutableList.of("b"));
+
+    // Minion two is done, but minion one is not slow yet.
+    clock.setCurrentTimeMillis(START_MILLIS + 1000);
+    assertWorkUnits(allocator, MINION_TWO, ImmutableList.of("b"));
+    Assert.assertEquals(ImmutableMap.of("b", 1000L), estimates.getDurationsMillis());
+
+    // Once minion one is slow, its work unit is taken over by idle minion two, but only once.
+    long slowAfterMillis = MinionWorkloadAllocator.SLOW_WORK_UNIT_MIN_MILLIS;
+    clock.setCurrentTimeMillis(START_MILLIS + slowAfterMillis + 1);
+    assertWorkUnits(allocator, MINION_TWO, ImmutableList.of(), ImmutableList.of("a"));
+    clock.setCurrentTimeMillis(START_MILLIS + 3 * slowAfterMillis);
+    assertWorkUnits(allocator, MINION_THREE, ImmutableList.of());
+
+    // The first of them to finish unblocks the root, and the other one is ignored.
+    assertWorkUnits(allocator, MINION_ONE, ImmutableList.of("a"), ImmutableList.of("root"));
+    assertWorkUnits(allocator, MINION_TWO, ImmutableList.of("a"));
+    Assert.assertFalse(allocator.isBuildFinished());
+    assertWorkUnits(allocator, MINION_ONE, ImmutableList.of("root"));
+    Assert.assertTrue(allocator.isBuildFinished());
+  }
+
+  /** Asks for a single work unit at a time, so that no minion gets all the work. */
+  @SafeVarargs
+  private static void assertWorkUnits(
+      MinionWorkloadAllocator allocator,
+      String minionId,
+      ImmutableList<String> finishedNodes,
+      ImmutableList<String>... expectedWorkUnits) {
+    WorkloadAllocationResult result =
+        allocator.updateMinionWorkloadAllocation(minionId, STANDARD_SPEC, finishedNodes, 1);
+    Assert.assertFalse(result.shouldReleaseMinion);
+    Assert.assertEquals(
+        ImmutableList.copyOf(expectedWorkUnits),
+        result.newWorkUnitsForMinion.stream()
+            .map(workUnit -> ImmutableList.copyOf(workUnit.getBuildTargets()))
+            .collect(ImmutableList.toImmutableList()));
+  }
+
   private static void allocateWorkAndCheckRelease(
       MinionWorkloadAllocator allocator,
       String minionId,
@@ -42,9 +42,13 @@ import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.event.listener.NoOpCoordinatorBuildRuleEventsPublisher;
 import com.facebook.buck.parser.exceptions.NoSuchBuildTargetException;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.types.Pair;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -392,6 +396,105 @@ public class ReverseDepBuildTargetsQueueTest {
     EasyMock.verify(artifactCache);
   }
 
+  @Test
+  public void testTargetsWithLongestCriticalPathAreScheduledFirst() {
+    DistributableBuildGraph graph = createGraphWithShortAndLongPaths();
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            graph,
+            MOST_BUILD_RULES_FINISHED_PERCENTAGE,
+            Optional.of(TargetDurationEstimates.empty()));
+
+    Assert.assertEquals(3, queue.getCriticalPathMillis(graph.getNode("y")));
+    Assert.assertEquals(2, queue.getCriticalPathMillis(graph.getNode("a")));
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 1);
+    Assert.assertEquals(1, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("y", "x"), workUnits.get(0).getBuildTargets());
+  }
+
+  @Test
+  public void testHistoricalDurationsOutweighPathLength() {
+    DistributableBuildGraph graph = createGraphWithShortAndLongPaths();
+    TargetDurationEstimates estimates =
+        new TargetDurationEstimates(
+            Optional.empty(), ImmutableMap.of("a", 1000L, "x", 10L, "y", 10L, "root", 10L));
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            graph, MOST_BUILD_RULES_FINISHED_PERCENTAGE, Optional.of(estimates));
+
+    Assert.assertEquals(1010, queue.getCriticalPathMillis(graph.getNode("a")));
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 1);
+    Assert.assertEquals(1, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("a"), workUnits.get(0).getBuildTargets());
+  }
+
+  @Test
+  public void testRecordedDurationsChangeTheSchedulingOrder() {
+    DistributableBuildGraph graph = createGraphWithShortAndLongPaths();
+    TargetDurationEstimates estimates =
+        new TargetDurationEstimates(
+            Optional.empty(), ImmutableMap.of("a", 10L, "x", 10L, "y", 10L, "root", 10L));
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            graph, MOST_BUILD_RULES_FINISHED_PERCENTAGE, Optional.of(estimates));
+
+    Assert.assertEquals(20, queue.getCriticalPathMillis(graph.getNode("a")));
+    estimates.recordDuration("a", 1000L);
+    Assert.assertEquals(1010, queue.getCriticalPathMillis(graph.getNode("a")));
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 1);
+    Assert.assertEquals(1, workUnits.size());
+    Assert.assertEquals(ImmutableList.of("a"), workUnits.get(0).getBuildTargets());
+  }
+
+  @Test
+  public void testCriticalPathsAreOnlyUpdatedAfterEnoughRecordedDurations() {
+    List<Pair<String, String>> edges = new ArrayList<>();
+    edges.add(new Pair<>("root", "a"));
+    for (int i = 0; i < 20; i++) {
+      edges.add(new Pair<>("root", "n" + i));
+    }
+    DistributableBuildGraph graph =
+        DistributableBuildGraphTest.createGraph(edges, ImmutableSet.of());
+    TargetDurationEstimates estimates =
+        new TargetDurationEstimates(Optional.empty(), ImmutableMap.of("a", 10L, "root", 10L));
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            graph, MOST_BUILD_RULES_FINISHED_PERCENTAGE, Optional.of(estimates));
+
+    // With 22 targets, the paths are updated every 2 recorded durations.
+    estimates.recordDuration("a", 1000L);
+    Assert.assertEquals(20, queue.getCriticalPathMillis(graph.getNode("a")));
+    estimates.recordDuration("n0", 10L);
+    Assert.assertEquals(1010, queue.getCriticalPathMillis(graph.getNode("a")));
+  }
+
+  @Test
+  public void testCriticalPathsOfDeepGraphs() {
+    int depth = 100000;
+    List<Pair<String, String>> edges = new ArrayList<>();
+    for (int i = 0; i < depth; i++) {
+      edges.add(new Pair<>("t" + (i + 1), "t" + i));
+    }
+    DistributableBuildGraph graph =
+        DistributableBuildGraphTest.createGraph(edges, ImmutableSet.of());
+    ReverseDepBuildTargetsQueue queue =
+        new ReverseDepBuildTargetsQueue(
+            graph,
+            MOST_BUILD_RULES_FINISHED_PERCENTAGE,
+            Optional.of(TargetDurationEstimates.empty()));
+
+    Assert.assertEquals(
+        (depth + 1) * TargetDurationEstimates.DEFAULT_DURATION_MILLIS,
+        queue.getCriticalPathMillis(graph.getNode("t0")));
+  }
+
+  /** root depends on a and on x, x depends on y: y is further from the top than a. */
+  private static DistributableBuildGraph createGraphWithShortAndLongPaths() {
+    return DistributableBuildGraphTest.createGraph(
+        ImmutableList.of(new Pair<>("root", "a"), new Pair<>("root", "x"), new Pair<>("x", "y")),
+        ImmutableSet.of());
+  }
+
   public static BuildTargetsQueue createDiamondDependencyQueue() throws NoSuchBuildTargetException {
     return createQueueWithoutRemoteCache(
         CustomActionGraphBuilderFactory.createDiamondDependencyGraph(),
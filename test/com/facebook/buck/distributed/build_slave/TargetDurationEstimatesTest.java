@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.distributed.build_slave;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class TargetDurationEstimatesTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void testUnknownTargetsAreEstimatedFromTheKnownOnes() {
+    TargetDurationEstimates estimates = TargetDurationEstimates.empty();
+    Assert.assertEquals(
+        TargetDurationEstimates.DEFAULT_DURATION_MILLIS,
+        estimates.getEstimatedDurationMillis("//foo:bar"));
+
+    estimates.recordDuration("//foo:one", 100);
+    estimates.recordDuration("//foo:two", 300);
+    estimates.recordDuration("//foo:two", 500);
+    Assert.assertEquals(500, estimates.getEstimatedDurationMillis("//foo:two"));
+    Assert.assertEquals(300, estimates.getEstimatedDurationMillis("//foo:bar"));
+  }
+
+  @Test
+  public void testDurationsAreKeptAcrossBuilds() throws IOException {
+    Path historyFile = tmp.getRoot().resolve("history").resolve("durations");
+    TargetDurationEstimates missingHistory = TargetDurationEstimates.load(Optional.of(historyFile));
+    Assert.assertEquals(ImmutableMap.of(), missingHistory.getDurationsMillis());
+
+    missingHistory.recordDuration("//foo:one", 100);
+    missingHistory.recordDuration("//foo:two", 200);
+    missingHistory.save();
+
+    TargetDurationEstimates history = TargetDurationEstimates.load(Optional.of(historyFile));
+    Assert.assertEquals(
+        ImmutableMap.of("//foo:one", 100L, "//foo:two", 200L), history.getDurationsMillis());
+  }
+}
@@ -984,6 +984,22 @@ public class DefaultJavaLibraryTest extends AbiCompilationModeTest {
     assertThat(steps, Matchers.hasItem(Matchers.instanceOf(JarDirectoryStep.class)));
   }
 
+  @Test
+  public void testIncrementalCompilationReplacesJavacStep() {
+    DefaultJavaLibrary javaLibraryBuildRule =
+        JavaLibraryBuilder.createBuilder(
+                BuildTargetFactory.newInstance("//:lib"),
+                JavacOptions.builder(DEFAULT_JAVAC_OPTIONS).setCompileIncrementally(true).build())
+            .addSrc(Paths.get("foo/Bar.java"))
+            .build(graphBuilder);
+
+    ImmutableList<Step> steps =
+        javaLibraryBuildRule.getBuildSteps(createBuildContext(), new FakeBuildableContext());
+
+    assertThat(steps, Matchers.hasItem(Matchers.instanceOf(IncrementalJavacStep.class)));
+    assertThat(steps, Matchers.not(Matchers.hasItem(Matchers.instanceOf(JavacStep.class))));
+  }
+
   /** Tests that input-based rule keys work properly with generated sources. */
   @Test
   public void testInputBasedRuleKeySourceChange() throws Exception {
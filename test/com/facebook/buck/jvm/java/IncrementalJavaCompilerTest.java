@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavaCompilerTest {
+
+  private static final Path CLASSES = Paths.get("classes");
+  private static final Path LIBRARY_JAR = Paths.get("library.jar");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private List<ImmutableSet<String>> rounds;
+  private ImmutableList<Path> classpath;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    rounds = new ArrayList<>();
+    classpath = ImmutableList.of();
+    writeSource("A", "public class A { public int value() { return 1; } }");
+    writeSource("B", "public class B { long get() { return new A().value(); } }");
+    writeSource("C", "public class C {}");
+  }
+
+  @Test
+  public void firstCompilationCompilesEverything() throws Exception {
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B", "C")), rounds);
+  }
+
+  @Test
+  public void unchangedLibraryCompilesNothing() throws Exception {
+    compile(Paths.get("state"));
+    rounds.clear();
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(), rounds);
+  }
+
+  @Test
+  public void implementationChangeOnlyRecompilesTheChangedFile() throws Exception {
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeSource("A", "public class A { public int value() { return 2; } }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A")), rounds);
+    assertSameAsFullCompilation();
+  }
+
+  @Test
+  public void abiChangeRecompilesUsers() throws Exception {
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeSource("A", "public class A { public long value() { return 1; } }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B")), rounds);
+    assertSameAsFullCompilation();
+  }
+
+  @Test
+  public void addedSourceFileCompilesEverything() throws Exception {
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeSource("D", "public class D extends C {}");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B", "C", "D")), rounds);
+  }
+
+  @Test
+  public void changedConstantCompilesEverything() throws Exception {
+    writeSource("C", "public class C { public static final int VALUE = 1; }");
+    writeSource("B", "public class B { int get() { return C.VALUE; } }");
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeSource("C", "public class C { public static final int VALUE = 2; }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B", "C")), rounds);
+    assertSameAsFullCompilation();
+  }
+
+  @Test
+  public void classpathImplementationChangeCompilesNothing() throws Exception {
+    useLibrary("public class L { public static int get() { return 1; } }");
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeLibrary("public class L { public static int get() { return 2; } }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(), rounds);
+  }
+
+  @Test
+  public void classpathAbiChangeRecompilesUsers() throws Exception {
+    useLibrary("public class L { public static int get() { return 1; } }");
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeLibrary("public class L { public static long get() { return 1; } }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("C")), rounds);
+    assertSameAsFullCompilation();
+  }
+
+  @Test
+  public void classpathConstantChangeCompilesEverything() throws Exception {
+    useLibrary("class L { public static final int V = 1; static int get() { return 1; } }");
+    compile(Paths.get("state"));
+    rounds.clear();
+    writeLibrary("class L { public static final int V = 2; static int get() { return 1; } }");
+    compile(Paths.get("state"));
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B", "C")), rounds);
+    assertSameAsFullCompilation();
+  }
+
+  /** Puts a jar with the class {@code L} on the classpath, used by {@code C} only. */
+  private void useLibrary(String contents) throws IOException {
+    writeLibrary(contents);
+    classpath = ImmutableList.of(filesystem.resolve(LIBRARY_JAR));
+    writeSource("C", "public class C { long get() { return L.get(); } }");
+  }
+
+  private void writeLibrary(String contents) throws IOException {
+    Path source = Paths.get("library-src", "L.java");
+    Path classes = Paths.get("library-classes");
+    filesystem.mkdirs(source.getParent());
+    filesystem.writeContentsToPath(contents, source);
+    filesystem.deleteRecursivelyIfExists(classes);
+    filesystem.mkdirs(classes);
+    assertEquals(0, runJavac(ImmutableSortedSet.of(source), classes, ImmutableList.of()));
+    try (JarOutputStream jar = new JarOutputStream(filesystem.newFileOutputStream(LIBRARY_JAR))) {
+      jar.putNextEntry(new JarEntry("L.class"));
+      jar.write(Files.readAllBytes(filesystem.resolve(classes.resolve("L.class"))));
+    }
+  }
+
+  private void assertSameAsFullCompilation() throws Exception {
+    Path full = Paths.get("full-classes");
+    compile(Paths.get("full-state"), full);
+    for (String name : ImmutableList.of("A", "B", "C")) {
+      assertArrayEquals(
+          name,
+          Files.readAllBytes(filesystem.resolve(full.resolve(name + ".class"))),
+          Files.readAllBytes(filesystem.resolve(CLASSES.resolve(name + ".class"))));
+    }
+  }
+
+  private void compile(Path stateDirectory) throws Exception {
+    compile(stateDirectory, CLASSES);
+  }
+
+  private void compile(Path stateDirectory, Path classesDirectory) throws Exception {
+    ImmutableSortedSet<Path> sources;
+    try (Stream<Path> files = Files.list(tmp.getRoot().resolve("src"))) {
+      sources =
+          files
+              .map(file -> tmp.getRoot().relativize(file))
+              .collect(ImmutableSortedSet.toImmutableSortedSet(Path::compareTo));
+    }
+    int exitCode =
+        new IncrementalJavaCompiler(
+                filesystem, stateDirectory, new SharedClasspathCache(1024 * 1024))
+            .compile(
+                sources,
+                classpath,
+                "configuration",
+                classesDirectory,
+                Optional.empty(),
+                this::javac);
+    assertEquals(0, exitCode);
+  }
+
+  private int javac(ImmutableSortedSet<Path> sourceFiles, Path outputDirectory)
+      throws IOException {
+    rounds.add(
+        sourceFiles.stream()
+            .map(file -> file.getFileName().toString().replace(".java", ""))
+            .collect(ImmutableSet.toImmutableSet()));
+    return runJavac(
+        sourceFiles,
+        outputDirectory,
+        ImmutableList.<Path>builder()
+            .add(filesystem.resolve(outputDirectory))
+            .addAll(classpath)
+            .build());
+  }
+
+  private int runJavac(
+      ImmutableSortedSet<Path> sourceFiles, Path outputDirectory, ImmutableList<Path> classpath)
+      throws IOException {
+    JavaCompiler compiler = SynchronizedToolProvider.getSystemJavaCompiler();
+    try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+      ImmutableList<String> options =
+          ImmutableList.of(
+              "-classpath",
+              Joiner.on(File.pathSeparator).join(classpath),
+              "-d",
+              filesystem.resolve(outputDirectory).toString());
+      boolean success =
+          compiler
+              .getTask(
+                  null,
+                  fileManager,
+                  null,
+                  options,
+                  null,
+                  fileManager.getJavaFileObjectsFromFiles(
+                      sourceFiles.stream()
+                          .map(file -> filesystem.resolve(file).toFile())
+                          .collect(Collectors.toList())))
+              .call();
+      return success ? 0 : 1;
+    }
+  }
+
+  private void writeSource(String name, String contents) throws IOException {
+    filesystem.mkdirs(Paths.get("src"));
+    filesystem.writeContentsToPath(contents, Paths.get("src", name + ".java"));
+  }
+}
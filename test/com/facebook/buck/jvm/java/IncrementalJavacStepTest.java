@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.jvm.java.abi.AbiGenerationMode;
+import com.facebook.buck.jvm.java.abi.source.api.SourceOnlyAbiRuleInfoFactory;
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class IncrementalJavacStepTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private BuildTarget target;
+  private RecordingJavac javac;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    target = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//:lib");
+    javac = new RecordingJavac();
+    writeSource("A", "public class A { public int value() { return 1; } }");
+    writeSource("B", "public class B { long get() { return new A().value(); } }");
+  }
+
+  @Test
+  public void recompilesChangedSourcesAndTheirUsers() throws Exception {
+    execute();
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B")), javac.rounds);
+
+    javac.rounds.clear();
+    writeSource("A", "public class A { public int value() { return 2; } }");
+    execute();
+    assertEquals(ImmutableList.of(ImmutableSet.of("A")), javac.rounds);
+
+    javac.rounds.clear();
+    writeSource("A", "public class A { public long value() { return 2; } }");
+    execute();
+    assertEquals(ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B")), javac.rounds);
+    assertTrue(filesystem.isFile(getClassesDir().resolve("A.class")));
+    assertTrue(filesystem.isFile(getClassesDir().resolve("B.class")));
+  }
+
+  @Test
+  public void changedJavacOptionsCompileEverything() throws Exception {
+    execute();
+    javac.rounds.clear();
+    writeSource("A", "public class A { public int value() { return 2; } }");
+    execute(JavacOptions.builder(createJavacOptions()).addExtraArguments("-g").build());
+    assertEquals(ImmutableList.of(ImmutableSet.of("A", "B")), javac.rounds);
+  }
+
+  private void execute() throws Exception {
+    execute(createJavacOptions());
+  }
+
+  private void execute(JavacOptions javacOptions) throws Exception {
+    CompilerParameters parameters =
+        CompilerParameters.builder()
+            .setScratchPaths(target, filesystem)
+            .setSourceFilePaths(
+                ImmutableSortedSet.of(Paths.get("src", "A.java"), Paths.get("src", "B.java")))
+            .build();
+    CompilerOutputPaths outputPaths = parameters.getOutputPaths();
+    filesystem.deleteRecursivelyIfExists(outputPaths.getClassesDir());
+    filesystem.mkdirs(outputPaths.getClassesDir());
+    filesystem.mkdirs(outputPaths.getPathToSourcesList().getParent());
+    filesystem.mkdirs(outputPaths.getWorkingDirectory());
+
+    ExecutionContext context = TestExecutionContext.newInstance();
+    assertEquals(
+        StepExecutionResults.SUCCESS,
+        new IncrementalJavacStep(
+                javac,
+                javacOptions,
+                target,
+                new TestActionGraphBuilder().getSourcePathResolver(),
+                filesystem,
+                new ClasspathChecker(),
+                parameters)
+            .execute(context));
+  }
+
+  private JavacOptions createJavacOptions() {
+    return JavacOptions.builder()
+        .setLanguageLevelOptions(
+            JavacLanguageLevelOptions.builder().setSourceLevel("8").setTargetLevel("8").build())
+        .build();
+  }
+
+  private Path getClassesDir() {
+    return CompilerOutputPaths.getClassesDir(target, filesystem);
+  }
+
+  private void writeSource(String name, String contents) throws IOException {
+    filesystem.mkdirs(Paths.get("src"));
+    filesystem.writeContentsToPath(contents, Paths.get("src", name + ".java"));
+  }
+
+  /** Compiles with the system compiler, recording the source files of each invocation. */
+  private class RecordingJavac extends FakeJavac {
+    private final List<ImmutableSet<String>> rounds = new ArrayList<>();
+
+    @Override
+    public Invocation newBuildInvocation(
+        JavacExecutionContext context,
+        SourcePathResolver resolver,
+        BuildTarget invokingRule,
+        ImmutableList<String> options,
+        ImmutableList<JavacPluginJsr199Fields> annotationProcessors,
+        ImmutableList<JavacPluginJsr199Fields> javacPlugins,
+        ImmutableSortedSet<Path> javaSourceFilePaths,
+        Path pathToSrcsList,
+        Path workingDirectory,
+        boolean trackClassUsage,
+        boolean trackJavacPhaseEvents,
+        @Nullable JarParameters abiJarParameters,
+        @Nullable JarParameters libraryJarParameters,
+        AbiGenerationMode abiGenerationMode,
+        AbiGenerationMode abiCompatibilityMode,
+        @Nullable SourceOnlyAbiRuleInfoFactory ruleInfoFactory) {
+      rounds.add(
+          javaSourceFilePaths.stream()
+              .map(file -> file.getFileName().toString().replace(".java", ""))
+              .collect(ImmutableSet.toImmutableSet()));
+      return new Invocation() {
+        @Override
+        public int buildSourceOnlyAbiJar() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int buildSourceAbiJar() {
+          throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int buildClasses() {
+          JavaCompiler compiler = SynchronizedToolProvider.getSystemJavaCompiler();
+          try (StandardJavaFileManager fileManager =
+              compiler.getStandardFileManager(null, null, null)) {
+            boolean success =
+                compiler
+                    .getTask(
+                        null,
+                        fileManager,
+                        null,
+                        options,
+                        null,
+                        fileManager.getJavaFileObjectsFromFiles(
+                            javaSourceFilePaths.stream()
+                                .map(file -> filesystem.resolve(file).toFile())
+                                .collect(Collectors.toList())))
+                    .call();
+            return success ? 0 : 1;
+          } catch (IOException e) {
+            return 1;
+          }
+        }
+
+        @Override
+        public void close() {
+          // Nothing to do
+        }
+      };
+    }
+
+    @Override
+    public String getShortName() {
+      return "javac";
+    }
+  }
+}
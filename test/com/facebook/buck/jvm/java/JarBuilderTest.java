@@ -16,27 +16,43 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import com.facebook.buck.util.zip.CustomJarOutputStream;
 import com.facebook.buck.util.zip.CustomZipEntry;
 import com.facebook.buck.util.zip.JarBuilder;
 import com.facebook.buck.util.zip.JarEntryContainer;
 import com.facebook.buck.util.zip.JarEntrySupplier;
+import com.facebook.buck.util.zip.ZipOutputStreams;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipException;
 import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
@@ -170,6 +186,143 @@ public class JarBuilderTest {
     }
   }
 
+  @Test
+  public void testWritesTheSameJarAsWritingEntriesSequentially() throws IOException {
+    Map<String, byte[]> entries = makeEntries();
+    File tempFile = temporaryFolder.newFile();
+    JarBuilder jarBuilder = new JarBuilder();
+    entries.forEach((name, contents) -> addEntry(jarBuilder, name, contents));
+    jarBuilder.createJarFile(tempFile.toPath());
+
+    Path sequentialJar = temporaryFolder.newFile().toPath();
+    try (CustomJarOutputStream jar =
+        ZipOutputStreams.newJarOutputStream(
+            sequentialJar, ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
+      jar.putNextEntry(new CustomZipEntry("META-INF/"));
+      jar.closeEntry();
+      jar.getManifest().getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+      jar.writeManifest();
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        jar.putNextEntry(new CustomZipEntry(entry.getKey()));
+        jar.write(entry.getValue());
+        jar.closeEntry();
+      }
+    }
+
+    assertArrayEquals(Files.readAllBytes(sequentialJar), Files.readAllBytes(tempFile.toPath()));
+  }
+
+  @Test
+  public void testCopiesEntriesOfJarsAsTheyAre() throws IOException {
+    Map<String, byte[]> entries = makeEntries();
+    File originalJar = temporaryFolder.newFile();
+    JarBuilder jarBuilder = new JarBuilder().setShouldHashEntries(true);
+    entries.forEach((name, contents) -> addEntry(jarBuilder, name, contents));
+    jarBuilder.createJarFile(originalJar.toPath());
+
+    File copiedJar = temporaryFolder.newFile();
+    new JarBuilder()
+        .setShouldHashEntries(true)
+        .setEntriesToJar(ImmutableList.of(originalJar.toPath()))
+        .createJarFile(copiedJar.toPath());
+
+    assertArrayEquals(
+        Files.readAllBytes(originalJar.toPath()), Files.readAllBytes(copiedJar.toPath()));
+    try (JarFile jarFile = new JarFile(copiedJar)) {
+      Manifest manifest = jarFile.getManifest();
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        try (InputStream input = jarFile.getInputStream(jarFile.getEntry(entry.getKey()))) {
+          assertArrayEquals(entry.getValue(), ByteStreams.toByteArray(input));
+        }
+        assertEquals(
+            Hashing.murmur3_128().hashBytes(entry.getValue()).toString(),
+            manifest
+                .getAttributes(entry.getKey())
+                .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
+      }
+    }
+  }
+
+  @Test
+  public void testCopiesEntriesOfJarsAsTheyAreWithoutHashingThem() throws IOException {
+    File originalJar = temporaryFolder.newFile();
+    JarBuilder jarBuilder = new JarBuilder();
+    makeEntries().forEach((name, contents) -> addEntry(jarBuilder, name, contents));
+    jarBuilder.createJarFile(originalJar.toPath());
+
+    File copiedJar = temporaryFolder.newFile();
+    new JarBuilder()
+        .setEntriesToJar(ImmutableList.of(originalJar.toPath()))
+        .createJarFile(copiedJar.toPath());
+
+    assertArrayEquals(
+        Files.readAllBytes(originalJar.toPath()), Files.readAllBytes(copiedJar.toPath()));
+  }
+
+  @Test(expected = ZipException.class)
+  public void testChecksCrcOfLargeCopiedEntries() throws IOException {
+    copyJarWithWrongCrc("Entry000", false);
+  }
+
+  @Test(expected = ZipException.class)
+  public void testChecksCrcOfLargeCopiedEntriesWhenHashingThem() throws IOException {
+    copyJarWithWrongCrc("Entry000", true);
+  }
+
+  @Test(expected = ZipException.class)
+  public void testChecksCrcOfSmallCopiedEntries() throws IOException {
+    copyJarWithWrongCrc("Entry001", false);
+  }
+
+  /** Copies a jar in which the CRC of the given entry doesn't match its contents. */
+  private void copyJarWithWrongCrc(String entryName, boolean shouldHashEntries)
+      throws IOException {
+    Path originalJar = temporaryFolder.newFile().toPath();
+    JarBuilder jarBuilder = new JarBuilder();
+    makeEntries().forEach((name, contents) -> addEntry(jarBuilder, name, contents));
+    jarBuilder.createJarFile(originalJar);
+
+    // Change the CRC in the central directory, which is what readers of the jar trust.
+    byte[] jar = Files.readAllBytes(originalJar);
+    ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+    byte[] name = entryName.getBytes(StandardCharsets.UTF_8);
+    int header = buffer.getInt(jar.length - 6);
+    int nameLength = buffer.getShort(header + 28);
+    while (!Arrays.equals(name, Arrays.copyOfRange(jar, header + 46, header + 46 + nameLength))) {
+      header += 46 + nameLength + buffer.getShort(header + 30) + buffer.getShort(header + 32);
+      nameLength = buffer.getShort(header + 28);
+    }
+    buffer.putInt(header + 16, buffer.getInt(header + 16) ^ 1);
+    Files.write(originalJar, jar);
+
+    new JarBuilder()
+        .setShouldHashEntries(shouldHashEntries)
+        .setEntriesToJar(ImmutableList.of(originalJar))
+        .createJarFile(temporaryFolder.newFile().toPath());
+  }
+
+  /** Enough entries to keep all cores busy, some of them too large to be deflated in memory. */
+  private static Map<String, byte[]> makeEntries() {
+    Random random = new Random(0);
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (int i = 0; i < 100; i++) {
+      int size = i % 50 == 0 ? 2 * 1024 * 1024 : random.nextInt(16 * 1024);
+      byte[] contents = new byte[size];
+      // Only a few distinct bytes, so that the contents are actually compressed.
+      for (int j = 0; j < size; j++) {
+        contents[j] = (byte) ('a' + random.nextInt(4));
+      }
+      entries.put(String.format("Entry%03d", i), contents);
+    }
+    return entries;
+  }
+
+  private void addEntry(JarBuilder builder, String name, byte[] contents) {
+    builder.addEntry(
+        new JarEntrySupplier(
+            new CustomZipEntry(name), "owner", () -> new ByteArrayInputStream(contents)));
+  }
+
   private void addEntry(JarBuilder builder, String name, String contents) {
     builder.addEntry(
         new JarEntrySupplier(
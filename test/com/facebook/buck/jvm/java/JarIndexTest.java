@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaFileObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class JarIndexTest {
+
+  private static final byte[] CLASS_A = repeat("A", 1000);
+  private static final byte[] CLASS_B = repeat("B", 10);
+  private static final byte[] SOURCE = "package com.example.sub;".getBytes(StandardCharsets.UTF_8);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private byte[] jarContents;
+  private FileChannel jar;
+  private JarIndex index;
+
+  @Before
+  public void setUp() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+      out.putNextEntry(new ZipEntry("com/"));
+      out.putNextEntry(new ZipEntry("com/example/"));
+      addEntry(out, "com/example/A.class", CLASS_A, ZipEntry.DEFLATED);
+      addEntry(out, "com/example/B.class", CLASS_B, ZipEntry.STORED);
+      addEntry(out, "com/example/sub/C.java", SOURCE, ZipEntry.DEFLATED);
+      addEntry(out, "Root.class", CLASS_B, ZipEntry.DEFLATED);
+      out.setComment("a jar comment");
+    }
+    jarContents = bytes.toByteArray();
+    jar = open(jarContents);
+    index = JarIndex.read(jar);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    jar.close();
+  }
+
+  @Test
+  public void listsPackages() {
+    assertEquals(
+        ImmutableList.of("com/example/A.class", "com/example/B.class"),
+        names(index.list("com.example", EnumSet.of(JavaFileObject.Kind.CLASS), false)));
+    assertEquals(
+        ImmutableList.of("Root.class"),
+        names(index.list("", EnumSet.of(JavaFileObject.Kind.CLASS), false)));
+    assertEquals(
+        ImmutableList.of(),
+        names(index.list("com", EnumSet.allOf(JavaFileObject.Kind.class), false)));
+  }
+
+  @Test
+  public void listsSubpackagesWhenRecursing() {
+    assertEquals(
+        ImmutableSet.of("com/example/A.class", "com/example/B.class", "com/example/sub/C.java"),
+        ImmutableSet.copyOf(
+            names(index.list("com", EnumSet.allOf(JavaFileObject.Kind.class), true))));
+    assertEquals(
+        ImmutableList.of("com/example/sub/C.java"),
+        names(index.list("com", EnumSet.of(JavaFileObject.Kind.SOURCE), true)));
+  }
+
+  @Test
+  public void readsStoredAndDeflatedEntries() throws IOException {
+    assertArrayEquals(CLASS_A, JarIndex.readEntry(jar, index.getEntry("com/example/A.class")));
+    assertArrayEquals(CLASS_B, JarIndex.readEntry(jar, index.getEntry("com/example/B.class")));
+    assertArrayEquals(SOURCE, JarIndex.readEntry(jar, index.getEntry("com/example/sub/C.java")));
+  }
+
+  @Test
+  public void describesEntries() {
+    JarIndex.Entry entry = index.getEntry("com/example/A.class");
+    assertEquals(JavaFileObject.Kind.CLASS, entry.getKind());
+    assertEquals("com.example.A", entry.getBinaryName());
+    assertEquals(JavaFileObject.Kind.SOURCE, index.getEntry("com/example/sub/C.java").getKind());
+    assertNull(index.getEntry("com/example/Missing.class"));
+  }
+
+  @Test(expected = ZipException.class)
+  public void rejectsFilesThatAreNotJars() throws IOException {
+    try (FileChannel notAJar = open("not a jar".getBytes(StandardCharsets.UTF_8))) {
+      JarIndex.read(notAJar);
+    }
+  }
+
+  @Test(expected = ZipException.class)
+  public void rejectsEntriesThatChangedSinceTheJarWasIndexed() throws IOException {
+    int offset = Bytes.indexOf(jarContents, CLASS_B);
+    byte[] rewritten = jarContents.clone();
+    rewritten[offset] = 'C';
+    try (FileChannel rewrittenJar = open(rewritten)) {
+      JarIndex.readEntry(rewrittenJar, index.getEntry("com/example/B.class"));
+    }
+  }
+
+  private FileChannel open(byte[] contents) throws IOException {
+    Path path = Files.createTempFile(tmp.getRoot(), "index", ".jar");
+    Files.write(path, contents);
+    return FileChannel.open(path);
+  }
+
+  private static List<String> names(List<JarIndex.Entry> entries) {
+    return entries.stream().map(JarIndex.Entry::getName).collect(Collectors.toList());
+  }
+
+  private static void addEntry(ZipOutputStream out, String name, byte[] contents, int method)
+      throws IOException {
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(method);
+    if (method == ZipEntry.STORED) {
+      CRC32 crc = new CRC32();
+      crc.update(contents);
+      entry.setCrc(crc.getValue());
+      entry.setSize(contents.length);
+      entry.setCompressedSize(contents.length);
+    }
+    out.putNextEntry(entry);
+    out.write(contents);
+    out.closeEntry();
+  }
+
+  private static byte[] repeat(String string, int times) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      builder.append(string);
+    }
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -56,11 +56,19 @@ public class JavaLibraryBuilder
 
   protected JavaLibraryBuilder(
       BuildTarget target, JavaBuckConfig javaBuckConfig, ProjectFilesystem projectFilesystem) {
+    this(target, javaBuckConfig, projectFilesystem, createToolchainProviderForJavaLibrary());
+  }
+
+  protected JavaLibraryBuilder(
+      BuildTarget target,
+      JavaBuckConfig javaBuckConfig,
+      ProjectFilesystem projectFilesystem,
+      ToolchainProvider toolchainProvider) {
     super(
-        new JavaLibraryDescription(createToolchainProviderForJavaLibrary(), javaBuckConfig),
+        new JavaLibraryDescription(toolchainProvider, javaBuckConfig),
         target,
         projectFilesystem,
-        createToolchainProviderForJavaLibrary());
+        toolchainProvider);
     this.projectFilesystem = projectFilesystem;
   }
 
@@ -87,6 +95,14 @@ public class JavaLibraryBuilder
     return new JavaLibraryBuilder(target, javaBuckConfig, projectFilesystem);
   }
 
+  public static JavaLibraryBuilder createBuilder(BuildTarget target, JavacOptions javacOptions) {
+    return new JavaLibraryBuilder(
+        target,
+        DEFAULT_JAVA_CONFIG,
+        new FakeProjectFilesystem(),
+        createToolchainProviderForJavaLibrary(javacOptions));
+  }
+
   public JavaLibraryBuilder addDep(BuildTarget rule) {
     getArgForPopulating().addDeps(rule);
     return this;
@@ -167,9 +183,13 @@ public class JavaLibraryBuilder
   }
 
   public static ToolchainProvider createToolchainProviderForJavaLibrary() {
+    return createToolchainProviderForJavaLibrary(DEFAULT_JAVAC_OPTIONS);
+  }
+
+  private static ToolchainProvider createToolchainProviderForJavaLibrary(
+      JavacOptions javacOptions) {
     return new ToolchainProviderBuilder()
-        .withToolchain(
-            JavacOptionsProvider.DEFAULT_NAME, JavacOptionsProvider.of(DEFAULT_JAVAC_OPTIONS))
+        .withToolchain(JavacOptionsProvider.DEFAULT_NAME, JavacOptionsProvider.of(javacOptions))
         .withToolchain(JavaToolchain.DEFAULT_NAME, JavaCompilationConstants.DEFAULT_JAVA_TOOLCHAIN)
         .build();
   }
@@ -40,6 +40,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
@@ -315,6 +316,20 @@ public class JavaTestIntegrationTest {
     result.assertSuccess();
   }
 
+  @Test
+  public void testShardedForkMode() throws IOException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "slow_tests", temp);
+    workspace.setUp();
+    // Each test class fails if it runs in the same process as the other one.
+    ProcessResult result =
+        workspace.runBuckCommand("test", "-c", "java.test_shard_count=2", "//:sharded");
+    result.assertSuccess();
+    assertTrue(
+        Files.isRegularFile(
+            workspace.getPath(Paths.get("buck-out/gen/sharded/test_class_durations.json"))));
+  }
+
   @Test
   public void testClasspath() throws IOException {
     ProjectWorkspace workspace =
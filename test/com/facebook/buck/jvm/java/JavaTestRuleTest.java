@@ -35,6 +35,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalInt;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
@@ -108,6 +109,19 @@ public class JavaTestRuleTest {
     assertEquals(expected, amended);
   }
 
+  @Test
+  public void shardCountDefaultsToAFewShards() {
+    assertThat(JavaTest.getShardCount(false, OptionalInt.empty()), Matchers.lessThanOrEqualTo(4));
+    assertThat(JavaTest.getShardCount(false, OptionalInt.empty()), Matchers.greaterThan(0));
+    assertEquals(6, JavaTest.getShardCount(false, OptionalInt.of(6)));
+  }
+
+  @Test
+  public void debuggedTestsRunInASingleShard() {
+    assertEquals(1, JavaTest.getShardCount(true, OptionalInt.empty()));
+    assertEquals(1, JavaTest.getShardCount(true, OptionalInt.of(6)));
+  }
+
   @Test
   public void transitiveLibraryDependenciesAreRuntimeDeps() {
     ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
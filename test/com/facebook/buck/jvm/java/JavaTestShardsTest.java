@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class JavaTestShardsTest {
+
+  @Test
+  public void balancesShardsByDuration() {
+    ImmutableList<ImmutableSet<String>> shards =
+        JavaTestShards.balance(
+            ImmutableList.of("A", "B", "C", "D", "E"),
+            ImmutableMap.of("A", 10L, "B", 7L, "C", 5L, "D", 3L, "E", 2L),
+            2);
+
+    assertEquals(
+        ImmutableList.of(ImmutableSet.of("A", "D"), ImmutableSet.of("B", "C", "E")), shards);
+  }
+
+  @Test
+  public void assumesClassesWithoutDurationsTakeTheAverageDuration() {
+    ImmutableList<ImmutableSet<String>> shards =
+        JavaTestShards.balance(
+            ImmutableList.of("A", "B", "New"), ImmutableMap.of("A", 30L, "B", 10L), 2);
+
+    // "New" is assumed to take 20, so it goes with "B" rather than with "A".
+    assertEquals(ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("New", "B")), shards);
+  }
+
+  @Test
+  public void doesNotMakeMoreShardsThanClasses() {
+    ImmutableList<ImmutableSet<String>> shards =
+        JavaTestShards.balance(ImmutableList.of("A", "B"), ImmutableMap.of(), 8);
+
+    assertEquals(ImmutableList.of(ImmutableSet.of("A"), ImmutableSet.of("B")), shards);
+  }
+
+  @Test
+  public void recordedDurationsAreReadBackAndKeepClassesThatDidNotRun() {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("buck-out/gen/test/test_class_durations.json");
+
+    assertEquals(ImmutableMap.of(), JavaTestShards.readDurations(filesystem, path));
+
+    JavaTestShards.recordDurations(filesystem, path, ImmutableMap.of("A", 10L, "B", 20L));
+    JavaTestShards.recordDurations(filesystem, path, ImmutableMap.of("B", 5L));
+
+    assertEquals(
+        ImmutableMap.of("A", 10L, "B", 5L), JavaTestShards.readDurations(filesystem, path));
+  }
+
+  @Test
+  public void unreadableDurationsAreIgnored() throws Exception {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("test_class_durations.json");
+    filesystem.writeContentsToPath("not json", path);
+
+    assertEquals(ImmutableMap.of(), JavaTestShards.readDurations(filesystem, path));
+  }
+}
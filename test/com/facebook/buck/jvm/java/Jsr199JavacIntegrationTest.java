@@ -125,7 +125,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            /* shouldUseSharedClasspathCache */ false);
 
     int exitCode =
         javac
@@ -180,7 +181,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            /* shouldUseSharedClasspathCache */ false);
 
     int exitCode =
         javac
@@ -283,7 +285,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            /* shouldUseSharedClasspathCache */ false);
 
     boolean caught = false;
 
@@ -376,7 +379,8 @@ public class Jsr199JavacIntegrationTest {
             createProjectFilesystem(),
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
-            executionContext.getProcessExecutor());
+            executionContext.getProcessExecutor(),
+            /* shouldUseSharedClasspathCache */ false);
 
     Invocation buildInvocation =
         javac.newBuildInvocation(
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SharedClasspathCacheTest {
+
+  private static final String ENTRY_NAME = "com/example/A.class";
+  private static final byte[] CLASS_FILE = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+  private static final byte[] OTHER_CLASS_FILE = {(byte) 0xCA, (byte) 0xFE, (byte) 0xD0, 0x0D};
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private SharedClasspathCache cache;
+  private AtomicInteger loads;
+
+  @Before
+  public void setUp() {
+    cache = new SharedClasspathCache(1024 * 1024);
+    loads = new AtomicInteger();
+  }
+
+  private SharedClasspathCache.Loader loader() {
+    return () -> {
+      loads.incrementAndGet();
+      return CLASS_FILE;
+    };
+  }
+
+  @Test
+  public void classFilesAreReadOnce() throws IOException {
+    Path jar = writeJar("a.jar", CLASS_FILE);
+    SharedClasspathCache.IndexedJar indexedJar = cache.getIndexedJar(jar).get();
+    JarIndex.Entry entry = indexedJar.getIndex().getEntry(ENTRY_NAME);
+
+    assertArrayEquals(CLASS_FILE, cache.getClassFile(jar, ENTRY_NAME, loader()));
+    Files.delete(jar);
+    assertArrayEquals(CLASS_FILE, cache.getEntry(indexedJar, entry));
+    assertEquals(0, loads.get());
+  }
+
+  @Test
+  public void classFilesOfJarsThatCannotBeIndexedAreNotCached() throws IOException {
+    Path jar = writeFile("a.jar", "not a jar");
+
+    assertArrayEquals(CLASS_FILE, cache.getClassFile(jar, ENTRY_NAME, loader()));
+    assertArrayEquals(CLASS_FILE, cache.getClassFile(jar, ENTRY_NAME, loader()));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void jarsWithSameContentsShareClassFiles() throws IOException {
+    Path first = writeJar("first.jar", CLASS_FILE);
+    Path second = writeJar("second.jar", CLASS_FILE);
+    SharedClasspathCache.IndexedJar secondJar = cache.getIndexedJar(second).get();
+
+    cache.getClassFile(first, ENTRY_NAME, loader());
+    Files.delete(second);
+
+    assertArrayEquals(
+        CLASS_FILE, cache.getEntry(secondJar, secondJar.getIndex().getEntry(ENTRY_NAME)));
+  }
+
+  @Test
+  public void changedJarIsHashedAgain() throws IOException {
+    Path jar = writeFile("a.jar", "contents");
+    String originalHash = cache.getJarHash(jar).toString();
+
+    writeFile("a.jar", "changed contents");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(0));
+
+    assertNotEquals(originalHash, cache.getJarHash(jar).toString());
+  }
+
+  @Test
+  public void rebuiltJarWithSameContentsKeepsItsHash() throws IOException {
+    Path jar = writeFile("a.jar", "contents");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000));
+    String originalHash = cache.getJarHash(jar).toString();
+
+    writeFile("a.jar", "contents");
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(2000));
+
+    assertEquals(originalHash, cache.getJarHash(jar).toString());
+    assertNotEquals(originalHash, cache.getJarHash(writeFile("b.jar", "other")).toString());
+  }
+
+  @Test
+  public void jarRewrittenWithoutChangingItsAttributesIsIndexedAgain() throws IOException {
+    Path jar = writeJar("a.jar", CLASS_FILE);
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000));
+    long size = Files.size(jar);
+    SharedClasspathCache.IndexedJar staleJar = cache.getIndexedJar(jar).get();
+
+    writeJar("a.jar", OTHER_CLASS_FILE);
+    Files.setLastModifiedTime(jar, FileTime.fromMillis(1000));
+    assertEquals(size, Files.size(jar));
+
+    assertArrayEquals(
+        OTHER_CLASS_FILE, cache.getEntry(staleJar, staleJar.getIndex().getEntry(ENTRY_NAME)));
+    assertArrayEquals(OTHER_CLASS_FILE, cache.getClassFile(jar, ENTRY_NAME, loader()));
+    assertEquals(0, loads.get());
+  }
+
+  private Path writeJar(String name, byte[] classFile) throws IOException {
+    Path jar = tmp.getRoot().resolve(name);
+    try (OutputStream stream = Files.newOutputStream(jar);
+        ZipOutputStream out = new ZipOutputStream(stream)) {
+      ZipEntry entry = new ZipEntry(ENTRY_NAME);
+      // Stored, so that jars with class files of the same size have the same size.
+      CRC32 crc = new CRC32();
+      crc.update(classFile);
+      entry.setMethod(ZipEntry.STORED);
+      entry.setCrc(crc.getValue());
+      entry.setSize(classFile.length);
+      entry.setCompressedSize(classFile.length);
+      entry.setTime(0);
+      out.putNextEntry(entry);
+      out.write(classFile);
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  private Path writeFile(String name, String contents) throws IOException {
+    Path file = tmp.getRoot().resolve(name);
+    Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
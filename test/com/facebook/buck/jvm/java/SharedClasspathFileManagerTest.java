@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.jvm.java.javax.SynchronizedToolProvider;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SharedClasspathFileManagerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void compilationsAgainstTheSameJarShareClassFiles() throws IOException {
+    JavaCompiler compiler = SynchronizedToolProvider.getSystemJavaCompiler();
+    Path dependencyClasses = tmp.newFolder("dependency");
+    assertTrue(
+        compile(
+            compiler,
+            new SharedClasspathCache(1024 * 1024),
+            dependencyClasses,
+            ImmutableList.of(),
+            writeSource("Dependency.java", "package dep; public class Dependency {}")));
+    Path jar = tmp.getRoot().resolve("dependency.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+      out.putNextEntry(new ZipEntry("dep/Dependency.class"));
+      Files.copy(dependencyClasses.resolve("dep/Dependency.class"), out);
+      out.closeEntry();
+    }
+
+    SharedClasspathCache cache = new SharedClasspathCache(1024 * 1024);
+    Path source = writeSource("User.java", "public class User { dep.Dependency dependency; }");
+    for (int i = 0; i < 2; i++) {
+      assertTrue(
+          compile(
+              compiler,
+              cache,
+              tmp.newFolder("user" + i),
+              ImmutableList.of("-classpath", jar.toString()),
+              source));
+    }
+
+    byte[] cached =
+        cache.getClassFile(
+            jar,
+            "dep/Dependency.class",
+            () -> {
+              throw new AssertionError("Class file should have been cached");
+            });
+    assertEquals(Files.size(dependencyClasses.resolve("dep/Dependency.class")), cached.length);
+  }
+
+  private static boolean compile(
+      JavaCompiler compiler,
+      SharedClasspathCache cache,
+      Path outputDirectory,
+      ImmutableList<String> classpathOptions,
+      Path source)
+      throws IOException {
+    try (StandardJavaFileManager fileManager =
+        new SharedClasspathFileManager(compiler.getStandardFileManager(null, null, null), cache)) {
+      Iterable<? extends JavaFileObject> compilationUnits =
+          fileManager.getJavaFileObjects(source.toFile());
+      ImmutableList<String> options =
+          ImmutableList.<String>builder()
+              .addAll(classpathOptions)
+              .add("-d", outputDirectory.toString())
+              .build();
+      return compiler.getTask(null, fileManager, null, options, null, compilationUnits).call();
+    }
+  }
+
+  private Path writeSource(String name, String contents) throws IOException {
+    Path source = tmp.getRoot().resolve(name);
+    try (OutputStream out = Files.newOutputStream(source)) {
+      out.write(contents.getBytes(StandardCharsets.UTF_8));
+    }
+    return source;
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -28,6 +29,7 @@ import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Enumeration;
@@ -98,6 +100,35 @@ public class StubJarIntegrationTest {
     assertTrue(filesystem.getFileSize(out) < filesystem.getFileSize(source));
   }
 
+  @Test
+  public void stubOfJarIsTheSameAsStubOfItsExtractedContents() throws IOException {
+    Path source = testDataDir.resolve("junit.jar");
+    Path extracted = temp.newFolder("junit").toPath();
+    try (JarFile jar = new JarFile(source.toFile())) {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        Path file = extracted.resolve(entry.getName());
+        Files.createDirectories(file.getParent());
+        try (InputStream inputStream = jar.getInputStream(entry)) {
+          Files.copy(inputStream, file);
+        }
+      }
+    }
+
+    Path fromJar = Paths.get("from-jar.jar");
+    Path fromDirectory = Paths.get("from-directory.jar");
+    new StubJar(source).writeTo(filesystem, fromJar);
+    new StubJar(extracted).writeTo(filesystem, fromDirectory);
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(fromDirectory)),
+        Files.readAllBytes(filesystem.resolve(fromJar)));
+  }
+
   @Test
   public void abiJarManifestShouldContainHashesOfItsFiles() throws IOException {
     Path out = Paths.get("junit-abi.jar");
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BuildPackageGenerationsTest {
+
+  private static final Path FOO = Paths.get("/repo/foo/BUCK");
+  private static final Path BAR = Paths.get("/repo/bar/BUCK");
+  private static final Path BAR_BAZ = Paths.get("/repo/bar/baz/BUCK");
+
+  private BuildPackageGenerations generations;
+
+  @Before
+  public void setUp() {
+    generations = new BuildPackageGenerations();
+  }
+
+  @Test
+  public void unrelatedInvalidationKeepsResultUpToDate() {
+    long generation = generations.getCurrentGeneration();
+    generations.invalidate(BAR);
+
+    assertTrue(generations.isUpToDate(generation, ImmutableSet.of(FOO), ImmutableSet.of()));
+  }
+
+  @Test
+  public void invalidationOfDependencyMakesResultStale() {
+    long generation = generations.getCurrentGeneration();
+    generations.invalidate(FOO);
+
+    assertFalse(generations.isUpToDate(generation, ImmutableSet.of(FOO), ImmutableSet.of()));
+  }
+
+  @Test
+  public void invalidationBeforeComputationKeepsResultUpToDate() {
+    generations.invalidate(FOO);
+    long generation = generations.getCurrentGeneration();
+
+    assertTrue(generations.isUpToDate(generation, ImmutableSet.of(FOO), ImmutableSet.of()));
+  }
+
+  @Test
+  public void invalidationUnderDirectoryMakesResultStale() {
+    long generation = generations.getCurrentGeneration();
+    generations.invalidate(BAR_BAZ);
+
+    assertFalse(
+        generations.isUpToDate(
+            generation, ImmutableSet.of(), ImmutableSet.of(Paths.get("/repo/bar"))));
+    assertTrue(
+        generations.isUpToDate(
+            generation, ImmutableSet.of(), ImmutableSet.of(Paths.get("/repo/foo"))));
+  }
+
+  @Test
+  public void invalidateAllMakesEveryResultStale() {
+    long generation = generations.getCurrentGeneration();
+    generations.invalidateAll();
+
+    assertFalse(generations.isUpToDate(generation, ImmutableSet.of(), ImmutableSet.of()));
+    assertTrue(
+        generations.isUpToDate(
+            generations.getCurrentGeneration(), ImmutableSet.of(FOO), ImmutableSet.of()));
+  }
+}
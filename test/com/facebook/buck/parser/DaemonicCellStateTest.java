@@ -73,8 +73,8 @@ public class DaemonicCellStateTest {
             .build();
     rootCell = new TestCellBuilder().setFilesystem(filesystem).setBuckConfig(config).build();
     childCell = rootCell.getCell(filesystem.resolve("../xplat").toAbsolutePath());
-    state = new DaemonicCellState(rootCell, 1);
-    childState = new DaemonicCellState(childCell, 1);
+    state = new DaemonicCellState(rootCell, 1, new BuildPackageGenerations());
+    childState = new DaemonicCellState(childCell, 1, new BuildPackageGenerations());
   }
 
   @Test
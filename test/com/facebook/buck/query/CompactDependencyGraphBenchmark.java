@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares the traversals of {@link CompactDependencyGraph} with the equivalent traversals over
+ * object sets, which is how {@link DepsFunction}, {@link RdepsFunction} and {@link
+ * AllPathsFunction} evaluate against environments that do not provide a compact graph.
+ *
+ * <p>The graph is layered like a typical build graph: a few binaries at the top, a wide layer of
+ * libraries in the middle that depend on random libraries in the layers below, and a small number
+ * of widely used leaf libraries.
+ */
+public class CompactDependencyGraphBenchmark {
+
+  @Param({"10000", "100000", "400000"})
+  private int nodeCount = 2000;
+
+  @Param({"8"})
+  private int depsPerNode = 8;
+
+  private static final int LAYERS = 20;
+
+  private List<String> nodes;
+  private ImmutableSetMultimap<String, String> forwardEdges;
+  private ImmutableSetMultimap<String, String> reverseEdges;
+  private CompactDependencyGraph<String> compactGraph;
+  private ImmutableSet<String> universe;
+  private ImmutableSet<String> root;
+  private ImmutableSet<String> leaf;
+
+  @Before
+  @BeforeExperiment
+  public void setUp() {
+    Random random = new Random(42);
+    nodes = new ArrayList<>(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      nodes.add("//pkg" + (i / 16) + ":target" + i);
+    }
+    int layerSize = Math.max(1, nodeCount / LAYERS);
+    ImmutableSetMultimap.Builder<String, String> builder = ImmutableSetMultimap.builder();
+    for (int i = 0; i < nodeCount - layerSize; i++) {
+      int lowerLayerStart = (i / layerSize + 1) * layerSize;
+      for (int d = 0; d < depsPerNode; d++) {
+        int dep = lowerLayerStart + random.nextInt(nodeCount - lowerLayerStart);
+        builder.put(nodes.get(i), nodes.get(dep));
+      }
+    }
+    forwardEdges = builder.build();
+    reverseEdges = forwardEdges.inverse();
+    compactGraph = CompactDependencyGraph.of(nodes, forwardEdges::get, node -> node);
+
+    universe = ImmutableSet.copyOf(nodes.subList(0, layerSize));
+    root = ImmutableSet.of(nodes.get(0));
+    leaf = ImmutableSet.of(nodes.get(nodeCount - 1));
+  }
+
+  @Test
+  public void compactAndObjectTraversalsAgree() {
+    assertEquals(
+        objectDeps(root, Integer.MAX_VALUE), compactGraph.getDeps(root, Integer.MAX_VALUE));
+    assertEquals(
+        objectReverseDeps(universe, leaf, Integer.MAX_VALUE),
+        compactGraph.getReverseDeps(universe, leaf, Integer.MAX_VALUE));
+    assertEquals(objectAllPaths(root, leaf), compactGraph.getAllPaths(root, leaf));
+  }
+
+  /** deps(//pkg0:target0) */
+  @Benchmark
+  public int compactDeps() {
+    return compactGraph.getDeps(root, Integer.MAX_VALUE).size();
+  }
+
+  @Benchmark
+  public int objectDeps() {
+    return objectDeps(root, Integer.MAX_VALUE).size();
+  }
+
+  /** rdeps(top layer, leaf) */
+  @Benchmark
+  public int compactRdeps() {
+    return compactGraph.getReverseDeps(universe, leaf, Integer.MAX_VALUE).size();
+  }
+
+  @Benchmark
+  public int objectRdeps() {
+    return objectReverseDeps(universe, leaf, Integer.MAX_VALUE).size();
+  }
+
+  /** rdeps(top layer, leaf, 1) */
+  @Benchmark
+  public int compactShallowRdeps() {
+    return compactGraph.getReverseDeps(universe, leaf, 1).size();
+  }
+
+  @Benchmark
+  public int objectShallowRdeps() {
+    return objectReverseDeps(universe, leaf, 1).size();
+  }
+
+  /** allpaths(//pkg0:target0, leaf) */
+  @Benchmark
+  public int compactAllPaths() {
+    return compactGraph.getAllPaths(root, leaf).size();
+  }
+
+  @Benchmark
+  public int objectAllPaths() {
+    return objectAllPaths(root, leaf).size();
+  }
+
+  /** The cost of compacting the graph, which is paid once per growth of the query graph */
+  @Benchmark
+  public int buildCompactGraph() {
+    return CompactDependencyGraph.of(nodes, forwardEdges::get, node -> node).size();
+  }
+
+  private Set<String> objectDeps(Set<String> roots, int maxDepth) {
+    Set<String> result = new LinkedHashSet<>(roots);
+    Collection<String> current = roots;
+    for (int i = 0; i < maxDepth && !current.isEmpty(); i++) {
+      Collection<String> next = new ArrayList<>();
+      for (String node : current) {
+        for (String dep : forwardEdges.get(node)) {
+          if (result.add(dep)) {
+            next.add(dep);
+          }
+        }
+      }
+      current = next;
+    }
+    return result;
+  }
+
+  private Set<String> objectReverseDeps(Set<String> universe, Set<String> roots, int maxDepth) {
+    Set<String> closure = objectDeps(universe, Integer.MAX_VALUE);
+    Set<String> visited = new LinkedHashSet<>();
+    Collection<String> current = roots;
+    for (int i = 0; i <= maxDepth; i++) {
+      Set<String> next = new LinkedHashSet<>();
+      for (String node : current) {
+        if (closure.contains(node) && visited.add(node)) {
+          next.addAll(reverseEdges.get(node));
+        }
+      }
+      if (next.isEmpty()) {
+        break;
+      }
+      current = next;
+    }
+    return visited;
+  }
+
+  private Set<String> objectAllPaths(Set<String> from, Set<String> to) {
+    Set<String> reachable = objectDeps(from, Integer.MAX_VALUE);
+    Set<String> result = new LinkedHashSet<>();
+    for (String node : to) {
+      if (reachable.contains(node)) {
+        result.add(node);
+      }
+    }
+    Collection<String> worklist = ImmutableList.copyOf(result);
+    while (!worklist.isEmpty()) {
+      List<String> next = new ArrayList<>();
+      for (String node : worklist) {
+        for (String rdep : reverseEdges.get(node)) {
+          if (reachable.contains(rdep) && result.add(rdep)) {
+            next.add(rdep);
+          }
+        }
+      }
+      worklist = next;
+    }
+    return result;
+  }
+}
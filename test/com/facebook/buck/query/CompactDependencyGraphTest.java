@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactDependencyGraphTest {
+
+  //      a     e
+  //     / \    |
+  //    b   c   f
+  //     \ / \
+  //      d   g
+  private static final ImmutableMultimap<String, String> EDGES =
+      ImmutableMultimap.<String, String>builder()
+          .putAll("a", "b", "c")
+          .putAll("b", "d")
+          .putAll("c", "d", "g")
+          .putAll("e", "f")
+          .build();
+
+  private CompactDependencyGraph<String> graph;
+
+  @Before
+  public void setUp() {
+    graph =
+        CompactDependencyGraph.of(
+            ImmutableList.of("a", "b", "c", "d", "e", "f", "g"), EDGES::get, String::toUpperCase);
+  }
+
+  @Test
+  public void depsAreReturnedLevelByLevel() {
+    assertEquals(
+        ImmutableList.of("A", "B", "C", "D", "G"),
+        new ArrayList<>(graph.getDeps(ImmutableSet.of("A"), Integer.MAX_VALUE)));
+  }
+
+  @Test
+  public void depsRespectDepthBound() {
+    assertEquals(ImmutableSet.of("A"), graph.getDeps(ImmutableSet.of("A"), 0));
+    assertEquals(ImmutableSet.of("A", "B", "C"), graph.getDeps(ImmutableSet.of("A"), 1));
+  }
+
+  @Test
+  public void depsKeepUnknownRoots() {
+    assertEquals(
+        ImmutableSet.of("Z", "E", "F"),
+        graph.getDeps(ImmutableSet.of("Z", "E"), Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void reverseDepsAreRestrictedToUniverse() {
+    assertEquals(
+        ImmutableSet.of("D", "B", "C", "A"),
+        graph.getReverseDeps(ImmutableSet.of("A"), ImmutableSet.of("D"), Integer.MAX_VALUE));
+    assertEquals(
+        ImmutableSet.of("D", "C"),
+        graph.getReverseDeps(ImmutableSet.of("C"), ImmutableSet.of("D"), Integer.MAX_VALUE));
+    assertEquals(
+        ImmutableSet.of(),
+        graph.getReverseDeps(ImmutableSet.of("E"), ImmutableSet.of("D"), Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void reverseDepsRespectDepthBound() {
+    assertEquals(
+        ImmutableSet.of("D", "B", "C"),
+        graph.getReverseDeps(ImmutableSet.of("A"), ImmutableSet.of("D"), 1));
+  }
+
+  @Test
+  public void allPathsOnlyContainsNodesOnPaths() {
+    assertEquals(
+        ImmutableSet.of("G", "C", "A"),
+        graph.getAllPaths(ImmutableSet.of("A"), ImmutableSet.of("G")));
+    assertEquals(
+        ImmutableSet.of("D", "B", "C", "A"),
+        graph.getAllPaths(ImmutableSet.of("A"), ImmutableSet.of("D", "F")));
+  }
+
+  @Test
+  public void transitiveClosureIncludesRoots() {
+    assertEquals(
+        ImmutableSet.of("C", "D", "E", "F", "G"),
+        graph.getTransitiveClosure(ImmutableSet.of("C", "E")));
+  }
+
+  @Test
+  public void largeFrontiersAreExpandedInParallel() {
+    int width = 20000;
+    ImmutableMultimap.Builder<Integer, Integer> edges = ImmutableMultimap.builder();
+    ImmutableList.Builder<Integer> nodes = ImmutableList.builder();
+    nodes.add(-1, -2);
+    for (int i = 0; i < width; i++) {
+      nodes.add(i);
+      edges.put(-1, i);
+      edges.put(i, -2);
+    }
+    ImmutableMultimap<Integer, Integer> edgeMap = edges.build();
+    CompactDependencyGraph<Integer> wide =
+        CompactDependencyGraph.of(nodes.build(), edgeMap::get, i -> i);
+
+    assertEquals(width + 2, wide.getDeps(ImmutableSet.of(-1), Integer.MAX_VALUE).size());
+    assertEquals(
+        width + 2,
+        wide.getReverseDeps(ImmutableSet.of(-1), ImmutableSet.of(-2), Integer.MAX_VALUE).size());
+  }
+}
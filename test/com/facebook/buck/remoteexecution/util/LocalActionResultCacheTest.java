@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.remoteexecution.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import build.bazel.remote.execution.v2.ExecutedActionMetadata;
+import com.facebook.buck.remoteexecution.RemoteExecutionServiceClient.ExecutionResult;
+import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
+import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class LocalActionResultCacheTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final GrpcProtocol protocol = new GrpcProtocol();
+  private Path cacheDir;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheDir = tmp.newFolder("results");
+  }
+
+  @Test
+  public void storedResultsAreReadBack() {
+    LocalActionResultCache cache = new LocalActionResultCache(protocol, cacheDir, 1024 * 1024);
+    Digest actionDigest = protocol.computeDigest(new byte[] {1});
+    Digest fileDigest = protocol.computeDigest(new byte[] {2});
+    Digest treeDigest = protocol.computeDigest(new byte[] {3});
+    assertFalse(cache.get(actionDigest).isPresent());
+
+    cache.put(
+        actionDigest,
+        new TestExecutionResult(
+            0,
+            ImmutableList.of(protocol.newOutputFile(Paths.get("a/b"), fileDigest, true)),
+            ImmutableList.of(protocol.newOutputDirectory(Paths.get("c"), treeDigest))));
+
+    ExecutionResult result = cache.get(actionDigest).get();
+    assertEquals(0, result.getExitCode());
+    assertNull(result.getActionResultDigest());
+    OutputFile outputFile = result.getOutputFiles().get(0);
+    assertEquals("a/b", outputFile.getPath());
+    assertEquals(fileDigest, outputFile.getDigest());
+    assertTrue(outputFile.getIsExecutable());
+    OutputDirectory outputDirectory = result.getOutputDirectories().get(0);
+    assertEquals("c", outputDirectory.getPath());
+    assertEquals(treeDigest, outputDirectory.getTreeDigest());
+
+    // The results are on disk, so they are there for the next build too.
+    assertTrue(
+        new LocalActionResultCache(protocol, cacheDir, 1024 * 1024).get(actionDigest).isPresent());
+
+    cache.invalidate(actionDigest);
+    assertFalse(cache.get(actionDigest).isPresent());
+  }
+
+  @Test
+  public void failedActionsAreNotStored() {
+    LocalActionResultCache cache = new LocalActionResultCache(protocol, cacheDir, 1024 * 1024);
+    Digest actionDigest = protocol.computeDigest(new byte[] {1});
+    cache.put(actionDigest, new TestExecutionResult(1, ImmutableList.of(), ImmutableList.of()));
+    assertFalse(cache.get(actionDigest).isPresent());
+  }
+
+  @Test
+  public void leastRecentlyUsedResultsAreDeleted() throws InterruptedException {
+    LocalActionResultCache cache = new LocalActionResultCache(protocol, cacheDir, 1024);
+    ImmutableList.Builder<Digest> digests = ImmutableList.builder();
+    for (int i = 0; i < 20; i++) {
+      Digest actionDigest = protocol.computeDigest(new byte[] {(byte) i});
+      digests.add(actionDigest);
+      cache.put(
+          actionDigest,
+          new TestExecutionResult(
+              0,
+              ImmutableList.of(
+                  protocol.newOutputFile(Paths.get("output" + i), actionDigest, false)),
+              ImmutableList.of()));
+      // Keep reading the first result, so that it's the most recently used one.
+      Thread.sleep(10);
+      assertTrue(cache.get(digests.build().get(0)).isPresent());
+    }
+    cache.close();
+
+    List<Digest> allDigests = digests.build();
+    assertTrue(cache.get(allDigests.get(0)).isPresent());
+    assertFalse(cache.get(allDigests.get(1)).isPresent());
+    assertTrue(cache.get(allDigests.get(19)).isPresent());
+  }
+
+  private static class TestExecutionResult implements ExecutionResult {
+    private final int exitCode;
+    private final List<OutputFile> outputFiles;
+    private final List<OutputDirectory> outputDirectories;
+
+    private TestExecutionResult(
+        int exitCode, List<OutputFile> outputFiles, List<OutputDirectory> outputDirectories) {
+      this.exitCode = exitCode;
+      this.outputFiles = outputFiles;
+      this.outputDirectories = outputDirectories;
+    }
+
+    @Override
+    public List<OutputDirectory> getOutputDirectories() {
+      return outputDirectories;
+    }
+
+    @Override
+    public List<OutputFile> getOutputFiles() {
+      return outputFiles;
+    }
+
+    @Override
+    public int getExitCode() {
+      return exitCode;
+    }
+
+    @Override
+    public Optional<String> getStdout() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<String> getStderr() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Digest getActionResultDigest() {
+      return null;
+    }
+
+    @Override
+    public ExecutedActionMetadata getActionMetadata() {
+      return ExecutedActionMetadata.getDefaultInstance();
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.facebook.buck.remoteexecution.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -36,9 +37,11 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Supplier;
@@ -290,4 +293,71 @@ public class MerkleTreeNodeCacheTest {
                 Paths.get("file.name"),
                 protocol.newSymlinkNode("other.name", Paths.get("target"))));
   }
+
+  @Test
+  public void testDirectoriesWithTheSameContentsShareTheirData() {
+    FileNode fileNode =
+        protocol.newFileNode(protocol.computeDigest("data".getBytes(Charsets.UTF_8)), "a", false);
+    MerkleTreeNode first =
+        new MerkleTreeNodeCache(protocol)
+            .createNode(ImmutableMap.of(Paths.get("first/a"), fileNode), ImmutableMap.of());
+    MerkleTreeNode second =
+        new MerkleTreeNodeCache(protocol)
+            .createNode(ImmutableMap.of(Paths.get("second/dir/a"), fileNode), ImmutableMap.of());
+
+    Map<Digest, NodeData> firstData = new HashMap<>();
+    new MerkleTreeNodeCache(protocol)
+        .forAllData(first, data -> firstData.put(data.getDigest(), data));
+    List<NodeData> secondData = new ArrayList<>();
+    new MerkleTreeNodeCache(protocol).forAllData(second, secondData::add);
+
+    // "first" and "second/dir" have the same contents, even in different caches.
+    NodeData sharedData = secondData.get(2);
+    assertSame(firstData.get(sharedData.getDigest()), sharedData);
+  }
+
+  @Test
+  public void testForAllMissingDataSkipsSubtreesWithNothingMissing() {
+    MerkleTreeNodeCache nodeCache = new MerkleTreeNodeCache(protocol);
+    Digest digest1 = protocol.computeDigest("data1".getBytes(Charsets.UTF_8));
+    Digest digest2 = protocol.computeDigest("data2".getBytes(Charsets.UTF_8));
+    MerkleTreeNode shared =
+        nodeCache.createNode(
+            ImmutableMap.of(
+                Paths.get("lib/file.1"), protocol.newFileNode(digest1, "file.1", false)),
+            ImmutableMap.of());
+    MerkleTreeNode tree =
+        nodeCache.mergeNodes(
+            ImmutableList.of(
+                shared,
+                nodeCache.createNode(
+                    ImmutableMap.of(
+                        Paths.get("src/file.2"), protocol.newFileNode(digest2, "file.2", false)),
+                    ImmutableMap.of())));
+
+    Set<Digest> uploaded = new HashSet<>();
+    List<Path> missingFiles = new ArrayList<>();
+    Set<Digest> missingDirectories = new HashSet<>();
+    nodeCache.forAllMissingData(
+        tree,
+        digest -> !uploaded.contains(digest),
+        data -> missingDirectories.add(data.getDigest()),
+        (path, fileNode) -> missingFiles.add(path));
+    assertEquals(ImmutableList.of(Paths.get("lib/file.1"), Paths.get("src/file.2")), missingFiles);
+    assertEquals(3, missingDirectories.size());
+
+    // Once everything in "lib" is uploaded, it isn't visited anymore.
+    uploaded.add(digest1);
+    nodeCache.forAllData(shared, data -> uploaded.add(data.getDigest()));
+    nodeCache.forAllMissingData(
+        shared, digest -> !uploaded.contains(digest), data -> fail(), (path, fileNode) -> fail());
+    nodeCache.forAllMissingData(
+        tree,
+        digest -> {
+          assertFalse(digest.equals(digest1));
+          return !uploaded.contains(digest);
+        },
+        data -> {},
+        (path, fileNode) -> assertEquals(Paths.get("src/file.2"), path));
+  }
 }
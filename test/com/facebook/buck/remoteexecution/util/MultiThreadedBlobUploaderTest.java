@@ -21,6 +21,7 @@ import com.facebook.buck.remoteexecution.CasBlobUploader.UploadResult;
 import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -31,9 +32,13 @@ import io.grpc.StatusRuntimeException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Test;
@@ -42,7 +47,7 @@ public class MultiThreadedBlobUploaderTest {
   private static final GrpcProtocol PROTOCOL = new GrpcProtocol();
 
   private final int MISSING_CHECK_LIMIT = 1;
-  private final int UPLOAD_SIZE_LIMT = 1;
+  private final int UPLOAD_SIZE_LIMT = 1024;
 
   @Test
   public void testFailedFirstFindingMissingHashesAndSucceedingSecondTime()
@@ -88,8 +93,50 @@ public class MultiThreadedBlobUploaderTest {
     EasyMock.verify(casBlobUploader);
   }
 
+  @Test
+  public void testOverlappingRequestsShareMissingChecksAndUploads()
+      throws IOException, ExecutionException, InterruptedException {
+    ExecutorService service = Executors.newSingleThreadExecutor();
+    CountDownLatch blocked = new CountDownLatch(1);
+    service.submit(
+        () -> {
+          blocked.await();
+          return null;
+        });
+    RecordingCasBlobUploader casBlobUploader = new RecordingCasBlobUploader();
+    MultiThreadedBlobUploader uploader =
+        new MultiThreadedBlobUploader(100, 64, service, casBlobUploader);
+
+    UploadDataSupplier first = createUploadData("backspin").values().asList().get(0);
+    UploadDataSupplier second = createUploadData("sidespin").values().asList().get(0);
+    UploadDataSupplier third = createUploadData("nospin").values().asList().get(0);
+    UploadDataSupplier large =
+        createUploadData(Strings.repeat("topspin", 20)).values().asList().get(0);
+
+    // Both requests are queued before any worker runs, so they share the missing check.
+    ListenableFuture<Void> firstFuture = uploader.addMissing(Stream.of(first, second, first));
+    ListenableFuture<Void> secondFuture = uploader.addMissing(Stream.of(second, third, large));
+    blocked.countDown();
+    firstFuture.get();
+    secondFuture.get();
+
+    Assert.assertEquals(1, casBlobUploader.missingChecks.size());
+    Assert.assertEquals(4, casBlobUploader.missingChecks.get(0).size());
+    Assert.assertEquals(
+        ImmutableList.of(ImmutableSet.of(first, second, third)),
+        casBlobUploader.batches.stream()
+            .map(ImmutableSet::copyOf)
+            .collect(ImmutableList.toImmutableList()));
+    Assert.assertEquals(ImmutableList.of(large), casBlobUploader.streamed);
+    Assert.assertTrue(uploader.containsDigest(large.getDigest()));
+  }
+
   private ImmutableMap<Digest, UploadDataSupplier> createUploadData() {
-    byte[] buffer = "topspin".getBytes();
+    return createUploadData("topspin");
+  }
+
+  private ImmutableMap<Digest, UploadDataSupplier> createUploadData(String contents) {
+    byte[] buffer = contents.getBytes();
     Digest digest = PROTOCOL.computeDigest(buffer);
     UploadDataSupplier supplier =
         new UploadDataSupplier() {
@@ -106,4 +153,31 @@ public class MultiThreadedBlobUploaderTest {
 
     return ImmutableMap.of(digest, supplier);
   }
+
+  /** Reports every digest as missing and records the requests it gets. */
+  private static class RecordingCasBlobUploader implements CasBlobUploader {
+    private final List<List<Digest>> missingChecks = new CopyOnWriteArrayList<>();
+    private final List<List<UploadDataSupplier>> batches = new CopyOnWriteArrayList<>();
+    private final List<UploadDataSupplier> streamed = new CopyOnWriteArrayList<>();
+
+    @Override
+    public ImmutableSet<String> getMissingHashes(List<Digest> requiredDigests) {
+      missingChecks.add(ImmutableList.copyOf(requiredDigests));
+      return requiredDigests.stream().map(Digest::getHash).collect(ImmutableSet.toImmutableSet());
+    }
+
+    @Override
+    public ImmutableList<UploadResult> batchUpdateBlobs(ImmutableList<UploadDataSupplier> blobs) {
+      batches.add(blobs);
+      return blobs.stream()
+          .map(blob -> new UploadResult(blob.getDigest(), 0, null))
+          .collect(ImmutableList.toImmutableList());
+    }
+
+    @Override
+    public UploadResult uploadFromStream(UploadDataSupplier blob) {
+      streamed.add(blob);
+      return new UploadResult(blob.getDigest(), 0, null);
+    }
+  }
 }
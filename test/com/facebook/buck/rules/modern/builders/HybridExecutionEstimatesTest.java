@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.modern.builders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
+import java.util.OptionalDouble;
+import org.junit.Test;
+
+public class HybridExecutionEstimatesTest {
+  @Test
+  public void estimatesFollowTheLatestMeasurements() {
+    HybridExecutionEstimates estimates = new HybridExecutionEstimates();
+    BuildRule rule = new FakeBuildRule("//:rule");
+    assertFalse(estimates.getLocalMillis(rule).isPresent());
+
+    estimates.recordLocal(rule, 100);
+    assertEquals(OptionalDouble.of(100), estimates.getLocalMillis(rule));
+    estimates.recordLocal(rule, 500);
+    assertEquals(OptionalDouble.of(200), estimates.getLocalMillis(rule));
+    assertFalse(estimates.getDelegateMillis(rule).isPresent());
+  }
+
+  @Test
+  public void unknownRuleTypesAreEstimatedByTheAverage() {
+    HybridExecutionEstimates estimates = new HybridExecutionEstimates();
+    estimates.recordDelegate(new FakeBuildRule("//:rule"), 100);
+
+    BuildRule otherTypeRule =
+        new FakeBuildRule("//:other") {
+          @Override
+          public String getType() {
+            return "other_type";
+          }
+        };
+    assertEquals(OptionalDouble.of(100), estimates.getDelegateMillis(otherTypeRule));
+    estimates.recordDelegate(otherTypeRule, 20);
+    assertEquals(OptionalDouble.of(20), estimates.getDelegateMillis(otherTypeRule));
+    assertEquals(OptionalDouble.of(80), estimates.getAverageDelegateMillis());
+  }
+}
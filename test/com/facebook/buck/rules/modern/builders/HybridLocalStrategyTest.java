@@ -425,6 +425,103 @@ public class HybridLocalStrategyTest {
     }
   }
 
+  @Test
+  public void testAdaptiveSchedulingSendsJobsToTheFasterSide() throws Exception {
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(MostExecutors.newMultiThreadExecutor("test", 4));
+
+    try {
+      JobLimitingStrategyContextFactory contextFactory =
+          new JobLimitingStrategyContextFactory(1, service);
+      HybridExecutionEstimates estimates = new HybridExecutionEstimates();
+      estimates.recordLocal(new FakeBuildRule("//:local"), 1000);
+      estimates.recordDelegate(new FakeBuildRule("//:delegate"), 10);
+
+      try (HybridLocalStrategy strategy =
+          new HybridLocalStrategy(
+              1,
+              1,
+              new SimpleBuildRuleStrategy(),
+              new NoOpWorkerRequirementsProvider(),
+              Optional.empty(),
+              Optional.of(estimates))) {
+        List<ListenableFuture<Optional<BuildResult>>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+          FakeBuildRule rule = new FakeBuildRule("//:target-" + i);
+          results.add(
+              Futures.submitAsync(
+                  () -> strategy.build(rule, contextFactory.createContext(rule)).getBuildResult(),
+                  service));
+        }
+
+        // Nothing is allowed to run locally, so all of them must have gone to the delegate.
+        Futures.allAsList(results).get(1, TimeUnit.SECONDS);
+        for (ListenableFuture<Optional<BuildResult>> r : results) {
+          assertTrue(r.get().get().isSuccess());
+        }
+        assertFalse(contextFactory.finished.tryAcquire(20, TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testAdaptiveSchedulingRunsJobsLocallyWhenDelegateIsBackedUp() throws Exception {
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(MostExecutors.newMultiThreadExecutor("test", 4));
+
+    try {
+      AtomicInteger delegateScheduled = new AtomicInteger();
+      BuildRuleStrategy delegate =
+          new SimpleBuildRuleStrategy() {
+            @Override
+            public StrategyBuildResult build(BuildRule rule, BuildStrategyContext strategyContext) {
+              delegateScheduled.incrementAndGet();
+              return StrategyBuildResult.nonCancellable(SettableFuture.create());
+            }
+          };
+      JobLimitingStrategyContextFactory contextFactory =
+          new JobLimitingStrategyContextFactory(1, service);
+      // The delegate is faster, but not by enough to wait for it once it's busy.
+      HybridExecutionEstimates estimates = new HybridExecutionEstimates();
+      estimates.recordLocal(new FakeBuildRule("//:local"), 90);
+      estimates.recordDelegate(new FakeBuildRule("//:delegate"), 50);
+
+      try (HybridLocalStrategy strategy =
+          new HybridLocalStrategy(
+              1,
+              1,
+              delegate,
+              new NoOpWorkerRequirementsProvider(),
+              Optional.empty(),
+              Optional.of(estimates))) {
+        List<ListenableFuture<Optional<BuildResult>>> localResults = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+          FakeBuildRule rule = new FakeBuildRule("//:target-" + i);
+          ListenableFuture<Optional<BuildResult>> result =
+              Futures.submitAsync(
+                  () -> strategy.build(rule, contextFactory.createContext(rule)).getBuildResult(),
+                  service);
+          if (i > 0) {
+            localResults.add(result);
+          }
+          // Schedule the jobs one after the other, so that the first one goes to the delegate.
+          while (delegateScheduled.get() == 0) {
+            Thread.sleep(1);
+          }
+        }
+
+        contextFactory.waiting.release(2);
+        assertTrue(contextFactory.finished.tryAcquire(2, 1, TimeUnit.SECONDS));
+        Futures.allAsList(localResults).get(1, TimeUnit.SECONDS);
+        assertEquals(1, delegateScheduled.get());
+      }
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
   static class SimpleBuildRuleStrategy implements BuildRuleStrategy {
     @Override
     public void close() {}
@@ -15,16 +15,35 @@
  */
 package com.facebook.buck.rules.modern.builders;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import build.bazel.remote.execution.v2.ExecuteOperationMetadata;
 import build.bazel.remote.execution.v2.ExecutedActionMetadata;
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
+import com.facebook.buck.core.build.action.resolver.BuildEngineActionToBuildRuleResolver;
+import com.facebook.buck.core.build.buildable.context.BuildableContext;
+import com.facebook.buck.core.build.context.BuildContext;
+import com.facebook.buck.core.build.context.FakeBuildContext;
+import com.facebook.buck.core.build.distributed.synchronization.impl.NoOpRemoteBuildRuleCompletionWaiter;
+import com.facebook.buck.core.build.engine.BuildEngineBuildContext;
+import com.facebook.buck.core.build.engine.BuildResult;
 import com.facebook.buck.core.build.engine.BuildStrategyContext;
+import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
+import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
+import com.facebook.buck.core.build.engine.impl.CachingBuildEngineFactory;
+import com.facebook.buck.core.build.execution.context.ExecutionContext;
+import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.BuildTargetFactory;
-import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy.StrategyBuildResult;
+import com.facebook.buck.core.rules.build.strategy.DeferredOutput;
+import com.facebook.buck.core.rules.impl.FakeBuildRule;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
@@ -40,16 +59,32 @@ import com.facebook.buck.remoteexecution.UploadDataSupplier;
 import com.facebook.buck.remoteexecution.config.RemoteExecutionConfig;
 import com.facebook.buck.remoteexecution.config.RemoteExecutionStrategyConfig;
 import com.facebook.buck.remoteexecution.grpc.GrpcProtocol;
+import com.facebook.buck.remoteexecution.grpc.GrpcRemoteExecutionServiceServer;
+import com.facebook.buck.remoteexecution.grpc.TestRemoteExecutionClients;
 import com.facebook.buck.remoteexecution.interfaces.Protocol;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.Digest;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputDirectory;
 import com.facebook.buck.remoteexecution.interfaces.Protocol.OutputFile;
 import com.facebook.buck.remoteexecution.proto.WorkerRequirements;
+import com.facebook.buck.remoteexecution.util.LocalActionResultCache;
+import com.facebook.buck.remoteexecution.util.LocalContentAddressedStorage;
 import com.facebook.buck.rules.modern.ModernBuildRule;
 import com.facebook.buck.rules.modern.impl.NoOpModernBuildRule;
+import com.facebook.buck.step.AbstractExecutionStep;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.StepExecutionResults;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.facebook.buck.util.cache.impl.StackedFileHashCache;
+import com.facebook.buck.util.timing.IncrementingFakeClock;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -57,6 +92,7 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
@@ -66,6 +102,7 @@ import java.util.OptionalLong;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import org.junit.After;
 import org.junit.Rule;
@@ -83,6 +120,10 @@ public class RemoteExecutionStrategyTest {
   private RemoteExecutionClients clients;
   private ListeningExecutorService service;
   private RemoteExecutionStrategy strategy;
+  private ModernBuildRule<?> rule;
+  private ActionGraphBuilder graphBuilder;
+  private boolean materializeOutputsOnDemand = false;
+  private Optional<LocalActionResultCache> actionResultCache = Optional.empty();
 
   @After
   public void tearDown() throws Exception {
@@ -92,9 +133,16 @@ public class RemoteExecutionStrategyTest {
   }
 
   public StrategyBuildResult beginBuild() {
+    createStrategy();
+    BuildStrategyContext strategyContext = new SimpleBuildStrategyContext(rule, service);
+    return strategy.build(rule, strategyContext);
+  }
+
+  private void createStrategy() {
     this.service = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
 
-    RemoteExecutionStrategyConfig strategyConfig = new TestRemoteExecutionConfig();
+    RemoteExecutionStrategyConfig strategyConfig =
+        new TestRemoteExecutionConfig(materializeOutputsOnDemand);
 
     RemoteExecutionActionInfo actionInfo =
         RemoteExecutionActionInfo.of(
@@ -135,15 +183,15 @@ public class RemoteExecutionStrategyTest {
             MetadataProviderFactory.emptyMetadataProvider(),
             mbrHelper,
             new NoOpWorkerRequirementsProvider(),
-            service);
+            service,
+            new RemoteOutputsStore(),
+            actionResultCache);
 
     ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
-    SourcePathRuleFinder ruleFinder = new TestActionGraphBuilder();
     BuildTarget target = BuildTargetFactory.newInstance(filesystem, "//some:target");
-    ModernBuildRule rule = new NoOpModernBuildRule(target, filesystem, ruleFinder);
-
-    BuildStrategyContext strategyContext = new SimpleBuildStrategyContext(rule, service);
-    return strategy.build(rule, strategyContext);
+    graphBuilder = new TestActionGraphBuilder();
+    rule = new NoOpModernBuildRule(target, filesystem, graphBuilder);
+    graphBuilder.addToIndex(rule);
   }
 
   @Test
@@ -236,7 +284,248 @@ public class RemoteExecutionStrategyTest {
     strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS);
   }
 
+  @Test
+  public void testOutputsAreMaterializedOnDemand() throws Exception {
+    Path casDir = tmp.newFolder("cas");
+    Path workDir = tmp.newFolder("work");
+    LocalContentAddressedStorage storage = new LocalContentAddressedStorage(casDir, protocol);
+    RemoteExecutionClients casClients =
+        new TestRemoteExecutionClients(
+            new GrpcRemoteExecutionServiceServer(storage, workDir).getServices());
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ContentAddressedStorageClient getContentAddressedStorage() {
+            return casClients.getContentAddressedStorage();
+          }
+
+          @Override
+          public void close() throws IOException {
+            casClients.close();
+          }
+        };
+    materializeOutputsOnDemand = true;
+
+    StrategyBuildResult strategyBuildResult = beginBuild();
+    strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS);
+
+    // The output only exists in the CAS, which the action uploaded it to as an input.
+    Path output = tmp.getRoot().resolve("output");
+    assertFalse(Files.exists(output));
+    assertEquals(
+        ImmutableSet.of(Paths.get("output")), strategy.getDeferredOutputs(rule).keySet());
+    DeferredOutput deferredOutput = strategy.getDeferredOutputs(rule).get(Paths.get("output"));
+    assertEquals(Hashing.sha1().hashBytes(missingData), deferredOutput.getHash());
+    assertEquals(missingData.length, deferredOutput.getSize());
+
+    strategy.materializeDeferredOutputs(ImmutableList.of(rule)).get(2, TimeUnit.SECONDS);
+    assertArrayEquals(missingData, Files.readAllBytes(output));
+    assertEquals(ImmutableMap.of(), strategy.getDeferredOutputs(rule));
+
+    // Materializing them again is a no-op.
+    strategy.materializeDeferredOutputs(ImmutableList.of(rule)).get(2, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testCachedActionResultsAreNotExecutedAgain() throws Exception {
+    actionResultCache =
+        Optional.of(new LocalActionResultCache(protocol, tmp.newFolder("results"), 1024 * 1024));
+    AtomicInteger executions = new AtomicInteger();
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ExecutionHandle execute() {
+            executions.incrementAndGet();
+            return super.execute();
+          }
+        };
+    StrategyBuildResult strategyBuildResult = beginBuild();
+    assertEquals(
+        Optional.of("built remotely"),
+        strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    strategy.close();
+    service.shutdownNow();
+
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ListenableFuture<Void> addMissing() {
+            throw new AssertionError("Inputs of cached actions should not be uploaded.");
+          }
+
+          @Override
+          public ExecutionHandle execute() {
+            throw new AssertionError("Cached actions should not be executed.");
+          }
+        };
+    strategyBuildResult = beginBuild();
+    assertEquals(
+        Optional.of("built remotely - local action cache"),
+        strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    assertEquals(1, executions.get());
+  }
+
+  @Test
+  public void testActionIsExecutedWhenCachedOutputsAreGone() throws Exception {
+    LocalActionResultCache cache =
+        new LocalActionResultCache(protocol, tmp.newFolder("results"), 1024 * 1024);
+    actionResultCache = Optional.of(cache);
+    Digest actionDigest = protocol.computeDigest(new byte[] {1});
+    cache.put(actionDigest, new SimpleRemoteExecutionClients().execute().getResult().get());
+
+    AtomicInteger executions = new AtomicInteger();
+    AtomicInteger materializations = new AtomicInteger();
+    clients =
+        new SimpleRemoteExecutionClients() {
+          @Override
+          public ExecutionHandle execute() {
+            executions.incrementAndGet();
+            return super.execute();
+          }
+
+          @Override
+          public ListenableFuture<Void> materializeOutputs() {
+            if (materializations.getAndIncrement() == 0) {
+              return Futures.immediateFailedFuture(new IOException("Blob not found."));
+            }
+            return super.materializeOutputs();
+          }
+        };
+    StrategyBuildResult strategyBuildResult = beginBuild();
+    assertEquals(
+        Optional.of("built remotely"),
+        strategyBuildResult.getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    assertEquals(1, executions.get());
+    assertEquals(2, materializations.get());
+  }
+
+  @Test
+  public void testCachedResultsAreOnlyUsedWhileTheCasHasTheirOutputsWhenMaterializingOnDemand()
+      throws Exception {
+    materializeOutputsOnDemand = true;
+    actionResultCache =
+        Optional.of(new LocalActionResultCache(protocol, tmp.newFolder("results"), 1024 * 1024));
+    AtomicInteger executions = new AtomicInteger();
+    Path casDir = tmp.newFolder("cas");
+
+    clients = createCasBackedClients(casDir, executions);
+    assertEquals(
+        Optional.of("built remotely"),
+        beginBuild().getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    strategy.close();
+    service.shutdownNow();
+
+    clients = createCasBackedClients(casDir, executions);
+    assertEquals(
+        Optional.of("built remotely - local action cache"),
+        beginBuild().getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    assertEquals(1, executions.get());
+    strategy.close();
+    service.shutdownNow();
+
+    // A CAS that evicted the outputs of the cached result.
+    clients = createCasBackedClients(tmp.newFolder("evicted_cas"), executions);
+    assertEquals(
+        Optional.of("built remotely"),
+        beginBuild().getBuildResult().get(2, TimeUnit.SECONDS).get().getStrategyResult());
+    assertEquals(2, executions.get());
+    strategy.materializeDeferredOutputs(ImmutableList.of(rule)).get(2, TimeUnit.SECONDS);
+    assertArrayEquals(missingData, Files.readAllBytes(tmp.getRoot().resolve("output")));
+  }
+
+  @Test
+  public void testEngineMaterializesOutputsOnDemandForRulesThatReadThem() throws Exception {
+    materializeOutputsOnDemand = true;
+    clients = createCasBackedClients(tmp.newFolder("cas"), new AtomicInteger());
+    createStrategy();
+    ProjectFilesystem filesystem = rule.getProjectFilesystem();
+    Path output = Paths.get("output");
+    BuildRule consumer =
+        new FakeBuildRule("//some:consumer", filesystem, rule) {
+          @Override
+          public ImmutableList<Step> getBuildSteps(
+              BuildContext context, BuildableContext buildableContext) {
+            return ImmutableList.of(
+                new AbstractExecutionStep("read_output") {
+                  @Override
+                  public StepExecutionResult execute(ExecutionContext context) {
+                    return filesystem.exists(output)
+                        ? StepExecutionResults.SUCCESS
+                        : StepExecutionResults.ERROR;
+                  }
+                });
+          }
+        };
+    graphBuilder.addToIndex(consumer);
+
+    FileHashCache fileHashCache =
+        StackedFileHashCache.createDefaultHashCaches(filesystem, FileHashCacheMode.DEFAULT);
+    BuildEngineBuildContext buildContext =
+        BuildEngineBuildContext.builder()
+            .setBuildContext(FakeBuildContext.NOOP_CONTEXT)
+            .setArtifactCache(new NoopArtifactCache())
+            .setBuildId(new BuildId())
+            .setClock(new IncrementingFakeClock())
+            .build();
+    try (CachingBuildEngine cachingBuildEngine =
+        new CachingBuildEngineFactory(
+                graphBuilder,
+                new BuildEngineActionToBuildRuleResolver(),
+                new BuildInfoStoreManager(),
+                new NoOpRemoteBuildRuleCompletionWaiter())
+            .setCachingBuildEngineDelegate(new LocalCachingBuildEngineDelegate(fileHashCache))
+            .setCustomBuildRuleStrategy(strategy)
+            .build()) {
+      BuildResult result =
+          cachingBuildEngine
+              .build(buildContext, TestExecutionContext.newInstance(), consumer)
+              .getResult()
+              .get(5, TimeUnit.SECONDS);
+      assertTrue(result.toString(), result.isSuccess());
+      assertEquals(
+          Optional.of("built remotely"),
+          cachingBuildEngine.getBuildRuleResult(rule.getBuildTarget()).getStrategyResult());
+
+      // The engine recorded the output's digest as its hash before it was written.
+      assertArrayEquals(missingData, Files.readAllBytes(filesystem.resolve(output)));
+      assertEquals(
+          StackedFileHashCache.createDefaultHashCaches(filesystem, FileHashCacheMode.DEFAULT)
+              .get(filesystem, output),
+          fileHashCache.get(filesystem, output));
+    }
+  }
+
+  private RemoteExecutionClients createCasBackedClients(Path casDir, AtomicInteger executions)
+      throws IOException {
+    LocalContentAddressedStorage storage = new LocalContentAddressedStorage(casDir, protocol);
+    RemoteExecutionClients casClients =
+        new TestRemoteExecutionClients(
+            new GrpcRemoteExecutionServiceServer(storage, tmp.newFolder()).getServices());
+    return new SimpleRemoteExecutionClients() {
+      @Override
+      public ExecutionHandle execute() {
+        executions.incrementAndGet();
+        return super.execute();
+      }
+
+      @Override
+      public ContentAddressedStorageClient getContentAddressedStorage() {
+        return casClients.getContentAddressedStorage();
+      }
+
+      @Override
+      public void close() throws IOException {
+        casClients.close();
+      }
+    };
+  }
+
   private static class TestRemoteExecutionConfig implements RemoteExecutionStrategyConfig {
+    private final boolean materializeOutputsOnDemand;
+
+    TestRemoteExecutionConfig(boolean materializeOutputsOnDemand) {
+      this.materializeOutputsOnDemand = materializeOutputsOnDemand;
+    }
 
     @Override
     public int getThreads() {
@@ -282,6 +571,16 @@ public class RemoteExecutionStrategyTest {
     public boolean tryLargerWorkerOnOom() {
       return false;
     }
+
+    @Override
+    public boolean shouldMaterializeOutputsOnDemand() {
+      return materializeOutputsOnDemand;
+    }
+
+    @Override
+    public OptionalLong localActionResultCacheMaxSizeBytes() {
+      return OptionalLong.empty();
+    }
   }
 
   private class SimpleRemoteExecutionClients implements RemoteExecutionClients {
@@ -377,6 +676,11 @@ public class RemoteExecutionStrategyTest {
         public boolean containsDigest(Digest digest) {
           return SimpleRemoteExecutionClients.this.containsDigest(digest);
         }
+
+        @Override
+        public ImmutableSet<String> getMissingHashes(List<Digest> digests) {
+          return ImmutableSet.of();
+        }
       };
     }
 
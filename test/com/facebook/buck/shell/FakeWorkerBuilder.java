@@ -34,6 +34,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Optional;
 import org.immutables.value.Value;
 
 public class FakeWorkerBuilder
@@ -82,6 +83,21 @@ public class FakeWorkerBuilder
       return 0;
     }
 
+    @Override
+    public int getMaxJobsPerWorker() {
+      return 1;
+    }
+
+    @Override
+    public Optional<Long> getIdleTimeoutMillis() {
+      return Optional.empty();
+    }
+
+    @Override
+    public Optional<Long> getMaxResidentMemoryBytes() {
+      return Optional.empty();
+    }
+
     @Override
     public boolean isPersistent() {
       return false;
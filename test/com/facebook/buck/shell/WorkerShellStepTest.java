@@ -23,6 +23,7 @@ import static org.junit.Assert.assertTrue;
 import com.facebook.buck.core.build.execution.context.ExecutionContext;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.event.ConsoleEvent;
@@ -120,11 +121,22 @@ public class WorkerShellStepTest {
             startupCommand,
             startupEnv,
             maxWorkers,
+            1,
+            Optional.empty(),
+            Optional.empty(),
             persistentWorkerKey == null || workerHash == null
                 ? Optional.empty()
                 : Optional.of(WorkerProcessIdentity.of(persistentWorkerKey, workerHash))));
   }
 
+  /** Worker process pools register their counters on the event bus of every build. */
+  private static ImmutableList<BuckEvent> getEventsOtherThanCounterRegistrations(
+      FakeBuckEventListener listener) {
+    return listener.getEvents().stream()
+        .filter(event -> !(event instanceof CounterRegistry.AsyncCounterRegistrationEvent))
+        .collect(ImmutableList.toImmutableList());
+  }
+
   private ExecutionContext createExecutionContextWith(int exitCode, String stdout, String stderr) {
     WorkerJobResult jobResult =
         WorkerJobResult.of(exitCode, Optional.of(stdout), Optional.of(stderr));
@@ -261,11 +273,11 @@ public class WorkerShellStepTest {
     assertThat(exitCode, Matchers.equalTo(0));
 
     // assert that the job's stdout and stderr were written to the console
-    BuckEvent firstEvent = listener.getEvents().get(0);
+    BuckEvent firstEvent = getEventsOtherThanCounterRegistrations(listener).get(0);
     assertTrue(firstEvent instanceof ConsoleEvent);
     assertThat(((ConsoleEvent) firstEvent).getLevel(), Matchers.is(Level.INFO));
     assertThat(((ConsoleEvent) firstEvent).getMessage(), Matchers.is(stdout));
-    BuckEvent secondEvent = listener.getEvents().get(1);
+    BuckEvent secondEvent = getEventsOtherThanCounterRegistrations(listener).get(1);
     assertTrue(secondEvent instanceof ConsoleEvent);
     assertThat(((ConsoleEvent) secondEvent).getLevel(), Matchers.is(Level.WARNING));
     assertThat(((ConsoleEvent) secondEvent).getMessage(), Matchers.is(stderr));
@@ -343,11 +355,11 @@ public class WorkerShellStepTest {
     assertThat(exitCode, Matchers.equalTo(1));
 
     // assert that the job's stderr was written to the console as error, not as warning
-    BuckEvent firstEvent = listener.getEvents().get(0);
+    BuckEvent firstEvent = getEventsOtherThanCounterRegistrations(listener).get(0);
     assertTrue(firstEvent instanceof ConsoleEvent);
     assertThat(((ConsoleEvent) firstEvent).getLevel(), Matchers.is(Level.SEVERE));
     assertThat(((ConsoleEvent) firstEvent).getMessage(), Matchers.is(stderr));
-    BuckEvent secondEvent = listener.getEvents().get(1);
+    BuckEvent secondEvent = getEventsOtherThanCounterRegistrations(listener).get(1);
     assertTrue(secondEvent instanceof ConsoleEvent);
     assertThat(((ConsoleEvent) secondEvent).getLevel(), Matchers.is(Level.INFO));
     assertThat(
@@ -420,7 +432,10 @@ public class WorkerShellStepTest {
             new WorkerProcessPoolFactory(new FakeProjectFilesystem()) {
               @Override
               public WorkerProcess createWorkerProcess(
-                  ProcessExecutorParams processParams, ExecutionContext context, Path tmpDir)
+                  ProcessExecutorParams processParams,
+                  ExecutionContext context,
+                  Path tmpDir,
+                  int maxJobs)
                   throws IOException {
                 try {
                   sleep(5);
@@ -488,7 +503,7 @@ public class WorkerShellStepTest {
     WorkerShellStep step = createWorkerShellStep(params, null, null);
     step.execute(context);
 
-    BuckEvent firstEvent = listener.getEvents().get(0);
+    BuckEvent firstEvent = getEventsOtherThanCounterRegistrations(listener).get(0);
     assertThat(firstEvent, Matchers.instanceOf(ConsoleEvent.class));
 
     ConsoleEvent consoleEvent = (ConsoleEvent) firstEvent;
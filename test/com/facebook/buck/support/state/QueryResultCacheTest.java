@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.support.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.core.cell.TestCellBuilder;
+import com.facebook.buck.core.config.FakeBuckConfig;
+import com.facebook.buck.core.model.BuildTargetFactory;
+import com.facebook.buck.core.model.QueryTarget;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.impl.FakeProjectFilesystem;
+import com.facebook.buck.parser.DaemonicParserState;
+import com.facebook.buck.parser.api.ImmutableBuildFileManifest;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryException;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryResultCacheTest {
+
+  private static final ImmutableSet<QueryTarget> RESULT =
+      ImmutableSet.of(QueryBuildTarget.of(BuildTargetFactory.newInstance("//foo:bar")));
+
+  private ProjectFilesystem filesystem;
+  private Path buildFile;
+  private Cell cell;
+  private BuckEventBus eventBus;
+  private DaemonicParserState parserState;
+  private QueryResultCache cache;
+  private CacheStatsTracker statsTracker;
+  private int loads;
+
+  @Before
+  public void setUp() {
+    filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+    buildFile = filesystem.resolve("foo/BUCK");
+    cell = createCell(ImmutableMap.of("FOO", "1"));
+    eventBus = BuckEventBusForTests.newInstance();
+    parserState = new DaemonicParserState(1);
+    cache = new QueryResultCache(parserState);
+    statsTracker = new InstrumentingCacheStatsTracker();
+    loads = 0;
+  }
+
+  private Cell createCell(ImmutableMap<String, String> environment) {
+    return new TestCellBuilder()
+        .setFilesystem(filesystem)
+        .setBuckConfig(
+            FakeBuckConfig.builder()
+                .setFilesystem(filesystem)
+                .setEnvironment(environment)
+                .build())
+        .build();
+  }
+
+  private ImmutableSet<QueryTarget> get(String key) throws QueryException, InterruptedException {
+    return get(key, cell);
+  }
+
+  private ImmutableSet<QueryTarget> get(String key, Cell rootCell)
+      throws QueryException, InterruptedException {
+    return cache.get(
+        key,
+        rootCell,
+        eventBus,
+        () -> {
+          loads++;
+          return QueryResultCache.Entry.of(RESULT, ImmutableSet.of(buildFile), ImmutableSet.of());
+        },
+        statsTracker);
+  }
+
+  @Test
+  public void repeatedQueryIsServedFromCache() throws Exception {
+    assertEquals(RESULT, get("deps(//foo:bar)"));
+    assertEquals(RESULT, get("deps(//foo:bar)"));
+
+    assertEquals(1, loads);
+    assertEquals(1, statsTracker.getTotalHitCount());
+    assertEquals(1, statsTracker.getTotalMissCount());
+  }
+
+  @Test
+  public void differentQueriesAreCachedSeparately() throws Exception {
+    get("deps(//foo:bar)");
+    get("rdeps(//..., //foo:bar)");
+
+    assertEquals(2, loads);
+    assertEquals(0, statsTracker.getTotalHitCount());
+  }
+
+  @Test
+  public void resultIsRecomputedAfterParserStateIsInvalidated() throws Exception {
+    get("deps(//foo:bar)");
+    parserState.invalidateAllCaches();
+    get("deps(//foo:bar)");
+    get("deps(//foo:bar)");
+
+    assertEquals(2, loads);
+    assertEquals(1, statsTracker.getTotalMissMatchCount());
+    assertEquals(1, statsTracker.getTotalInvalidationCount());
+    assertEquals(1, statsTracker.getTotalHitCount());
+  }
+
+  @Test
+  public void resultIsRecomputedWhenEnvironmentReadByBuildFileChanges() throws Exception {
+    parserState
+        .getRawNodeCache()
+        .putComputedNodeIfNotPresent(
+            cell,
+            buildFile,
+            ImmutableBuildFileManifest.of(
+                ImmutableMap.of("bar", ImmutableMap.of("name", "bar", "buck.base_path", "foo")),
+                ImmutableSortedSet.of(),
+                ImmutableMap.of(),
+                Optional.of(ImmutableMap.of("FOO", Optional.of("1"))),
+                ImmutableList.of()),
+            eventBus);
+
+    get("deps(//foo:bar)");
+    get("deps(//foo:bar)");
+    assertEquals(1, loads);
+
+    get("deps(//foo:bar)", createCell(ImmutableMap.of("FOO", "2")));
+    assertEquals(2, loads);
+    assertEquals(1, statsTracker.getTotalMissMatchCount());
+    assertEquals(1, statsTracker.getTotalHitCount());
+  }
+
+  @Test
+  public void failedQueriesAreNotCached() throws Exception {
+    try {
+      cache.get(
+          "deps(//foo:bar)",
+          cell,
+          eventBus,
+          () -> {
+            throw new QueryException("no such target");
+          },
+          statsTracker);
+      fail("Expected the failure to be propagated");
+    } catch (QueryException e) {
+      // expected
+    }
+
+    assertEquals(RESULT, get("deps(//foo:bar)"));
+    assertEquals(1, loads);
+    assertEquals(2, statsTracker.getTotalMissCount());
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.util.cache.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.core.io.ArchiveMemberPath;
@@ -30,6 +31,8 @@ import com.facebook.buck.util.config.ConfigBuilder;
 import com.facebook.buck.util.zip.CustomJarOutputStream;
 import com.facebook.buck.util.zip.ZipOutputStreams;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -344,6 +347,17 @@ public class StackedFileHashCacheTest {
         filesystem, archiveMemberPath.getArchivePath(), archiveMemberPath.getMemberPath());
   }
 
+  @Test
+  public void setsHashesOfFilesThatAreNotWrittenYet() throws IOException {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path path = filesystem.getBuckPaths().getGenDir().resolve("world.txt");
+    StackedFileHashCache cache =
+        StackedFileHashCache.createDefaultHashCaches(filesystem, fileHashCacheMode);
+    HashCode hashCode = Hashing.sha1().hashString("world", StandardCharsets.UTF_8);
+    cache.set(filesystem.resolve(path), hashCode);
+    assertEquals(hashCode, cache.get(filesystem, path));
+  }
+
   private void writeJarWithHashes(ProjectFilesystem filesystem, Path path) throws IOException {
     try (CustomJarOutputStream jar =
         ZipOutputStreams.newJarOutputStream(filesystem.newFileOutputStream(path))) {
@@ -58,6 +58,19 @@ public class LinkedBlockingStackTest {
     assertThat(stack.poll(), is(nullValue()));
   }
 
+  @Test
+  public void addLastPutsElementsAtTheBottom() {
+    LinkedBlockingStack<Integer> stack = new LinkedBlockingStack<>();
+
+    stack.add(1);
+    stack.addLast(2);
+    stack.add(3);
+
+    assertThat(stack.poll(), is(3));
+    assertThat(stack.poll(), is(1));
+    assertThat(stack.poll(), is(2));
+  }
+
   @Test
   public void elementThrowsOnEmptyStack() {
     LinkedBlockingStack<Integer> stack = new LinkedBlockingStack<>();
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Measures how long {@link JarBuilder} takes to merge a set of jars into one, and to jar a
+ * directory, compared with inflating and deflating every entry on a single thread, which is how
+ * {@link JarBuilder} used to write jars.
+ *
+ * <p>The jars are made of entries the size of typical class files, with contents that compress
+ * about as well as class files do.
+ */
+public class JarBuilderBenchmark {
+
+  @Param({"200"})
+  private int totalSizeMb = 4;
+
+  @Param({"20"})
+  private int jarCount = 4;
+
+  private static final int AVERAGE_ENTRY_SIZE = 4 * 1024;
+
+  private Path root;
+  private List<Path> jars;
+  private Path directory;
+  private int entryCount;
+
+  @Before
+  @BeforeExperiment
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("jar-builder-benchmark");
+    directory = Files.createDirectories(root.resolve("classes"));
+    jars = new ArrayList<>(jarCount);
+
+    Random random = new Random(42);
+    long sizePerJar = totalSizeMb * 1024L * 1024L / jarCount;
+    for (int i = 0; i < jarCount; i++) {
+      Path jar = root.resolve("lib" + i + ".jar");
+      try (CustomJarOutputStream output =
+          ZipOutputStreams.newJarOutputStream(
+              jar, ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
+        for (long size = 0; size < sizePerJar; entryCount++) {
+          String name = String.format("com/example/lib%d/Class%d.class", i, entryCount);
+          byte[] contents = makeContents(random);
+          output.putNextEntry(new CustomZipEntry(name));
+          output.write(contents);
+          output.closeEntry();
+          if (i == 0) {
+            Path file = directory.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.write(file, contents);
+          }
+          size += contents.length;
+        }
+      }
+      jars.add(jar);
+    }
+  }
+
+  @After
+  @AfterExperiment
+  public void tearDown() throws IOException {
+    MostFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void mergedJarsHaveAllTheEntries() throws IOException {
+    Path output = mergeJars();
+    assertEquals(entryCount, countFiles(output));
+    assertEquals(entryCount, countFiles(mergeJarsSequentially()));
+  }
+
+  @Benchmark
+  public Path mergeJars() throws IOException {
+    Path output = root.resolve("merged.jar");
+    Files.deleteIfExists(output);
+    new JarBuilder().setEntriesToJar(jars).setShouldHashEntries(true).createJarFile(output);
+    return output;
+  }
+
+  @Benchmark
+  public Path jarDirectory() throws IOException {
+    Path output = root.resolve("classes.jar");
+    Files.deleteIfExists(output);
+    new JarBuilder()
+        .setEntriesToJar(ImmutableList.of(directory))
+        .setShouldHashEntries(true)
+        .createJarFile(output);
+    return output;
+  }
+
+  @Benchmark
+  public Path mergeJarsSequentially() throws IOException {
+    Path output = root.resolve("sequential.jar");
+    Files.deleteIfExists(output);
+    try (CustomJarOutputStream jar =
+        ZipOutputStreams.newJarOutputStream(
+            output, ZipOutputStreams.HandleDuplicates.APPEND_TO_ZIP)) {
+      jar.setEntryHashingEnabled(true);
+      for (Path input : jars) {
+        try (ZipFile zipFile = new ZipFile(input.toFile())) {
+          for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+            ZipEntry entry = e.nextElement();
+            jar.putNextEntry(new CustomZipEntry(entry.getName()));
+            try (InputStream contents = zipFile.getInputStream(entry)) {
+              ByteStreams.copy(contents, jar);
+            }
+            jar.closeEntry();
+          }
+        }
+      }
+    }
+    return output;
+  }
+
+  private static byte[] makeContents(Random random) {
+    byte[] contents = new byte[AVERAGE_ENTRY_SIZE / 2 + random.nextInt(AVERAGE_ENTRY_SIZE)];
+    // A small alphabet, so that the contents compress to about half their size.
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte) random.nextInt(24);
+    }
+    return contents;
+  }
+
+  private static int countFiles(Path jar) throws IOException {
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      return (int)
+          zipFile.stream()
+              .filter(entry -> !entry.isDirectory())
+              .filter(entry -> !entry.getName().equals("META-INF/MANIFEST.MF"))
+              .count();
+    }
+  }
+}
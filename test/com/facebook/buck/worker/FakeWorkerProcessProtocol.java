@@ -34,6 +34,11 @@ public class FakeWorkerProcessProtocol {
       return 0;
     }
 
+    @Override
+    public int getMaxConcurrentJobs() {
+      return 1;
+    }
+
     @Override
     public void close() {
       isClosed = true;
@@ -22,8 +22,10 @@ import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.Threads;
 import com.facebook.buck.util.function.ThrowingSupplier;
+import com.facebook.buck.util.timing.SettableFakeClock;
 import com.facebook.buck.worker.WorkerProcessPool.BorrowedWorkerProcess;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
@@ -32,6 +34,7 @@ import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -102,6 +105,150 @@ public class WorkerProcessPoolTest {
     assertThat(usedWorkers.size(), equalTo(maxWorkers));
   }
 
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testLendsMultiplexedWorkersToSeveralBorrowers() throws Exception {
+    int maxWorkers = 2;
+    int maxConcurrentJobs = 3;
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPool pool =
+        createPool(
+            maxWorkers,
+            () -> {
+              WorkerProcess worker =
+                  new FakeWorkerProcess(ImmutableMap.of()) {
+                    @Override
+                    public int getMaxConcurrentJobs() {
+                      return maxConcurrentJobs;
+                    }
+                  };
+              createdWorkers.add(worker);
+              return worker;
+            });
+
+    AtomicReference<BorrowedWorkerProcess> extraWorkerProcess = new AtomicReference<>();
+    acquireWorkersThenRunActionThenRelease(
+        pool,
+        maxWorkers * maxConcurrentJobs,
+        () ->
+            pool.borrowWorkerProcess(1, TimeUnit.MILLISECONDS).ifPresent(extraWorkerProcess::set));
+
+    // each worker process took as many borrowers as it accepts jobs, and no more
+    assertThat(createdWorkers.size(), is(maxWorkers));
+    assertThat(extraWorkerProcess.get(), is(nullValue()));
+
+    // all the borrowers were returned
+    pool.close();
+  }
+
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testStopsWorkersIdleForLongerThanTheTimeout() throws Exception {
+    SettableFakeClock clock = new SettableFakeClock(1000, 0);
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPool pool =
+        createElasticPool(
+            2,
+            Optional.of(500L),
+            Optional.empty(),
+            clock,
+            () -> {
+              WorkerProcess worker = new FakeWorkerProcess(ImmutableMap.of());
+              createdWorkers.add(worker);
+              return worker;
+            });
+
+    WorkerProcess firstWorker;
+    try (BorrowedWorkerProcess worker = pool.borrowWorkerProcess()) {
+      firstWorker = worker.get();
+    }
+
+    clock.setCurrentTimeMillis(1400);
+    pool.runMaintenance();
+    assertThat(firstWorker.isAlive(), is(true));
+
+    clock.setCurrentTimeMillis(1600);
+    pool.runMaintenance();
+    assertThat(firstWorker.isAlive(), is(false));
+
+    // the next borrower gets a new worker process
+    try (BorrowedWorkerProcess worker = pool.borrowWorkerProcess()) {
+      assertThat(worker.get(), is(not(firstWorker)));
+    }
+    assertThat(createdWorkers.size(), is(2));
+    pool.close();
+  }
+
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testDoesNotStopBorrowedWorkers() throws Exception {
+    SettableFakeClock clock = new SettableFakeClock(1000, 0);
+    WorkerProcessPool pool =
+        createElasticPool(
+            1,
+            Optional.of(500L),
+            Optional.empty(),
+            clock,
+            () -> new FakeWorkerProcess(ImmutableMap.of()));
+
+    try (BorrowedWorkerProcess worker = pool.borrowWorkerProcess()) {
+      WorkerProcess workerProcess = worker.get();
+      clock.setCurrentTimeMillis(5000);
+      pool.runMaintenance();
+      assertThat(workerProcess.isAlive(), is(true));
+    }
+    pool.close();
+  }
+
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testDoesNotStartWorkersOverTheMemoryLimit() throws Exception {
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPool pool =
+        createElasticPool(
+            2,
+            Optional.empty(),
+            Optional.of(100L),
+            SettableFakeClock.DO_NOT_CARE,
+            () -> {
+              WorkerProcess worker = createWorkerUsingMemory(150);
+              createdWorkers.add(worker);
+              return worker;
+            });
+
+    AtomicReference<BorrowedWorkerProcess> extraWorkerProcess = new AtomicReference<>();
+    acquireWorkersThenRunActionThenRelease(
+        pool,
+        1,
+        () ->
+            pool.borrowWorkerProcess(1, TimeUnit.MILLISECONDS).ifPresent(extraWorkerProcess::set));
+
+    // the running worker uses more memory than allowed, so no other worker was started
+    assertThat(createdWorkers.size(), is(1));
+    assertThat(extraWorkerProcess.get(), is(nullValue()));
+
+    // the worker that was set aside is still accounted for
+    pool.close();
+  }
+
+  @Test(timeout = WAIT_FOR_TEST_THREADS_TIMEOUT)
+  public void testStartsWorkersUnderTheMemoryLimit() throws Exception {
+    int maxWorkers = 2;
+    Set<WorkerProcess> createdWorkers = new HashSet<>();
+    WorkerProcessPool pool =
+        createElasticPool(
+            maxWorkers,
+            Optional.empty(),
+            Optional.of(100L),
+            SettableFakeClock.DO_NOT_CARE,
+            () -> {
+              WorkerProcess worker = createWorkerUsingMemory(40);
+              createdWorkers.add(worker);
+              return worker;
+            });
+
+    acquireWorkersThenRelease(pool, maxWorkers);
+
+    assertThat(createdWorkers.size(), is(maxWorkers));
+    pool.close();
+  }
+
   @Test
   public void testLargePool() throws Exception {
     int numConcurrentConsumers = 128;
@@ -381,6 +528,37 @@ public class WorkerProcessPoolTest {
         });
   }
 
+  private static WorkerProcessPool createElasticPool(
+      int maxWorkers,
+      Optional<Long> idleTimeoutMillis,
+      Optional<Long> maxResidentMemoryBytes,
+      SettableFakeClock clock,
+      ThrowingSupplier<WorkerProcess, IOException> startWorkerProcess) {
+    return new WorkerProcessPool(
+        maxWorkers,
+        Hashing.sha1().hashLong(0),
+        () -> {
+          WorkerProcess workerProcess = startWorkerProcess.get();
+          workerProcess.ensureLaunchAndHandshake();
+          return workerProcess;
+        },
+        idleTimeoutMillis,
+        maxResidentMemoryBytes,
+        clock,
+        Optional.empty());
+  }
+
+  private static WorkerProcess createWorkerUsingMemory(long residentMemoryBytes)
+      throws IOException {
+    return new FakeWorkerProcess(ImmutableMap.of()) {
+      @Override
+      public Optional<ProcessResourceConsumption> getResourceConsumption() {
+        return Optional.of(
+            ProcessResourceConsumption.of(residentMemoryBytes, 0, 0, 0, 0, 0, 0, 0, 0));
+      }
+    };
+  }
+
   private static WorkerProcessPool createPool(int maxWorkers) {
     return createPool(maxWorkers, x -> {});
   }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.core.exceptions.HumanReadableException;
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+@SuppressWarnings("resource") // Closing alters the test data.
+public class WorkerProcessProtocolOneTest {
+
+  @Rule public TemporaryPaths temporaryPaths = new TemporaryPaths();
+  @Rule public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void testHandshakeNegotiatesMaxConcurrentJobs() throws IOException {
+    ByteArrayOutputStream jsonSentToWorkerProcess = new ByteArrayOutputStream();
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(
+            jsonSentToWorkerProcess, handshakeResponse(",\"max_concurrent_jobs\":3"));
+
+    protocol.handshake(0);
+
+    assertThat(
+        jsonSentToWorkerProcess.toString(),
+        Matchers.containsString(
+            "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"1\","
+                + "\"capabilities\":[],\"max_concurrent_jobs\":8}"));
+    assertEquals(3, protocol.getMaxConcurrentJobs());
+  }
+
+  @Test
+  public void testWorkerCannotAcceptMoreJobsThanRequested() throws IOException {
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(
+            new ByteArrayOutputStream(), handshakeResponse(",\"max_concurrent_jobs\":100"));
+
+    protocol.handshake(0);
+
+    assertEquals(8, protocol.getMaxConcurrentJobs());
+  }
+
+  @Test
+  public void testWorkerWithoutMaxConcurrentJobsGetsOneJobAtATime() throws IOException {
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(new ByteArrayOutputStream(), handshakeResponse(""));
+
+    protocol.handshake(0);
+
+    assertEquals(1, protocol.getMaxConcurrentJobs());
+  }
+
+  @Test
+  public void testHandshakeWithProtocolZeroWorkerFails() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("\"protocol_version\" to be \"1\", got \"0\" instead.");
+
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(
+            new ByteArrayOutputStream(),
+            "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"0\",\"capabilities\":[]}");
+
+    protocol.handshake(0);
+  }
+
+  @Test
+  public void testReceivesResponsesInAnyOrder() throws IOException {
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(
+            new ByteArrayOutputStream(),
+            handshakeResponse(",\"max_concurrent_jobs\":2")
+                + ",{\"id\":2,\"type\":\"result\",\"exit_code\":2}"
+                + ",{\"id\":1,\"type\":\"result\",\"exit_code\":1}");
+
+    protocol.handshake(0);
+    protocol.send(1, command(1));
+    protocol.send(2, command(2));
+
+    assertEquals(1, protocol.receiveCommandResponse(1));
+    assertEquals(2, protocol.receiveCommandResponse(2));
+  }
+
+  @Test
+  public void testResponseToUnknownJobFails() throws IOException {
+    expectedException.expect(HumanReadableException.class);
+    expectedException.expectMessage("got \"3\" instead.");
+
+    WorkerProcessProtocol.CommandSender protocol =
+        createCommandSender(
+            new ByteArrayOutputStream(),
+            handshakeResponse(",\"max_concurrent_jobs\":2")
+                + ",{\"id\":3,\"type\":\"result\",\"exit_code\":0}");
+
+    protocol.handshake(0);
+    protocol.send(1, command(1));
+
+    protocol.receiveCommandResponse(1);
+  }
+
+  private WorkerProcessProtocol.CommandSender createCommandSender(
+      ByteArrayOutputStream processStdin, String processStdout) throws IOException {
+    return new WorkerProcessProtocolOne.CommandSender(
+        processStdin,
+        inputStream(processStdout),
+        temporaryPaths.newFile(),
+        () -> {},
+        () -> true,
+        8);
+  }
+
+  private static String handshakeResponse(String extraProperties) {
+    return "[{\"id\":0,\"type\":\"handshake\",\"protocol_version\":\"1\",\"capabilities\":[]"
+        + extraProperties
+        + "}";
+  }
+
+  private static WorkerProcessCommand command(int messageId) {
+    return WorkerProcessCommand.of(
+        Paths.get(messageId + ".args"),
+        Paths.get(messageId + ".out"),
+        Paths.get(messageId + ".err"));
+  }
+
+  private static InputStream inputStream(String string) {
+    return new ByteArrayInputStream(string.getBytes(StandardCharsets.UTF_8));
+  }
+}